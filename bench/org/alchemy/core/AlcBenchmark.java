@@ -0,0 +1,214 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * Micro benchmarks for the drawing hot paths<br>
+ * Each benchmark is warmed up, then run for a number of timed iterations.
+ * Throughput (ops/s) and allocation per operation are reported for each.
+ * <pre>
+ * ant bench
+ * ant bench -Dbench.args="-include Mirror -iterations 10"
+ * </pre>
+ */
+public class AlcBenchmark implements AlcConstants {
+
+    /** Number of warmup iterations */
+    private int warmupIterations = 3;
+    /** Number of measured iterations */
+    private int iterations = 5;
+    /** Length of each iteration in milliseconds */
+    private long iterationTime = 1000;
+    /** Only run benchmarks with names containing this */
+    private String include = null;
+    /** CSV file to write the results to */
+    private File outputFile = null;
+    /** Results are accumulated here so the JIT can not remove the work */
+    private static volatile int sink;
+    /** com.sun.management.ThreadMXBean.getThreadAllocatedBytes if available */
+    private static Method allocatedBytes;
+
+    public static void main(String[] args) {
+        AlcBenchmark benchmark = new AlcBenchmark();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-warmup")) {
+                    benchmark.warmupIterations = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-iterations")) {
+                    benchmark.iterations = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-time")) {
+                    benchmark.iterationTime = Long.parseLong(args[++i]);
+                } else if (arg.equals("-include")) {
+                    benchmark.include = args[++i];
+                } else if (arg.equals("-out")) {
+                    benchmark.outputFile = new File(args[++i]);
+                }
+            }
+        } catch (Exception ex) {
+            System.err.println("Usage: AlcBenchmark [-warmup n] [-iterations n] [-time ms] [-include name] [-out results.csv]");
+            System.exit(1);
+        }
+
+        try {
+            benchmark.runAll(AlcBenchmarks.create(new AlcStrokeCorpus(42)));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+        // The pen manager leaves threads running
+        System.exit(0);
+    }
+
+    /** Run every benchmark and report the results */
+    void runAll(ArrayList<Benchmark> benchmarks) throws Exception {
+        ArrayList<String> rows = new ArrayList<String>();
+        rows.add("benchmark,ops/s,error,bytes/op,alloc MB/s");
+        System.out.println(String.format("%-36s %14s %10s %12s %12s", "Benchmark", "ops/s", "error", "B/op", "MB/s alloc"));
+
+        for (Benchmark benchmark : benchmarks) {
+            if (include != null && !benchmark.name.contains(include)) {
+                continue;
+            }
+            Result result = run(benchmark);
+            System.out.println(String.format("%-36s %14.2f %10.2f %12s %12s",
+                    benchmark.name, result.mean, result.error,
+                    result.bytesPerOp < 0 ? "n/a" : String.format("%.0f", result.bytesPerOp),
+                    result.bytesPerOp < 0 ? "n/a" : String.format("%.1f", result.allocationRate)));
+            rows.add(benchmark.name + "," + result.mean + "," + result.error + "," + result.bytesPerOp + "," + result.allocationRate);
+        }
+
+        if (outputFile != null) {
+            if (outputFile.getParentFile() != null) {
+                outputFile.getParentFile().mkdirs();
+            }
+            PrintWriter out = new PrintWriter(new FileWriter(outputFile));
+            try {
+                for (String row : rows) {
+                    out.println(row);
+                }
+            } finally {
+                out.close();
+            }
+            System.out.println("Results written to " + outputFile);
+        }
+    }
+
+    /** Warm up then measure a single benchmark */
+    private Result run(Benchmark benchmark) throws Exception {
+        benchmark.setup();
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(benchmark);
+        }
+
+        double[] opsPerSecond = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] stats = iteration(benchmark);
+            opsPerSecond[i] = stats[0] / (stats[1] / 1e9);
+            totalOps += stats[0];
+            totalNanos += stats[1];
+            totalBytes = (stats[2] < 0 || totalBytes < 0) ? -1 : totalBytes + stats[2];
+        }
+
+        Result result = new Result();
+        for (double ops : opsPerSecond) {
+            result.mean += ops / iterations;
+        }
+        double variance = 0;
+        for (double ops : opsPerSecond) {
+            variance += (ops - result.mean) * (ops - result.mean);
+        }
+        result.error = (iterations > 1) ? Math.sqrt(variance / (iterations - 1)) : 0;
+        result.bytesPerOp = (totalBytes < 0) ? -1 : (double) totalBytes / totalOps;
+        result.allocationRate = (totalBytes < 0) ? -1 : (totalBytes / 1048576.0) / (totalNanos / 1e9);
+        return result;
+    }
+
+    /** Run a benchmark repeatedly for one iteration
+     * @return  Operations, elapsed nanoseconds and bytes allocated (-1 if unknown)
+     */
+    private long[] iteration(Benchmark benchmark) throws Exception {
+        long ops = 0;
+        long bytesStart = allocatedBytes();
+        long start = System.nanoTime();
+        long end = start + iterationTime * 1000000L;
+        long now;
+        do {
+            sink += benchmark.run();
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+        long bytesEnd = allocatedBytes();
+        long bytes = (bytesStart < 0 || bytesEnd < 0) ? -1 : bytesEnd - bytesStart;
+        return new long[]{ops, now - start, bytes};
+    }
+
+    /** Bytes allocated by the current thread, or -1 if the VM can not tell us */
+    private static long allocatedBytes() {
+        try {
+            if (allocatedBytes == null) {
+                Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+                allocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+            }
+            Object bean = ManagementFactory.getThreadMXBean();
+            return ((Long) allocatedBytes.invoke(bean, Thread.currentThread().getId())).longValue();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    /** Set a private field - used to put modules into a state normally reached by mouse events */
+    static void setField(Object object, String name, Object value) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    /** A single benchmark */
+    abstract static class Benchmark {
+
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        /** Called once before warmup */
+        void setup() throws Exception {
+        }
+
+        /** One operation - return something derived from the work done */
+        abstract int run() throws Exception;
+    }
+
+    private static class Result {
+
+        double mean,  error,  bytesPerOp,  allocationRate;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import org.alchemy.affect.Displace;
+import org.alchemy.affect.Gradient;
+import org.alchemy.affect.Mirror;
+import org.alchemy.core.AlcBenchmark.Benchmark;
+import org.alchemy.core.AlcStrokeCorpus.Stroke;
+
+/**
+ * The drawing hot path benchmarks run by {@link AlcBenchmark}
+ */
+class AlcBenchmarks implements AlcConstants {
+
+    /** Shape file used for the PDF import benchmark */
+    private static final File SHAPE_FILE = new File("shapes/Bones/Bones-1.pdf");
+
+    /** Set up a headless canvas and create the benchmarks
+     * @param corpus    The strokes to draw
+     * @return          The benchmarks to run
+     */
+    static ArrayList<Benchmark> create(final AlcStrokeCorpus corpus) {
+        // A canvas without a window, as used by the modules
+        Alchemy.preferences = new AlcPreferences();
+        Alchemy.session = new AlcSession();
+        Alchemy.canvas = new AlcCanvas();
+        Alchemy.canvas.setSize(AlcStrokeCorpus.WIDTH, AlcStrokeCorpus.HEIGHT);
+        final AlcCanvas canvas = Alchemy.canvas;
+        final AlcMath math = new AlcMath();
+
+        ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        //////////////////////////////////////////////////////////////
+        // SHAPES
+        //////////////////////////////////////////////////////////////
+        benchmarks.add(new Benchmark("AlcShape.curveTo scribbles") {
+
+            int run() {
+                int points = 0;
+                for (Stroke stroke : corpus.scribbles) {
+                    points += AlcStrokeCorpus.curveShape(stroke).getTotalPoints();
+                }
+                return points;
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcShape.lineTo scribbles") {
+
+            int run() {
+                int points = 0;
+                for (Stroke stroke : corpus.scribbles) {
+                    points += AlcStrokeCorpus.lineShape(stroke).getTotalPoints();
+                }
+                return points;
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcShape.spineTo pen strokes") {
+
+            int run() {
+                int points = 0;
+                for (Stroke stroke : corpus.penStrokes) {
+                    points += AlcStrokeCorpus.spineShape(stroke, 12F).getTotalPoints();
+                }
+                return points;
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcShape.createSpine pen strokes") {
+
+            ArrayList<AlcShape> shapes = new ArrayList<AlcShape>();
+
+            @Override
+            void setup() {
+                for (Stroke stroke : corpus.penStrokes) {
+                    shapes.add(AlcStrokeCorpus.spineShape(stroke, 12F));
+                }
+            }
+
+            int run() {
+                int points = 0;
+                for (AlcShape shape : shapes) {
+                    shape.createSpine();
+                    points += shape.getTotalPoints();
+                }
+                return points;
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcShape.simplify pen strokes") {
+
+            int run() {
+                int points = 0;
+                for (Stroke stroke : corpus.penStrokes) {
+                    AlcShape shape = AlcStrokeCorpus.spineShape(stroke, 12F);
+                    shape.simplify(0.5F);
+                    points += shape.getTotalPoints();
+                }
+                return points;
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcShape.contains mouse moves") {
+
+            ArrayList<AlcShape> shapes;
+
+            @Override
+            void setup() {
+                shapes = corpus.allShapes();
+            }
+
+            int run() {
+                // Find the newest shape under each point of a scribble, as Random and Smooth do
+                int hits = 0;
+                for (Stroke stroke : corpus.scribbles) {
+                    for (int p = 0; p < stroke.size; p++) {
+                        for (int i = shapes.size() - 1; i >= 0; i--) {
+                            if (shapes.get(i).contains(stroke.points[p])) {
+                                hits++;
+                                break;
+                            }
+                        }
+                    }
+                }
+                return hits;
+            }
+        });
+
+        //////////////////////////////////////////////////////////////
+        // RENDERING
+        //////////////////////////////////////////////////////////////
+        benchmarks.add(new Benchmark("AlcCanvas.renderCanvas full") {
+
+            @Override
+            void setup() {
+                clearShapes(canvas);
+                canvas.shapes.addAll(corpus.allShapes());
+            }
+
+            int run() {
+                return canvas.renderCanvas(true, 1).getWidth(null);
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcCanvas.renderCanvas fills") {
+
+            @Override
+            void setup() {
+                clearShapes(canvas);
+                for (Stroke stroke : corpus.fills) {
+                    canvas.shapes.add(AlcStrokeCorpus.fillShape(stroke));
+                }
+            }
+
+            int run() {
+                return canvas.renderCanvas(true, 1).getWidth(null);
+            }
+        });
+
+        benchmarks.add(new Benchmark("AlcRenderer.renderImage overview") {
+
+            final AlcRenderer renderer = new AlcRenderer();
+            ArrayList<AlcShape> shapes;
+
+            @Override
+            void setup() {
+                shapes = corpus.allShapes();
+            }
+
+            int run() {
+                // A quarter size overview where most detail is lost
+                return renderer.renderImage(shapes, AlcStrokeCorpus.WIDTH / 4, AlcStrokeCorpus.HEIGHT / 4, 0.25).getWidth();
+            }
+        });
+
+        //////////////////////////////////////////////////////////////
+        // AFFECTS
+        //////////////////////////////////////////////////////////////
+        // Affects are called through AlcModule as the canvas does
+        final AlcModule mirror = new Mirror();
+        final AlcModule displace = new Displace();
+        final AlcModule gradient = new Gradient();
+        mirror.setGlobals(canvas, null, math, null, null, null);
+
+        benchmarks.add(new Benchmark("AlcRenderer.paintShapes stamps") {
+
+            final AlcRenderer renderer = new AlcRenderer();
+            final BufferedImage image = new BufferedImage(AlcStrokeCorpus.WIDTH, AlcStrokeCorpus.HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+            ArrayList<AlcShape> shapes;
+
+            @Override
+            void setup() {
+                // Library shapes stamped along a drag, as PullShapes does
+                AlcShape library = AlcStrokeCorpus.fillShape(corpus.fills.get(0));
+                library.move(-library.getBounds().getCenterX(), -library.getBounds().getCenterY());
+                Random random = new Random(1);
+                shapes = new ArrayList<AlcShape>(500);
+                for (int i = 0; i < 500; i++) {
+                    AlcShape stamp = library.stampClone();
+                    float scale = 0.1F + random.nextFloat() * 0.4F;
+                    stamp.scale(scale, scale);
+                    stamp.rotate(random.nextFloat() * Math.PI * 2);
+                    stamp.move(random.nextFloat() * AlcStrokeCorpus.WIDTH, random.nextFloat() * AlcStrokeCorpus.HEIGHT);
+                    shapes.add(stamp);
+                }
+            }
+
+            int run() {
+                Graphics2D g2 = image.createGraphics();
+                renderer.paintBackground(g2, image.getWidth(), image.getHeight());
+                renderer.paintShapes(g2, shapes, image.getWidth(), image.getHeight());
+                g2.dispose();
+                return shapes.size();
+            }
+        });
+
+        benchmarks.add(new Benchmark("Mirror.affect") {
+
+            @Override
+            void setup() throws Exception {
+                setupLiveShapes(canvas, corpus);
+                AlcBenchmark.setField(mirror, "shapeCount", 1);
+                AlcBenchmark.setField(mirror, "baseHorizontalAxis", AlcStrokeCorpus.WIDTH / 2);
+            }
+
+            int run() {
+                mirror.affect();
+                return canvas.affectShapes.size();
+            }
+        });
+
+        benchmarks.add(new Benchmark("Displace.affect") {
+
+            @Override
+            void setup() throws Exception {
+                setupLiveShapes(canvas, corpus);
+                // As if the mouse is being dragged
+                AlcBenchmark.setField(displace, "mouseDown", Boolean.TRUE);
+                AlcBenchmark.setField(displace, "speed", 3);
+            }
+
+            int run() {
+                displace.affect();
+                return canvas.createShapes.size();
+            }
+        });
+
+        benchmarks.add(new Benchmark("Gradient.affect") {
+
+            @Override
+            void setup() throws Exception {
+                setupLiveShapes(canvas, corpus);
+            }
+
+            int run() {
+                gradient.affect();
+                return canvas.createShapes.size();
+            }
+        });
+
+        //////////////////////////////////////////////////////////////
+        // BLIT
+        //////////////////////////////////////////////////////////////
+        // Drawing the canvas image to the screen, ten times a run
+        // Compare pipelines with: ant bench-blit
+        final BufferedImage canvasImage = new BufferedImage(AlcStrokeCorpus.WIDTH, AlcStrokeCorpus.HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D canvasGraphics = canvasImage.createGraphics();
+        new AlcRenderer().paintShapes(canvasGraphics, corpus.allShapes(), canvasImage.getWidth(), canvasImage.getHeight());
+        canvasGraphics.dispose();
+
+        benchmarks.add(new Benchmark("Blit BufferedImage to image") {
+
+            final BufferedImage screen = new BufferedImage(AlcStrokeCorpus.WIDTH, AlcStrokeCorpus.HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+            int run() {
+                Graphics2D g2 = screen.createGraphics();
+                for (int i = 0; i < 10; i++) {
+                    g2.drawImage(canvasImage, 0, 0, null);
+                }
+                g2.dispose();
+                return screen.getRGB(0, 0);
+            }
+        });
+
+        if (!GraphicsEnvironment.isHeadless()) {
+            // A volatile image stands in for the screen
+            final GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            final String pipeline = gc.getClass().getSimpleName();
+            final VolatileImage screen = gc.createCompatibleVolatileImage(AlcStrokeCorpus.WIDTH, AlcStrokeCorpus.HEIGHT);
+
+            benchmarks.add(new Benchmark("Blit BufferedImage to volatile " + pipeline) {
+
+                int run() {
+                    screen.validate(gc);
+                    Graphics2D g2 = screen.createGraphics();
+                    for (int i = 0; i < 10; i++) {
+                        g2.drawImage(canvasImage, 0, 0, null);
+                    }
+                    g2.dispose();
+                    return screen.contentsLost() ? 0 : 1;
+                }
+            });
+
+            benchmarks.add(new Benchmark("Blit AlcScreenImage to volatile " + pipeline) {
+
+                final AlcScreenImage screenImage = new AlcScreenImage();
+
+                int run() {
+                    screen.validate(gc);
+                    Graphics2D g2 = screen.createGraphics();
+                    for (int i = 0; i < 10; i++) {
+                        screenImage.paint(g2, canvasImage, 0, 0);
+                    }
+                    g2.dispose();
+                    return screenImage.isAccelerated() ? 1 : 0;
+                }
+            });
+        }
+
+        //////////////////////////////////////////////////////////////
+        // UTILITIES
+        //////////////////////////////////////////////////////////////
+        if (SHAPE_FILE.exists()) {
+            benchmarks.add(new Benchmark("AlcUtil.getPDFShapes") {
+
+                int run() {
+                    Collection<AlcShape> shapes = AlcUtil.getPDFShapes(SHAPE_FILE, false, 0);
+                    return shapes == null ? 0 : shapes.size();
+                }
+            });
+        }
+
+        benchmarks.add(new Benchmark("AlcMath.noise 64x64") {
+
+            int run() {
+                float total = 0;
+                for (int y = 0; y < 64; y++) {
+                    for (int x = 0; x < 64; x++) {
+                        total += math.noise(x * 0.05F, y * 0.05F, 0.5F);
+                    }
+                }
+                return (int) total;
+            }
+        });
+
+        return benchmarks;
+    }
+
+    /** Empty the shape lists - without redrawing or notifying modules as {@link AlcCanvas#clear()} does */
+    private static void clearShapes(AlcCanvas canvas) {
+        canvas.shapes.clear();
+        canvas.createShapes.clear();
+        canvas.affectShapes.clear();
+        canvas.guideShapes.clear();
+    }
+
+    /** Put a few strokes in progress on the canvas as the affects would see them */
+    private static void setupLiveShapes(AlcCanvas canvas, AlcStrokeCorpus corpus) {
+        clearShapes(canvas);
+        for (int i = 0; i < 4; i++) {
+            canvas.createShapes.add(AlcStrokeCorpus.curveShape(corpus.scribbles.get(i)));
+            canvas.createShapes.add(AlcStrokeCorpus.spineShape(corpus.penStrokes.get(i), 12F));
+        }
+    }
+}
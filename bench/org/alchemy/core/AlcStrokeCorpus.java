@@ -0,0 +1,202 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Synthetic stroke corpus used by the benchmarks<br>
+ * Strokes are generated from a fixed seed so every run draws exactly the same marks.
+ */
+class AlcStrokeCorpus implements AlcConstants {
+
+    /** Width of the canvas the strokes are drawn within */
+    static final int WIDTH = 800;
+    /** Height of the canvas the strokes are drawn within */
+    static final int HEIGHT = 600;
+    /** Fast mouse scribbles - few points with large jumps between them */
+    final ArrayList<Stroke> scribbles;
+    /** Long pen strokes with small steps and varying pressure */
+    final ArrayList<Stroke> penStrokes;
+    /** Dense closed shapes to be filled */
+    final ArrayList<Stroke> fills;
+
+    /** Creates the corpus
+     * @param seed  Seed for the random generator
+     */
+    AlcStrokeCorpus(long seed) {
+        Random random = new Random(seed);
+        scribbles = makeScribbles(random, 40, 60);
+        penStrokes = makePenStrokes(random, 20, 400);
+        fills = makeFills(random, 20, 200);
+    }
+
+    //////////////////////////////////////////////////////////////
+    // STROKES
+    //////////////////////////////////////////////////////////////
+    private static ArrayList<Stroke> makeScribbles(Random random, int count, int length) {
+        ArrayList<Stroke> strokes = new ArrayList<Stroke>(count);
+        for (int i = 0; i < count; i++) {
+            Stroke stroke = new Stroke(length);
+            stroke.add(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT, 1F);
+            double angle = random.nextDouble() * Math.PI * 2;
+            for (int j = 1; j < length; j++) {
+                // Sharp changes in direction with big steps
+                angle += (random.nextDouble() - 0.5) * Math.PI;
+                angle = stroke.walk(angle, 10 + random.nextFloat() * 30, 1F);
+            }
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+
+    private static ArrayList<Stroke> makePenStrokes(Random random, int count, int length) {
+        ArrayList<Stroke> strokes = new ArrayList<Stroke>(count);
+        for (int i = 0; i < count; i++) {
+            Stroke stroke = new Stroke(length);
+            stroke.add(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT, 0F);
+            double angle = random.nextDouble() * Math.PI * 2;
+            for (int j = 1; j < length; j++) {
+                // Gentle curves with small steps
+                angle += (random.nextDouble() - 0.5) * 0.3;
+                // Pressure rises and falls over the stroke
+                float pressure = (float) Math.sin(Math.PI * j / length) * (0.6F + random.nextFloat() * 0.4F);
+                angle = stroke.walk(angle, 3 + random.nextFloat() * 3, pressure);
+            }
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+
+    private static ArrayList<Stroke> makeFills(Random random, int count, int length) {
+        ArrayList<Stroke> strokes = new ArrayList<Stroke>(count);
+        for (int i = 0; i < count; i++) {
+            Stroke stroke = new Stroke(length);
+            float cx = random.nextFloat() * WIDTH;
+            float cy = random.nextFloat() * HEIGHT;
+            float radius = 40 + random.nextFloat() * 120;
+            for (int j = 0; j < length; j++) {
+                // A noisy star that crosses over itself
+                double angle = Math.PI * 2 * j * 7 / length;
+                float r = radius * (0.3F + random.nextFloat() * 0.7F);
+                stroke.add(cx + (float) (Math.cos(angle) * r), cy + (float) (Math.sin(angle) * r), 1F);
+            }
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SHAPES
+    //////////////////////////////////////////////////////////////
+    /** Draw a stroke as a line shape using curveTo */
+    static AlcShape curveShape(Stroke stroke) {
+        AlcShape shape = new AlcShape(stroke.points[0], Color.BLACK, 255, STYLE_STROKE, 1F);
+        for (int i = 1; i < stroke.size; i++) {
+            shape.curveTo(stroke.points[i]);
+        }
+        return shape;
+    }
+
+    /** Draw a stroke as a line shape using lineTo */
+    static AlcShape lineShape(Stroke stroke) {
+        AlcShape shape = new AlcShape(stroke.points[0], Color.BLACK, 255, STYLE_STROKE, 1F);
+        for (int i = 1; i < stroke.size; i++) {
+            shape.lineTo(stroke.points[i]);
+        }
+        return shape;
+    }
+
+    /** Draw a stroke as a variable width pen shape - requires Alchemy.canvas */
+    static AlcShape spineShape(Stroke stroke, float maxWidth) {
+        AlcShape shape = new AlcShape();
+        shape.setup(Color.BLACK, 255, STYLE_FILL, 1F);
+        for (int i = 0; i < stroke.size; i++) {
+            shape.spineTo(stroke.points[i], stroke.pressure[i] * maxWidth);
+        }
+        return shape;
+    }
+
+    /** Draw a stroke as a closed filled shape */
+    static AlcShape fillShape(Stroke stroke) {
+        AlcShape shape = new AlcShape(stroke.points[0], new Color(200, 0, 0), 150, STYLE_FILL, 1F);
+        for (int i = 1; i < stroke.size; i++) {
+            shape.curveTo(stroke.points[i]);
+        }
+        shape.closePath();
+        return shape;
+    }
+
+    /** Every stroke in the corpus drawn as it would be on the canvas */
+    ArrayList<AlcShape> allShapes() {
+        ArrayList<AlcShape> shapes = new ArrayList<AlcShape>();
+        for (Stroke stroke : fills) {
+            shapes.add(fillShape(stroke));
+        }
+        for (Stroke stroke : scribbles) {
+            shapes.add(curveShape(stroke));
+        }
+        for (Stroke stroke : penStrokes) {
+            shapes.add(spineShape(stroke, 12F));
+        }
+        return shapes;
+    }
+
+    /** A recorded stroke - points with pen pressure */
+    static class Stroke {
+
+        final Point2D.Float[] points;
+        final float[] pressure;
+        int size = 0;
+
+        Stroke(int length) {
+            points = new Point2D.Float[length];
+            pressure = new float[length];
+        }
+
+        void add(float x, float y, float p) {
+            points[size] = new Point2D.Float(x, y);
+            pressure[size] = p;
+            size++;
+        }
+
+        /** Add a point a step away from the last, bouncing off the canvas edges
+         * @return  The new direction
+         */
+        double walk(double angle, float step, float p) {
+            Point2D.Float last = points[size - 1];
+            double x = last.x + Math.cos(angle) * step;
+            double y = last.y + Math.sin(angle) * step;
+            if (x < 0 || x > WIDTH) {
+                angle = Math.PI - angle;
+                x = last.x + Math.cos(angle) * step;
+            }
+            if (y < 0 || y > HEIGHT) {
+                angle = -angle;
+                y = last.y + Math.sin(angle) * step;
+            }
+            add((float) x, (float) y, p);
+            return angle;
+        }
+    }
+}
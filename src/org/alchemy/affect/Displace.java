@@ -65,6 +65,7 @@ public class Displace extends AlcModule implements AlcConstants {
 
                     public void stateChanged(ChangeEvent e) {
                         if (!speedSlider.getValueIsAdjusting()) {
+                            canvas.finishGeometry();
                             displacement = speedSlider.getValue();
                         }
                     }
@@ -135,6 +136,11 @@ public class Displace extends AlcModule implements AlcConstants {
         }
     }
 
+    @Override
+    public boolean isGeometryThreadSafe() {
+        return true;
+    }
+
     @Override
     public void mousePressed(MouseEvent e) {
         mouseDown = true;
@@ -79,21 +79,14 @@ public class Limit extends AlcModule {
             int shapesToRemove = totalShapes - limit;
 //            System.out.println("Total: " + totalShapes + " Remove: " + shapesToRemove);
 
-            // The end of the range to remove from the shapes list
-            int end = shapesToRemove;
             // If there are not enough shapes in the shapes list
+            // leave the last one unless it is the only one
             if (shapesToRemove > canvas.shapes.size()) {
-                end = canvas.shapes.size() - 1;
-            }
-            if(end == 0){
-                canvas.shapes.remove(0);
-                shapesToRemove--;
-            } else if (end > 0) {
-                canvas.shapes.subList(0, end).clear();
-                shapesToRemove -= end + 1;
+                shapesToRemove = Math.max(1, canvas.shapes.size() - 1);
             }
 
-            canvas.redraw(true);
+            // Only the area of the removed shapes is redrawn
+            canvas.removeOldestShapes(shapesToRemove);
         }
 
     }
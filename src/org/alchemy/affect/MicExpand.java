@@ -164,9 +164,9 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
 
             GeneralPath currentPath = currentShape.getPath();
             Rectangle rect = currentPath.getBounds();
-            Dimension windowSize = canvas.getSize();
+            Rectangle view = canvas.getViewBounds();
             // If the shape is out of the window, remove it
-            if (rect.contains(0, 0, windowSize.width, windowSize.height)) {
+            if (rect.contains(view)) {
                 if (activeShape >= 0) {
                     canvas.shapes.remove(activeShape);
                     activeShape = -1;
@@ -308,7 +308,7 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
             // Loop through from the newest shape and find the first one the mouse is over
             for (int i = canvas.shapes.size() - 1; i >= 0; i--) {
                 AlcShape thisShape = canvas.shapes.get(i);
-                if (thisShape.getPath().contains(e.getPoint())) {
+                if (thisShape.contains(e.getPoint())) {
                     firstShape = i;
                     currentPt = e.getPoint();
                     break;
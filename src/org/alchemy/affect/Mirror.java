@@ -21,14 +21,15 @@ package org.alchemy.affect;
 
 import org.alchemy.core.*;
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.GradientPaint;
+import java.awt.Rectangle;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import javax.swing.SwingUtilities;
 
 /**
  * Mirror Module
@@ -80,6 +81,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                 new ActionListener() {
 
                     public void actionPerformed(ActionEvent e) {
+                        canvas.finishGeometry();
                         horizontal = !horizontal;
                         countShapes();
                     }
@@ -94,6 +96,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                 new ActionListener() {
 
                     public void actionPerformed(ActionEvent e) {
+                        canvas.finishGeometry();
                         vertical = !vertical;
                         countShapes();
                     }
@@ -107,6 +110,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                 new ActionListener() {
 
                     public void actionPerformed(ActionEvent e) {
+                        canvas.finishGeometry();
                         selectAxis = true;
                         firstSelect = true;
                         canvas.setCreateEvents(false);
@@ -125,6 +129,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                 new ActionListener() {
 
                     public void actionPerformed(ActionEvent e) {
+                        canvas.finishGeometry();
                         resetAxis();
                     }
                 });
@@ -384,9 +389,10 @@ public class Mirror extends AlcModule implements AlcConstants {
     }
 
     private void resetAxis() {
-        Dimension size = canvas.getSize();
-        baseHorizontalAxis = size.width / 2;
-        baseVerticalAxis = size.height / 2;
+        // The centre of the part of the drawing on the canvas
+        Rectangle view = canvas.getViewBounds();
+        baseHorizontalAxis = view.x + view.width / 2;
+        baseVerticalAxis = view.y + view.height / 2;
     }
 
     private void countShapes() {
@@ -406,14 +412,19 @@ public class Mirror extends AlcModule implements AlcConstants {
 //        cloneShape.setColor(shape.getColor());
     }
 
+    @Override
+    public boolean isGeometryThreadSafe() {
+        return true;
+    }
+
     @Override
     public void mouseMoved(MouseEvent e) {
         if (selectAxis) {
 
-            Dimension size = canvas.getSize();
+            Rectangle view = canvas.getViewBounds();
 
-            GeneralPath line = new GeneralPath(new Line2D.Float(e.getX(), 0, e.getX(), size.height));
-            line.append(new Line2D.Float(0, e.getY(), size.width, e.getY()), false);
+            GeneralPath line = new GeneralPath(new Line2D.Float(e.getX(), view.y, e.getX(), view.y + view.height));
+            line.append(new Line2D.Float(view.x, e.getY(), view.x + view.width, e.getY()), false);
 
             if (firstSelect) {
                 firstSelect = false;
@@ -440,7 +451,17 @@ public class Mirror extends AlcModule implements AlcConstants {
             baseHorizontalAxis = e.getX();
             baseVerticalAxis = e.getY();
             selectAxis = false;
-            canvas.setCreateEvents(true);
+            // The canvas event settings are only changed on the event thread
+            if (canvas.isGeometryThread()) {
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    public void run() {
+                        canvas.setCreateEvents(true);
+                    }
+                });
+            } else {
+                canvas.setCreateEvents(true);
+            }
             canvas.redraw();
         }
 
@@ -161,8 +161,7 @@ public class Repeat extends AlcModule {
         int currentActiveShape = -1;
         for (int i = canvas.shapes.size() - 1; i >= 0; i--) {
             AlcShape thisShape = canvas.shapes.get(i);
-            GeneralPath currentPath = thisShape.getPath();
-            Rectangle bounds = new Rectangle(currentPath.getBounds());
+            Rectangle bounds = thisShape.getBounds();
             // If already repeating a shape
             if (outside == 0) {
                 // Check that it is still within X pixels of the original
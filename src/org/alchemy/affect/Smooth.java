@@ -130,7 +130,7 @@ public class Smooth extends AlcModule {
                 // Loop through from the newest shape and find the first one the mouse is over
                 for (int i = canvas.shapes.size() - 1; i >= 0; i--) {
                     AlcShape thisShape = canvas.shapes.get(i);
-                    if (thisShape.getPath().contains(pt)) {
+                    if (thisShape.contains(pt)) {
                         firstShape = i;
                         break;
                     }
@@ -0,0 +1,338 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.*;
+import com.sun.pdfview.*;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGeneratorContext;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.w3c.dom.DOMImplementation;
+
+/**
+ * Headless batch renderer<br>
+ * Converts Alchemy session PDFs and shape files to PNG, PDF or SVG
+ * without opening the Alchemy window. Documents are rendered in parallel
+ * on a bounded pool of worker threads.
+ * <pre>
+ * java -cp Alchemy.jar org.alchemy.core.AlcBatchRenderer -format png -out renders Alchemy-*.pdf
+ * </pre>
+ */
+public class AlcBatchRenderer {
+
+    /** Detect the document type from the PDF metadata */
+    static final int MODE_AUTO = 0;
+    /** Render each page of a session PDF */
+    static final int MODE_SESSION = 1;
+    /** Render the shapes extracted from a shape file */
+    static final int MODE_SHAPES = 2;
+    /** Output format - png, pdf or svg */
+    private final String format;
+    /** Directory to write the output to */
+    private final File outputDir;
+    /** How documents are interpreted */
+    private final int mode;
+    /** Scale applied to bitmap output */
+    private final double scale;
+    /** Background color */
+    private final Color bgColor;
+    /** Leave the background out */
+    private final boolean transparent;
+    /** Number of worker threads */
+    private final int threads;
+
+    AlcBatchRenderer(String format, File outputDir, int mode, double scale, Color bgColor, boolean transparent, int threads) {
+        this.format = format;
+        this.outputDir = outputDir;
+        this.mode = mode;
+        this.scale = scale;
+        this.bgColor = bgColor;
+        this.transparent = transparent;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) {
+        // Never try to open a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        String format = "png";
+        File outputDir = new File(".");
+        int mode = MODE_AUTO;
+        double scale = 1;
+        Color bgColor = Color.WHITE;
+        boolean transparent = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<File> files = new ArrayList<File>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-format")) {
+                    format = args[++i].toLowerCase();
+                } else if (arg.equals("-out")) {
+                    outputDir = new File(args[++i]);
+                } else if (arg.equals("-session")) {
+                    mode = MODE_SESSION;
+                } else if (arg.equals("-shapes")) {
+                    mode = MODE_SHAPES;
+                } else if (arg.equals("-scale")) {
+                    scale = Double.parseDouble(args[++i]);
+                } else if (arg.equals("-bg")) {
+                    bgColor = new Color(AlcUtil.unhex(args[++i]));
+                } else if (arg.equals("-transparent")) {
+                    transparent = true;
+                } else if (arg.equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    File file = new File(arg);
+                    if (file.isDirectory()) {
+                        File[] pdfs = AlcUtil.listFilesAsArray(file, new FilenameFilter() {
+
+                            public boolean accept(File dir, String name) {
+                                return name.toLowerCase().endsWith(".pdf");
+                            }
+                        }, true);
+                        files.addAll(Arrays.asList(pdfs));
+                    } else {
+                        files.add(file);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            files.clear();
+        }
+
+        if (files.isEmpty() || !(format.equals("png") || format.equals("pdf") || format.equals("svg")) || threads < 1 || scale <= 0) {
+            printUsage();
+            System.exit(1);
+        }
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        AlcBatchRenderer batch = new AlcBatchRenderer(format, outputDir, mode, scale, bgColor, transparent, threads);
+        int failed = batch.renderAll(files);
+        System.exit(failed > 0 ? 2 : 0);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: AlcBatchRenderer [options] file|directory ...");
+        System.err.println("  -format png|pdf|svg   Output format (default png)");
+        System.err.println("  -out dir              Output directory (default .)");
+        System.err.println("  -session              Render every page of session PDFs");
+        System.err.println("  -shapes               Render the shapes extracted from shape files");
+        System.err.println("  -scale n              Scale for bitmap output (default 1)");
+        System.err.println("  -bg RRGGBB            Background color (default FFFFFF)");
+        System.err.println("  -transparent          Leave out the background");
+        System.err.println("  -threads n            Number of worker threads (default: number of cores)");
+    }
+
+    /** Render all documents and print a throughput report
+     *
+     * @param files     The documents to render
+     * @return          The number of documents that failed
+     */
+    int renderAll(List<File> files) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>(files.size());
+        long start = System.nanoTime();
+
+        for (final File file : files) {
+            results.add(pool.submit(new Callable<Integer>() {
+
+                public Integer call() throws Exception {
+                    return renderFile(file);
+                }
+            }));
+        }
+
+        int pages = 0;
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                pages += results.get(i).get();
+            } catch (ExecutionException ex) {
+                failed++;
+                System.err.println("Failed to render " + files.get(i) + ": " + ex.getCause());
+            } catch (InterruptedException ex) {
+                failed++;
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int documents = files.size() - failed;
+        System.out.println("Rendered " + documents + " documents (" + pages + " pages) in " +
+                String.format("%.2f", seconds) + "s with " + threads + " threads");
+        System.out.println("Throughput: " + String.format("%.2f", documents / seconds) + " documents/s, " +
+                String.format("%.2f", pages / seconds) + " pages/s");
+        if (failed > 0) {
+            System.out.println("Failed: " + failed);
+        }
+        return failed;
+    }
+
+    /** Render a single document
+     *
+     * @param file  The session or shape file
+     * @return      The number of pages written
+     */
+    int renderFile(File file) throws IOException, DocumentException {
+        PDFFile pdfFile = openPDF(file);
+        AlcRenderer renderer = new AlcRenderer();
+        renderer.setBackgroundColor(bgColor);
+        renderer.setTransparent(transparent);
+        // Vector formats keep every shape at full detail
+        renderer.setLevelOfDetail(format.equals("png"));
+        String name = file.getName();
+        if (name.toLowerCase().endsWith(".pdf")) {
+            name = name.substring(0, name.length() - 4);
+        }
+
+        boolean session = (mode == MODE_SESSION) || (mode == MODE_AUTO && isSession(file));
+        List<AlcShape> none = Collections.emptyList();
+
+        if (session) {
+            int totalPages = pdfFile.getNumPages();
+            for (int p = 1; p <= totalPages; p++) {
+                PDFPage page = pdfFile.getPage(p, true);
+                renderer.setPage(page);
+                String pageName = (totalPages > 1) ? name + "-" + AlcUtil.zeroPad(p, 3) : name;
+                write(new File(outputDir, pageName + "." + format), renderer, none, (int) page.getWidth(), (int) page.getHeight());
+            }
+            return totalPages;
+
+        } else {
+            Collection<AlcShape> shapes = AlcUtil.getPDFShapes(file, false, 0);
+            if (shapes == null || shapes.isEmpty()) {
+                throw new IOException("No shapes found");
+            }
+            // Shapes are not kept at their page position, so fit the output to them
+            Rectangle bounds = null;
+            for (AlcShape shape : shapes) {
+                bounds = (bounds == null) ? shape.getBounds() : bounds.union(shape.getBounds());
+            }
+            int margin = 10;
+            for (AlcShape shape : shapes) {
+                shape.move(margin - bounds.x, margin - bounds.y);
+            }
+            write(new File(outputDir, name + "." + format), renderer, new ArrayList<AlcShape>(shapes), bounds.width + margin * 2, bounds.height + margin * 2);
+            return 1;
+        }
+    }
+
+    /** Write shapes (and the renderer's page if set) to a file in the current format */
+    private void write(File file, AlcRenderer renderer, List<AlcShape> shapes, int width, int height) throws IOException, DocumentException {
+        if (format.equals("pdf")) {
+            writePDF(file, renderer, shapes, width, height);
+        } else if (format.equals("svg")) {
+            writeSVG(file, renderer, shapes, width, height);
+        } else {
+            int w = Math.max(1, (int) Math.round(width * scale));
+            int h = Math.max(1, (int) Math.round(height * scale));
+            ImageIO.write(renderer.renderImage(shapes, w, h, scale), "png", file);
+        }
+    }
+
+    /** Write a single page PDF - laid out the same way as session pages */
+    private static void writePDF(File file, AlcRenderer renderer, List<AlcShape> shapes, int width, int height) throws IOException, DocumentException {
+        com.lowagie.text.Document document = new com.lowagie.text.Document(new com.lowagie.text.Rectangle(width, height), 0, 0, 0, 0);
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(file));
+            document.addTitle("Alchemy Session");
+            document.addCreator("Alchemy <http://al.chemy.org>");
+
+            PdfTransparencyGroup transGroup = new PdfTransparencyGroup();
+            transGroup.put(PdfName.CS, PdfName.DEVICERGB);
+            document.open();
+
+            PdfContentByte cb = writer.getDirectContent();
+            PdfTemplate tp = cb.createTemplate(width, height);
+            document.newPage();
+            cb.getPdfWriter().setGroup(transGroup);
+            cb.setDefaultColorspace(PdfName.CS, PdfName.DEVICERGB);
+
+            Graphics2D g2pdf = tp.createGraphics(width, height);
+            renderer.paintBackground(g2pdf, width, height);
+            renderer.paintShapes(g2pdf, shapes, width, height);
+            g2pdf.dispose();
+            cb.addTemplate(tp, 0, 0);
+        } finally {
+            document.close();
+        }
+    }
+
+    /** Write a single page SVG */
+    private static void writeSVG(File file, AlcRenderer renderer, List<AlcShape> shapes, int width, int height) throws IOException {
+        DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
+        org.w3c.dom.Document document = domImpl.createDocument("http://www.w3.org/2000/svg", "svg", null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(document);
+        ctx.setComment("Generated by Alchemy (http://al.chemy.org) with Batik SVG Generator");
+
+        SVGGraphics2D svgGenerator = new SVGGraphics2D(ctx, false);
+        svgGenerator.setSVGCanvasSize(new Dimension(width, height));
+        renderer.paintBackground(svgGenerator, width, height);
+        renderer.paintShapes(svgGenerator, shapes, width, height);
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            svgGenerator.stream(out, true);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Open a PDF file for reading with the PDF renderer */
+    private static PDFFile openPDF(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PDFFile(buf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Check the metadata to see if this is an Alchemy session - as the session loader does */
+    private static boolean isSession(File file) throws IOException {
+        PdfReader reader = new PdfReader(file.getPath());
+        try {
+            byte[] metaData = reader.getMetadata();
+            return (metaData != null && new String(metaData).contains("Alchemy")) || file.getName().startsWith("Alchemy");
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * Composite for the layer blend modes that Java2D does not provide<br>
+ * Colors are blended per channel then composited over the destination
+ * with the source alpha, as in the W3C compositing specification.
+ */
+class AlcBlendComposite implements Composite {
+
+    /** One of the AlcLayer BLEND constants */
+    private final int mode;
+    /** Extra alpha applied to the source between 0 and 1 */
+    private final float opacity;
+
+    AlcBlendComposite(int mode, float opacity) {
+        this.mode = mode;
+        this.opacity = opacity;
+    }
+
+    public CompositeContext createContext(ColorModel srcColorModel, ColorModel dstColorModel, RenderingHints hints) {
+        return new BlendContext(srcColorModel, dstColorModel);
+    }
+
+    /** Blend a single channel
+     * @param b     Backdrop (destination) value between 0 and 255
+     * @param s     Source value between 0 and 255
+     * @return      The blended value between 0 and 255
+     */
+    private int blend(int b, int s) {
+        switch (mode) {
+            case AlcLayer.BLEND_MULTIPLY:
+                return b * s / 255;
+            case AlcLayer.BLEND_SCREEN:
+                return b + s - b * s / 255;
+            case AlcLayer.BLEND_DARKEN:
+                return Math.min(b, s);
+            case AlcLayer.BLEND_LIGHTEN:
+                return Math.max(b, s);
+            default:
+                return s;
+        }
+    }
+
+    private class BlendContext implements CompositeContext {
+
+        private final ColorModel srcColorModel;
+        private final ColorModel dstColorModel;
+
+        BlendContext(ColorModel srcColorModel, ColorModel dstColorModel) {
+            this.srcColorModel = srcColorModel;
+            this.dstColorModel = dstColorModel;
+        }
+
+        public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            int width = Math.min(src.getWidth(), dstIn.getWidth());
+            int height = Math.min(src.getHeight(), dstIn.getHeight());
+            Object srcPixel = null;
+            Object dstPixel = null;
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    srcPixel = src.getDataElements(src.getMinX() + x, src.getMinY() + y, srcPixel);
+                    dstPixel = dstIn.getDataElements(dstIn.getMinX() + x, dstIn.getMinY() + y, dstPixel);
+                    int s = srcColorModel.getRGB(srcPixel);
+                    int as = Math.round((s >>> 24) * opacity);
+                    if (as > 0) {
+                        int d = dstColorModel.getRGB(dstPixel);
+                        int ab = d >>> 24;
+
+                        // Alpha of the result
+                        int ao = as + ab * (255 - as) / 255;
+                        int rgb = 0;
+                        for (int shift = 16; shift >= 0; shift -= 8) {
+                            int cs = (s >> shift) & 0xFF;
+                            int cb = (d >> shift) & 0xFF;
+                            // Where the backdrop is transparent the source color is used as is
+                            int mixed = (cs * (255 - ab) + blend(cb, cs) * ab) / 255;
+                            int co = (as * mixed + ab * cb * (255 - as) / 255) / ao;
+                            rgb |= Math.min(255, co) << shift;
+                        }
+                        dstPixel = dstColorModel.getDataElements((ao << 24) | rgb, dstPixel);
+                    }
+                    dstOut.setDataElements(dstOut.getMinX() + x, dstOut.getMinY() + y, dstPixel);
+                }
+            }
+        }
+
+        public void dispose() {
+        }
+    }
+}
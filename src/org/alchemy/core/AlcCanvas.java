@@ -32,12 +32,12 @@ import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.awt.print.Printable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
 import javax.imageio.ImageIO;
 import java.io.*;
 
-// PDF READER
-import com.sun.pdfview.*;
-
 // JPEN
 import jpen.*;
 import jpen.event.PenListener;
@@ -89,8 +89,25 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private boolean redraw = true;
     /** Smoothing on or off */
     boolean smoothing;
+    /** Simplify shapes when they are committed - tolerance in pixels or zero for off */
+    private float simplifyTolerance;
     /** Boolean used by the timer to determine if there has been canvas activity */
     private boolean canvasChanged = false;
+    /** Draw in draft quality while the canvas is busy then refine once idle */
+    private boolean progressive;
+    /** Time without canvas activity before draft drawing is refined - in milliseconds */
+    private static final int REFINE_DELAY = 400;
+    /** Timer restarted by canvas activity - draft drawing is used while it runs */
+    private javax.swing.Timer refineTimer;
+    /** Background thread used to redraw draft layers at full quality */
+    private ExecutorService refiner;
+    /** Call modules that allow it on the geometry thread rather than the event thread */
+    private boolean threadedGeometry;
+    /** Thread the modules are called on when threaded geometry is in use - started the first time */
+    private AlcGeometryThread geometry;
+    /** The last frame published by the geometry thread, painted in place of the live shapes.
+     *  Null when the modules are called on the event thread */
+    private AlcGeometryThread.Frame geometryFrame;
     /** Draw under the other shapes on the canvas */
     private boolean drawUnder = false;
     /** Boolean used to indicate if the user is picking a zoom location with the mouse */
@@ -122,13 +139,19 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private Point2D.Float penLocation = new Point2D.Float();
     /** Pen location has changed or not */
     private boolean penLocationChanged = true;
+    /** Motion of the pen or mouse, sampled once per input event */
+    private final AlcMotion motion = new AlcMotion();
     //////////////////////////////////////////////////////////////
     // SHAPES
     //////////////////////////////////////////////////////////////
-    /** Array list containing shapes that have been commited.
+    /** Array list containing shapes that have been commited to the active layer.
      *  Shapes in this list are generally rendered to the image buffer
      *  to improve performance */
     public ArrayList<AlcShape> shapes;
+    /** Layers of commited shapes, bottom layer first */
+    final ArrayList<AlcLayer> layers = new ArrayList<AlcLayer>();
+    /** Index of the layer shapes are commited to */
+    private int activeLayer = 0;
     /** Array list containing shapes currently in use by create modules */
     public ArrayList<AlcShape> createShapes;
     /** Array list containing shapes currently in use by affect modules */
@@ -148,9 +171,14 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     //////////////////////////////////////////////////////////////
     /** An image of the canvas drawn behind active shapes */
     private Image canvasImage;
+    /** If the live create and affect shapes were drawn into the canvas image */
+    private boolean canvasImageLive = false;
+    /** Copy of the canvas image kept in video memory for drawing to the screen */
+    private final AlcScreenImage screenImage = new AlcScreenImage();
     /** Image than can be drawn on the canvas */
     private BufferedImage image;
-    private BufferedImage zoomedImage;
+    /** The image drawn at the current zoom */
+    private AlcImagePyramid imagePyramid;
     /** Display the Image or not */
     private boolean imageDisplay = false;
     /** Position to display the image */
@@ -159,17 +187,42 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private Point zoomedImageLocation = new Point(0, 0);
     /** An image used to fake transparency in fullscreen mode */
     private Image transparentImage;
+    /** Works out the area of the live shapes that needs repainting */
+    private final AlcRepaintTracker repaintTracker = new AlcRepaintTracker();
+    /** The canvas image when the whole canvas was last repainted */
+    private Image repaintedImage;
+    /** Repaint the whole canvas on the next redraw - set when more than the live shapes change */
+    private boolean repaintAll = true;
+    //////////////////////////////////////////////////////////////
+    // PAN
+    //////////////////////////////////////////////////////////////
+    /** Most bytes of tiles kept in memory - 64MB is 256 tiles, the rest go to a swap file */
+    private static final long TILE_BUDGET = 64L * 1024 * 1024;
+    /** Tiles of the layers the cached layer images are put together from, shared by all layers */
+    private final AlcTileCache tiles = new AlcTileCache(TILE_BUDGET, AlcUtil.getSettingsDirectory());
+    /** Distance the drawing has been panned - canvas coordinates less this are drawing coordinates */
+    private final Point panOffset = new Point(0, 0);
+    /** Where the current pan started, null when not panning */
+    private Point panStart;
+    /** Distance moved since the current pan started */
+    private final Point panDrag = new Point(0, 0);
     //////////////////////////////////////////////////////////////
     // DISPLAY
     //////////////////////////////////////////////////////////////
     /** Record indicator on/off */
     private boolean recordIndicator = false;
+    /** Performance HUD on/off */
+    private boolean performanceDisplay = false;
+    /** Performance counters for the render pipeline */
+    final AlcPerformance performance = new AlcPerformance();
+    /** Time between updates of the performance HUD - in milliseconds */
+    private static final int HUD_DELAY = 250;
+    /** Timer that repaints just the performance HUD while it is displayed */
+    private javax.swing.Timer hudTimer;
     /** Draw guides */
     private boolean guides = true;
-    /** Graphics Envrionment - updated everytime the volatile buffImage is refreshed */
-    private GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-    /** Graphics Configuration - updated everytime the volatile buffImage is refreshed */
-    private GraphicsConfiguration gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
+    /** Default screen configuration - looked up once for when the canvas is not on screen */
+    private GraphicsConfiguration gc;
     /** A Vector based canvas for full redrawing */
     VectorCanvas vectorCanvas;
     /** Previous cursor */
@@ -185,6 +238,9 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         currentColorIndex = 0;
         
         this.smoothing = Alchemy.preferences.smoothing;
+        this.simplifyTolerance = Alchemy.preferences.simplifyTolerance;
+        this.progressive = Alchemy.preferences.progressiveRendering;
+        this.threadedGeometry = Alchemy.preferences.threadedGeometry;
         this.bgColor = new Color(Alchemy.preferences.bgColor);
         currentColorSet.set(currentColorIndex, new Color(Alchemy.preferences.color));
 
@@ -199,8 +255,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         this.addMouseListener(this);
         this.addMouseMotionListener(this);
 
-        shapes = new ArrayList<AlcShape>(100);
-        shapes.ensureCapacity(100);
+        layers.add(new AlcLayer(tiles));
+        shapes = layers.get(0).shapes;
         createShapes = new ArrayList<AlcShape>(25);
         createShapes.ensureCapacity(25);
         affectShapes = new ArrayList<AlcShape>(25);
@@ -222,6 +278,14 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
         vectorCanvas = new VectorCanvas();
 
+        refineTimer = new javax.swing.Timer(REFINE_DELAY, new ActionListener() {
+
+            public void actionPerformed(ActionEvent e) {
+                refineLayers();
+            }
+        });
+        refineTimer.setRepeats(false);
+
         pm = new PenManager(this);
         pm.pen.addListener(this);
         pm.pen.setFrequencyLater(200);
@@ -235,11 +299,34 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     @Override
     public void paintComponent(Graphics g) {
+        long paintStart = performance.start();
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g;
         java.awt.Rectangle visibleRect = this.getVisibleRect();
         int w = visibleRect.width;
         int h = visibleRect.height;
+        // While panning only the drawing is shown, from its tiles
+        if (panStart != null) {
+            paintPan(g2, w, h);
+            performance.stop(AlcPerformance.PAINT, paintStart);
+            g2.dispose();
+            return;
+        }
+        // Paint the last frame from the geometry thread if in use
+        List<AlcShape> paintCreateShapes = createShapes;
+        List<AlcShape> paintAffectShapes = affectShapes;
+        List<AlcShape> paintGuideShapes = guideShapes;
+        AlcGeometryThread.Frame frame = geometryFrame;
+        if (frame != null) {
+            paintCreateShapes = frame.createShapes;
+            paintAffectShapes = frame.affectShapes;
+            paintGuideShapes = frame.guideShapes;
+        }
+        // Only the area inside the clip has changed
+        java.awt.Rectangle clip = g2.getClipBounds();
+        if (clip == null) {
+            clip = visibleRect;
+        }
 
         // Draw the 'fake' Transparent Image
         if (Alchemy.window.isTransparent() && transparentImage != null) {
@@ -248,17 +335,12 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             // Draw the image if present
             if (imageDisplay && image != null) {
                 Point p = getImageLocation();
-               g2.drawImage(getImage(), (int)p.getX(), (int)p.getY(), null);
+                imagePyramid.paint(g2, p.x, p.y, getImageScale());
             }
         } else {
-            // Draw the image if present
-            if (imageDisplay && image != null) {
-                Point p = getImageLocation();
-                g2.drawImage(getImage(), (int)p.getX(), (int)p.getY(), null);
-            }
-            // Paint background.
+            // Paint background - the image is drawn on the canvas image over it
             g2.setColor(new Color(bgColor.getRed(), bgColor.getGreen(), bgColor.getBlue()));
-            g2.fillRect(0, 0, w, h);
+            g2.fillRect(clip.x, clip.y, clip.width, clip.height);
         }
 
 
@@ -270,31 +352,25 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
         // Draw the flattened buffImage
         if (canvasImage != null && !drawUnder) {
-            g2.drawImage(canvasImage, 0, 0, null);
+            screenImage.paint(g2, canvasImage, 0, 0);
         }
         if (redraw) {
-            // Draw the create, affect, and guide lists
-            for (int j = 0; j < activeShapeList.length; j++) {
-                for (int i = 0; i < activeShapeList[j].size(); i++) {
-                    AlcShape currentShape = (AlcShape) activeShapeList[j].get(i);
-                    // LINE
-                    if (currentShape.style == STYLE_STROKE) {
-                        //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
-                        g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
-                        g2.setPaint(currentShape.getPaint());
-                        g2.draw(currentShape.path);
-                    // SOLID
-                    } else {
-                        g2.setPaint(currentShape.getPaint());
-                        g2.fill(currentShape.path);
-                    }
-                }
-            }
+            // Draw the create and affect lists
+            // Through the renderer so stamped shapes are drawn from their images
+            // and in draft quality while the user is busy
+            vectorCanvas.renderer.setDraft(isDrafting());
+            vectorCanvas.renderer.setupGraphics(g2);
+            g2.translate(panOffset.x, panOffset.y);
+            vectorCanvas.renderer.paintShapes(g2, paintCreateShapes, w, h);
+            vectorCanvas.renderer.paintShapes(g2, paintAffectShapes, w, h);
+            g2.translate(-panOffset.x, -panOffset.y);
+            vectorCanvas.renderer.setDraft(false);
+            vectorCanvas.renderer.setupGraphics(g2);
         }
 
         // Draw the image on top of the current shapes
         if (drawUnder) {
-            g2.drawImage(canvasImage, 0, 0, null);
+            screenImage.paint(g2, canvasImage, 0, 0);
         }
 
         // Draw a red circle when saving a frame
@@ -307,8 +383,15 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
         // Draw the guides as required
         if (guides) {
-            for (int i = 0; i < guideShapes.size(); i++) {
-                AlcShape currentShape = guideShapes.get(i);
+            // Guides are in drawing coordinates like the other shapes
+            java.awt.Rectangle guideClip = new java.awt.Rectangle(clip);
+            guideClip.translate(-panOffset.x, -panOffset.y);
+            g2.translate(panOffset.x, panOffset.y);
+            for (int i = 0; i < paintGuideShapes.size(); i++) {
+                AlcShape currentShape = paintGuideShapes.get(i);
+                if (!currentShape.getPaintedBounds().intersects(guideClip)) {
+                    continue;
+                }
                 // LINE
                 if (currentShape.style == STYLE_STROKE) {
                     //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
@@ -321,6 +404,27 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                     g2.fill(currentShape.path);
                 }
             }
+            g2.translate(-panOffset.x, -panOffset.y);
+        }
+
+        performance.stop(AlcPerformance.PAINT, paintStart);
+        performance.painted();
+
+        // Draw the performance HUD above the record indicator
+        java.awt.Rectangle hudBounds = performance.getHUDBounds();
+        if (performanceDisplay && (hudBounds.isEmpty() || hudBounds.intersects(clip))) {
+            int pointCount = 0;
+            for (int i = 0; i < layers.size(); i++) {
+                pointCount += layers.get(i).getPointCount();
+            }
+            for (int i = 0; i < paintCreateShapes.size(); i++) {
+                pointCount += paintCreateShapes.get(i).getTotalPoints();
+            }
+            for (int i = 0; i < paintAffectShapes.size(); i++) {
+                pointCount += paintAffectShapes.get(i).getTotalPoints();
+            }
+            int shapeCount = getShapeCount() + paintCreateShapes.size() + paintAffectShapes.size();
+            performance.paintHUD(g2, shapeCount, pointCount, 5, h - 15);
         }
 
         g2.dispose();
@@ -343,19 +447,70 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      *                  or just add the new shape to the existing buffer image
      */
     public void redraw(boolean fullRedraw) {
+        if (isGeometryThread()) {
+            redrawFrame(fullRedraw);
+            return;
+        }
+        finishGeometry();
+        long start = performance.start();
         applyAffects();
         if (redraw) {
             if (fullRedraw) {
-                // If the window is transparent
-                if (Alchemy.window.isTransparent()) {
-                    canvasImage = renderCanvas(true, true);
-                } else {
-                    canvasImage = renderCanvas(true);
-                }
+                renderActiveLayer();
             }
-            this.repaint();
+            refreshFrame();
+            repaintChanged();
             // Something has happened on the canvas and the user is still active
             canvasChanged = true;
+            if (progressive) {
+                refineTimer.restart();
+            }
+        }
+        performance.stop(AlcPerformance.REDRAW, start);
+    }
+
+    /** Redraw the active layer and the canvas image - used when shapes on the active layer have changed */
+    private void renderActiveLayer() {
+        // Modules only change the shapes on the active layer
+        getActiveLayer().invalidate();
+        // Keep up with the user in draft quality, refined once they stop
+        vectorCanvas.draft = isDrafting();
+        // If the window is transparent
+        renderCanvasImage(Alchemy.window.isTransparent());
+        vectorCanvas.draft = false;
+    }
+
+    /** Get the lists of live shapes that are drawn over the canvas image */
+    private ArrayList<List<AlcShape>> getLiveShapes() {
+        ArrayList<List<AlcShape>> live = new ArrayList<List<AlcShape>>(3);
+        live.add(createShapes);
+        live.add(affectShapes);
+        if (guides) {
+            live.add(guideShapes);
+        }
+        return live;
+    }
+
+    /** Repaint only the area where the live shapes have changed since the last redraw,
+     *  or the whole canvas if anything else has changed
+     */
+    private void repaintChanged() {
+        repaintChanged(repaintTracker.update(getLiveShapes()));
+    }
+
+    /** Repaint the area where the live shapes have changed,
+     *  or the whole canvas if anything else has changed
+     * @param changed   The area the live shapes changed, or null if they have not
+     */
+    private void repaintChanged(java.awt.Rectangle changed) {
+        if (repaintAll || canvasImage != repaintedImage) {
+            repaintAll = false;
+            repaintedImage = canvasImage;
+            this.repaint();
+        } else if (changed != null) {
+            // Live shapes are in drawing coordinates
+            changed.translate(panOffset.x, panOffset.y);
+            this.repaint(changed);
         }
     }
 
@@ -400,7 +555,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      * @param transparency
      */
     void updateCanvasImage(boolean transparency) {
-        canvasImage = renderCanvas(true, true);
+        renderCanvasImage(true);
     }
 
     /** Set Smoothing (AntiAliasing) on or off
@@ -408,11 +563,12 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     void setSmoothing(boolean smoothing) {
         this.smoothing = smoothing;
+        invalidateLayers();
         if (redraw) {
             this.redraw(true);
         // If redraw is off, just update the canvas image
         } else {
-            canvasImage = renderCanvas(true);
+            renderCanvasImage(false);
         }
     }
 
@@ -423,6 +579,249 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         return this.smoothing;
     }
 
+    /** Set progressive rendering on or off<br>
+     *  When on, the canvas is drawn in draft quality while there is activity
+     *  and redrawn at full quality in the background once it has been idle for a moment
+     * @param progressive   Progressive rendering on or off
+     */
+    void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+        if (!progressive) {
+            refineTimer.stop();
+            refineLayers();
+        }
+    }
+
+    /** Get progressive rendering
+     * @return  Progressive rendering on or off
+     */
+    boolean isProgressive() {
+        return this.progressive;
+    }
+
+    /** Check if drawing should be in draft quality
+     * @return  True if progressive rendering is on and there has been recent canvas activity
+     */
+    boolean isDrafting() {
+        return progressive && refineTimer.isRunning();
+    }
+
+    /** Redraw layers left in draft quality at full quality on a background thread.
+     *  Each layer is swapped in when done, unless it has changed in the mean time.
+     */
+    private void refineLayers() {
+        final int width = getWidth();
+        final int height = getHeight();
+        final int x = -panOffset.x;
+        final int y = -panOffset.y;
+        final boolean smooth = smoothing;
+        for (int i = 0; i < layers.size(); i++) {
+            final AlcLayer layer = layers.get(i);
+            if (!layer.isDraft()) {
+                continue;
+            }
+            // Draw copies of the shapes that never change, so the event thread
+            // can keep changing the shapes themselves in the mean time
+            final List<AlcShape> snapshot = layer.getSnapshotShapes();
+            final int version = layer.getVersion();
+            getRefiner().submit(new Runnable() {
+
+                public void run() {
+                    AlcRenderer renderer = new AlcRenderer();
+                    renderer.setSmoothing(smooth);
+                    final BufferedImage image = AlcLayer.renderRaster(snapshot, renderer, x, y, width, height);
+                    SwingUtilities.invokeLater(new Runnable() {
+
+                        public void run() {
+                            if (layer.refine(image, x, y, version)) {
+                                refreshLayers();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /** Get the refine thread, starting it the first time */
+    private ExecutorService getRefiner() {
+        if (refiner == null) {
+            refiner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Alchemy Refine");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return refiner;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // GEOMETRY THREAD
+    //////////////////////////////////////////////////////////////
+    /** Set threaded geometry on or off<br>
+     *  When on, modules that allow it are called on a geometry thread
+     *  and the canvas paints copies of their shapes, so heavy modules do not hold up painting
+     * @param threadedGeometry  Threaded geometry on or off
+     */
+    void setThreadedGeometry(boolean threadedGeometry) {
+        this.threadedGeometry = threadedGeometry;
+        useGeometryThread();
+    }
+
+    /** Get threaded geometry
+     * @return  Threaded geometry on or off
+     */
+    boolean isThreadedGeometry() {
+        return this.threadedGeometry;
+    }
+
+    /** Check if this is the geometry thread the modules are called on
+     * @return  True if called by a module on the geometry thread
+     */
+    public boolean isGeometryThread() {
+        return geometry != null && geometry.isCurrentThread();
+    }
+
+    /** Check if the modules should be called on the geometry thread, starting or stopping its use as needed.
+     *  It is used when threaded geometry is on and the current create module
+     *  and all active affect modules allow it.
+     * @return  True if the modules are to be called on the geometry thread
+     */
+    private boolean useGeometryThread() {
+        boolean use = threadedGeometry && Alchemy.plugins != null &&
+                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].isGeometryThreadSafe();
+        if (use && Alchemy.plugins.hasCurrentAffects()) {
+            for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
+                if (Alchemy.plugins.currentAffects[i] && !Alchemy.plugins.affects[i].isGeometryThreadSafe()) {
+                    use = false;
+                    break;
+                }
+            }
+        }
+        if (use && geometryFrame == null) {
+            // Nothing is queued so the live shapes can be copied here
+            if (geometry == null) {
+                geometry = new AlcGeometryThread();
+            }
+            geometryFrame = geometry.snapshot(createShapes, affectShapes, guideShapes);
+        } else if (!use && geometryFrame != null) {
+            finishGeometry();
+            geometryFrame = null;
+            repaintAll = true;
+            this.repaint();
+        }
+        return use;
+    }
+
+    /** Wait for the geometry thread to finish the events queued for the modules.
+     *  Call from the event thread before changing the create, affect or guide shapes,
+     *  or the settings a module reads, anywhere other than a module callback,
+     *  such as from a toolbar listener.
+     */
+    public void finishGeometry() {
+        if (geometryFrame != null) {
+            geometry.waitForIdle();
+        }
+    }
+
+    /** Keep the frame painted up to date after the live shapes are changed on the event thread */
+    private void refreshFrame() {
+        if (geometryFrame != null) {
+            geometryFrame = geometry.snapshot(createShapes, affectShapes, guideShapes);
+        }
+    }
+
+    /** Queue a mouse event to be passed to the modules on the geometry thread */
+    private void postMouseEvent(final int id, final MouseEvent event) {
+        geometry.post(new Runnable() {
+
+            public void run() {
+                if (id == MouseEvent.MOUSE_PRESSED) {
+                    // After the shapes from the last stroke are commited
+                    SwingUtilities.invokeLater(new Runnable() {
+
+                        public void run() {
+                            startUndoGroup();
+                        }
+                    });
+                }
+                sendMouseEvent(id, event);
+                if (id == MouseEvent.MOUSE_RELEASED) {
+                    SwingUtilities.invokeLater(new Runnable() {
+
+                        public void run() {
+                            finishUndoGroup();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /** Queue a pen sample followed by the drag event to be passed to the modules on the geometry thread */
+    private void postPenSample(final float x, final float y, final float pressure, final float tiltX, final float tiltY, final MouseEvent event) {
+        geometry.post(new Runnable() {
+
+            public void run() {
+                sendPenSample(x, y, pressure, tiltX, tiltY, event.getWhen());
+                sendMouseEvent(MouseEvent.MOUSE_DRAGGED, event);
+            }
+        });
+    }
+
+    /** Redraw from the geometry thread - applies the affects then publishes a frame for the event thread to paint */
+    private void redrawFrame(boolean fullRedraw) {
+        applyAffects();
+        if (redraw) {
+            publishFrame(fullRedraw, null);
+        }
+    }
+
+    /** Publish a frame of the live shapes from the geometry thread
+     *
+     * @param fullRedraw    Redraw the active layer before the frame is shown
+     * @param before        Run on the event thread before the frame is shown, or null
+     */
+    private void publishFrame(final boolean fullRedraw, final Runnable before) {
+        final AlcGeometryThread.Frame frame = geometry.snapshot(createShapes, affectShapes, guideShapes);
+        final java.awt.Rectangle changed = repaintTracker.update(getLiveShapes());
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                if (before != null) {
+                    before.run();
+                }
+                showFrame(frame, changed, fullRedraw);
+            }
+        });
+    }
+
+    /** Paint a frame published by the geometry thread
+     *
+     * @param frame         The frame
+     * @param changed       The area the live shapes changed, or null if they have not
+     * @param fullRedraw    Redraw the active layer
+     */
+    private void showFrame(AlcGeometryThread.Frame frame, java.awt.Rectangle changed, boolean fullRedraw) {
+        long start = performance.start();
+        // Unless replaced since by a newer frame - its changes are still painted
+        if (geometryFrame != null && frame.number > geometryFrame.number) {
+            geometryFrame = frame;
+        }
+        if (fullRedraw) {
+            renderActiveLayer();
+        }
+        repaintChanged(changed);
+        canvasChanged = true;
+        if (progressive) {
+            refineTimer.restart();
+        }
+        performance.stop(AlcPerformance.REDRAW, start);
+    }
+
     /** Return if there has been activity on the canvas since the last time the timer checked */
     boolean canvasChanged() {
         return this.canvasChanged;
@@ -496,8 +895,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     /** Set the pen location - set internally by mouse events */
     private void setPenLocation(MouseEvent event) {
         if (penType == PEN_CURSOR) {
-            penLocation.x = event.getX();
-            penLocation.y = event.getY();
+            penLocation.x = event.getX() - panOffset.x;
+            penLocation.y = event.getY() - panOffset.y;
         //System.out.println("Mouse: " + penLocation + " " + penLocationChanged);
         }
     }
@@ -508,15 +907,23 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             PLevel.Type levelType = level.getType();
             switch (levelType) {
                 case X:
-                    penLocation.x = level.value;
+                    penLocation.x = level.value - panOffset.x;
                     break;
                 case Y:
-                    penLocation.y = level.value;
+                    penLocation.y = level.value - panOffset.y;
                     break;
             }
         }
     }
 
+    /** Get the motion of the pen or mouse - speed, direction and recent locations
+     *  worked out once for each input sample
+     * @return  The motion
+     */
+    public AlcMotion getMotion() {
+        return motion;
+    }
+
     /** Has the pen location changed - useful for filtering out repeats
      * @return Boolean indicating if the pen location has changed or not
      */
@@ -578,14 +985,19 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Clear all shapes and then redraws the canvas */
     public void clear() {
-        shapes.clear();
+        finishGeometry();
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).shapes.clear();
+        }
+        invalidateLayers();
         createShapes.clear();
         affectShapes.clear();
         guideShapes.clear();
+        repaintAll = true;
 
         this.canvasImage = null;
         if (imageDisplay && image != null) {
-            canvasImage = renderCanvas(true);
+            renderCanvasImage(false);
         }
 
         if (redraw) {
@@ -634,42 +1046,110 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     /** Apply affects to the current shape and redraw the canvas */
     private void applyAffects() {
         if (Alchemy.plugins.hasCurrentAffects()) {
+            long start = performance.start();
             for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                 if (Alchemy.plugins.currentAffects[i]) {
                     Alchemy.plugins.affects[i].affect();
                 }
             }
+            performance.stop(AlcPerformance.AFFECT, start);
         }
     }
 
     /** Commit all shapes to the main {@link #shapes} array and render the image buffer */
     public void commitShapes() {
-        // Add the createShapes and affectShapes to the main array
+        if (isGeometryThread()) {
+            commitFromGeometry(true, true);
+            return;
+        }
+        finishGeometry();
+        long start = performance.start();
+        // Reduce the points before the shapes are kept for good
+        simplify(createShapes);
+        simplify(affectShapes);
+        // Taken from the live lists first so the canvas image does not draw them twice
+        ArrayList<AlcShape> created = new ArrayList<AlcShape>(createShapes);
+        ArrayList<AlcShape> affected = new ArrayList<AlcShape>(affectShapes);
+        createShapes.clear();
+        affectShapes.clear();
+        commitShapes(created, affected);
+        refreshFrame();
+        commited();
+        performance.stop(AlcPerformance.COMMIT, start);
+    }
+
+    /** Reduce the points of shapes if simplify is on */
+    private void simplify(List<AlcShape> shapeList) {
+        if (simplifyTolerance > 0) {
+            for (int i = 0; i < shapeList.size(); i++) {
+                shapeList.get(i).simplify(simplifyTolerance);
+            }
+        }
+    }
+
+    /** Add shapes to the active layer and render the image buffer
+     *
+     * @param created   Create shapes to add
+     * @param affected  Affect shapes to add
+     */
+    private void commitShapes(List<AlcShape> created, List<AlcShape> affected) {
+        // Add the createShapes and affectShapes to the active layer
+        // drawing only the new shapes onto its cached image
         // Add to the bottom if drawUnder is on
-        if (drawUnder) {
-            shapes.addAll(0, createShapes);
-            shapes.addAll(0, affectShapes);
-            // Refresh the canvasImage after the shapes have been added
-            // to keep the ordering correct
+        AlcLayer layer = getActiveLayer();
+        boolean transparent = drawUnder || Alchemy.window.isTransparent();
+        // Check before commiting, the layer image is only updated if it was current
+        boolean composite = transparent && canCompositeShapes(drawUnder);
+        layer.commit(created, drawUnder, vectorCanvas.renderer);
+        layer.commit(affected, drawUnder, vectorCanvas.renderer);
+        if (composite) {
+            // Only draw the new shapes onto the translucent canvas image
+            compositeShapes(created, drawUnder);
+            compositeShapes(affected, drawUnder);
+        }
+
+        // Otherwise blend the cached layers together
+        // Draw under needs a transparent image to show the active shapes through
+        if (!composite) {
+            renderCanvasImage(transparent);
+        }
+    }
+
+    /** Commit shapes from the geometry thread.
+     *  The shapes are taken from the live lists here then added to the layer on the event thread,
+     *  along with the frame painted without them.
+     *
+     * @param create    Commit the create shapes
+     * @param affect    Commit the affect shapes
+     */
+    private void commitFromGeometry(boolean create, boolean affect) {
+        final ArrayList<AlcShape> created = new ArrayList<AlcShape>();
+        final ArrayList<AlcShape> affected = new ArrayList<AlcShape>();
+        if (create) {
+            simplify(createShapes);
+            created.addAll(createShapes);
             createShapes.clear();
+        }
+        if (affect) {
+            simplify(affectShapes);
+            affected.addAll(affectShapes);
             affectShapes.clear();
-            canvasImage = renderCanvas(true, true);
+        }
+        publishFrame(false, new Runnable() {
 
-        // Otherwise add to the top
-        } else {
-            // If the window is transparent
-            if (Alchemy.window.isTransparent()) {
-                canvasImage = renderCanvas(true, true);
-            } else {
-                canvasImage = renderCanvas(false);
+            public void run() {
+                long start = performance.start();
+                commitShapes(created, affected);
+                performance.stop(AlcPerformance.COMMIT, start);
             }
-            shapes.addAll(createShapes);
-            shapes.addAll(affectShapes);
-            createShapes.clear();
-            affectShapes.clear();
+        });
+        if (create && affect) {
+            commited();
         }
+    }
 
-        // Tell the modules the shapes have been commited
+    /** Tell the modules the shapes have been commited */
+    private void commited() {
         if (Alchemy.plugins.currentCreate >= 0) {
             Alchemy.plugins.creates[Alchemy.plugins.currentCreate].commited();
         }
@@ -759,6 +1239,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         }
     }
     
+    /** Removes the oldest shapes on the active layer.
+     *  Only the area they covered is redrawn, so keeping the last few shapes
+     *  costs the same however many shapes have been drawn.
+     * @param count     The number of shapes to remove
+     */
+    public void removeOldestShapes(int count) {
+        if (count > 0 && shapes.size() > 0) {
+            getActiveLayer().removeOldest(count, vectorCanvas.renderer);
+            renderCanvasImage(drawUnder || Alchemy.window.isTransparent());
+        }
+    }
+
     /** Removes the most recently added group of shapes which were
      *  laid down in a single mouse/pen event                      */
     public boolean removeShapeGroup(){
@@ -798,6 +1290,168 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         activeSwatchIndex+=1;
     }
 
+    /** Get the number of commited shapes on all layers
+     * @return The number of shapes
+     */
+    public int getShapeCount() {
+        int count = 0;
+        for (int i = 0; i < layers.size(); i++) {
+            count += layers.get(i).shapes.size();
+        }
+        return count;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // LAYERS
+    //////////////////////////////////////////////////////////////
+    /** Get the layer shapes are commited to
+     * @return The active layer
+     */
+    public AlcLayer getActiveLayer() {
+        return layers.get(activeLayer);
+    }
+
+    /** Get the index of the active layer
+     * @return The index, with the bottom layer at 0
+     */
+    public int getActiveLayerIndex() {
+        return activeLayer;
+    }
+
+    /** Get the number of layers
+     * @return The number of layers
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /** Get a layer
+     * @param index The index, with the bottom layer at 0
+     * @return      The layer
+     */
+    public AlcLayer getLayer(int index) {
+        return layers.get(index);
+    }
+
+    /** Set the layer shapes are commited to.
+     *  Undo only works within a layer so the undo history is cleared.
+     * @param index The index, with the bottom layer at 0
+     */
+    public void setActiveLayer(int index) {
+        if (index < 0 || index >= layers.size() || index == activeLayer) {
+            return;
+        }
+        activeLayer = index;
+        shapes = layers.get(index).shapes;
+        fullShapeList[0] = shapes;
+        shapeGroups.clear();
+        shapeGroupsSize.clear();
+        if (Alchemy.toolBar != null) {
+            Alchemy.toolBar.disableUndo();
+        }
+    }
+
+    /** Add a new empty layer above the active layer and make it active */
+    public void addLayer() {
+        layers.add(activeLayer + 1, new AlcLayer(tiles));
+        setActiveLayer(activeLayer + 1);
+    }
+
+    /** Remove the active layer and its shapes - the last layer can not be removed */
+    public void removeLayer() {
+        if (layers.size() > 1) {
+            layers.remove(activeLayer).disposeTiles();
+            // Force the layer below (or the new bottom layer) to become active
+            int index = Math.max(0, activeLayer - 1);
+            activeLayer = -1;
+            setActiveLayer(index);
+            refreshLayers();
+        }
+    }
+
+    /** Blend the cached layers again after the visibility, opacity or blend mode of a layer has changed */
+    public void refreshLayers() {
+        renderCanvasImage(drawUnder || Alchemy.window.isTransparent());
+        this.repaint();
+    }
+
+    /** Check if shapes commited to the active layer can be drawn straight onto the canvas image.
+     *  The canvas image must be a translucent image of the current size without the live shapes on it,
+     *  and nothing can be drawn over the active layer - or under it when drawing under.
+     * @param under     If the shapes will be added below the existing shapes
+     * @return          True if {@link #compositeShapes(List, boolean)} can be used
+     */
+    private boolean canCompositeShapes(boolean under) {
+        // Live shapes drawn in during a stroke would be drawn a second time
+        if (!(canvasImage instanceof BufferedImage) || canvasImageLive) {
+            return false;
+        }
+        BufferedImage buffImage = (BufferedImage) canvasImage;
+        java.awt.Rectangle visibleRect = this.getVisibleRect();
+        if (buffImage.getTransparency() != Transparency.TRANSLUCENT ||
+                buffImage.getWidth() != visibleRect.width || buffImage.getHeight() != visibleRect.height) {
+            return false;
+        }
+        AlcLayer layer = getActiveLayer();
+        if (!layer.isValid() || !layer.isVisible() || !layer.isPlain()) {
+            return false;
+        }
+        if (under) {
+            // The session page and image are drawn below all the shapes
+            if (Alchemy.session.pdfReadPage != null || (imageDisplay && image != null)) {
+                return false;
+            }
+            for (int i = 0; i < activeLayer; i++) {
+                if (layers.get(i).isVisible()) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = activeLayer + 1; i < layers.size(); i++) {
+                if (layers.get(i).isVisible()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Draw shapes onto the translucent canvas image, keeping its alpha so the window shows through
+     * @param added     The shapes to draw
+     * @param under     Draw the shapes behind what is already on the image
+     */
+    private void compositeShapes(List<AlcShape> added, boolean under) {
+        if (added.isEmpty()) {
+            return;
+        }
+        long start = performance.start();
+        BufferedImage buffImage = (BufferedImage) canvasImage;
+        screenImage.invalidate();
+        Graphics2D g2 = buffImage.createGraphics();
+        vectorCanvas.renderer.setupGraphics(g2);
+        g2.translate(panOffset.x, panOffset.y);
+        if (under) {
+            // Topmost shape first so each new shape ends up below the last
+            g2.setComposite(AlphaComposite.DstOver);
+            ArrayList<AlcShape> reversed = new ArrayList<AlcShape>(added);
+            Collections.reverse(reversed);
+            vectorCanvas.renderer.paintShapes(g2, reversed, buffImage.getWidth(), buffImage.getHeight());
+        } else {
+            vectorCanvas.renderer.paintShapes(g2, added, buffImage.getWidth(), buffImage.getHeight());
+        }
+        g2.dispose();
+        // Drawn into the canvas image in place, so repaint it all
+        repaintAll = true;
+        performance.stop(AlcPerformance.RASTERIZE, start);
+    }
+
+    /** Mark the cached image of every layer as out of date */
+    private void invalidateLayers() {
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).invalidate();
+        }
+    }
+
     //////////////////////////////////////////////////////////////
     // CREATE SHAPES
     //////////////////////////////////////////////////////////////
@@ -838,11 +1492,15 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Commit all create shapes to the main shapes array */
     public void commitCreateShapes() {
-        canvasImage = renderCanvas(false);
-        for (int i = 0; i < createShapes.size(); i++) {
-            shapes.add(createShapes.get(i));
+        if (isGeometryThread()) {
+            commitFromGeometry(true, false);
+            return;
         }
+        finishGeometry();
+        getActiveLayer().commit(createShapes, false, vectorCanvas.renderer);
         createShapes.clear();
+        refreshFrame();
+        renderCanvasImage(false);
     }
 
     //////////////////////////////////////////////////////////////
@@ -886,12 +1544,15 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Commit all affect shapes to the main shapes array */
     public void commitAffectShapes() {
-        canvasImage = renderCanvas(false);
-
-        for (int i = 0; i < affectShapes.size(); i++) {
-            shapes.add(affectShapes.get(i));
+        if (isGeometryThread()) {
+            commitFromGeometry(false, true);
+            return;
         }
+        finishGeometry();
+        getActiveLayer().commit(affectShapes, false, vectorCanvas.renderer);
         affectShapes.clear();
+        refreshFrame();
+        renderCanvasImage(false);
     }
 
     //////////////////////////////////////////////////////////////
@@ -1058,6 +1719,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     void setGuide(boolean guides) {
         this.guides = guides;
+        repaintAll = true;
     }
 
     /** Returns if the record indicator (used with session auto-saving) is enabled 
@@ -1072,6 +1734,58 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setRecordIndicator(boolean recordIndicator) {
         this.recordIndicator = recordIndicator;
+        repaintAll = true;
+    }
+
+    /** Get the tolerance used to simplify shapes when they are committed
+     * @return  Tolerance in pixels or zero if simplification is off
+     */
+    public float getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    /** Set the tolerance used to simplify shapes when they are committed
+     * @param simplifyTolerance     Tolerance in pixels or zero to turn simplification off
+     */
+    public void setSimplifyTolerance(float simplifyTolerance) {
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
+    /** Returns if the performance HUD is displayed
+     * @return
+     */
+    public boolean isPerformanceDisplayEnabled() {
+        return performanceDisplay;
+    }
+
+    /** Set the display of the performance HUD - counters are reset when it is turned on
+     * @param performanceDisplay    On or off
+     */
+    public void setPerformanceDisplay(boolean performanceDisplay) {
+        if (performanceDisplay && !this.performanceDisplay) {
+            performance.reset();
+        }
+        this.performanceDisplay = performanceDisplay;
+        // The HUD is updated on its own, so the canvas keeps repainting only what changes
+        if (performanceDisplay) {
+            if (hudTimer == null) {
+                hudTimer = new javax.swing.Timer(HUD_DELAY, new ActionListener() {
+
+                    public void actionPerformed(ActionEvent e) {
+                        java.awt.Rectangle bounds = performance.getHUDBounds();
+                        if (bounds.isEmpty()) {
+                            repaint();
+                        } else {
+                            repaint(bounds);
+                        }
+                    }
+                });
+            }
+            hudTimer.start();
+        } else if (hudTimer != null) {
+            hudTimer.stop();
+        }
+        this.repaint();
     }
 
     /** Manage the automatic toggling of the toolbar */
@@ -1100,12 +1814,16 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         horizontalReflection.translate(this.getWidth(), 0);
         // Reflect it using a negative scale
         horizontalReflection.scale(-1, 1);
+        horizontalReflection = toDrawing(horizontalReflection);
         // Apply to every shape
-        for(AlcShape shape : shapes){
-            GeneralPath reflectedPath = (GeneralPath) shape.getPath().createTransformedShape(horizontalReflection);
-            shape.setPath(reflectedPath);
-            shape.setGradientPaint(makeHorizontalReflectedGradientPaint(shape.getGradientPaint()));
+        for (AlcLayer layer : layers) {
+            for(AlcShape shape : layer.shapes){
+                GeneralPath reflectedPath = (GeneralPath) shape.getPath().createTransformedShape(horizontalReflection);
+                shape.setPath(reflectedPath);
+                shape.setGradientPaint(makeHorizontalReflectedGradientPaint(shape.getGradientPaint()));
+            }
         }
+        invalidateLayers();
         redraw(true);
     }
     
@@ -1114,7 +1832,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         if(gp == null){
             return null;
         }
-        float horizontalAxis = this.getWidth() / 2;
+        float horizontalAxis = this.getWidth() / 2 - panOffset.x;
         float x1 = horizontalAxis - ((float) gp.getPoint1().getX() - horizontalAxis);
         float x2 = horizontalAxis - ((float) gp.getPoint2().getX() - horizontalAxis);
         GradientPaint newGp = new GradientPaint(
@@ -1135,12 +1853,16 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         verticalReflection.translate(0, this.getHeight());
         // Reflect it using a negative scale
         verticalReflection.scale(1, -1);
+        verticalReflection = toDrawing(verticalReflection);
         // Apply to every shape
-        for(AlcShape shape : shapes){
-            GeneralPath reflectedPath = (GeneralPath) shape.getPath().createTransformedShape(verticalReflection);
-            shape.setPath(reflectedPath);
-            shape.setGradientPaint(makeVerticalReflectedGradientPaint(shape.getGradientPaint()));
+        for (AlcLayer layer : layers) {
+            for(AlcShape shape : layer.shapes){
+                GeneralPath reflectedPath = (GeneralPath) shape.getPath().createTransformedShape(verticalReflection);
+                shape.setPath(reflectedPath);
+                shape.setGradientPaint(makeVerticalReflectedGradientPaint(shape.getGradientPaint()));
+            }
         }
+        invalidateLayers();
         redraw(true);
     }
 
@@ -1149,7 +1871,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         if(gp == null){
             return null;
         }
-        float verticalAxis = this.getHeight() / 2;
+        float verticalAxis = this.getHeight() / 2 - panOffset.y;
         float y1 = verticalAxis - ((float) gp.getPoint1().getY() - verticalAxis);
         float y2 = verticalAxis - ((float) gp.getPoint2().getY() - verticalAxis);
         GradientPaint newGp = new GradientPaint(
@@ -1162,6 +1884,17 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         return newGp;
     }
     
+    /** Get a transform of the canvas as a transform of the shapes, which are in drawing coordinates
+     * @param transform     Transform in canvas coordinates
+     * @return              The same transform in drawing coordinates
+     */
+    private AffineTransform toDrawing(AffineTransform transform) {
+        AffineTransform drawing = AffineTransform.getTranslateInstance(-panOffset.x, -panOffset.y);
+        drawing.concatenate(transform);
+        drawing.translate(panOffset.x, panOffset.y);
+        return drawing;
+    }
+
     /** Zoom the Canvas 4x - keep location under mouse, under the mouse */
     public boolean zoomCanvas(boolean keyLaunch){
         
@@ -1199,11 +1932,15 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             }       
             zoom = AffineTransform.getTranslateInstance ( x,y );
             zoom.scale(currentZoom,currentZoom);
-            for(AlcShape shape : shapes){
-                GeneralPath zoomPath = (GeneralPath) shape.getPath().createTransformedShape(zoom);
-                shape.setPath(zoomPath);
-                shape.setGradientPaint(makeHorizontalReflectedGradientPaint(shape.getGradientPaint()));
+            zoom = toDrawing(zoom);
+            for (AlcLayer layer : layers) {
+                for(AlcShape shape : layer.shapes){
+                    GeneralPath zoomPath = (GeneralPath) shape.getPath().createTransformedShape(zoom);
+                    shape.setPath(zoomPath);
+                    shape.setGradientPaint(makeHorizontalReflectedGradientPaint(shape.getGradientPaint()));
+                }
             }
+            invalidateLayers();
             redraw(true);
             
             // success
@@ -1247,7 +1984,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     }
     public double calculateZoomedX(double c){
         if(isCanvasZoomed()){
-           c = (0 - (4*(int)lastZoomX))+(c*4);
+           c = (0 - (4*(int)lastZoomX))+((c+panOffset.x)*4)-panOffset.x;
            return c;
         }else{
            return c;
@@ -1255,13 +1992,114 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     }
     public double calculateZoomedY(double c){
         if(isCanvasZoomed()){
-           c = (0 - (4*(int)lastZoomY))+(c*4);
+           c = (0 - (4*(int)lastZoomY))+((c+panOffset.y)*4)-panOffset.y;
            return c;
         }else{
            return c;
         }
     }
 
+    //////////////////////////////////////////////////////////////
+    // PAN
+    //////////////////////////////////////////////////////////////
+    /** Pan the drawing.
+     *  The shapes stay where they are in drawing coordinates, only the canvas moves over them.
+     *  The cached layer images are put together again from the tiles of each layer,
+     *  so only the tiles not kept from before are drawn.
+     *
+     * @param x     Distance to move across
+     * @param y     Distance to move down
+     */
+    public void panCanvas(int x, int y) {
+        if (x == 0 && y == 0) {
+            return;
+        }
+        finishGeometry();
+        imageLocation.translate(x, y);
+        zoomedImageLocation.translate(x, y);
+        panOffset.translate(x, y);
+        repaintAll = true;
+        refreshLayers();
+    }
+
+    /** Get the distance the drawing has been panned.
+     *  Canvas coordinates less this are drawing coordinates.
+     * @return  The total distance across and down
+     */
+    public Point getPanOffset() {
+        return new Point(panOffset);
+    }
+
+    /** Get the part of the drawing shown on the canvas.
+     *  Shapes, mouse events and the pen location are in drawing coordinates.
+     * @return  The area shown, in drawing coordinates
+     */
+    public java.awt.Rectangle getViewBounds() {
+        return new java.awt.Rectangle(-panOffset.x, -panOffset.y, getWidth(), getHeight());
+    }
+
+    /** Check if the drawing is being panned with the mouse
+     * @return  True if panning
+     */
+    public boolean isPanning() {
+        return panStart != null;
+    }
+
+    /** Free the tiles of the layers and delete their swap file.
+     *  Call when the canvas is done with, such as when Alchemy exits.
+     */
+    void dispose() {
+        finishGeometry();
+        tiles.dispose();
+    }
+
+    /** Start panning with the mouse - the canvas is moved when the pan finishes */
+    private void startPan(Point p) {
+        finishGeometry();
+        panStart = p;
+        panDrag.setLocation(0, 0);
+        setTempCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+        repaint();
+    }
+
+    private void dragPan(Point p) {
+        panDrag.setLocation(p.x - panStart.x, p.y - panStart.y);
+        repaint();
+    }
+
+    private void finishPan() {
+        panStart = null;
+        restoreCursor();
+        repaintAll = true;
+        if (panDrag.x == 0 && panDrag.y == 0) {
+            repaint();
+        } else {
+            panCanvas(panDrag.x, panDrag.y);
+        }
+    }
+
+    /** Paint the layers moved by the current pan from their tiles, drawing any not yet kept */
+    private void paintPan(Graphics2D g2, int w, int h) {
+        AlcRenderer renderer = vectorCanvas.renderer;
+        renderer.paintBackground(g2, w, h);
+        if (imageDisplay && image != null) {
+            Point p = getImageLocation();
+            imagePyramid.paint(g2, p.x + panDrag.x, p.y + panDrag.y, getImageScale());
+        }
+        // Drawing coordinates of the top left of the canvas
+        int x = -(panOffset.x + panDrag.x);
+        int y = -(panOffset.y + panDrag.y);
+        Composite oldComposite = g2.getComposite();
+        for (int i = 0; i < layers.size(); i++) {
+            AlcLayer layer = layers.get(i);
+            if (layer.isVisible()) {
+                g2.setComposite(layer.getComposite());
+                layer.paintTiles(g2, renderer, x, y, w, h);
+            }
+        }
+        g2.setComposite(oldComposite);
+    }
+
     //////////////////////////////////////////////////////////////
     // IMAGE
     //////////////////////////////////////////////////////////////
@@ -1271,12 +2109,21 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setImage(BufferedImage image) {
         this.image = image;
-        if(this.image!=null){
-           this.zoomedImage = getZoomedImage(this.image);
-        }else{
-            this.zoomedImage =null;
+        if (image != null) {
+            // Scaled copies are only made for the parts that are drawn
+            imagePyramid = new AlcImagePyramid(image, new Runnable() {
+
+                // Draw again with the reduced copies once they are ready
+                public void run() {
+                    if (imageDisplay && Alchemy.window != null) {
+                        refreshLayers();
+                    }
+                }
+            });
+        } else {
+            imagePyramid = null;
         }
-        canvasImage = renderCanvas(true);
+        renderCanvasImage(false);
         if (image != null) {
             Alchemy.menuBar.unloadBackgroundImageItem.setEnabled(true);
         } else {
@@ -1284,35 +2131,20 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         }
     }
     
-    private BufferedImage getZoomedImage(BufferedImage image){
-        
-        // Create new (blank) image of required (scaled) size
-        BufferedImage scaledImage = new BufferedImage((int)(image.getWidth()*zoomAmount), 
-                                                      (int)(image.getHeight()*zoomAmount), 
-                                                      BufferedImage.TYPE_INT_ARGB);
-
-        // Paint scaled version of image to new image
-        Graphics2D graphics2D = scaledImage.createGraphics();
-        graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        graphics2D.drawImage(image, 0, 0, (int)(image.getWidth()*zoomAmount), (int)(image.getHeight()*zoomAmount), null);
-
-        // clean up
-        graphics2D.dispose();
-        
-        return scaledImage;
-    }
-
     /** Get the current image
      * 
      * @return  The current image
      */
     public Image getImage() {
-        if(isCanvasZoomed()){
-            return this.zoomedImage;
-        }else{
-            return this.image;
-        }
+        return this.image;
+    }
+
+    /** Get the scale the image is drawn at
+     * 
+     * @return  The canvas zoom when zoomed, otherwise 1
+     */
+    double getImageScale() {
+        return isCanvasZoomed() ? zoomAmount : 1;
     }
 
     /** Check if an Image is defined or not
@@ -1329,7 +2161,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setImageDisplay(boolean imageDisplay) {
         this.imageDisplay = imageDisplay;
-        canvasImage = renderCanvas(true);
+        renderCanvasImage(false);
     }
 
     /** Check if image display is enabled
@@ -1345,6 +2177,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setImageLocation(Point p) {
         this.imageLocation = p;
+        repaintAll = true;
     }
 
     /** Set the location for the image to be displayed on the canvas
@@ -1355,6 +2188,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     public void setImageLocation(int x, int y) {
         this.imageLocation.x = x;
         this.imageLocation.y = y;
+        repaintAll = true;
     }
     
     private void setZoomedImageLocation(){
@@ -1384,6 +2218,46 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     void setTransparentImage(Image transparentImage) {
         this.transparentImage = transparentImage;
+        repaintAll = true;
+    }
+
+    /** Get the configuration images should be compatible with -
+     *  the screen the canvas is on, or the default screen before it is shown
+     * @return  The graphics configuration
+     */
+    private GraphicsConfiguration getCompatibleConfiguration() {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config != null) {
+            return config;
+        }
+        if (gc == null) {
+            gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        }
+        return gc;
+    }
+
+    /** Render the canvas image drawn behind the live shapes
+     * @param transparent   Leave out the background so the window or the shapes being drawn under show through
+     */
+    private void renderCanvasImage(boolean transparent) {
+        canvasImageLive = !createShapes.isEmpty() || !affectShapes.isEmpty();
+        java.awt.Rectangle visibleRect = this.getVisibleRect();
+        if (canvasImage instanceof BufferedImage) {
+            BufferedImage buffImage = (BufferedImage) canvasImage;
+            boolean translucent = buffImage.getTransparency() == Transparency.TRANSLUCENT;
+            if (buffImage.getWidth() == visibleRect.width && buffImage.getHeight() == visibleRect.height &&
+                    translucent == transparent) {
+                // Draw over the old image rather than making a new one,
+                // then update its copy in video memory
+                long start = performance.start();
+                paintCanvas(buffImage, true, transparent, 1);
+                performance.stop(AlcPerformance.RASTERIZE, start);
+                screenImage.invalidate();
+                repaintAll = true;
+                return;
+            }
+        }
+        canvasImage = renderCanvas(true, transparent);
     }
 
     /** Create an image from the canvas
@@ -1427,22 +2301,45 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      * @return
      */
     Image renderCanvas(boolean vectorMode, boolean transparent, double scale, int width, int height) {
+        long start = performance.start();
         if (width == -1 || height == -1) {
             // Get the canvas size with out the frame/decorations
             java.awt.Rectangle visibleRect = this.getVisibleRect();
             width = visibleRect.width;
             height = visibleRect.height;
         }
-        ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
         BufferedImage buffImage;
-        if (transparent) {
-            buffImage = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        if (HEADLESS) {
+            // No screen to be compatible with
+            buffImage = new BufferedImage(width, height, transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
         } else {
-            buffImage = gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+            GraphicsConfiguration gc = getCompatibleConfiguration();
+            if (transparent) {
+                buffImage = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            } else {
+                buffImage = gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+            }
         }
+        paintCanvas(buffImage, vectorMode, transparent, scale);
+        performance.stop(AlcPerformance.RASTERIZE, start);
+        return buffImage;
+    }
+
+    /** Paint the canvas into an image, replacing what was there
+     *
+     * @param buffImage     The image to paint into
+     * @param vectorMode    In vector mode all shapes are rendered from scratch.
+     *                      Otherwise the active shapes are rendered on top of the current canvas image
+     * @param transparent   Ignore the background and leave the image transparent behind the shapes
+     * @param scale         Scale setting to scale the canvas up or down
+     */
+    private void paintCanvas(BufferedImage buffImage, boolean vectorMode, boolean transparent, double scale) {
         // Paint the buffImage with the canvas
         Graphics2D g2 = buffImage.createGraphics();
+        // Clear anything left from before
+        g2.setComposite(AlphaComposite.Clear);
+        g2.fillRect(0, 0, buffImage.getWidth(), buffImage.getHeight());
+        g2.setComposite(AlphaComposite.SrcOver);
         // Make sure the record indicator is off
         recordIndicator = false;
 
@@ -1450,6 +2347,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             g2.scale(scale, scale);
         }
 
+        vectorCanvas.rasterPage = true;
         if (transparent) {
             vectorCanvas.transparent = true;
             vectorCanvas.paintComponent(g2);
@@ -1462,9 +2360,46 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 this.paintComponent(g2);
             }
         }
+        vectorCanvas.rasterPage = false;
         g2.dispose();
-        return buffImage;
     }
+    //////////////////////////////////////////////////////////////
+    // SNAPSHOT
+    //////////////////////////////////////////////////////////////
+    /** Get a copy of the drawing as it is now that never changes.
+     *  Must be called on the event dispatch thread, the snapshot can then be
+     *  read and drawn on any thread while the drawing carries on.
+     *  Layers that have only been added to since the last snapshot are not copied again,
+     *  so a shape changed in place on a layer only shows in later snapshots once the layer is invalidated.
+     *
+     * @return  The snapshot
+     */
+    public AlcCanvasSnapshot getSnapshot() {
+        finishGeometry();
+        ArrayList<AlcCanvasSnapshot.Layer> snapshotLayers = new ArrayList<AlcCanvasSnapshot.Layer>(layers.size());
+        for (int i = 0; i < layers.size(); i++) {
+            AlcLayer layer = layers.get(i);
+            snapshotLayers.add(new AlcCanvasSnapshot.Layer(layer.getSnapshotShapes(),
+                    layer.isVisible(), layer.getOpacity(), layer.getBlendMode()));
+        }
+        java.awt.Rectangle visibleRect = this.getVisibleRect();
+        boolean showImage = imageDisplay && image != null;
+        return new AlcCanvasSnapshot(visibleRect.width, visibleRect.height, panOffset, bgColor, smoothing,
+                snapshotLayers, activeLayer,
+                copyShapes(createShapes), copyShapes(affectShapes), copyShapes(guideShapes),
+                showImage ? imagePyramid : null, showImage ? getImageLocation() : null, getImageScale(),
+                Alchemy.session.pdfReadPage);
+    }
+
+    /** Copy a list of live shapes for a snapshot */
+    private static ArrayList<AlcShape> copyShapes(List<AlcShape> shapes) {
+        ArrayList<AlcShape> copies = new ArrayList<AlcShape>(shapes.size());
+        for (int i = 0; i < shapes.size(); i++) {
+            copies.add(shapes.get(i).snapshot());
+        }
+        return copies;
+    }
+
     //////////////////////////////////////////////////////////////
     // SAVE BITMAP
     //////////////////////////////////////////////////////////////
@@ -1507,10 +2442,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     boolean saveBitmap(File file, String format, boolean transparent) {
         try {
-            setGuide(false);
-            Image bitmapImage = renderCanvas(true, transparent);
-            setGuide(true);
-            ImageIO.write((BufferedImage) bitmapImage, format, file);
+            BufferedImage bitmapImage = getSnapshot().renderImage(1, transparent);
+            ImageIO.write(bitmapImage, format, file);
             return true;
         } catch (IOException ex) {
             System.err.println(ex);
@@ -1581,10 +2514,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         // Set a clipping region so the canvas doesn't go out of bounds
         g2p.setClip(0, 0, size.width, size.height);
 
-        // Finally, print the component by calling the paintComponent() method.
-        // Or, call paint() to paint the component, its background, border, and
-        // children, including the Print JButton
-        vectorCanvas.paintComponent(g);
+        // Finally, print a snapshot of the canvas
+        getSnapshot().paint(g2p, false, false);
 
         // Tell the PrinterJob that the pdfReadPage number was valid
         return Printable.PAGE_EXISTS;
@@ -1596,24 +2527,16 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     //////////////////////////////////////////////////////////////
     public void mouseMoved(MouseEvent event) {
         setPenLocation(event);
+        if (penType == PEN_CURSOR) {
+            motion.add(penLocation.x, penLocation.y, event.getWhen());
+        } else {
+            motion.flush();
+        }
         if (isAutoToggleToolBar()) {
             Alchemy.toolBar.toggleToolBar(event.getY());
         }
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseMoved(event);
-            }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseMoved(event);
-                        }
-                    }
-                }
-            }
+            dispatchMouseEvent(MouseEvent.MOUSE_MOVED, event);
         }
         if (penType != PEN_CURSOR) {
             penLocationChanged = false;
@@ -1621,7 +2544,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     }
 
     public void mousePressed(MouseEvent event) {
+        // Pan the drawing with the middle button
+        if (event.getButton() == MouseEvent.BUTTON2 && !penDown && panStart == null) {
+            startPan(event.getPoint());
+            return;
+        }
+        if (panStart != null) {
+            return;
+        }
+        performance.input(event.getWhen());
         penDown = true;
+        setPenLocation(event);
+        motion.reset(penLocation.x, penLocation.y, event.getWhen());
         // Hide the toolbar when clicking on the canvas
         if (!Alchemy.preferences.paletteAttached && Alchemy.toolBar.isToolBarVisible() &&
                 !Alchemy.preferences.simpleToolBar && event.getY() >= Alchemy.toolBar.getTotalHeight()) {
@@ -1639,23 +2573,12 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 Alchemy.toolBar.setZoomButtonSelected();
                 restoreCursor();
                 
+            }else if (useGeometryThread()) {
+                // The undo group is started once the last stroke is commited
+                postMouseEvent(MouseEvent.MOUSE_PRESSED, event);
             }else{
                 startUndoGroup();   
-                // Pass to the current create module
-                if (createEvents) {
-                    Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mousePressed(event);
-                }
-                // Pass to all active affect modules
-                if (affectEvents) {
-                    if (Alchemy.plugins.hasCurrentAffects()) {
-                        for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                            if (Alchemy.plugins.currentAffects[i]) {
-                                Alchemy.plugins.affects[i].mousePressed(event);
-                            }
-                        }
-                    }
-                }
-    
+                sendMouseEvent(MouseEvent.MOUSE_PRESSED, event);
             }      
         }
     }
@@ -1689,102 +2612,154 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     public void mouseClicked(MouseEvent event) {
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseClicked(event);
-            }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseClicked(event);
-                        }
-                    }
-                }
-            }           
+            dispatchMouseEvent(MouseEvent.MOUSE_CLICKED, event);
         }
     }
 
     public void mouseEntered(MouseEvent event) {
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseEntered(event);
-            }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseEntered(event);
-                        }
-                    }
-                }
-            }
+            dispatchMouseEvent(MouseEvent.MOUSE_ENTERED, event);
         }
     }
 
     public void mouseExited(MouseEvent event) {
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseExited(event);
-            }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseExited(event);
-                        }
-                    }
-                }
-            }
+            dispatchMouseEvent(MouseEvent.MOUSE_EXITED, event);
         }
     }
 
     public void mouseReleased(MouseEvent event) {
+        if (panStart != null) {
+            if (event.getButton() == MouseEvent.BUTTON2) {
+                finishPan();
+            }
+            return;
+        }
         penDown = false;
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseReleased(event);
-            }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseReleased(event);
-                        }
-                    }
-                }
+            if (useGeometryThread()) {
+                // The undo group is finished once the shapes are commited
+                postMouseEvent(MouseEvent.MOUSE_RELEASED, event);
+            } else {
+                sendMouseEvent(MouseEvent.MOUSE_RELEASED, event);
+                finishUndoGroup();
             }
-            finishUndoGroup();
         }
     }
 
     public void mouseDragged(MouseEvent event) {
+        if (panStart != null) {
+            dragPan(event.getPoint());
+            return;
+        }
+        performance.input(event.getWhen());
         setPenLocation(event);
+        if (penType == PEN_CURSOR) {
+            motion.add(penLocation.x, penLocation.y, event.getWhen());
+        } else {
+            motion.flush();
+        }
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseDragged(event);
+            float pressure = (penType == PEN_CURSOR) ? 1F : penPressure;
+            if (useGeometryThread()) {
+                postPenSample(penLocation.x, penLocation.y, pressure, penTilt.x, penTilt.y, event);
+            } else {
+                sendPenSample(penLocation.x, penLocation.y, pressure, penTilt.x, penTilt.y, event.getWhen());
+                sendMouseEvent(MouseEvent.MOUSE_DRAGGED, event);
             }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseDragged(event);
-                        }
+        }
+        if (penType != PEN_CURSOR) {
+            penLocationChanged = false;
+        }
+    }
+
+    /** Pass a mouse event to the active modules, on the geometry thread if in use */
+    private void dispatchMouseEvent(int id, MouseEvent event) {
+        if (useGeometryThread()) {
+            postMouseEvent(id, event);
+        } else {
+            sendMouseEvent(id, event);
+        }
+    }
+
+    /** Pass a mouse event to the active modules on this thread
+     *
+     * @param id        The type of event - such as MouseEvent.MOUSE_PRESSED
+     * @param event     The event
+     */
+    private void sendMouseEvent(int id, MouseEvent event) {
+        event = toDrawing(event);
+        // Pass to the current create module
+        if (createEvents) {
+            sendMouseEvent(Alchemy.plugins.creates[Alchemy.plugins.currentCreate], id, event);
+        }
+        // Pass to all active affect modules
+        if (affectEvents) {
+            if (Alchemy.plugins.hasCurrentAffects()) {
+                for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
+                    if (Alchemy.plugins.currentAffects[i]) {
+                        sendMouseEvent(Alchemy.plugins.affects[i], id, event);
                     }
                 }
             }
         }
-        if (penType != PEN_CURSOR) {
-            penLocationChanged = false;
+    }
+
+    /** Get a mouse event in drawing coordinates, where the modules make their shapes
+     * @param event     Mouse event in canvas coordinates
+     * @return          The event moved by the pan, or the same event if not panned
+     */
+    private MouseEvent toDrawing(MouseEvent event) {
+        if (panOffset.x == 0 && panOffset.y == 0) {
+            return event;
+        }
+        return new MouseEvent(event.getComponent(), event.getID(), event.getWhen(),
+                event.getModifiers() | event.getModifiersEx(), event.getX() - panOffset.x, event.getY() - panOffset.y,
+                event.getClickCount(), event.isPopupTrigger(), event.getButton());
+    }
+
+    /** Call the module method for a type of mouse event */
+    private static void sendMouseEvent(AlcModule module, int id, MouseEvent event) {
+        switch (id) {
+            case MouseEvent.MOUSE_MOVED:
+                module.mouseMoved(event);
+                break;
+            case MouseEvent.MOUSE_PRESSED:
+                module.mousePressed(event);
+                break;
+            case MouseEvent.MOUSE_CLICKED:
+                module.mouseClicked(event);
+                break;
+            case MouseEvent.MOUSE_ENTERED:
+                module.mouseEntered(event);
+                break;
+            case MouseEvent.MOUSE_EXITED:
+                module.mouseExited(event);
+                break;
+            case MouseEvent.MOUSE_RELEASED:
+                module.mouseReleased(event);
+                break;
+            case MouseEvent.MOUSE_DRAGGED:
+                module.mouseDragged(event);
+                break;
+        }
+    }
+
+    /** Pass the pen location, pressure and tilt to the active modules as primitives */
+    private void sendPenSample(float x, float y, float pressure, float tiltX, float tiltY, long when) {
+        // Pass to the current create module
+        if (createEvents) {
+            Alchemy.plugins.creates[Alchemy.plugins.currentCreate].penSample(x, y, pressure, tiltX, tiltY, when);
+        }
+        // Pass to all active affect modules
+        if (affectEvents) {
+            if (Alchemy.plugins.hasCurrentAffects()) {
+                for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
+                    if (Alchemy.plugins.currentAffects[i]) {
+                        Alchemy.plugins.affects[i].penSample(x, y, pressure, tiltX, tiltY, when);
+                    }
+                }
+            }
         }
     }
     //////////////////////////////////////////////////////////////
@@ -1813,6 +2788,9 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 // Register the pen location even when the mouse is up
                 setPenLocation(ev);
                 penLocationChanged = true;
+                // Pen events come in on the JPen thread, the sample is added
+                // on the event thread before the next mouse event reaches the modules
+                motion.post(penLocation.x, penLocation.y, ev.getTime());
             }
         }
     }
@@ -1829,11 +2807,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     /** Vector Canvas
      *  Draws the canvas in full, including all shapes,
      *  the background and buffImage if any.
+     *  The drawing itself is done by an {@link AlcRenderer}
      */
     class VectorCanvas extends JPanel implements AlcConstants {
 
         boolean transparent = false;
+        /** Draw in draft quality - only used for the canvas image while the user is busy */
+        boolean draft = false;
+        /** Draw the session page from the page cache - only used when rendering bitmaps */
+        boolean rasterPage = false;
         private int width,  height;
+        /** Renderer set up with the canvas state on each paint */
+        private final AlcRenderer renderer = new AlcRenderer();
 
         @Override
         public void paintComponent(Graphics g) {
@@ -1845,156 +2830,60 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
             Graphics2D g2 = (Graphics2D) g;
 
-            // Get the PDF Content Byte
-            PdfContentByte cb = null;
-
-            if (g2 instanceof PdfGraphics2D) {
-                PdfGraphics2D g2pdf = (PdfGraphics2D) g2;
-                cb = g2pdf.getContent();
-            }
-
-            if (Alchemy.canvas.smoothing) {
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            } else {
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-            }
-
-            // Do not draw the background when creating a transparent image
-            if (!transparent) {
-                // Paint background without transparency
-                Color bgColor = Alchemy.canvas.getBackgroundColor();
-                g2.setColor(new Color(bgColor.getRed(), bgColor.getGreen(), bgColor.getBlue()));
-                g2.fillRect(0, 0, width, height);
-            }
+            renderer.setBackgroundColor(Alchemy.canvas.getBackgroundColor());
+            renderer.setSmoothing(Alchemy.canvas.smoothing);
+            renderer.setTransparent(transparent);
+            renderer.setDraft(draft);
+            // Simplify small shapes only when the result is a bitmap
+            renderer.setLevelOfDetail(rasterPage);
 
             // PDF READER
-            if (Alchemy.session.pdfReadPage != null) {
-
-                // Remember the old transform settings
-                AffineTransform at = g2.getTransform();
-
-                int pageWidth = (int) Alchemy.session.pdfReadPage.getWidth();
-                int pageHeight = (int) Alchemy.session.pdfReadPage.getHeight();
-                PDFRenderer renderer = new PDFRenderer(Alchemy.session.pdfReadPage, g2, new Rectangle(0, 0, pageWidth, pageHeight), null, Alchemy.canvas.getBackgroundColor());
-                try {
-                    Alchemy.session.pdfReadPage.waitForFinish();
-                    renderer.run();
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
-
-                // Revert to the old transform settings
-                g2.setTransform(at);
-
+            // Bitmaps use the cached page, vector output renders it in full
+            if (Alchemy.session.pdfReadPage != null && rasterPage && !(g2 instanceof PdfGraphics2D)) {
+                double zoom = g2.getTransform().getScaleX();
+                renderer.setPageImage(Alchemy.session.getPageImage(zoom), zoom);
+            } else {
+                renderer.setPage(Alchemy.session.pdfReadPage);
             }
 
             // Draw Image
             if (Alchemy.canvas.isImageDisplayEnabled() && Alchemy.canvas.isImageSet()) {
-                Point p = Alchemy.canvas.getImageLocation();
-                g2.drawImage(Alchemy.canvas.getImage(), p.x, p.y, null);
+                renderer.setImage(Alchemy.canvas.imagePyramid, Alchemy.canvas.getImageLocation(), Alchemy.canvas.getImageScale());
+            } else {
+                renderer.setImage(null, null);
             }
 
-
-            // Draw the shapes, create, and affect lists
-            for (int j = 0; j < Alchemy.canvas.fullShapeList.length; j++) {
-                for (int i = 0; i < Alchemy.canvas.fullShapeList[j].size(); i++) {
-                    AlcShape currentShape = (AlcShape) Alchemy.canvas.fullShapeList[j].get(i);
-                    Paint paint = currentShape.getPaint();
-                    
-                    // LINE
-                    if (currentShape.style == STYLE_STROKE) {
-                        //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
-                        g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
-
-                        // If this shape is a gradient and we are making a PDF
-                        if (paint instanceof GradientPaint && cb != null) {
-                            drawTransparentGradient(cb, g2, (GradientPaint) paint, currentShape.path, false);
-                        } else {
-                            g2.setPaint(paint);
-                            g2.draw(currentShape.path);
-                        }
-
-                    // SOLID
+            renderer.paintBackground(g2, width, height);
+
+            // Draw the layers from their cached images when making a bitmap at the canvas size
+            boolean cached = rasterPage && g2.getTransform().isIdentity() && !(g2 instanceof PdfGraphics2D);
+            AlcLayer activeLayer = Alchemy.canvas.getActiveLayer();
+            // Drawing coordinates of the top left of the canvas
+            Point pan = Alchemy.canvas.panOffset;
+            for (AlcLayer layer : Alchemy.canvas.layers) {
+                if (layer.isVisible()) {
+                    if (cached) {
+                        layer.paintRaster(g2, renderer, -pan.x, -pan.y, width, height);
                     } else {
-
-                        // If this shape is a gradient and we are making a PDF
-                        if (paint instanceof GradientPaint && cb != null) {
-                            drawTransparentGradient(cb, g2, (GradientPaint) paint, currentShape.path, true);
-                        } else {
-                            g2.setPaint(paint);
-                            g2.fill(currentShape.path);
-                        }
-
-
+                        layer.paintShapes(g2, renderer, -pan.x, -pan.y, width, height, rasterPage);
                     }
                 }
-            }
-            if (Alchemy.canvas.isGuideEnabled()) {
-                for (int i = 0; i < Alchemy.canvas.guideShapes.size(); i++) {
-                    AlcShape currentShape = Alchemy.canvas.guideShapes.get(i);
-                    // LINE
-                    if (currentShape.style == STYLE_STROKE) {
-                        //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
-                        g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
-                        g2.setColor(currentShape.color);
-                        g2.draw(currentShape.path);
-                    // SOLID
-                    } else {
-                        g2.setColor(currentShape.color);
-                        g2.fill(currentShape.path);
-                    }
+                // Draw the create and affect lists above the layer they will be commited to
+                if (layer == activeLayer) {
+                    g2.translate(pan.x, pan.y);
+                    renderer.paintShapes(g2, Alchemy.canvas.createShapes, width, height);
+                    renderer.paintShapes(g2, Alchemy.canvas.affectShapes, width, height);
+                    g2.translate(-pan.x, -pan.y);
                 }
             }
 
-            g2.dispose();
-        }
-
-        /** Draw a transparent gradient to the PDF */
-        private void drawTransparentGradient(PdfContentByte cb, Graphics2D g2, GradientPaint gp, GeneralPath path, boolean fill) {
-
-            //Create template
-            PdfTemplate template = cb.createTemplate(width, height);
-
-            //Prepare transparent group
-            PdfTransparencyGroup transGroup = new PdfTransparencyGroup();
-            transGroup.put(PdfName.CS, PdfName.DEVICERGB);
-            transGroup.setIsolated(true);
-            transGroup.setKnockout(false);
-            template.setGroup(transGroup);
-
-            //Prepare graphic state
-            PdfGState gState = new PdfGState();
-            PdfDictionary maskDict = new PdfDictionary();
-            maskDict.put(PdfName.TYPE, PdfName.MASK);
-            maskDict.put(PdfName.S, new PdfName("Luminosity"));
-            maskDict.put(new PdfName("G"), template.getIndirectReference());
-            gState.put(PdfName.SMASK, maskDict);
-            cb.setGState(gState);
-
-            // Create a gradient to use as the mask
-            // Also flip the Y location
-            PdfShading shading = PdfShading.simpleAxial(
-                    cb.getPdfWriter(),
-                    (float) gp.getPoint1().getX(),
-                    (float) (height - gp.getPoint1().getY()),
-                    (float) gp.getPoint2().getX(),
-                    (float) (height - gp.getPoint2().getY()),
-                    Color.WHITE,
-                    Color.BLACK,
-                    true,
-                    true);
-            template.paintShading(shading);
-
-            // Draw the actual color under the mask
-            g2.setColor(gp.getColor1());
-            // SOLID
-            if (fill) {
-                g2.fill(path);
-            // LINE    
-            } else {
-                g2.draw(path);
+            if (Alchemy.canvas.isGuideEnabled()) {
+                g2.translate(pan.x, pan.y);
+                AlcRenderer.paintGuides(g2, Alchemy.canvas.guideShapes);
+                g2.translate(-pan.x, -pan.y);
             }
 
+            g2.dispose();
         }
     }
 }
@@ -0,0 +1,292 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.sun.pdfview.PDFPage;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+/**
+ * The drawing on the canvas at one moment, that never changes<br>
+ * Holds copies of the shapes of each layer, the create, affect and guide shapes,
+ * and the settings needed to draw them. Made on the event dispatch thread with
+ * {@link AlcCanvas#getSnapshot()} and can then be read and drawn on any number of threads
+ * while the canvas carries on changing.
+ * The copied shapes are only read when drawn, apart from their level of detail which is locked.
+ * The background image and session page are shared with the canvas rather than copied -
+ * the image is never changed once made and a page is drawn by one thread at a time.
+ */
+public class AlcCanvasSnapshot implements AlcConstants {
+
+    /** Time the snapshot was made */
+    private final long time;
+    /** Size of the canvas */
+    private final int width,  height;
+    /** Distance the drawing was panned - drawing coordinates plus this are canvas coordinates */
+    private final Point panOffset;
+    /** Background color */
+    private final Color bgColor;
+    /** Antialiasing on or off */
+    private final boolean smoothing;
+    /** Layers, bottom first */
+    private final List<Layer> layers;
+    /** Index of the layer the create and affect shapes are drawn above */
+    private final int activeLayer;
+    private final List<AlcShape> createShapes;
+    private final List<AlcShape> affectShapes;
+    private final List<AlcShape> guideShapes;
+    /** Background image, or null if not shown */
+    private final AlcImagePyramid imagePyramid;
+    private final Point imageLocation;
+    private final double imageScale;
+    /** Session page drawn behind the shapes, or null */
+    private final PDFPage page;
+
+    AlcCanvasSnapshot(int width, int height, Point panOffset, Color bgColor, boolean smoothing,
+            List<Layer> layers, int activeLayer,
+            List<AlcShape> createShapes, List<AlcShape> affectShapes, List<AlcShape> guideShapes,
+            AlcImagePyramid imagePyramid, Point imageLocation, double imageScale, PDFPage page) {
+        this.time = System.currentTimeMillis();
+        this.width = width;
+        this.height = height;
+        this.panOffset = new Point(panOffset);
+        this.bgColor = bgColor;
+        this.smoothing = smoothing;
+        this.layers = Collections.unmodifiableList(layers);
+        this.activeLayer = activeLayer;
+        this.createShapes = Collections.unmodifiableList(createShapes);
+        this.affectShapes = Collections.unmodifiableList(affectShapes);
+        this.guideShapes = Collections.unmodifiableList(guideShapes);
+        this.imagePyramid = imagePyramid;
+        this.imageLocation = (imageLocation == null) ? null : new Point(imageLocation);
+        this.imageScale = imageScale;
+        this.page = page;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SETTINGS
+    //////////////////////////////////////////////////////////////
+    /** Get the time the snapshot was made
+     * @return  Time in milliseconds, as System.currentTimeMillis()
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /** Get the width of the canvas
+     * @return  Width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /** Get the height of the canvas
+     * @return  Height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /** Get the background color
+     * @return  The background color
+     */
+    public Color getBackgroundColor() {
+        return bgColor;
+    }
+
+    /** Get the antialiasing setting
+     * @return  True if the shapes are drawn smoothed
+     */
+    public boolean isSmoothing() {
+        return smoothing;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SHAPES
+    //////////////////////////////////////////////////////////////
+    /** Get the layers
+     * @return  The layers, bottom first
+     */
+    public List<Layer> getLayers() {
+        return layers;
+    }
+
+    /** Get the index of the layer shapes were being commited to
+     * @return  The active layer index
+     */
+    public int getActiveLayerIndex() {
+        return activeLayer;
+    }
+
+    /** Get the commited shapes of the active layer
+     * @return  The shapes
+     */
+    public List<AlcShape> getShapes() {
+        return layers.get(activeLayer).getShapes();
+    }
+
+    /** Get the shapes in use by the create modules
+     * @return  The create shapes
+     */
+    public List<AlcShape> getCreateShapes() {
+        return createShapes;
+    }
+
+    /** Get the shapes in use by the affect modules
+     * @return  The affect shapes
+     */
+    public List<AlcShape> getAffectShapes() {
+        return affectShapes;
+    }
+
+    /** Get the guide shapes
+     * @return  The guide shapes
+     */
+    public List<AlcShape> getGuideShapes() {
+        return guideShapes;
+    }
+
+    /** Get the total number of shapes on all layers and in use by the modules
+     * @return  The number of shapes
+     */
+    public int getShapeCount() {
+        int count = createShapes.size() + affectShapes.size();
+        for (int i = 0; i < layers.size(); i++) {
+            count += layers.get(i).getShapes().size();
+        }
+        return count;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // DRAWING
+    //////////////////////////////////////////////////////////////
+    /** Draw the snapshot, without the guides
+     *
+     * @param g2            Graphics to draw on - scaled to change the size
+     * @param transparent   Leave out the background color
+     * @param bitmap        Drawing to a bitmap - small shapes are simplified and layers blended.
+     *                      Otherwise vector output, where only the layer opacity is kept
+     */
+    public void paint(Graphics2D g2, boolean transparent, boolean bitmap) {
+        // Renderers keep state while drawing, so each paint has its own
+        AlcRenderer renderer = new AlcRenderer();
+        renderer.setBackgroundColor(bgColor);
+        renderer.setSmoothing(smoothing);
+        renderer.setTransparent(transparent);
+        renderer.setLevelOfDetail(bitmap);
+        renderer.setPage(page);
+        if (imagePyramid != null) {
+            renderer.setImage(imagePyramid, imageLocation, imageScale);
+        } else {
+            renderer.setImage(null, null);
+        }
+        renderer.paintBackground(g2, width, height);
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible()) {
+                AlcLayer.paintShapes(g2, layer.getShapes(), layer.getOpacity(), layer.getBlendMode(),
+                        renderer, -panOffset.x, -panOffset.y, width, height, bitmap);
+            }
+            // Draw the create and affect lists above the layer they will be commited to
+            if (i == activeLayer) {
+                g2.translate(panOffset.x, panOffset.y);
+                renderer.paintShapes(g2, createShapes, width, height);
+                renderer.paintShapes(g2, affectShapes, width, height);
+                g2.translate(-panOffset.x, -panOffset.y);
+            }
+        }
+    }
+
+    /** Draw the snapshot to a new image, without the guides
+     *
+     * @param scale         Scale to draw at - 1 is the canvas size
+     * @param transparent   Make a transparent image with only the shapes
+     * @return              The image
+     */
+    public BufferedImage renderImage(double scale, boolean transparent) {
+        return renderImage(scale, transparent, (int) Math.round(width * scale), (int) Math.round(height * scale));
+    }
+
+    /** Draw the snapshot to a new image of a given size, without the guides
+     *
+     * @param scale         Scale to draw at - 1 is the canvas size
+     * @param transparent   Make a transparent image with only the shapes
+     * @param imageWidth    Width of the image
+     * @param imageHeight   Height of the image
+     * @return              The image
+     */
+    public BufferedImage renderImage(double scale, boolean transparent, int imageWidth, int imageHeight) {
+        BufferedImage image = new BufferedImage(Math.max(1, imageWidth), Math.max(1, imageHeight),
+                transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        if (scale != 1) {
+            g2.scale(scale, scale);
+        }
+        paint(g2, transparent, true);
+        g2.dispose();
+        return image;
+    }
+
+    /** A layer of the snapshot */
+    public static class Layer {
+
+        private final List<AlcShape> shapes;
+        private final boolean visible;
+        private final float opacity;
+        private final int blendMode;
+
+        Layer(List<AlcShape> shapes, boolean visible, float opacity, int blendMode) {
+            this.shapes = shapes;
+            this.visible = visible;
+            this.opacity = opacity;
+            this.blendMode = blendMode;
+        }
+
+        /** Get the shapes on this layer
+         * @return  The shapes, bottom first
+         */
+        public List<AlcShape> getShapes() {
+            return shapes;
+        }
+
+        /** Get the layer visibility
+         * @return  True if the layer is drawn
+         */
+        public boolean isVisible() {
+            return visible;
+        }
+
+        /** Get the layer opacity
+         * @return  Opacity between 0 and 1
+         */
+        public float getOpacity() {
+            return opacity;
+        }
+
+        /** Get the blend mode
+         * @return  One of the AlcLayer BLEND constants
+         */
+        public int getBlendMode() {
+            return blendMode;
+        }
+    }
+}
@@ -22,8 +22,10 @@ package org.alchemy.core;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Font;
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Toolkit;
+import java.awt.event.InputEvent;
 import java.awt.image.MemoryImageSource;
 import java.util.Locale;
 
@@ -45,8 +47,10 @@ public interface AlcConstants {
     static final int OS_OTHER = 0;
     /** Convenience access to the {@link Toolkit} */
     static final Toolkit TOOLKIT = Toolkit.getDefaultToolkit();
+    /** Running without a display - for batch rendering */
+    static final boolean HEADLESS = GraphicsEnvironment.isHeadless();
     /** Modifier flags for the shortcut key used to trigger menus. (Cmd on Mac OS X, Ctrl on Linux and Windows) */
-    static final int KEY_MODIFIER = TOOLKIT.getMenuShortcutKeyMask();
+    static final int KEY_MODIFIER = HEADLESS ? InputEvent.CTRL_DOWN_MASK : TOOLKIT.getMenuShortcutKeyMask();
     /** Full name of the Java version eg 1.5.0_11 */
     static final String JAVA_VERSION_NAME = System.getProperty("java.version");
     /** Version of Java that's in use, whether 1.1 or 1.3 or whatever stored as a float */
@@ -112,7 +116,7 @@ public interface AlcConstants {
     /** Cursor - Wait Cursor */
     static final Cursor CURSOR_WAIT = Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR);
     /** Cursor - Blank Cursor */
-    static final Cursor CURSOR_BLANK = TOOLKIT.createCustomCursor(
+    static final Cursor CURSOR_BLANK = HEADLESS ? Cursor.getDefaultCursor() : TOOLKIT.createCustomCursor(
             Toolkit.getDefaultToolkit().createImage(new MemoryImageSource(16, 16, new int[16 * 16], 0, 16)),
             new Point(0, 0),
             "Blank");
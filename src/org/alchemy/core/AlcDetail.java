@@ -0,0 +1,89 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.*;
+
+/**
+ * Level of detail pyramid for a single shape<br>
+ * Holds copies of the shape path reduced to straight lines at increasing tolerances.
+ * Each level is only made the first time it is asked for.
+ * Levels can be asked for on several threads at once, such as when exporting a snapshot.
+ */
+class AlcDetail {
+
+    /** Tolerance of each level in the units of the path */
+    private static final float[] TOLERANCES = {0.5F, 1F, 2F, 4F, 8F, 16F};
+    /** The path the levels were made from */
+    private final GeneralPath source;
+    /** The current point of the source when the levels were made */
+    private final Point2D sourcePoint;
+    /** Bounds of the source path */
+    private final Rectangle2D bounds;
+    /** Simplified paths, null until used */
+    private final GeneralPath[] levels = new GeneralPath[TOLERANCES.length];
+
+    /** Creates the (empty) pyramid for a path
+     * @param source    The full resolution path
+     */
+    AlcDetail(GeneralPath source) {
+        this.source = source;
+        this.sourcePoint = source.getCurrentPoint();
+        this.bounds = source.getBounds2D();
+    }
+
+    /** Check the pyramid was made from this path and the path has not been added to since
+     * @param path  The current path of the shape
+     * @return      True if the levels can still be used
+     */
+    boolean isValid(GeneralPath path) {
+        if (path != source) {
+            return false;
+        }
+        Point2D point = path.getCurrentPoint();
+        return (point == null) ? sourcePoint == null : point.equals(sourcePoint);
+    }
+
+    /** Get the bounds of the full resolution path
+     * @return  The bounds
+     */
+    Rectangle2D getBounds() {
+        return bounds;
+    }
+
+    /** Get the path to draw when one device pixel covers the given size
+     * @param pixelSize     Size of a device pixel in the units of the path
+     * @return              The coarsest path within a quarter of a pixel of the original
+     */
+    synchronized GeneralPath getPath(double pixelSize) {
+        double tolerance = pixelSize / 4;
+        int level = -1;
+        while (level + 1 < TOLERANCES.length && TOLERANCES[level + 1] <= tolerance) {
+            level++;
+        }
+        if (level < 0) {
+            return source;
+        }
+        if (levels[level] == null) {
+            levels[level] = AlcSimplify.reduceToLines(source, TOLERANCES[level]);
+        }
+        return levels[level];
+    }
+}
@@ -24,9 +24,6 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.text.*;
-import java.util.Iterator;
-import javax.imageio.*;
-import javax.imageio.stream.FileImageOutputStream;
 import javax.swing.*;
 import net.miginfocom.swing.MigLayout;
 
@@ -95,24 +92,11 @@ class AlcExportDialog extends JDialog implements AlcConstants {
 //                    System.out.println("Transparency: " + transparency + " Scale: " + scale);
 //                    System.out.println("Format: " + imageFormat);
 
-                    Alchemy.canvas.setGuide(false);
-                    BufferedImage bitmapImage = (BufferedImage) Alchemy.canvas.renderCanvas(true, transparency, scale, width, height);
-                    Alchemy.canvas.setGuide(true);
+                    BufferedImage bitmapImage = Alchemy.canvas.getSnapshot().renderImage(scale, transparency, width, height);
 
                     // Use the slightly more complex ImageWriter
                     // So the JPEG images are full quality
-                    Iterator iter = ImageIO.getImageWritersByFormatName(imageFormat);
-                    ImageWriter writer = (ImageWriter)iter.next();
-                    ImageWriteParam iwp = writer.getDefaultWriteParam();
-                    if(imageFormat.equals("JPG")){
-                        iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                        iwp.setCompressionQuality(1);
-                    }
-                    FileImageOutputStream output = new FileImageOutputStream(file);
-                    writer.setOutput(output);
-                    IIOImage image = new IIOImage(bitmapImage, null, null);
-                    writer.write(null, image, iwp);
-                    writer.dispose();
+                    AlcExportJob.writeBitmap(bitmapImage, imageFormat, file);
 
 //                    ImageIO.write((BufferedImage) bitmapImage, imageFormat, file);
 
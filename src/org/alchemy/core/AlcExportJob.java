@@ -0,0 +1,363 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.swing.SwingUtilities;
+
+/**
+ * Exports one snapshot of the canvas to several files at once<br>
+ * Every format is written by its own encoder on a shared pool of background threads,
+ * all reading the same {@link AlcCanvasSnapshot}, so the canvas is never touched
+ * and can carry on being drawn on. The state and time taken of each format
+ * can be read at any time while the job runs.
+ */
+class AlcExportJob {
+
+    /** Waiting for a thread */
+    static final int QUEUED = 0;
+    /** Being drawn and written */
+    static final int RUNNING = 1;
+    /** Written */
+    static final int DONE = 2;
+    /** Could not be written */
+    static final int FAILED = 3;
+    /** Shared background threads used to write the files */
+    private static ExecutorService pool;
+    /** The drawing to export */
+    private final AlcCanvasSnapshot snapshot;
+    /** The files to write, in the order they were added */
+    private final ArrayList<Export> exports = new ArrayList<Export>();
+    /** Results of the exports once started */
+    private final ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+    /** Called on the event dispatch thread each time an export changes state, or null */
+    private Runnable onChange;
+    /** Time the job was started */
+    private long startTime;
+
+    /** Creates an export job - nothing is written until it is started
+     *
+     * @param snapshot  The drawing to export
+     */
+    AlcExportJob(AlcCanvasSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // FORMATS
+    //////////////////////////////////////////////////////////////
+    /** Add a file to export, with the format taken from the file extension
+     *
+     * @param file  A png, jpg, pdf or svg file
+     * @return      False if the format is not known
+     */
+    boolean add(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".png")) {
+            addBitmap(file, "PNG", 1, false);
+        } else if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            addBitmap(file, "JPG", 1, false);
+        } else if (name.endsWith(".pdf")) {
+            addPdf(file);
+        } else if (name.endsWith(".svg")) {
+            addSvg(file);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /** Add a bitmap image to export
+     *
+     * @param file          The file to write
+     * @param format        PNG or JPG
+     * @param scale         Scale to draw at - 1 is the canvas size
+     * @param transparent   Leave out the background - PNG only
+     */
+    void addBitmap(File file, final String format, final double scale, final boolean transparent) {
+        addExport(new Export(format, file) {
+
+            void write() throws Exception {
+                BufferedImage image = snapshot.renderImage(scale, transparent && !format.equals("JPG"));
+                writeBitmap(image, format, file);
+            }
+        });
+    }
+
+    /** Add a single page PDF to export
+     * @param file  The file to write
+     */
+    void addPdf(File file) {
+        addExport(new Export("PDF", file) {
+
+            void write() throws Exception {
+                if (!AlcSession.saveSinglePdf(file, snapshot)) {
+                    throw new IOException("Could not save " + file);
+                }
+            }
+        });
+    }
+
+    /** Add an SVG to export
+     * @param file  The file to write
+     */
+    void addSvg(File file) {
+        addExport(new Export("SVG", file) {
+
+            void write() throws Exception {
+                if (!AlcSession.saveSVG(file, snapshot)) {
+                    throw new IOException("Could not save " + file);
+                }
+            }
+        });
+    }
+
+    private synchronized void addExport(Export export) {
+        if (startTime != 0) {
+            throw new IllegalStateException("Export job already started");
+        }
+        exports.add(export);
+    }
+
+    /** Write a bitmap image - JPG images are saved at full quality
+     *
+     * @param image     The image
+     * @param format    PNG or JPG
+     * @param file      The file to write
+     * @throws IOException  If the image could not be written
+     */
+    static void writeBitmap(BufferedImage image, String format, File file) throws IOException {
+        Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName(format);
+        if (!iter.hasNext()) {
+            throw new IOException("No image writer for " + format);
+        }
+        ImageWriter writer = iter.next();
+        ImageWriteParam iwp = writer.getDefaultWriteParam();
+        if (format.equals("JPG")) {
+            iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            iwp.setCompressionQuality(1);
+        }
+        // Overwrite rather than write over the start of an existing file
+        if (file.exists()) {
+            file.delete();
+        }
+        FileImageOutputStream output = new FileImageOutputStream(file);
+        try {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), iwp);
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RUNNING
+    //////////////////////////////////////////////////////////////
+    /** Set what to call each time an export starts, finishes or fails
+     * @param onChange  Called on the event dispatch thread, or null
+     */
+    void setListener(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /** Start writing every file at once - returns straight away */
+    synchronized void start() {
+        if (startTime != 0) {
+            return;
+        }
+        startTime = System.nanoTime();
+        ExecutorService threads = getPool();
+        for (final Export export : exports) {
+            results.add(threads.submit(new Runnable() {
+
+                public void run() {
+                    export.run();
+                }
+            }));
+        }
+    }
+
+    /** Wait for every file to be written, starting the job if needed
+     * @return  True if every file was written
+     */
+    boolean waitFor() {
+        start();
+        ArrayList<Future<?>> futures;
+        synchronized (this) {
+            futures = new ArrayList<Future<?>>(results);
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                ex.printStackTrace();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return isSuccessful();
+    }
+
+    /** Check if every export has finished
+     * @return  True if every file has been written or has failed
+     */
+    boolean isFinished() {
+        return getCount(DONE) + getCount(FAILED) == exports.size();
+    }
+
+    /** Check if every file has been written
+     * @return  True if every export is done
+     */
+    boolean isSuccessful() {
+        return getCount(DONE) == exports.size();
+    }
+
+    /** Get the part of the job finished
+     * @return  From 0 to 1
+     */
+    float getProgress() {
+        if (exports.isEmpty()) {
+            return 1;
+        }
+        return (float) (getCount(DONE) + getCount(FAILED)) / exports.size();
+    }
+
+    /** Get the exports in the order they were added
+     * @return  The exports
+     */
+    List<Export> getExports() {
+        return Collections.unmodifiableList(exports);
+    }
+
+    /** Get the number of exports in a state */
+    private int getCount(int state) {
+        int count = 0;
+        for (int i = 0; i < exports.size(); i++) {
+            if (exports.get(i).getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void changed() {
+        if (onChange != null) {
+            SwingUtilities.invokeLater(onChange);
+        }
+    }
+
+    /** Get the background threads, starting them the first time */
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Alchemy Export");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /** One file written by the job */
+    abstract class Export {
+
+        private final String format;
+        final File file;
+        private volatile int state = QUEUED;
+        private volatile long startTime,  endTime;
+        private volatile Throwable error;
+
+        Export(String format, File file) {
+            this.format = format;
+            this.file = file;
+        }
+
+        /** Draw the snapshot and write the file */
+        abstract void write() throws Exception;
+
+        private void run() {
+            startTime = System.nanoTime();
+            state = RUNNING;
+            changed();
+            try {
+                write();
+                endTime = System.nanoTime();
+                state = DONE;
+            } catch (Throwable ex) {
+                ex.printStackTrace();
+                error = ex;
+                endTime = System.nanoTime();
+                state = FAILED;
+            }
+            changed();
+        }
+
+        /** Get the format
+         * @return  PNG, JPG, PDF or SVG
+         */
+        String getFormat() {
+            return format;
+        }
+
+        /** Get the file written
+         * @return  The file
+         */
+        File getFile() {
+            return file;
+        }
+
+        /** Get the state
+         * @return  QUEUED, RUNNING, DONE or FAILED
+         */
+        int getState() {
+            return state;
+        }
+
+        /** Get the time spent writing so far
+         * @return  Milliseconds
+         */
+        long getMillis() {
+            if (state == QUEUED) {
+                return 0;
+            }
+            long end = (state == RUNNING) ? System.nanoTime() : endTime;
+            return (end - startTime) / 1000000L;
+        }
+
+        /** Get why the export failed
+         * @return  The error, or null
+         */
+        Throwable getError() {
+            return error;
+        }
+    }
+}
@@ -64,37 +64,13 @@ class AlcFileChooser extends JFileChooser implements AlcConstants {
             // Check the extension is properly added
             File fileWithExtension = AlcUtil.addFileExtension(this.getSelectedFile(), ext);
 
-            if (fileWithExtension.exists()) {
-
-                String title, message;
-                Object[] options = new Object[2];
-                if (Alchemy.OS == OS_MAC) {
-                    title = "";
-                    message =
-                            "<html>" + UIManager.get("OptionPane.css") +
-                            "<b>\"" + fileWithExtension.getName() + "\" " + Alchemy.bundle.getString("existsMacDialogTitle") + "</b>" +
-                            "<p>" + Alchemy.bundle.getString("existsMacDialogMessage");
-                    options[0] = Alchemy.bundle.getString("replace");
-                    options[1] = Alchemy.bundle.getString("cancel");
-                } else {
-                    title = Alchemy.bundle.getString("existsWinDialogTitle");
-                    message = "\"" + fileWithExtension.getName() + "\" " + Alchemy.bundle.getString("existsWinDialogMessage");
-                    options[0] = Alchemy.bundle.getString("yes");
-                    options[1] = Alchemy.bundle.getString("no");
-                }
-
-
-                int result = JOptionPane.showOptionDialog(
-                        Alchemy.window,
-                        message,
-                        title,
-                        JOptionPane.YES_NO_OPTION,
-                        JOptionPane.WARNING_MESSAGE,
-                        null,
-                        options,
-                        options[0]);
-
-                if (result != JOptionPane.YES_OPTION) {
+            // Formats saved together such as "PNG + PDF + SVG" write a file for each
+            String path = fileWithExtension.getPath();
+            path = path.substring(0, path.length() - ext.length());
+            String[] formats = format.split(" \\+ ");
+            for (int i = 0; i < formats.length; i++) {
+                File file = new File(path + formats[i].substring(0, 3).toLowerCase());
+                if (!confirmReplace(file)) {
                     return;
                 }
             }
@@ -102,4 +78,44 @@ class AlcFileChooser extends JFileChooser implements AlcConstants {
         }
         super.approveSelection();
     }
+
+    /** Ask before replacing a file
+     * @param fileWithExtension The file to save
+     * @return                  True if the file does not exist or can be replaced
+     */
+    private boolean confirmReplace(File fileWithExtension) {
+        if (fileWithExtension.exists()) {
+
+            String title, message;
+            Object[] options = new Object[2];
+            if (Alchemy.OS == OS_MAC) {
+                title = "";
+                message =
+                        "<html>" + UIManager.get("OptionPane.css") +
+                        "<b>\"" + fileWithExtension.getName() + "\" " + Alchemy.bundle.getString("existsMacDialogTitle") + "</b>" +
+                        "<p>" + Alchemy.bundle.getString("existsMacDialogMessage");
+                options[0] = Alchemy.bundle.getString("replace");
+                options[1] = Alchemy.bundle.getString("cancel");
+            } else {
+                title = Alchemy.bundle.getString("existsWinDialogTitle");
+                message = "\"" + fileWithExtension.getName() + "\" " + Alchemy.bundle.getString("existsWinDialogMessage");
+                options[0] = Alchemy.bundle.getString("yes");
+                options[1] = Alchemy.bundle.getString("no");
+            }
+
+
+            int result = JOptionPane.showOptionDialog(
+                    Alchemy.window,
+                    message,
+                    title,
+                    JOptionPane.YES_NO_OPTION,
+                    JOptionPane.WARNING_MESSAGE,
+                    null,
+                    options,
+                    options[0]);
+
+            return result == JOptionPane.YES_OPTION;
+        }
+        return true;
+    }
 }
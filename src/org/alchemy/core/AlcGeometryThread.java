@@ -0,0 +1,170 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.geom.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Single thread that modules are called on when they can run away from the event dispatch thread<br>
+ * Mouse and pen events are queued and passed to the modules in order.
+ * Each redraw publishes a frame holding copies of the live shapes,
+ * which the event thread paints while the modules keep working on the originals.
+ */
+class AlcGeometryThread {
+
+    /** Queue of events waiting to be passed to the modules */
+    private final ExecutorService executor;
+    /** The geometry thread, once started */
+    private volatile Thread thread;
+    /** Copies made for the last frame - reused if a shape has not changed since */
+    private IdentityHashMap<AlcShape, Copy> copies = new IdentityHashMap<AlcShape, Copy>();
+    /** Number given to the last frame */
+    private int frameNumber = 0;
+
+    AlcGeometryThread() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                thread = new Thread(r, "Alchemy Geometry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Check if this is the geometry thread
+     * @return  True if called from the geometry thread
+     */
+    boolean isCurrentThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Queue work to be done on the geometry thread
+     * @param task  The work, run after everything queued before it
+     */
+    void post(Runnable task) {
+        executor.execute(task);
+    }
+
+    /** Wait until everything queued has been done.
+     *  Called from the event thread before it changes the live shapes itself.
+     *  The geometry thread never waits on the event thread so this can not deadlock.
+     */
+    void waitForIdle() {
+        if (isCurrentThread()) {
+            return;
+        }
+        try {
+            executor.submit(new Runnable() {
+
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /** Make a frame from the live shapes.
+     *  Called from whichever thread owns the live shapes at the time.
+     *
+     * @param createShapes  The create shapes
+     * @param affectShapes  The affect shapes
+     * @param guideShapes   The guide shapes
+     * @return              A frame holding copies of the shapes
+     */
+    Frame snapshot(List<AlcShape> createShapes, List<AlcShape> affectShapes, List<AlcShape> guideShapes) {
+        IdentityHashMap<AlcShape, Copy> now = new IdentityHashMap<AlcShape, Copy>();
+        Frame frame = new Frame(++frameNumber,
+                copy(createShapes, now), copy(affectShapes, now), copy(guideShapes, now));
+        copies = now;
+        return frame;
+    }
+
+    /** Copy a list of shapes, reusing the copies from the last frame of shapes that have not changed */
+    private ArrayList<AlcShape> copy(List<AlcShape> shapes, IdentityHashMap<AlcShape, Copy> now) {
+        ArrayList<AlcShape> list = new ArrayList<AlcShape>(shapes.size());
+        for (int i = 0; i < shapes.size(); i++) {
+            AlcShape shape = shapes.get(i);
+            Copy copy = copies.get(shape);
+            if (copy == null || !copy.isValid(shape)) {
+                copy = new Copy(shape);
+            }
+            now.put(shape, copy);
+            list.add(copy.shape);
+        }
+        return list;
+    }
+
+    /** A copy of a shape and what it was made from.
+     *  The path is taken to be unchanged while it is the same path
+     *  with the same current point, as in {@link AlcDetail}
+     */
+    static class Copy {
+
+        final AlcShape shape;
+        final GeneralPath path;
+        final Point2D point;
+        final Color color;
+        final GradientPaint gradientPaint;
+        final boolean stamped;
+
+        Copy(AlcShape source) {
+            shape = source.snapshot();
+            path = source.path;
+            point = path.getCurrentPoint();
+            color = source.color;
+            gradientPaint = source.getGradientPaint();
+            stamped = source.getStamp() != null;
+        }
+
+        boolean isValid(AlcShape source) {
+            if (source.path != path || source.color != color || source.alpha != shape.alpha ||
+                    source.style != shape.style || source.lineWidth != shape.lineWidth ||
+                    source.getGradientPaint() != gradientPaint || (source.getStamp() != null) != stamped) {
+                return false;
+            }
+            Point2D current = path.getCurrentPoint();
+            return (current == null) ? point == null : current.equals(point);
+        }
+    }
+
+    /** Copies of the live shapes at one redraw - never changed once made */
+    static class Frame {
+
+        final int number;
+        final List<AlcShape> createShapes;
+        final List<AlcShape> affectShapes;
+        final List<AlcShape> guideShapes;
+
+        Frame(int number, List<AlcShape> createShapes, List<AlcShape> affectShapes, List<AlcShape> guideShapes) {
+            this.number = number;
+            this.createShapes = Collections.unmodifiableList(createShapes);
+            this.affectShapes = Collections.unmodifiableList(affectShapes);
+            this.guideShapes = Collections.unmodifiableList(guideShapes);
+        }
+    }
+}
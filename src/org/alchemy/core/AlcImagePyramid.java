@@ -0,0 +1,270 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.SwingUtilities;
+
+/**
+ * Background image drawn at any scale without keeping a scaled copy of the whole image<br>
+ * Enlarged images are drawn from tiles that are scaled when first seen
+ * and kept in an LRU cache that grows to hold the tiles in view. Reduced images are drawn from a mip pyramid of
+ * half size copies, built on a background thread the first time one is needed.
+ */
+class AlcImagePyramid {
+
+    /** Width and height of a scaled tile */
+    static final int TILE_SIZE = 256;
+    /** Fewest scaled tiles to keep - 48 tiles is 12MB */
+    private static final int MIN_TILES = 48;
+    /** Most scaled tiles to keep unless more are in view at once - 256 tiles is 64MB */
+    private static final int MAX_TILES = 256;
+    /** Smallest level of the pyramid */
+    private static final int MIN_LEVEL_SIZE = 32;
+    /** Shared background thread used to build the pyramids */
+    private static ExecutorService builder;
+    /** The full size image */
+    private final BufferedImage source;
+    /** Half size copies of the image - level 0 is the image itself, null until built */
+    private final BufferedImage[] levels;
+    /** If the levels have been asked to be built */
+    private boolean building = false;
+    /** Called on the event dispatch thread once the levels are ready */
+    private final Runnable onReady;
+    /** Scaled tiles, least recently used first */
+    private final LinkedHashMap<TileKey, BufferedImage> tiles;
+    /** Number of scaled tiles kept - enough for those in view and a ring around them */
+    private int maxTiles = MIN_TILES;
+
+    /** Creates a new pyramid - nothing is scaled until it is drawn
+     *
+     * @param source    The full size image
+     * @param onReady   Called on the event dispatch thread when the reduced levels are ready, or null
+     */
+    AlcImagePyramid(BufferedImage source, Runnable onReady) {
+        this.source = source;
+        this.onReady = onReady;
+        int count = 1;
+        int size = Math.min(source.getWidth(), source.getHeight());
+        while (size / 2 >= MIN_LEVEL_SIZE) {
+            size /= 2;
+            count++;
+        }
+        levels = new BufferedImage[count];
+        levels[0] = source;
+        tiles = new LinkedHashMap<TileKey, BufferedImage>(MIN_TILES + 1, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /** Get the full size image
+     * @return  The image
+     */
+    BufferedImage getSource() {
+        return source;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // DRAWING
+    //////////////////////////////////////////////////////////////
+    /** Draw the part of the image inside the clip of the graphics
+     *
+     * @param g2        Graphics to draw on
+     * @param x         X location of the image
+     * @param y         Y location of the image
+     * @param scale     Scale the image is drawn at
+     */
+    void paint(Graphics2D g2, int x, int y, double scale) {
+        Rectangle area = new Rectangle(x, y,
+                (int) Math.ceil(source.getWidth() * scale), (int) Math.ceil(source.getHeight() * scale));
+        Rectangle clip = g2.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        if (area.isEmpty()) {
+            return;
+        }
+        AffineTransform transform = g2.getTransform();
+        Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        if (scale > 1 && (transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            // Enlarged on screen - draw the visible tiles
+            int firstColumn = (area.x - x) / TILE_SIZE;
+            int firstRow = (area.y - y) / TILE_SIZE;
+            int lastColumn = (area.x + area.width - 1 - x) / TILE_SIZE;
+            int lastRow = (area.y + area.height - 1 - y) / TILE_SIZE;
+            // Painting must not evict the tiles it is about to draw
+            keepTiles((lastColumn - firstColumn + 3) * (lastRow - firstRow + 3));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    g2.drawImage(getTile(scale, column, row), x + column * TILE_SIZE, y + row * TILE_SIZE, null);
+                }
+            }
+
+        } else {
+            // Use the smallest level that still has a pixel for every device pixel
+            double deviceScale = scale * Math.sqrt(Math.abs(transform.getDeterminant()));
+            int level = getLevel(deviceScale);
+            double levelScale = scale * source.getWidth() / levels[level].getWidth();
+            Shape oldClip = g2.getClip();
+            g2.clip(area);
+            g2.translate(x, y);
+            g2.scale(levelScale, levelScale);
+            g2.drawImage(levels[level], 0, 0, null);
+            g2.setTransform(transform);
+            g2.setClip(oldClip);
+        }
+
+        if (interpolation != null) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+
+    /** Keep at least a number of tiles - the cache only ever grows
+     * @param count     Tiles in view and a ring of one tile around them
+     */
+    private synchronized void keepTiles(int count) {
+        if (count > maxTiles) {
+            maxTiles = Math.max(count, Math.min(MAX_TILES, count * 2));
+        }
+    }
+
+    /** Get a tile of the enlarged image, scaling it if it is not cached */
+    private synchronized BufferedImage getTile(double scale, int column, int row) {
+        TileKey key = new TileKey(scale, column, row);
+        BufferedImage tile = tiles.get(key);
+        if (tile == null) {
+            int width = Math.min(TILE_SIZE, (int) Math.ceil(source.getWidth() * scale) - column * TILE_SIZE);
+            int height = Math.min(TILE_SIZE, (int) Math.ceil(source.getHeight() * scale) - row * TILE_SIZE);
+            tile = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g2 = tile.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+            g2.scale(scale, scale);
+            g2.drawImage(source, 0, 0, null);
+            g2.dispose();
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // LEVELS
+    //////////////////////////////////////////////////////////////
+    /** Get the level to draw at a scale - starts building the levels if they are needed
+     *
+     * @param deviceScale   Size of an image pixel in device pixels
+     * @return              The level number, or a larger level if the one wanted is not ready
+     */
+    private synchronized int getLevel(double deviceScale) {
+        int wanted = 0;
+        while (wanted + 1 < levels.length && deviceScale <= 1.0 / (2 << wanted)) {
+            wanted++;
+        }
+        if (wanted > 0 && levels[wanted] == null && !building) {
+            building = true;
+            getBuilder().submit(new Runnable() {
+
+                public void run() {
+                    buildLevels();
+                }
+            });
+        }
+        int level = wanted;
+        while (levels[level] == null) {
+            level--;
+        }
+        return level;
+    }
+
+    /** Make each level by halving the one above */
+    private void buildLevels() {
+        BufferedImage previous = source;
+        for (int i = 1; i < levels.length; i++) {
+            int width = Math.max(1, previous.getWidth() / 2);
+            int height = Math.max(1, previous.getHeight() / 2);
+            BufferedImage level = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g2 = level.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(previous, 0, 0, width, height, null);
+            g2.dispose();
+            synchronized (this) {
+                levels[i] = level;
+            }
+            previous = level;
+        }
+        if (onReady != null) {
+            SwingUtilities.invokeLater(onReady);
+        }
+    }
+
+    /** Get the background thread, starting it the first time */
+    private static synchronized ExecutorService getBuilder() {
+        if (builder == null) {
+            builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Alchemy Image Pyramid");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return builder;
+    }
+
+    /** Key identifying a scaled tile */
+    private static class TileKey {
+
+        final double scale;
+        final int column,  row;
+
+        TileKey(double scale, int column, int row) {
+            this.scale = scale;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey k = (TileKey) o;
+            return scale == k.scale && column == k.column && row == k.row;
+        }
+
+        @Override
+        public int hashCode() {
+            long s = Double.doubleToLongBits(scale);
+            return (int) (s ^ (s >>> 32)) * 31 * 31 + column * 31 + row;
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A layer of shapes on the canvas<br>
+ * Each layer keeps its own shapes and a cached image of them,
+ * so committing to one layer does not redraw the others.
+ * Shapes are in drawing coordinates and the cached image is of the part shown on the canvas.
+ * It is put together from tiles of the drawing, so only tiles not kept from before are drawn
+ * when the drawing is panned.
+ * Layers are blended together by the canvas using their opacity and blend mode.
+ */
+public class AlcLayer implements AlcConstants {
+
+    /** Blend the layer over those below */
+    public static final int BLEND_NORMAL = 0;
+    /** Multiply the layer with those below - darkens */
+    public static final int BLEND_MULTIPLY = 1;
+    /** Screen the layer with those below - lightens */
+    public static final int BLEND_SCREEN = 2;
+    /** Keep the darker of the layer and those below */
+    public static final int BLEND_DARKEN = 3;
+    /** Keep the lighter of the layer and those below */
+    public static final int BLEND_LIGHTEN = 4;
+    /** Shapes on this layer */
+    final ArrayList<AlcShape> shapes = new ArrayList<AlcShape>(100);
+    /** Layer visibility */
+    private boolean visible = true;
+    /** Layer opacity between 0 and 1 */
+    private float opacity = 1F;
+    /** Blend mode used to combine the layer with those below */
+    private int blendMode = BLEND_NORMAL;
+    /** Cached image of the shapes, transparent where there are none */
+    private BufferedImage raster;
+    /** Drawing coordinates of the top left of the cached image */
+    private int rasterX,  rasterY;
+    /** If the cached image matches the shapes */
+    private boolean rasterValid = false;
+    /** If the cached image was drawn in draft quality */
+    private boolean rasterDraft = false;
+    /** Changed each time the shapes or cached image change */
+    private int version = 0;
+    /** Changed each time the shapes change */
+    private int shapesVersion = 0;
+    /** Number of points in the shapes, counted again when the shapes version no longer matches */
+    private int pointCount = 0;
+    private int pointCountVersion = -1;
+    /** Copies of the shapes for snapshots of the canvas - let go if memory runs low */
+    private SoftReference<SnapshotShapes> snapshotShapes;
+    /** Tiles of the shapes, or null to draw the cached image from the shapes each time */
+    private final AlcTileCache tiles;
+    /** Shapes sorted by tile - null until a tile needs drawing */
+    private AlcTileIndex tileIndex;
+    /** If the tiles were drawn with antialiasing */
+    private boolean tilesSmoothed;
+
+    /** Creates a new empty layer */
+    AlcLayer() {
+        this(null);
+    }
+
+    /** Creates a new empty layer
+     * @param tiles Cache to keep tiles of the shapes in, shared with the other layers
+     */
+    AlcLayer(AlcTileCache tiles) {
+        this.tiles = tiles;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SETTINGS
+    //////////////////////////////////////////////////////////////
+    /** Get the shapes on this layer
+     * @return  The shapes
+     */
+    public ArrayList<AlcShape> getShapes() {
+        return shapes;
+    }
+
+    /** Get the layer visibility
+     * @return  True if the layer is drawn
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /** Set the layer visibility
+     * @param visible   Draw the layer or not
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    /** Get the layer opacity
+     * @return  Opacity between 0 and 1
+     */
+    public float getOpacity() {
+        return opacity;
+    }
+
+    /** Set the layer opacity
+     * @param opacity   Opacity between 0 and 1
+     */
+    public void setOpacity(float opacity) {
+        this.opacity = Math.max(0F, Math.min(1F, opacity));
+    }
+
+    /** Get the blend mode
+     * @return  One of the BLEND constants
+     */
+    public int getBlendMode() {
+        return blendMode;
+    }
+
+    /** Set the blend mode
+     * @param blendMode     One of the BLEND constants
+     */
+    public void setBlendMode(int blendMode) {
+        this.blendMode = blendMode;
+    }
+
+    /** Check if the layer can be drawn straight on to the layers below
+     * @return  True if the layer is opaque and uses the normal blend mode
+     */
+    boolean isPlain() {
+        return opacity == 1F && blendMode == BLEND_NORMAL;
+    }
+
+    /** Get the composite used to draw this layer over those below
+     * @return  The composite
+     */
+    Composite getComposite() {
+        return getComposite(blendMode, opacity);
+    }
+
+    /** Get the composite used to draw a layer over those below
+     * @param blendMode     One of the BLEND constants
+     * @param opacity       Opacity between 0 and 1
+     * @return              The composite
+     */
+    static Composite getComposite(int blendMode, float opacity) {
+        if (blendMode == BLEND_NORMAL) {
+            return AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity);
+        }
+        return new AlcBlendComposite(blendMode, opacity);
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RASTER
+    //////////////////////////////////////////////////////////////
+    /** Mark the cached image as out of date - call when shapes have been changed or removed */
+    void invalidate() {
+        rasterValid = false;
+        version++;
+        shapesVersion++;
+        disposeTiles();
+    }
+
+    /** Free the tiles of the shapes - call when the layer is removed */
+    void disposeTiles() {
+        if (tiles != null) {
+            tiles.remove(this);
+        }
+        tileIndex = null;
+    }
+
+    /** Check if the cached image matches the shapes
+     * @return  True if the cached image is up to date
+     */
+    boolean isValid() {
+        return rasterValid;
+    }
+
+    /** Check if the cached image was drawn in draft quality and should be refined
+     * @return  True if the cached image is a draft
+     */
+    boolean isDraft() {
+        return rasterValid && rasterDraft;
+    }
+
+    /** Get the version of the layer - changed each time the shapes or cached image change
+     * @return  The version
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /** Add shapes to this layer and draw them onto the cached image if it is up to date
+     *
+     * @param added     The shapes to add
+     * @param under     Add the shapes below the existing shapes rather than on top
+     * @param renderer  Renderer used to draw the shapes
+     */
+    void commit(List<AlcShape> added, boolean under, AlcRenderer renderer) {
+        if (added.isEmpty()) {
+            return;
+        }
+        // Shapes added to the top can be added to the copies for snapshots
+        SnapshotShapes snapshot = (snapshotShapes == null) ? null : snapshotShapes.get();
+        boolean addToSnapshot = snapshot != null && snapshot.version == shapesVersion && !under;
+        boolean addToCount = pointCountVersion == shapesVersion;
+        version++;
+        shapesVersion++;
+        if (addToCount) {
+            pointCount += countPoints(added, 0, added.size());
+            pointCountVersion = shapesVersion;
+        }
+        if (under) {
+            shapes.addAll(0, added);
+        } else {
+            shapes.addAll(added);
+        }
+        if (addToSnapshot) {
+            snapshot.add(added, shapesVersion);
+        }
+        if (rasterValid) {
+            Graphics2D g2 = raster.createGraphics();
+            renderer.setupGraphics(g2);
+            g2.translate(-rasterX, -rasterY);
+            if (under) {
+                // Draw behind what is there, topmost shape first
+                g2.setComposite(AlphaComposite.DstOver);
+                ArrayList<AlcShape> reversed = new ArrayList<AlcShape>(added.size());
+                for (int i = added.size() - 1; i >= 0; i--) {
+                    reversed.add(added.get(i));
+                }
+                renderer.paintShapes(g2, reversed, raster.getWidth(), raster.getHeight());
+            } else {
+                renderer.paintShapes(g2, added, raster.getWidth(), raster.getHeight());
+            }
+            g2.dispose();
+        }
+        commitTiles(added, under, renderer);
+    }
+
+    /** Add shapes to the tiles, drawing them onto the tiles in memory
+     *  and removing those written out so they are drawn again
+     */
+    private void commitTiles(List<AlcShape> added, boolean under, AlcRenderer renderer) {
+        if (tiles == null) {
+            return;
+        }
+        AlcTileIndex addedIndex = new AlcTileIndex(added);
+        if (under) {
+            // Below the shapes already there, so the tiles are drawn again
+            tileIndex = null;
+        } else if (tileIndex != null) {
+            tileIndex.add(added);
+        }
+        for (Long key : addedIndex.getTiles()) {
+            int column = AlcTileIndex.getColumn(key);
+            int row = AlcTileIndex.getRow(key);
+            BufferedImage tile = under ? null : tiles.getResident(this, column, row);
+            if (tile != null && tilesSmoothed == renderer.isSmoothing()) {
+                addedIndex.paintTile(tile, column, row, renderer);
+            } else {
+                tiles.invalidate(this, column, row);
+            }
+        }
+    }
+
+    /** Remove the oldest shapes from this layer.
+     *  Only the area they covered is redrawn on the cached image.
+     *
+     * @param count     The number of shapes to remove from the bottom of the layer
+     * @param renderer  Renderer used to redraw the area
+     */
+    void removeOldest(int count, AlcRenderer renderer) {
+        count = Math.min(count, shapes.size());
+        if (count <= 0) {
+            return;
+        }
+        // Area covered by the shapes being removed
+        Rectangle2D area = null;
+        for (int i = 0; i < count; i++) {
+            Rectangle2D bounds = shapes.get(i).getPaintedBounds();
+            if (area == null) {
+                area = bounds;
+            } else {
+                area.add(bounds);
+            }
+        }
+        boolean removeFromCount = pointCountVersion == shapesVersion;
+        if (removeFromCount) {
+            pointCount -= countPoints(shapes, 0, count);
+        }
+        shapes.subList(0, count).clear();
+        version++;
+        shapesVersion++;
+        if (removeFromCount) {
+            pointCountVersion = shapesVersion;
+        }
+
+        if (tiles != null) {
+            tiles.invalidate(this, area.getBounds());
+            tileIndex = null;
+        }
+
+        if (rasterValid) {
+            Rectangle clip = area.getBounds().intersection(new Rectangle(rasterX, rasterY, raster.getWidth(), raster.getHeight()));
+            if (clip.isEmpty()) {
+                return;
+            }
+            // Redraw the shapes left in the area
+            ArrayList<AlcShape> overlapping = new ArrayList<AlcShape>();
+            for (int i = 0; i < shapes.size(); i++) {
+                if (shapes.get(i).getPaintedBounds().intersects(clip)) {
+                    overlapping.add(shapes.get(i));
+                }
+            }
+            Graphics2D g2 = raster.createGraphics();
+            g2.translate(-rasterX, -rasterY);
+            g2.setClip(clip);
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fill(clip);
+            g2.setComposite(AlphaComposite.SrcOver);
+            renderer.setupGraphics(g2);
+            renderer.paintShapes(g2, overlapping, raster.getWidth(), raster.getHeight());
+            g2.dispose();
+        }
+    }
+
+    /** Get the number of points in the shapes on this layer.
+     *  Kept up to date as shapes are committed or removed, and only counted again
+     *  after the shapes have been changed in other ways.
+     * @return  The number of points
+     */
+    int getPointCount() {
+        if (pointCountVersion != shapesVersion) {
+            pointCount = countPoints(shapes, 0, shapes.size());
+            pointCountVersion = shapesVersion;
+        }
+        return pointCount;
+    }
+
+    private static int countPoints(List<AlcShape> list, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count += list.get(i).getTotalPoints();
+        }
+        return count;
+    }
+
+    /** Get copies of the shapes that never change, for a snapshot of the canvas.
+     *  Quick when the shapes have only been added to the top since the last call,
+     *  otherwise copies are made again of the shapes that have changed.
+     * @return  Copies of the shapes
+     */
+    AlcVector<AlcShape> getSnapshotShapes() {
+        SnapshotShapes snapshot = (snapshotShapes == null) ? null : snapshotShapes.get();
+        if (snapshot == null || snapshot.version != shapesVersion) {
+            snapshot = new SnapshotShapes(shapes, shapesVersion, snapshot);
+            snapshotShapes = new SoftReference<SnapshotShapes>(snapshot);
+        }
+        return snapshot.shapes;
+    }
+
+    /** Get the cached image of the layer, redrawing it if it is out of date or of another part of the drawing.
+     *  Drafts are drawn from the shapes, otherwise it is put together from the tiles.
+     *
+     * @param renderer  Renderer used to draw the shapes
+     * @param x         Drawing x coordinate of the top left of the canvas
+     * @param y         Drawing y coordinate of the top left of the canvas
+     * @param width     Width of the canvas
+     * @param height    Height of the canvas
+     * @return          The image of the shapes
+     */
+    BufferedImage getRaster(AlcRenderer renderer, int x, int y, int width, int height) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (raster == null || raster.getWidth() != width || raster.getHeight() != height) {
+            raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            rasterValid = false;
+        }
+        if (!rasterValid || rasterX != x || rasterY != y) {
+            Graphics2D g2 = raster.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, width, height);
+            g2.setComposite(AlphaComposite.SrcOver);
+            if (tiles == null || renderer.isDraft()) {
+                renderer.setupGraphics(g2);
+                g2.translate(-x, -y);
+                renderer.paintShapes(g2, shapes, width, height);
+            } else {
+                paintTiles(g2, renderer, x, y, width, height);
+            }
+            g2.dispose();
+            rasterX = x;
+            rasterY = y;
+            rasterValid = true;
+            rasterDraft = renderer.isDraft();
+            version++;
+        }
+        return raster;
+    }
+
+    /** Draw the part of the layer shown on the canvas from its tiles, drawing the tiles not yet kept.
+     *  The tiles are drawn with the composite of the graphics.
+     *
+     * @param g2        Graphics to draw on - not transformed
+     * @param renderer  Renderer used to draw the tiles not yet kept
+     * @param x         Drawing x coordinate of the top left of the canvas
+     * @param y         Drawing y coordinate of the top left of the canvas
+     * @param width     Width of the canvas
+     * @param height    Height of the canvas
+     */
+    void paintTiles(Graphics2D g2, AlcRenderer renderer, int x, int y, int width, int height) {
+        if (tiles == null) {
+            AffineTransform transform = g2.getTransform();
+            renderer.setupGraphics(g2);
+            g2.translate(-x, -y);
+            renderer.paintShapes(g2, shapes, width, height);
+            g2.setTransform(transform);
+            return;
+        }
+        if (tilesSmoothed != renderer.isSmoothing()) {
+            disposeTiles();
+            tilesSmoothed = renderer.isSmoothing();
+        }
+        int size = AlcTileCache.TILE_SIZE;
+        int firstColumn = AlcTileCache.floorDiv(x, size);
+        int firstRow = AlcTileCache.floorDiv(y, size);
+        int lastColumn = AlcTileCache.floorDiv(x + width - 1, size);
+        int lastRow = AlcTileCache.floorDiv(y + height - 1, size);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                BufferedImage tile = tiles.get(this, column, row);
+                if (tile == null) {
+                    if (tileIndex == null) {
+                        tileIndex = new AlcTileIndex(shapes);
+                    }
+                    // Tiles without shapes are not kept
+                    if (tileIndex.isEmpty(column, row)) {
+                        continue;
+                    }
+                    tile = tiles.create(this, column, row);
+                    tileIndex.paintTile(tile, column, row, renderer);
+                }
+                g2.drawImage(tile, column * size - x, row * size - y, null);
+            }
+        }
+    }
+
+    /** Draw shapes into a new image for {@link #refine(BufferedImage, int, int, int)}.
+     *  Can be called away from the event thread with a copy of the shapes and its own renderer.
+     *
+     * @param shapes    The shapes to draw
+     * @param renderer  Renderer used to draw the shapes
+     * @param x         Drawing x coordinate of the top left of the canvas
+     * @param y         Drawing y coordinate of the top left of the canvas
+     * @param width     Width of the canvas
+     * @param height    Height of the canvas
+     * @return          The image of the shapes
+     */
+    static BufferedImage renderRaster(List<AlcShape> shapes, AlcRenderer renderer, int x, int y, int width, int height) {
+        BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = image.createGraphics();
+        renderer.setupGraphics(g2);
+        g2.translate(-x, -y);
+        renderer.paintShapes(g2, shapes, width, height);
+        g2.dispose();
+        return image;
+    }
+
+    /** Replace a draft cached image with one drawn at full quality
+     *
+     * @param image     The full quality image
+     * @param x         Drawing x coordinate the image was drawn from
+     * @param y         Drawing y coordinate the image was drawn from
+     * @param version   Version of the layer the image was drawn from
+     * @return          True if the image was used, false if the layer has changed since
+     */
+    boolean refine(BufferedImage image, int x, int y, int version) {
+        if (version != this.version || !isDraft() || x != rasterX || y != rasterY ||
+                image.getWidth() != raster.getWidth() || image.getHeight() != raster.getHeight()) {
+            return false;
+        }
+        raster = image;
+        rasterDraft = false;
+        this.version++;
+        return true;
+    }
+
+    /** Draw the layer from its cached image
+     *
+     * @param g2        Graphics to draw on - must not be transformed
+     * @param renderer  Renderer used if the image needs to be redrawn
+     * @param x         Drawing x coordinate of the top left of the canvas
+     * @param y         Drawing y coordinate of the top left of the canvas
+     * @param width     Width of the canvas
+     * @param height    Height of the canvas
+     */
+    void paintRaster(Graphics2D g2, AlcRenderer renderer, int x, int y, int width, int height) {
+        BufferedImage image = getRaster(renderer, x, y, width, height);
+        Composite oldComposite = g2.getComposite();
+        g2.setComposite(getComposite());
+        g2.drawImage(image, 0, 0, null);
+        g2.setComposite(oldComposite);
+    }
+
+    /** Draw the layer from its shapes - used when the cached image can not be, such as scaled or vector output
+     *
+     * @param g2        Graphics to draw on
+     * @param renderer  Renderer used to draw the shapes
+     * @param x         Drawing x coordinate of the top left of the canvas
+     * @param y         Drawing y coordinate of the top left of the canvas
+     * @param width     Width of the canvas
+     * @param height    Height of the canvas
+     * @param bitmap    If drawing to a bitmap - otherwise only the opacity is kept
+     */
+    void paintShapes(Graphics2D g2, AlcRenderer renderer, int x, int y, int width, int height, boolean bitmap) {
+        paintShapes(g2, shapes, opacity, blendMode, renderer, x, y, width, height, bitmap);
+    }
+
+    /** Draw shapes as a layer would be drawn
+     *
+     * @param g2        Graphics to draw on
+     * @param shapes    The shapes of the layer
+     * @param opacity   Opacity of the layer
+     * @param blendMode Blend mode of the layer
+     * @param renderer  Renderer used to draw the shapes
+     * @param x         Drawing x coordinate of the top left of the canvas
+     * @param y         Drawing y coordinate of the top left of the canvas
+     * @param width     Width of the canvas
+     * @param height    Height of the canvas
+     * @param bitmap    If drawing to a bitmap - otherwise only the opacity is kept
+     */
+    static void paintShapes(Graphics2D g2, List<AlcShape> shapes, float opacity, int blendMode,
+            AlcRenderer renderer, int x, int y, int width, int height, boolean bitmap) {
+        Composite oldComposite = g2.getComposite();
+        AffineTransform transform = g2.getTransform();
+        if (opacity == 1F && blendMode == BLEND_NORMAL) {
+            g2.translate(-x, -y);
+            renderer.paintShapes(g2, shapes, width, height);
+
+        } else if (!bitmap) {
+            // Vector formats only support transparency
+            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+            g2.translate(-x, -y);
+            renderer.paintShapes(g2, shapes, width, height);
+
+        } else {
+            // Draw the shapes at the device resolution then blend them in one go
+            Rectangle area = transform.createTransformedShape(new Rectangle(0, 0, width, height)).getBounds();
+            BufferedImage image = new BufferedImage(Math.max(1, area.width), Math.max(1, area.height), BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D layerGraphics = image.createGraphics();
+            renderer.setupGraphics(layerGraphics);
+            layerGraphics.translate(-area.x, -area.y);
+            layerGraphics.transform(transform);
+            layerGraphics.translate(-x, -y);
+            renderer.paintShapes(layerGraphics, shapes, width, height);
+            layerGraphics.dispose();
+            try {
+                g2.transform(transform.createInverse());
+                g2.setComposite(getComposite(blendMode, opacity));
+                g2.drawImage(image, area.x, area.y, null);
+            } catch (NoninvertibleTransformException ex) {
+                ex.printStackTrace();
+            }
+        }
+        g2.setTransform(transform);
+        g2.setComposite(oldComposite);
+    }
+
+    /** Copies of the shapes that never change, made for snapshots */
+    private static class SnapshotShapes {
+
+        /** Shapes version the copies were made from */
+        int version;
+        AlcVector<AlcShape> shapes;
+        /** Copy of each shape, reused if the shape has not changed */
+        final IdentityHashMap<AlcShape, AlcGeometryThread.Copy> copies;
+
+        SnapshotShapes(List<AlcShape> source, int version, SnapshotShapes last) {
+            this.version = version;
+            copies = new IdentityHashMap<AlcShape, AlcGeometryThread.Copy>(source.size() * 2);
+            AlcVector<AlcShape> vector = AlcVector.empty();
+            for (int i = 0; i < source.size(); i++) {
+                AlcShape shape = source.get(i);
+                AlcGeometryThread.Copy copy = (last == null) ? null : last.copies.get(shape);
+                if (copy == null || !copy.isValid(shape)) {
+                    copy = new AlcGeometryThread.Copy(shape);
+                }
+                copies.put(shape, copy);
+                vector = vector.plus(copy.shape);
+            }
+            shapes = vector;
+        }
+
+        /** Add copies of shapes added to the top */
+        void add(List<AlcShape> added, int version) {
+            for (int i = 0; i < added.size(); i++) {
+                AlcShape shape = added.get(i);
+                AlcGeometryThread.Copy copy = new AlcGeometryThread.Copy(shape);
+                copies.put(shape, copy);
+                shapes = shapes.plus(copy.shape);
+            }
+            this.version = version;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import java.awt.print.*;
 import java.io.File;
 import java.io.IOException;
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 
 /** 
  * Menubar for Alchemy
@@ -47,6 +49,8 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
     AlcCheckBoxMenuItem fullScreenItem, transparentItem;
     /** Export dialog to set image size */
     private AlcExportDialog exportDialog;
+    /** Export file filter for PNG, PDF and SVG at once */
+    private static final String EXPORT_ALL = "PNG + PDF + SVG";
 
     /** Creates a new instance of AlcMenuBar */
     AlcMenuBar() {
@@ -87,7 +91,7 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
 
             public void actionPerformed(ActionEvent e) {
 
-                if (Alchemy.canvas.shapes.size() > 0) {
+                if (Alchemy.canvas.getShapeCount() > 0) {
 
                     boolean result = AlcUtil.showConfirmDialogFromBundle("newWinDialogTitle", "newWinDialogMessage", "newMacDialogTitle", "newMacDialogMessage");
                     if (result) {
@@ -217,6 +221,30 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         flipVerticalItem.setup(flipVerticalTitle, flipVerticalKey);
         editMenu.add(flipVerticalItem);
 
+        editMenu.add(new JSeparator());
+
+        // Layers submenu - rebuilt each time it is shown to list the current layers
+        final AlcMenu layersMenu = new AlcMenu(getS("layersTitle"));
+        // Set the opacity and color of this to overide the defaults used for the top menus
+        if (Alchemy.OS != OS_LINUX) {
+            layersMenu.setOpaque(true);
+            layersMenu.setBackground(AlcToolBar.COLOR_UI_HIGHLIGHT);
+        }
+        layersMenu.addMenuListener(new MenuListener() {
+
+            public void menuSelected(MenuEvent e) {
+                refreshLayersMenu(layersMenu);
+            }
+
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
+        layersMenu.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 5));
+        editMenu.add(layersMenu);
+
         this.add(editMenu);
 
 
@@ -269,6 +297,18 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         transparentItem.setup(transparentTitle, transparentKey);
         viewMenu.add(transparentItem);
 
+        // Performance HUD
+        AbstractAction performanceAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                AlcCheckBoxMenuItem source = (AlcCheckBoxMenuItem) e.getSource();
+                Alchemy.canvas.setPerformanceDisplay(source.getState());
+            }
+        };
+        AlcCheckBoxMenuItem performanceItem = new AlcCheckBoxMenuItem(performanceAction);
+        performanceItem.setup(getS("performanceTitle"));
+        viewMenu.add(performanceItem);
+
         viewMenu.add(new JSeparator());
 
         // Load Background Image
@@ -678,6 +718,61 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         lineSmoothingItem.setup(getS("lineSmoothingTitle"));
         settingsMenu.add(lineSmoothingItem);
 
+        // Progressive Rendering
+        AbstractAction progressiveAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                AlcCheckBoxMenuItem source = (AlcCheckBoxMenuItem) e.getSource();
+                Alchemy.canvas.setProgressive(source.getState());
+            }
+        };
+        AlcCheckBoxMenuItem progressiveItem = new AlcCheckBoxMenuItem(progressiveAction);
+        progressiveItem.setSelected(Alchemy.preferences.progressiveRendering);
+        progressiveItem.setup(getS("progressiveTitle"));
+        settingsMenu.add(progressiveItem);
+
+        // Threaded Geometry
+        AbstractAction threadedGeometryAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                AlcCheckBoxMenuItem source = (AlcCheckBoxMenuItem) e.getSource();
+                Alchemy.canvas.setThreadedGeometry(source.getState());
+            }
+        };
+        AlcCheckBoxMenuItem threadedGeometryItem = new AlcCheckBoxMenuItem(threadedGeometryAction);
+        threadedGeometryItem.setSelected(Alchemy.preferences.threadedGeometry);
+        threadedGeometryItem.setup(getS("threadedGeometryTitle"));
+        settingsMenu.add(threadedGeometryItem);
+
+        // Simplify submenu
+        AlcMenu simplifyMenu = new AlcMenu(getS("simplifyTitle"));
+        // Set the opacity and color of this to overide the defaults used for the top menus
+        if (Alchemy.OS != OS_LINUX) {
+            simplifyMenu.setOpaque(true);
+            simplifyMenu.setBackground(AlcToolBar.COLOR_UI_HIGHLIGHT);
+        }
+        final float[] simplifyTolerance = {0F, 0.25F, 0.5F, 1F, 2F};
+        ButtonGroup simplifyGroup = new ButtonGroup();
+        for (int i = 0; i < simplifyTolerance.length; i++) {
+            String simplifyString = (i == 0) ? getS("simplifyOff") : simplifyTolerance[i] + " px";
+            AlcRadioButtonMenuItem simplifyItem = new AlcRadioButtonMenuItem(i, simplifyString);
+            // Set the default value to selected
+            if (Alchemy.preferences.simplifyTolerance == simplifyTolerance[i]) {
+                simplifyItem.setSelected(true);
+            }
+            simplifyItem.addActionListener(new ActionListener() {
+
+                public void actionPerformed(ActionEvent e) {
+                    AlcRadioButtonMenuItem source = (AlcRadioButtonMenuItem) e.getSource();
+                    Alchemy.canvas.setSimplifyTolerance(simplifyTolerance[source.getIndex()]);
+                }
+            });
+            simplifyGroup.add(simplifyItem);
+            simplifyMenu.add(simplifyItem);
+        }
+        simplifyMenu.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 5));
+        settingsMenu.add(simplifyMenu);
+
         settingsMenu.add(new JSeparator());
 
         // Keyboard Shortcuts
@@ -788,6 +883,131 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         this.add(helpMenu);
     }
 
+    /** Fill the layers menu with the current layers and the settings of the active layer */
+    private void refreshLayersMenu(AlcMenu layersMenu) {
+        layersMenu.removeAll();
+        final AlcLayer activeLayer = Alchemy.canvas.getActiveLayer();
+
+        // New Layer
+        AbstractAction newLayerAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                Alchemy.canvas.addLayer();
+            }
+        };
+        AlcMenuItem newLayerItem = new AlcMenuItem(newLayerAction);
+        newLayerItem.setup(getS("newLayerTitle"));
+        layersMenu.add(newLayerItem);
+
+        // Delete Layer
+        AbstractAction deleteLayerAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                if (activeLayer.shapes.isEmpty() || AlcUtil.showConfirmDialogFromBundle("deleteLayerDialogTitle", "deleteLayerDialogMessage")) {
+                    Alchemy.canvas.removeLayer();
+                }
+            }
+        };
+        AlcMenuItem deleteLayerItem = new AlcMenuItem(deleteLayerAction);
+        deleteLayerItem.setup(getS("deleteLayerTitle"));
+        deleteLayerItem.setEnabled(Alchemy.canvas.getLayerCount() > 1);
+        layersMenu.add(deleteLayerItem);
+
+        layersMenu.add(new JSeparator());
+
+        // The layers, top layer first
+        ButtonGroup layerGroup = new ButtonGroup();
+        for (int i = Alchemy.canvas.getLayerCount() - 1; i >= 0; i--) {
+            String layerString = getS("layerTitle") + " " + (i + 1);
+            if (!Alchemy.canvas.getLayer(i).isVisible()) {
+                layerString += " (" + getS("layerHidden") + ")";
+            }
+            AlcRadioButtonMenuItem layerItem = new AlcRadioButtonMenuItem(i, layerString);
+            if (i == Alchemy.canvas.getActiveLayerIndex()) {
+                layerItem.setSelected(true);
+            }
+            layerItem.addActionListener(new ActionListener() {
+
+                public void actionPerformed(ActionEvent e) {
+                    AlcRadioButtonMenuItem source = (AlcRadioButtonMenuItem) e.getSource();
+                    Alchemy.canvas.setActiveLayer(source.getIndex());
+                }
+            });
+            layerGroup.add(layerItem);
+            layersMenu.add(layerItem);
+        }
+
+        layersMenu.add(new JSeparator());
+
+        // Hide Layer
+        AbstractAction hideLayerAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                AlcCheckBoxMenuItem source = (AlcCheckBoxMenuItem) e.getSource();
+                activeLayer.setVisible(!source.getState());
+                Alchemy.canvas.refreshLayers();
+            }
+        };
+        AlcCheckBoxMenuItem hideLayerItem = new AlcCheckBoxMenuItem(hideLayerAction);
+        hideLayerItem.setup(getS("hideLayerTitle"));
+        hideLayerItem.setState(!activeLayer.isVisible());
+        layersMenu.add(hideLayerItem);
+
+        // Opacity submenu
+        AlcMenu opacityMenu = new AlcMenu(getS("layerOpacityTitle"));
+        if (Alchemy.OS != OS_LINUX) {
+            opacityMenu.setOpaque(true);
+            opacityMenu.setBackground(AlcToolBar.COLOR_UI_HIGHLIGHT);
+        }
+        final float[] opacity = {1F, 0.75F, 0.5F, 0.25F};
+        ButtonGroup opacityGroup = new ButtonGroup();
+        for (int i = 0; i < opacity.length; i++) {
+            AlcRadioButtonMenuItem opacityItem = new AlcRadioButtonMenuItem(i, Math.round(opacity[i] * 100) + "%");
+            if (activeLayer.getOpacity() == opacity[i]) {
+                opacityItem.setSelected(true);
+            }
+            opacityItem.addActionListener(new ActionListener() {
+
+                public void actionPerformed(ActionEvent e) {
+                    AlcRadioButtonMenuItem source = (AlcRadioButtonMenuItem) e.getSource();
+                    activeLayer.setOpacity(opacity[source.getIndex()]);
+                    Alchemy.canvas.refreshLayers();
+                }
+            });
+            opacityGroup.add(opacityItem);
+            opacityMenu.add(opacityItem);
+        }
+        opacityMenu.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 5));
+        layersMenu.add(opacityMenu);
+
+        // Blend mode submenu
+        AlcMenu blendMenu = new AlcMenu(getS("layerBlendTitle"));
+        if (Alchemy.OS != OS_LINUX) {
+            blendMenu.setOpaque(true);
+            blendMenu.setBackground(AlcToolBar.COLOR_UI_HIGHLIGHT);
+        }
+        String[] blendModes = {"blendNormal", "blendMultiply", "blendScreen", "blendDarken", "blendLighten"};
+        ButtonGroup blendGroup = new ButtonGroup();
+        for (int i = 0; i < blendModes.length; i++) {
+            AlcRadioButtonMenuItem blendItem = new AlcRadioButtonMenuItem(i, getS(blendModes[i]));
+            if (activeLayer.getBlendMode() == i) {
+                blendItem.setSelected(true);
+            }
+            blendItem.addActionListener(new ActionListener() {
+
+                public void actionPerformed(ActionEvent e) {
+                    AlcRadioButtonMenuItem source = (AlcRadioButtonMenuItem) e.getSource();
+                    activeLayer.setBlendMode(source.getIndex());
+                    Alchemy.canvas.refreshLayers();
+                }
+            });
+            blendGroup.add(blendItem);
+            blendMenu.add(blendItem);
+        }
+        blendMenu.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 5));
+        layersMenu.add(blendMenu);
+    }
+
     /** Get a string from the resource bundle */
     private String getS(String stringName) {
         return Alchemy.bundle.getString(stringName);
@@ -848,6 +1068,7 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
 //        fc.setFileFilter(new ExportFileFilter("GIF"));
         fc.setFileFilter(new ExportFileFilter("PDF"));
         fc.setFileFilter(new ExportFileFilter("SVG"));
+        fc.setFileFilter(new ExportFileFilter(EXPORT_ALL));
         fc.setSelectedFile(new File(Alchemy.bundle.getString("defaultFileName")));
 
         // in response to a button click:
@@ -861,7 +1082,9 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
             }
             String format = fc.getFileFilter().getDescription();
 
-            if (format.equals("PDF")) {
+            if (format.equals(EXPORT_ALL)) {
+                exportAll(file);
+            } else if (format.equals("PDF")) {
                 Alchemy.session.saveSinglePdf(file);
             } else if (format.equals("SVG")) {
                 Alchemy.session.saveSVG(file);
@@ -874,6 +1097,55 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         }
     }
 
+    /** Export the canvas as PNG, PDF and SVG at once, in the background
+     * @param file  The file name to use, the extension is replaced for each format
+     */
+    private void exportAll(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        File parent = file.getParentFile();
+        final AlcExportJob job = new AlcExportJob(Alchemy.canvas.getSnapshot());
+        job.addBitmap(new File(parent, name + ".png"), "PNG", 1, false);
+        job.addPdf(new File(parent, name + ".pdf"));
+        job.addSvg(new File(parent, name + ".svg"));
+        job.setListener(new Runnable() {
+
+            private boolean reported = false;
+
+            public void run() {
+                if (job.isFinished() && !reported) {
+                    reported = true;
+                    StringBuilder message = new StringBuilder();
+                    if (job.isSuccessful()) {
+                        message.append(Alchemy.bundle.getString("exportAllDoneMessage"));
+                        for (AlcExportJob.Export export : job.getExports()) {
+                            message.append("\n").append(export.getFile().getName());
+                        }
+                        JOptionPane.showMessageDialog(Alchemy.window, message.toString(),
+                                Alchemy.bundle.getString("exportFileTitle"), JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        message.append(Alchemy.bundle.getString("imageExportErrorDialogMessage"));
+                        for (AlcExportJob.Export export : job.getExports()) {
+                            if (export.getState() == AlcExportJob.FAILED) {
+                                message.append("\n").append(export.getFile().getName());
+                                Throwable error = export.getError();
+                                if (error != null && error.getMessage() != null) {
+                                    message.append(": ").append(error.getMessage());
+                                }
+                            }
+                        }
+                        JOptionPane.showMessageDialog(Alchemy.window, message.toString(),
+                                Alchemy.bundle.getString("imageExportErrorDialogTitle"), JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }
+        });
+        job.start();
+    }
+
     /** Copy the canvas to the clipboard as an image */
     private void copy() {
         // TODO - Implement Vector clipboard copy function
@@ -881,9 +1153,7 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
 
         // A bug on mac with older versions of java can scramble the clipboard
         // fixed in Java 1.5 Release 3 (4238470)
-        Alchemy.canvas.setGuide(false);
-        AlcUtil.setClipboard(new AlcImageTransferable(Alchemy.canvas.renderCanvas(true)), Alchemy.window);
-        Alchemy.canvas.setGuide(true);
+        AlcUtil.setClipboard(new AlcImageTransferable(Alchemy.canvas.getSnapshot().renderImage(1, false)), Alchemy.window);
     }
 
     /** Make a temporary file, create a PDF, and then open it */
@@ -21,8 +21,11 @@ package org.alchemy.core;
 
 import java.awt.event.MouseEvent;
 import java.awt.event.KeyEvent;
+import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.ResourceBundle;
+import javax.swing.SwingUtilities;
 
 /**
  * The Alchemy Module Class
@@ -72,6 +75,12 @@ public abstract class AlcModule implements AlcConstants {
     private boolean loaded = false;
     /** Sort order variable determines the order of display in the popup menu */
     private int sortIndex = -1;
+    /** Set once {@link #prepare()} has finished - straight away if the module does not override it */
+    private volatile boolean prepared = !overridesPrepare(getClass());
+    /** Held while the module is being prepared */
+    private final Object prepareLock = new Object();
+    /** Called on the event dispatch thread once the module is prepared */
+    private ArrayList<Runnable> preparedListeners;
 
     //////////////////////////////////////////////////////////////
     // STRUCTURE
@@ -96,6 +105,20 @@ public abstract class AlcModule implements AlcConstants {
     protected void setup() {
     }
 
+    /** Called once on a background thread after the window is shown,
+     *  before the module is first selected.
+     * <p>
+     *  Override this for slow setup that does not need the interface,
+     *  such as reading files, listing fonts or building tables, and keep
+     *  {@link #setup()} for adding interface elements.
+     *  While the module is being prepared it is shown as loading in the toolbar.
+     *  If it is selected before it is ready, {@link #setup()} waits for this to finish.
+     * <p>
+     *  Do not touch Swing components or the canvas from this function.
+     */
+    protected void prepare() {
+    }
+
     /** Called when the module is reselected in the menu. 
      *  i.e. the module is turned off then on again.
      */
@@ -125,6 +148,32 @@ public abstract class AlcModule implements AlcConstants {
     protected void commited() {
     }
 
+    /** Check if this module can be called on the geometry thread.
+     * <p>
+     *  When threaded geometry is on and the current create module and all active
+     *  affect modules return true, the mouse and pen callbacks, {@link #affect()}
+     *  and {@link #commited()} are called in order on a single geometry thread
+     *  rather than the event dispatch thread. Each call to canvas.redraw() publishes
+     *  a copy of the create, affect and guide shapes which the canvas paints,
+     *  so slow work in the module does not hold up painting.
+     * <p>
+     *  A module that returns true must:
+     * <ul>
+     * <li>Only change the canvas create, affect and guide shapes from these callbacks,
+     *  or call canvas.finishGeometry() first when changing them from elsewhere</li>
+     * <li>Take the location from the MouseEvent or {@link #penSample} rather than the canvas</li>
+     * <li>Not touch Swing components from these callbacks - use SwingUtilities.invokeLater</li>
+     * </ul>
+     *  Everything else, such as {@link #setup()}, {@link #cleared()} and toolbar listeners,
+     *  stays on the event dispatch thread. Setup, reselect, deselect and cleared
+     *  are only called once the geometry thread has finished the queued events.
+     *
+     * @return  True if this module can be called on the geometry thread - false by default
+     */
+    public boolean isGeometryThreadSafe() {
+        return false;
+    }
+
     /**
      *  Apply affect.
      * <p>
@@ -271,6 +320,75 @@ public abstract class AlcModule implements AlcConstants {
     void setSortOrderIndex(int i) {
         this.sortIndex = i;
     }
+
+    //////////////////////////////////////////////////////////////
+    // PREPARE
+    //////////////////////////////////////////////////////////////
+    /** Check if the module has been prepared and can be set up without waiting
+     * @return  True if {@link #prepare()} has finished or there is nothing to prepare
+     */
+    boolean isPrepared() {
+        return prepared;
+    }
+
+    /** Run {@link #prepare()} if it has not been run yet.
+     *  Can be called on any thread - waits if the module is being prepared on another thread.
+     */
+    void prepareModule() {
+        if (prepared) {
+            return;
+        }
+        ArrayList<Runnable> listeners;
+        synchronized (prepareLock) {
+            if (prepared) {
+                return;
+            }
+            try {
+                prepare();
+            } catch (Throwable ex) {
+                System.err.println("ERROR - Problem preparing module: " + moduleName);
+                ex.printStackTrace();
+            }
+            synchronized (this) {
+                prepared = true;
+                listeners = preparedListeners;
+                preparedListeners = null;
+            }
+        }
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                SwingUtilities.invokeLater(listener);
+            }
+        }
+    }
+
+    /** Call something on the event dispatch thread once the module is prepared
+     * @param listener  Called straight away if the module is already prepared
+     */
+    void whenPrepared(Runnable listener) {
+        synchronized (this) {
+            if (!prepared) {
+                if (preparedListeners == null) {
+                    preparedListeners = new ArrayList<Runnable>();
+                }
+                preparedListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /** Check if a module class has its own {@link #prepare()} */
+    private static boolean overridesPrepare(Class<?> moduleClass) {
+        for (Class<?> c = moduleClass; c != null && c != AlcModule.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.getName().equals("prepare") && method.getParameterTypes().length == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
     //////////////////////////////////////////////////////////////
     // MOUSE EVENTS
     //////////////////////////////////////////////////////////////
@@ -342,6 +460,31 @@ public abstract class AlcModule implements AlcConstants {
     public void mouseDragged(MouseEvent e) {
     }
 
+    /**
+     * Called with each new pen location while drawing, only if the module is active.
+     * This is called just before {@link #mouseDragged(MouseEvent)} and passes
+     * everything as primitives, so a module can build its shape with the float
+     * methods of {@link AlcShape} without creating any objects.
+     * <p>
+     * The location is in canvas coordinates and includes the sub pixel accuracy of a pen.
+     * @param x         The x location
+     * @param y         The y location
+     * @param pressure  The pen pressure between 0 and 1 - 1 when using the mouse
+     * @param tiltX     The pen tilt along the x axis between -1 and 1
+     * @param tiltY     The pen tilt along the y axis between -1 and 1
+     * @param when      The time of the sample in milliseconds
+     * <p>
+     * Useful things you can do with the sample:
+     * <pre>
+     * // Add a curve to the shape being drawn
+     * shape.curveTo(x, y);
+     * // Add a point of a variable width line
+     * shape.spineTo(x, y, pressure * 10F);
+     * </pre>
+     */
+    public void penSample(float x, float y, float pressure, float tiltX, float tiltY, long when) {
+    }
+
     /**
      * Called when the mouse is released, only if the module is active.
      * @param e The {@link MouseEvent} containing location data.   
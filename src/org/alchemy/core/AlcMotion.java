@@ -0,0 +1,363 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.Point2D;
+
+/**
+ * Motion of the pen or mouse over the canvas<br>
+ * Each input sample is kept in a small ring buffer with its sub-pixel location and time.
+ * Velocity, acceleration, direction and curvature are filtered and worked out
+ * once per sample so any number of modules can read them for free.
+ * Get the motion with {@link AlcCanvas#getMotion()}.
+ */
+public class AlcMotion {
+
+    /** Number of samples kept */
+    public static final int HISTORY = 64;
+    /** Time constant of the velocity filter in milliseconds */
+    private static final float VELOCITY_TIME = 30F;
+    /** Distance over which the curvature is averaged in pixels */
+    private static final float CURVATURE_LENGTH = 10F;
+    /** Shortest movement used to measure a change of direction in pixels */
+    private static final float MIN_TURN_DISTANCE = 0.5F;
+    /** Sample locations */
+    private final float[] x = new float[HISTORY],  y = new float[HISTORY];
+    /** Sample times in milliseconds */
+    private final long[] time = new long[HISTORY];
+    /** Length of the path up to each sample */
+    private final double[] length = new double[HISTORY];
+    /** Index of the latest sample */
+    private int latest = 0;
+    /** Samples since the pen went down */
+    private int samples = 0;
+    /** Filtered velocity in pixels per second */
+    private float velocityX,  velocityY;
+    /** Filtered speed and acceleration */
+    private float speed,  acceleration;
+    /** Direction of movement in radians */
+    private float direction;
+    /** Filtered curvature in radians per pixel */
+    private float curvature;
+    /** Location and time the velocity was last measured from - samples in the same millisecond are merged */
+    private float velocityFromX,  velocityFromY;
+    private long velocityFromTime;
+    /** Direction and length of the last movement long enough to measure a turn */
+    private float turnDirection,  turnDistance;
+    /** Movement since the last turn was measured */
+    private float turnDx,  turnDy;
+    /** Samples posted from the pen thread and not yet added */
+    private float[] pendingX = new float[HISTORY],  pendingY = new float[HISTORY];
+    private long[] pendingTime = new long[HISTORY];
+    private int pendingCount = 0;
+
+    AlcMotion() {
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SAMPLES
+    //////////////////////////////////////////////////////////////
+    /** Start again from a single sample - called when the pen goes down
+     *
+     * @param sampleX   X location
+     * @param sampleY   Y location
+     * @param when      Time in milliseconds
+     */
+    void reset(float sampleX, float sampleY, long when) {
+        synchronized (this) {
+            pendingCount = 0;
+        }
+        latest = 0;
+        samples = 1;
+        x[0] = sampleX;
+        y[0] = sampleY;
+        time[0] = when;
+        length[0] = 0;
+        velocityX = velocityY = speed = acceleration = curvature = 0;
+        velocityFromX = sampleX;
+        velocityFromY = sampleY;
+        velocityFromTime = when;
+        turnDistance = turnDx = turnDy = 0;
+    }
+
+    /** Post a sample from another thread, such as the pen thread,
+     *  to be added by the next call to {@link #flush()}
+     *
+     * @param sampleX   X location
+     * @param sampleY   Y location
+     * @param when      Time in milliseconds
+     */
+    synchronized void post(float sampleX, float sampleY, long when) {
+        if (pendingCount == pendingX.length) {
+            pendingX = grow(pendingX);
+            pendingY = grow(pendingY);
+            long[] times = new long[pendingCount * 2];
+            System.arraycopy(pendingTime, 0, times, 0, pendingCount);
+            pendingTime = times;
+        }
+        pendingX[pendingCount] = sampleX;
+        pendingY[pendingCount] = sampleY;
+        pendingTime[pendingCount] = when;
+        pendingCount++;
+    }
+
+    private static float[] grow(float[] values) {
+        float[] grown = new float[values.length * 2];
+        System.arraycopy(values, 0, grown, 0, values.length);
+        return grown;
+    }
+
+    /** Add the samples posted so far - called on the event thread before an event is passed to the modules */
+    void flush() {
+        float[] sampleX, sampleY;
+        long[] when;
+        int count;
+        synchronized (this) {
+            count = pendingCount;
+            if (count == 0) {
+                return;
+            }
+            sampleX = pendingX;
+            sampleY = pendingY;
+            when = pendingTime;
+            // Post the next samples to new arrays while these are added
+            pendingX = new float[sampleX.length];
+            pendingY = new float[sampleY.length];
+            pendingTime = new long[when.length];
+            pendingCount = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            add(sampleX[i], sampleY[i], when[i]);
+        }
+    }
+
+    /** Add a sample and update the motion
+     *
+     * @param sampleX   X location
+     * @param sampleY   Y location
+     * @param when      Time in milliseconds
+     */
+    void add(float sampleX, float sampleY, long when) {
+        if (samples == 0) {
+            reset(sampleX, sampleY, when);
+            return;
+        }
+        float dx = sampleX - x[latest];
+        float dy = sampleY - y[latest];
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        double total = length[latest] + distance;
+        latest = (latest + 1) % HISTORY;
+        x[latest] = sampleX;
+        y[latest] = sampleY;
+        time[latest] = when;
+        length[latest] = total;
+        samples++;
+
+        // Velocity - from the last sample with an earlier time
+        long dt = when - velocityFromTime;
+        if (dt > 0) {
+            float amount = 1F - (float) Math.exp(-dt / VELOCITY_TIME);
+            velocityX += amount * ((sampleX - velocityFromX) * 1000F / dt - velocityX);
+            velocityY += amount * ((sampleY - velocityFromY) * 1000F / dt - velocityY);
+            float newSpeed = (float) Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+            acceleration += amount * ((newSpeed - speed) * 1000F / dt - acceleration);
+            speed = newSpeed;
+            if (speed > 0) {
+                direction = (float) Math.atan2(velocityY, velocityX);
+            }
+            velocityFromX = sampleX;
+            velocityFromY = sampleY;
+            velocityFromTime = when;
+        }
+
+        // Curvature - change of direction over the distance moved
+        turnDx += dx;
+        turnDy += dy;
+        float turnLength = (float) Math.sqrt(turnDx * turnDx + turnDy * turnDy);
+        if (turnLength >= MIN_TURN_DISTANCE) {
+            float turn = (float) Math.atan2(turnDy, turnDx);
+            if (turnDistance > 0) {
+                float angle = turn - turnDirection;
+                if (angle > Math.PI) {
+                    angle -= 2 * Math.PI;
+                } else if (angle < -Math.PI) {
+                    angle += 2 * Math.PI;
+                }
+                float amount = 1F - (float) Math.exp(-turnLength / CURVATURE_LENGTH);
+                curvature += amount * (angle * 2 / (turnLength + turnDistance) - curvature);
+            }
+            turnDirection = turn;
+            turnDistance = turnLength;
+            turnDx = turnDy = 0;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // LOCATION
+    //////////////////////////////////////////////////////////////
+    /** Get the number of samples since the pen went down
+     * @return  The number of samples
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /** Get the number of samples that can be looked back at
+     * @return  The number of samples kept, up to {@link #HISTORY}
+     */
+    public int getHistory() {
+        return Math.min(samples, HISTORY);
+    }
+
+    private int index(int back) {
+        if (back < 0 || back >= getHistory()) {
+            throw new IndexOutOfBoundsException("Sample " + back + " of " + getHistory());
+        }
+        return (latest - back + HISTORY) % HISTORY;
+    }
+
+    /** Get the x location of a sample
+     * @param back  Samples back from the latest - 0 is the latest
+     * @return      The x location
+     */
+    public float getX(int back) {
+        return x[index(back)];
+    }
+
+    /** Get the y location of a sample
+     * @param back  Samples back from the latest - 0 is the latest
+     * @return      The y location
+     */
+    public float getY(int back) {
+        return y[index(back)];
+    }
+
+    /** Get the time of a sample
+     * @param back  Samples back from the latest - 0 is the latest
+     * @return      The time in milliseconds
+     */
+    public long getTime(int back) {
+        return time[index(back)];
+    }
+
+    /** Get the location of a sample as a new point
+     * @param back  Samples back from the latest - 0 is the latest
+     * @return      The location
+     */
+    public Point2D.Float getPoint(int back) {
+        int i = index(back);
+        return new Point2D.Float(x[i], y[i]);
+    }
+
+    /** Get the latest location as a new point
+     * @return  The location
+     */
+    public Point2D.Float getPoint() {
+        return getPoint(0);
+    }
+
+    //////////////////////////////////////////////////////////////
+    // DISTANCE
+    //////////////////////////////////////////////////////////////
+    /** Get the length of the path since the pen went down.
+     *  The difference between two calls is the distance moved in between.
+     * @return  The length in pixels
+     */
+    public double getPathLength() {
+        return (samples == 0) ? 0 : length[latest];
+    }
+
+    /** Get the distance moved by the latest sample
+     * @return  The distance in pixels
+     */
+    public float getDistance() {
+        return getDistance(1);
+    }
+
+    /** Get the length of the path over the latest samples
+     * @param count     The number of samples, up to {@link #HISTORY} - 1
+     * @return          The length in pixels
+     */
+    public float getDistance(int count) {
+        count = Math.min(count, getHistory() - 1);
+        if (count <= 0) {
+            return 0;
+        }
+        return (float) (length[latest] - length[index(count)]);
+    }
+
+    /** Get the average distance moved by each of the latest samples
+     * @param count     The number of samples, up to {@link #HISTORY} - 1
+     * @return          The average distance in pixels
+     */
+    public float getAverageDistance(int count) {
+        count = Math.min(count, getHistory() - 1);
+        if (count <= 0) {
+            return 0;
+        }
+        return getDistance(count) / count;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // MOTION
+    //////////////////////////////////////////////////////////////
+    /** Get the filtered horizontal velocity
+     * @return  The velocity in pixels per second
+     */
+    public float getVelocityX() {
+        return velocityX;
+    }
+
+    /** Get the filtered vertical velocity
+     * @return  The velocity in pixels per second
+     */
+    public float getVelocityY() {
+        return velocityY;
+    }
+
+    /** Get the filtered speed
+     * @return  The speed in pixels per second
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /** Get the filtered change in speed
+     * @return  The acceleration in pixels per second per second
+     */
+    public float getAcceleration() {
+        return acceleration;
+    }
+
+    /** Get the direction of movement - kept when the pen stops
+     * @return  The angle in radians
+     */
+    public float getDirection() {
+        return direction;
+    }
+
+    /** Get the filtered curvature of the path - the turn per pixel moved.
+     *  Positive turns are clockwise on screen.
+     * @return  The curvature in radians per pixel
+     */
+    public float getCurvature() {
+        return curvature;
+    }
+}
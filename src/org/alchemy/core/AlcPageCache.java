@@ -0,0 +1,208 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.sun.pdfview.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Cache of rendered session PDF pages<br>
+ * Pages are rasterised once per page number, size, zoom and background color
+ * and kept in a small LRU cache. Neighbouring pages are rendered ahead of time
+ * on a background thread so flipping through a session does not stall the canvas.
+ */
+class AlcPageCache {
+
+    /** Number of rendered pages to keep */
+    private final int capacity;
+    /** The session file pages are rendered from */
+    private PDFFile pdfFile;
+    /** Rendered pages, least recently used first */
+    private final LinkedHashMap<PageKey, BufferedImage> pages;
+    /** Pages currently being rendered in the background */
+    private final HashMap<PageKey, Future<BufferedImage>> pending;
+    /** Single background thread used to prefetch pages */
+    private final ExecutorService prefetcher;
+
+    /** Creates a new page cache
+     * @param capacity  The maximum number of rendered pages to keep in memory
+     */
+    AlcPageCache(int capacity) {
+        this.capacity = capacity;
+        pages = new LinkedHashMap<PageKey, BufferedImage>(capacity + 1, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageKey, BufferedImage> eldest) {
+                return size() > AlcPageCache.this.capacity;
+            }
+        };
+        pending = new HashMap<PageKey, Future<BufferedImage>>();
+        prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Page Prefetch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /** Set the session file to render pages from - clears the cache
+     * @param pdfFile   The session file or null to unload
+     */
+    synchronized void setFile(PDFFile pdfFile) {
+        this.pdfFile = pdfFile;
+        for (Future<BufferedImage> future : pending.values()) {
+            future.cancel(false);
+        }
+        pending.clear();
+        pages.clear();
+    }
+
+    /** Get a rendered page, rendering it on the calling thread if it has not been cached
+     *
+     * @param pageNumber    The page number (starting from 1)
+     * @param zoom          Scale the page is rendered at
+     * @param bgColor       The background color behind the page
+     * @return              The rendered page or null if no session file is loaded
+     */
+    BufferedImage getPage(int pageNumber, double zoom, Color bgColor) {
+        Future<BufferedImage> future;
+        PageKey key;
+        PDFFile file;
+        synchronized (this) {
+            if (pdfFile == null) {
+                return null;
+            }
+            file = pdfFile;
+            key = new PageKey(pageNumber, file.getPage(pageNumber), zoom, bgColor);
+            BufferedImage image = pages.get(key);
+            if (image != null) {
+                return image;
+            }
+            future = pending.get(key);
+        }
+
+        // Wait for the prefetch rather than rendering the same page twice
+        if (future != null) {
+            try {
+                return future.get();
+            } catch (Exception ex) {
+                // Fall through and render it here
+            }
+        }
+
+        BufferedImage image = render(file, key);
+        store(file, key, image);
+        return image;
+    }
+
+    /** Render a page in the background so it is ready when requested
+     *
+     * @param pageNumber    The page number (starting from 1)
+     * @param zoom          Scale the page is rendered at
+     * @param bgColor       The background color behind the page
+     */
+    synchronized void prefetch(int pageNumber, double zoom, Color bgColor) {
+        if (pdfFile == null || pageNumber < 1 || pageNumber > pdfFile.getNumPages()) {
+            return;
+        }
+        final PDFFile file = pdfFile;
+        final PageKey key = new PageKey(pageNumber, file.getPage(pageNumber), zoom, bgColor);
+        if (pages.containsKey(key) || pending.containsKey(key)) {
+            return;
+        }
+        Future<BufferedImage> future = prefetcher.submit(new Callable<BufferedImage>() {
+
+            public BufferedImage call() throws Exception {
+                BufferedImage image = render(file, key);
+                store(file, key, image);
+                return image;
+            }
+        });
+        pending.put(key, future);
+    }
+
+    /** Add a rendered page to the cache, ignoring it if the session file has changed */
+    private synchronized void store(PDFFile file, PageKey key, BufferedImage image) {
+        pending.remove(key);
+        if (file == pdfFile && image != null) {
+            pages.put(key, image);
+        }
+    }
+
+    /** Rasterise a page exactly as the vector canvas would draw it */
+    private static BufferedImage render(PDFFile file, PageKey key) {
+        PDFPage page = file.getPage(key.pageNumber);
+        if (page == null) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(key.width, key.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.scale(key.zoom, key.zoom);
+        AlcRenderer.paintPage(g2, page, new Color(key.bgColor));
+        g2.dispose();
+        return image;
+    }
+
+    /** Key identifying a rendered page */
+    private static class PageKey {
+
+        final int pageNumber;
+        final int width,  height;
+        final double zoom;
+        final int bgColor;
+
+        PageKey(int pageNumber, PDFPage page, double zoom, Color bgColor) {
+            this.pageNumber = pageNumber;
+            this.zoom = zoom;
+            this.bgColor = bgColor.getRGB();
+            int pageWidth = (page == null) ? 1 : (int) page.getWidth();
+            int pageHeight = (page == null) ? 1 : (int) page.getHeight();
+            this.width = Math.max(1, (int) Math.ceil(pageWidth * zoom));
+            this.height = Math.max(1, (int) Math.ceil(pageHeight * zoom));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PageKey)) {
+                return false;
+            }
+            PageKey k = (PageKey) o;
+            return pageNumber == k.pageNumber && width == k.width && height == k.height &&
+                    zoom == k.zoom && bgColor == k.bgColor;
+        }
+
+        @Override
+        public int hashCode() {
+            long z = Double.doubleToLongBits(zoom);
+            int hash = pageNumber;
+            hash = 31 * hash + width;
+            hash = 31 * hash + height;
+            hash = 31 * hash + (int) (z ^ (z >>> 32));
+            hash = 31 * hash + bgColor;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Performance counters for the render pipeline<br>
+ * Keeps a count and the most recent samples for each stage
+ * so percentiles can be shown on the canvas HUD.
+ */
+class AlcPerformance {
+
+    /** Time taken to apply the affects and repaint */
+    static final int REDRAW = 0;
+    /** Time taken by the affect modules */
+    static final int AFFECT = 1;
+    /** Time taken to commit shapes to the canvas image */
+    static final int COMMIT = 2;
+    /** Time taken to render the canvas to an image */
+    static final int RASTERIZE = 3;
+    /** Time taken to save a session page */
+    static final int SAVE = 4;
+    /** Time taken to paint the canvas on screen */
+    static final int PAINT = 5;
+    /** Time from a mouse/pen event to the canvas being painted */
+    static final int LATENCY = 6;
+    /** Display names of each counter */
+    private static final String[] NAMES = {"Redraw", "Affect", "Commit", "Rasterise", "Save", "Frame", "Input"};
+    /** Number of recent samples kept per counter */
+    private static final int SAMPLES = 128;
+    /** Recent samples in nanoseconds - a ring buffer per counter */
+    private final long[][] samples = new long[NAMES.length][SAMPLES];
+    /** Total number of times each counter has been recorded */
+    private final long[] count = new long[NAMES.length];
+    /** Time of the earliest input event not yet painted, zero if none */
+    private long inputTime = 0;
+    /** Font used for the HUD */
+    private final Font font = new Font("Monospaced", Font.PLAIN, 11);
+    /** Area the HUD has been drawn in, empty until it is first drawn */
+    private final Rectangle hudBounds = new Rectangle();
+
+    /** Start timing
+     * @return  The start time to pass to {@link #stop(int, long)}
+     */
+    long start() {
+        return System.nanoTime();
+    }
+
+    /** Stop timing and record the duration
+     * @param counter   The counter to record
+     * @param start     The start time from {@link #start()}
+     */
+    void stop(int counter, long start) {
+        record(counter, System.nanoTime() - start);
+    }
+
+    /** Record a duration
+     * @param counter   The counter to record
+     * @param nanos     The duration in nanoseconds
+     */
+    synchronized void record(int counter, long nanos) {
+        samples[counter][(int) (count[counter] % SAMPLES)] = nanos;
+        count[counter]++;
+    }
+
+    /** Note a mouse or pen event which is waiting to be painted
+     * @param when  The event time in milliseconds
+     */
+    synchronized void input(long when) {
+        if (inputTime == 0) {
+            inputTime = when;
+        }
+    }
+
+    /** Note that the canvas has been painted - records the input latency if an event was waiting */
+    synchronized void painted() {
+        if (inputTime != 0) {
+            long latency = System.currentTimeMillis() - inputTime;
+            if (latency >= 0) {
+                record(LATENCY, latency * 1000000L);
+            }
+            inputTime = 0;
+        }
+    }
+
+    /** Get the number of times a counter has been recorded
+     * @param counter   The counter
+     * @return          The total count
+     */
+    synchronized long getCount(int counter) {
+        return count[counter];
+    }
+
+    /** Get a percentile over the recent samples of a counter
+     * @param counter       The counter
+     * @param percentile    The percentile between 0 and 100
+     * @return              The duration in milliseconds
+     */
+    synchronized double getPercentile(int counter, double percentile) {
+        int size = (int) Math.min(count[counter], SAMPLES);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = new long[size];
+        System.arraycopy(samples[counter], 0, sorted, 0, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))] / 1e6;
+    }
+
+    /** Clear all counters */
+    synchronized void reset() {
+        for (int i = 0; i < NAMES.length; i++) {
+            count[i] = 0;
+        }
+        inputTime = 0;
+    }
+
+    /** Get the area the HUD has been drawn in
+     * @return  The area, empty if the HUD has not been drawn yet
+     */
+    Rectangle getHUDBounds() {
+        return new Rectangle(hudBounds);
+    }
+
+    /** Draw the performance HUD
+     *
+     * @param g2            Graphics to draw on
+     * @param shapeCount    Number of shapes on the canvas
+     * @param pointCount    Number of points in the shapes
+     * @param x             Left edge of the HUD
+     * @param bottom        Bottom edge of the HUD
+     */
+    void paintHUD(Graphics2D g2, int shapeCount, int pointCount, int x, int bottom) {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = (runtime.totalMemory() - runtime.freeMemory()) / 1048576;
+        long maxHeap = runtime.maxMemory() / 1048576;
+
+        String[] lines = new String[NAMES.length + 2];
+        lines[0] = String.format("%-9s %6s %6s %6s %7s", "ms", "p50", "p95", "p99", "count");
+        int[] order = {PAINT, LATENCY, REDRAW, AFFECT, COMMIT, RASTERIZE, SAVE};
+        for (int i = 0; i < order.length; i++) {
+            int c = order[i];
+            lines[i + 1] = String.format("%-9s %6.1f %6.1f %6.1f %7d", NAMES[c],
+                    getPercentile(c, 50), getPercentile(c, 95), getPercentile(c, 99), getCount(c));
+        }
+        lines[lines.length - 1] = "Shapes " + shapeCount + "  Points " + pointCount + "  Heap " + usedHeap + "/" + maxHeap + "MB";
+
+        g2.setFont(font);
+        FontMetrics metrics = g2.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        int height = lineHeight * lines.length;
+        int top = bottom - height - 8;
+
+        // Grows with the text so a repaint of the area covers the last HUD drawn,
+        // starting again if the HUD has moved with the canvas size
+        Rectangle bounds = new Rectangle(x, top, width + 10, height + 8);
+        if (hudBounds.isEmpty() || hudBounds.y + hudBounds.height != bounds.y + bounds.height) {
+            hudBounds.setBounds(bounds);
+        } else {
+            hudBounds.add(bounds);
+        }
+
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setColor(new Color(0, 0, 0, 160));
+        g2.fillRect(x, top, width + 10, height + 8);
+        g2.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g2.drawString(lines[i], x + 5, top + 4 + metrics.getAscent() + i * lineHeight);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import org.java.plugin.PluginManager.PluginLocation;
+import org.java.plugin.standard.StandardPluginLocation;
+
+/**
+ * Remembers where the manifest of each plugin zip is between launches<br>
+ * Each zip is keyed by its checksum. A zip with the same size and date as last time
+ * is taken to be unchanged without being read. A zip whose size or date has changed
+ * is only looked inside again if its checksum has changed too.
+ * A cached location is only used if it points inside the zip it was kept for.
+ * The zips are checked in parallel.
+ */
+class AlcPluginCache {
+
+    /** Version of the cache file - older files are ignored */
+    private static final String VERSION = "1";
+    /** File the cache is kept in, null to keep nothing between launches */
+    private final File file;
+    /** Entries read from the file, by the path of the zip */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    /** If the entries have changed since they were read */
+    private volatile boolean changed = false;
+    /** Number of zips found in the cache, and looked inside */
+    private int cached,  scanned;
+
+    /** Creates a new cache and reads the entries from the file, if there is one
+     * @param file  File the cache is kept in, in a directory only this user can write to
+     */
+    AlcPluginCache(File file) {
+        this.file = file;
+        load();
+    }
+
+    //////////////////////////////////////////////////////////////
+    // LOCATE
+    //////////////////////////////////////////////////////////////
+    /** Get the location of the manifest in each plugin zip, checking the zips in parallel
+     *
+     * @param zips  The plugin zips
+     * @return      A location for each zip, in the same order, null if a zip has no manifest
+     */
+    PluginLocation[] locate(File[] zips) {
+        PluginLocation[] locations = new PluginLocation[zips.length];
+        int threads = Math.max(1, Math.min(zips.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Plugin Scan");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ArrayList<Future<PluginLocation>> results = new ArrayList<Future<PluginLocation>>(zips.length);
+        for (final File zip : zips) {
+            results.add(pool.submit(new Callable<PluginLocation>() {
+
+                public PluginLocation call() throws Exception {
+                    return locate(zip);
+                }
+            }));
+        }
+        for (int i = 0; i < zips.length; i++) {
+            try {
+                locations[i] = results.get(i).get();
+            } catch (ExecutionException ex) {
+                System.err.println("ERROR - Problem reading plugin: " + zips[i]);
+                ex.getCause().printStackTrace();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        pool.shutdown();
+
+        // Forget zips that have gone
+        HashSet<String> paths = new HashSet<String>();
+        for (File zip : zips) {
+            paths.add(zip.getAbsolutePath());
+        }
+        if (entries.keySet().retainAll(paths)) {
+            changed = true;
+        }
+        return locations;
+    }
+
+    /** Get the location of the manifest of one zip, from the cache if unchanged */
+    private PluginLocation locate(File zip) throws IOException {
+        String path = zip.getAbsolutePath();
+        long length = zip.length();
+        long modified = zip.lastModified();
+        Entry entry = entries.get(path);
+        if (entry != null && !entry.isInside(zip)) {
+            // Not a location this cache would have stored - look inside the zip instead
+            entry = null;
+        }
+
+        if (entry != null && entry.length == length && entry.modified == modified) {
+            countCached();
+            return entry.getLocation();
+        }
+        String checksum = checksum(zip);
+        if (entry != null && entry.checksum.equals(checksum)) {
+            // Touched but not changed
+            entries.put(path, new Entry(checksum, length, modified, entry.context, entry.manifest));
+            changed = true;
+            countCached();
+            return entry.getLocation();
+        }
+
+        countScanned();
+        PluginLocation location = StandardPluginLocation.create(zip);
+        if (location != null) {
+            entries.put(path, new Entry(checksum, length, modified,
+                    location.getContextLocation().toExternalForm(), location.getManifestLocation().toExternalForm()));
+        } else {
+            entries.remove(path);
+        }
+        changed = true;
+        return location;
+    }
+
+    private synchronized void countCached() {
+        cached++;
+    }
+
+    private synchronized void countScanned() {
+        scanned++;
+    }
+
+    /** Get the number of zips found unchanged in the cache
+     * @return  The number of zips
+     */
+    synchronized int getCachedCount() {
+        return cached;
+    }
+
+    /** Get the number of zips looked inside because they were new or changed
+     * @return  The number of zips
+     */
+    synchronized int getScannedCount() {
+        return scanned;
+    }
+
+    /** Get the checksum of the whole of a file */
+    private static String checksum(File zip) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(zip);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return Long.toHexString(crc.getValue()) + "-" + zip.length();
+    }
+
+    //////////////////////////////////////////////////////////////
+    // FILE
+    //////////////////////////////////////////////////////////////
+    /** Read the entries from the file - a missing or broken file leaves the cache empty */
+    private void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try {
+            if (isLink(file)) {
+                System.err.println("Not reading the plugin cache through a link: " + file);
+                return;
+            }
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("Could not read the plugin cache: " + ex);
+            return;
+        }
+        if (!VERSION.equals(properties.getProperty("version"))) {
+            return;
+        }
+        for (Object key : properties.keySet()) {
+            String path = (String) key;
+            if (path.equals("version")) {
+                continue;
+            }
+            Entry entry = Entry.parse(properties.getProperty(path));
+            if (entry != null) {
+                entries.put(path, entry);
+            }
+        }
+    }
+
+    /** Write the entries to the file if they have changed */
+    void save() {
+        if (!changed || file == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("version", VERSION);
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        try {
+            // Write a new file and rename it over the old one, so a link left
+            // in place of the cache is replaced rather than written through
+            File temp = File.createTempFile("plugins", ".tmp", file.getAbsoluteFile().getParentFile());
+            try {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+                try {
+                    properties.store(out, "Alchemy plugin cache");
+                } finally {
+                    out.close();
+                }
+                // Windows will not rename over an existing file
+                if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                    throw new IOException("Could not replace " + file);
+                }
+                changed = false;
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException ex) {
+            // Not being able to write the cache only makes the next launch slower
+            System.err.println("Could not write the plugin cache: " + ex);
+        }
+    }
+
+    /** If the file is a symbolic link */
+    private static boolean isLink(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile().getCanonicalFile();
+        File inParent = new File(parent, file.getName());
+        return !inParent.getCanonicalFile().equals(inParent);
+    }
+
+    /** What is remembered about a zip */
+    private static class Entry {
+
+        final String checksum;
+        final long length;
+        final long modified;
+        final String context;
+        final String manifest;
+
+        Entry(String checksum, long length, long modified, String context, String manifest) {
+            this.checksum = checksum;
+            this.length = length;
+            this.modified = modified;
+            this.context = context;
+            this.manifest = manifest;
+        }
+
+        PluginLocation getLocation() throws IOException {
+            return new StandardPluginLocation(new URL(context), new URL(manifest));
+        }
+
+        /** If the locations are the root and manifest of the given zip,
+         *  as {@link StandardPluginLocation#create(File)} would find them
+         */
+        boolean isInside(File zip) throws IOException {
+            String root = "jar:" + zip.getCanonicalFile().toURI().toURL().toExternalForm() + "!/";
+            return context.equals(root) &&
+                    (manifest.equals(root + "plugin.xml") || manifest.equals(root + "plugin-fragment.xml"));
+        }
+
+        /** Read an entry written by {@link #toString()}, or null if it is broken */
+        static Entry parse(String value) {
+            String[] parts = value.split("\\|", 5);
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                return new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], parts[4]);
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return checksum + "|" + length + "|" + modified + "|" + context + "|" + manifest;
+        }
+    }
+}
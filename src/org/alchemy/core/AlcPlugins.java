@@ -23,15 +23,17 @@ import java.io.*;
 import java.util.Iterator;
 import java.net.URL;
 // JAVA PLUGIN FRAMEWORK
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.*;
+import javax.swing.AbstractButton;
 import org.java.plugin.ObjectFactory;
 import org.java.plugin.PluginManager;
 import org.java.plugin.PluginManager.PluginLocation;
 import org.java.plugin.registry.Extension;
 import org.java.plugin.registry.ExtensionPoint;
 import org.java.plugin.registry.PluginDescriptor;
-import org.java.plugin.standard.StandardPluginLocation;
 
 /**
  * Handles the loading of Alchemy 'modules' from the modules/ folder
@@ -53,6 +55,8 @@ class AlcPlugins implements AlcConstants {
     private int numberOfPlugins;
     private int numberOfCreateModules = 0;
     private int numberOfAffectModules = 0;
+    /** Background thread that prepares the modules after the window is shown */
+    private ExecutorService warmUp;
 
     /** Creates a new instance of AlcPlugins */
     AlcPlugins() {
@@ -153,15 +157,10 @@ class AlcPlugins implements AlcConstants {
 
         try {
 
-            PluginLocation[] locations = new PluginLocation[plugins.length];
-
             // Number of plugins minus one for the core plugin
             numberOfPlugins = plugins.length - 1;
 
             for (int i = 0; i < plugins.length; i++) {
-                //System.out.println(plugins[i].toString());
-                locations[i] = StandardPluginLocation.create(plugins[i]);
-
                 // Check for each type of module using the filename
                 if (plugins[i].getName().startsWith("org.alchemy.create")) {
                     numberOfCreateModules++;
@@ -169,8 +168,24 @@ class AlcPlugins implements AlcConstants {
                     numberOfAffectModules++;
                 }
             }
+
+            // Find the manifest in each zip - only new or changed zips are opened
+            long start = System.nanoTime();
+            File settings = AlcUtil.getSettingsDirectory();
+            AlcPluginCache cache = new AlcPluginCache(settings == null ? null : new File(settings, "plugins.cache"));
+            PluginLocation[] found = cache.locate(plugins);
+            cache.save();
+            ArrayList<PluginLocation> locations = new ArrayList<PluginLocation>(found.length);
+            for (int i = 0; i < found.length; i++) {
+                if (found[i] != null) {
+                    locations.add(found[i]);
+                }
+            }
+            System.out.println("Plugins: " + cache.getCachedCount() + " cached, " + cache.getScannedCount() +
+                    " scanned in " + (System.nanoTime() - start) / 1000000L + " ms");
+
             // Registers plug-ins and their locations with this plug-in manager.
-            pluginManager.publishPlugins(locations);
+            pluginManager.publishPlugins(locations.toArray(new PluginLocation[locations.size()]));
 
         } catch (Exception ex) {
             System.err.println("ERROR - Problem publishing plugins to the pluginManager");
@@ -211,9 +226,70 @@ class AlcPlugins implements AlcConstants {
 
         // Set the default create module
         currentCreate = 0;
+        creates[currentCreate].prepareModule();
         creates[currentCreate].setup();
     }
 
+    /** Prepare every module on a background thread, so selecting it does not hold up the interface.
+     *  Called once the window is shown.
+     */
+    void warmUp() {
+        if (warmUp != null) {
+            return;
+        }
+        warmUp = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Module Warm-up");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        for (int i = 0; i < creates.length; i++) {
+            submitPrepare(creates[i]);
+        }
+        if (affects != null) {
+            for (int i = 0; i < affects.length; i++) {
+                submitPrepare(affects[i]);
+            }
+        }
+        // Let the thread end once everything is prepared
+        warmUp.shutdown();
+    }
+
+    private void submitPrepare(final AlcModule module) {
+        if (!module.isPrepared()) {
+            warmUp.submit(new Runnable() {
+
+                public void run() {
+                    module.prepareModule();
+                }
+            });
+        }
+    }
+
+    /** Show a module button as loading until the module is prepared
+     *
+     * @param button    The button or menu item of the module
+     * @param module    The module
+     */
+    static void showPrepareState(final AbstractButton button, AlcModule module) {
+        if (module.isPrepared()) {
+            return;
+        }
+        final String toolTip = button.getToolTipText();
+        button.setEnabled(false);
+        button.setToolTipText(Alchemy.bundle.getString("moduleLoading"));
+        module.whenPrepared(new Runnable() {
+
+            public void run() {
+                button.setEnabled(true);
+                button.setToolTipText(toolTip);
+            }
+        });
+    }
+
     AlcModule[] addPlugins(String pointName, int numberOfModules, int moduleType, String[] order) {
 
         AlcModule[] plugins = new AlcModule[numberOfModules];
@@ -245,7 +321,6 @@ class AlcPlugins implements AlcConstants {
                  */
 
                 AlcModule currentPlugin = (AlcModule) pluginCls.newInstance();
-                AlcModule currentPluginSorted = (AlcModule) pluginCls.newInstance();
 
                 // Set the icon name and the decription name from the XML
                 String descriptionParam = ext.getParameter("description").valueAsString();
@@ -267,33 +342,20 @@ class AlcPlugins implements AlcConstants {
                     sortIndex = 100 + noMatchCount;
                 }
 
+                // Each module is made once - the sorted array holds the same modules
                 plugins[index] = currentPlugin;
-                pluginsSorted[index] = currentPluginSorted;
-
-                URL iconUrl = null;
+                pluginsSorted[index] = currentPlugin;
 
                 if (iconParam != null) {
-                    iconUrl = classLoader.getResource(iconParam);
-                    plugins[index].setIconUrl(iconUrl);
-                    pluginsSorted[index].setIconUrl(iconUrl);
+                    currentPlugin.setIconUrl(classLoader.getResource(iconParam));
                 }
 
-                plugins[index].setModuleType(moduleType);
-                plugins[index].setName(nameParam);
-                plugins[index].setIconName(iconParam);
-                plugins[index].setDescription(descriptionParam);
-                // Set the real index
-                //plugins[index].setSortOrderIndex(sortIndex);
-                plugins[index].setIndex(index);
-                plugins[index].setClassLoader(classLoader);
-
-
-                pluginsSorted[index].setModuleType(moduleType);
-                pluginsSorted[index].setName(nameParam);
-                pluginsSorted[index].setIconName(iconParam);
-                pluginsSorted[index].setDescription(descriptionParam);
-                pluginsSorted[index].setSortOrderIndex(sortIndex);
-                pluginsSorted[index].setClassLoader(classLoader);
+                currentPlugin.setModuleType(moduleType);
+                currentPlugin.setName(nameParam);
+                currentPlugin.setIconName(iconParam);
+                currentPlugin.setDescription(descriptionParam);
+                currentPlugin.setSortOrderIndex(sortIndex);
+                currentPlugin.setClassLoader(classLoader);
 
                 index++;
             }
@@ -320,6 +382,12 @@ class AlcPlugins implements AlcConstants {
         } catch (Exception ex) {
             System.err.println("ERROR - Problem sorting plugins, defaulting to unsorted ordering");
             ex.printStackTrace();
+            // Set the real index
+            for (int i = 0; i < plugins.length; i++) {
+                if (plugins[i] != null) {
+                    plugins[i].setIndex(i);
+                }
+            }
             return plugins;
         }
     }
@@ -350,6 +418,8 @@ class AlcPlugins implements AlcConstants {
 
     /** Set the current create function */
     void setCurrentCreate(int i) {
+        // Let the old module finish any events queued on the geometry thread
+        Alchemy.canvas.finishGeometry();
         // Deselect the old create module
         creates[currentCreate].deselect();
         currentCreate = i;
@@ -360,6 +430,7 @@ class AlcPlugins implements AlcConstants {
             creates[i].reselect();
         } else {
             creates[i].setLoaded(true);
+            creates[i].prepareModule();
             creates[i].setup();
         }
     }
@@ -368,6 +439,7 @@ class AlcPlugins implements AlcConstants {
      *  The affect is added at its index value so it can easily be removed later
      */
     void addAffect(int i) {
+        Alchemy.canvas.finishGeometry();
         numberOfCurrentAffects++;
         currentAffects[i] = true;
 
@@ -376,6 +448,7 @@ class AlcPlugins implements AlcConstants {
             affects[i].reselect();
         } else {
             affects[i].setLoaded(true);
+            affects[i].prepareModule();
             affects[i].setup();
         }
     }
@@ -384,21 +457,18 @@ class AlcPlugins implements AlcConstants {
      *  The affect is removed at its index value
      */
     void removeAffect(int i) {
+        Alchemy.canvas.finishGeometry();
         numberOfCurrentAffects--;
         currentAffects[i] = false;
         affects[i].deselect();
     }
 }
 
-class PluginComparator implements Comparator<Object> {
-
-    public int compare(Object o1, Object o2) {
-        AlcModule module1 = ((AlcModule) o1);
-        Integer int1 = new Integer(module1.getSortOrderIndex());
-
-        AlcModule module2 = ((AlcModule) o2);
-        Integer int2 = new Integer(module2.getSortOrderIndex());
+class PluginComparator implements Comparator<AlcModule> {
 
-        return int1.compareTo(int2);
+    public int compare(AlcModule module1, AlcModule module2) {
+        int index1 = module1.getSortOrderIndex();
+        int index2 = module2.getSortOrderIndex();
+        return (index1 < index2) ? -1 : ((index1 == index2) ? 0 : 1);
     }
 }
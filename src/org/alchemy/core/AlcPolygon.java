@@ -0,0 +1,209 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.*;
+
+/**
+ * Shape path flattened to straight edges for fast point in shape tests<br>
+ * Curves are only flattened once, when the polygon is made.
+ * Edges are sorted into horizontal bands so a test only looks at the edges
+ * crossing the row of the point.
+ */
+class AlcPolygon {
+
+    /** Greatest distance of the edges from the curves, in the units of the path */
+    private static final double FLATNESS = 0.1;
+    /** Average number of edges in a band */
+    private static final int EDGES_PER_BAND = 8;
+    /** Most bands in a polygon */
+    private static final int MAX_BANDS = 256;
+    /** The path the polygon was made from */
+    private final GeneralPath source;
+    /** The current point of the source when the polygon was made */
+    private final Point2D sourcePoint;
+    /** If the winding rule is even odd rather than non zero */
+    private final boolean evenOdd;
+    /** Start and end of each edge */
+    private float[] x0, y0, x1, y1;
+    /** Number of edges */
+    private int edges = 0;
+    /** Bounds of the edges */
+    private float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    /** Height of a band */
+    private float bandHeight;
+    /** Index into bandEdges of the first edge of each band, with one extra for the end of the last */
+    private int[] bandStart;
+    /** Edges crossing each band, band by band */
+    private int[] bandEdges;
+
+    /** Flattens a path into a polygon
+     * @param source    The path
+     */
+    AlcPolygon(GeneralPath source) {
+        this.source = source;
+        this.sourcePoint = source.getCurrentPoint();
+        this.evenOdd = source.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        x0 = new float[64];
+        y0 = new float[64];
+        x1 = new float[64];
+        y1 = new float[64];
+
+        float[] coords = new float[6];
+        float startX = 0, startY = 0, lastX = 0, lastY = 0;
+        for (PathIterator it = source.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    // Each part of the path is closed back to its start
+                    addEdge(lastX, lastY, startX, startY);
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    addPoint(lastX, lastY);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    addEdge(lastX, lastY, coords[0], coords[1]);
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    addPoint(lastX, lastY);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    addEdge(lastX, lastY, startX, startY);
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+        }
+        addEdge(lastX, lastY, startX, startY);
+        makeBands();
+    }
+
+    /** Check the polygon was made from this path and the path has not been added to since
+     * @param path  The current path of the shape
+     * @return      True if the polygon can still be used
+     */
+    boolean isValid(GeneralPath path) {
+        if (path != source) {
+            return false;
+        }
+        Point2D point = path.getCurrentPoint();
+        return (point == null) ? sourcePoint == null : point.equals(sourcePoint);
+    }
+
+    /** Check if a point is inside the polygon, using the winding rule of the path
+     *
+     * @param x     X coordinate of the point
+     * @param y     Y coordinate of the point
+     * @return      True if the point is inside
+     */
+    boolean contains(double x, double y) {
+        if (edges == 0 || x < minX || x >= maxX || y < minY || y >= maxY) {
+            return false;
+        }
+        int band = Math.min(bandStart.length - 2, (int) ((y - minY) / bandHeight));
+        // Count the edges crossed going right from the point
+        int crossings = 0;
+        for (int i = bandStart[band]; i < bandStart[band + 1]; i++) {
+            int e = bandEdges[i];
+            float ya = y0[e], yb = y1[e];
+            if ((y < ya && y < yb) || (y >= ya && y >= yb)) {
+                continue;
+            }
+            float xa = x0[e], xb = x1[e];
+            if (x >= xa && x >= xb) {
+                continue;
+            }
+            if (x < xa && x < xb || x < xa + (y - ya) * (xb - xa) / (yb - ya)) {
+                crossings += (ya < yb) ? 1 : -1;
+            }
+        }
+        return evenOdd ? (crossings & 1) != 0 : crossings != 0;
+    }
+
+    /** Get the bounds of the polygon
+     * @return  The bounds
+     */
+    Rectangle2D getBounds() {
+        if (edges == 0) {
+            return new Rectangle2D.Float();
+        }
+        return new Rectangle2D.Float(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private void addPoint(float x, float y) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    /** Add an edge - flat edges are never crossed so are left out */
+    private void addEdge(float xa, float ya, float xb, float yb) {
+        if (ya == yb) {
+            return;
+        }
+        if (edges == x0.length) {
+            int length = edges * 2;
+            x0 = copyOf(x0, length);
+            y0 = copyOf(y0, length);
+            x1 = copyOf(x1, length);
+            y1 = copyOf(y1, length);
+        }
+        x0[edges] = xa;
+        y0[edges] = ya;
+        x1[edges] = xb;
+        y1[edges] = yb;
+        edges++;
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /** Sort the edges into the bands they cross */
+    private void makeBands() {
+        int bands = Math.max(1, Math.min(MAX_BANDS, edges / EDGES_PER_BAND));
+        bandHeight = Math.max((maxY - minY) / bands, Float.MIN_VALUE);
+        bandStart = new int[bands + 1];
+        // Count the edges in each band, then fill them in
+        for (int e = 0; e < edges; e++) {
+            int last = getBand(Math.max(y0[e], y1[e]), bands);
+            for (int band = getBand(Math.min(y0[e], y1[e]), bands); band <= last; band++) {
+                bandStart[band + 1]++;
+            }
+        }
+        for (int band = 0; band < bands; band++) {
+            bandStart[band + 1] += bandStart[band];
+        }
+        bandEdges = new int[bandStart[bands]];
+        int[] filled = new int[bands];
+        for (int e = 0; e < edges; e++) {
+            int last = getBand(Math.max(y0[e], y1[e]), bands);
+            for (int band = getBand(Math.min(y0[e], y1[e]), bands); band <= last; band++) {
+                bandEdges[bandStart[band] + filled[band]++] = e;
+            }
+        }
+    }
+
+    private int getBand(float y, int bands) {
+        return Math.max(0, Math.min(bands - 1, (int) ((y - minY) / bandHeight)));
+    }
+}
@@ -153,6 +153,12 @@ class AlcPreferences implements AlcConstants {
     boolean smoothing;
     /** Line smoothing */
     boolean lineSmoothing;
+    /** Simplify shapes when they are committed - tolerance in pixels or zero for off */
+    float simplifyTolerance;
+    /** Draw in draft quality while busy and refine when idle */
+    boolean progressiveRendering;
+    /** Call modules that allow it on the geometry thread */
+    boolean threadedGeometry;
     /** Canvas background color */
     int bgColor;
     /** Color */
@@ -199,6 +205,9 @@ class AlcPreferences implements AlcConstants {
 
         smoothing = prefs.getBoolean("Smoothing", true);
         lineSmoothing = prefs.getBoolean("Line Smoothing", true);
+        simplifyTolerance = prefs.getFloat("Simplify Tolerance", 0F);
+        progressiveRendering = prefs.getBoolean("Progressive Rendering", true);
+        threadedGeometry = prefs.getBoolean("Threaded Geometry", false);
         bgColor = prefs.getInt("Background Color", 0xFFFFFF);
         color = prefs.getInt("Color", 0x000000);
         
@@ -227,6 +236,9 @@ class AlcPreferences implements AlcConstants {
         prefs.putBoolean("Palette Attached", paletteAttached);
         prefs.putBoolean("Smoothing", Alchemy.canvas.isSmoothing());
         prefs.putBoolean("Line Smoothing", AlcShape.isLineSmoothing());
+        prefs.putFloat("Simplify Tolerance", Alchemy.canvas.getSimplifyTolerance());
+        prefs.putBoolean("Progressive Rendering", Alchemy.canvas.isProgressive());
+        prefs.putBoolean("Threaded Geometry", Alchemy.canvas.isThreadedGeometry());
         prefs.putBoolean("Simple ToolBar", simpleToolBar);
         prefs.putBoolean("Transparent Fullscreen", transparentFullscreen);
 
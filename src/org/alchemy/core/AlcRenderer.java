@@ -0,0 +1,550 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.lowagie.text.pdf.*;
+import com.sun.pdfview.*;
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders Alchemy shapes to any Graphics2D object<br>
+ * Holds the render settings (background, smoothing, session page, image)
+ * so drawing does not depend on the canvas or the static Alchemy references.
+ * Used by the canvas and by the batch renderer.
+ */
+public class AlcRenderer implements AlcConstants {
+
+    /** Background color */
+    private Color bgColor = Color.WHITE;
+    /** Smoothing (AntiAliasing) on or off */
+    private boolean smoothing = true;
+    /** Ignore the background and draw only shapes */
+    private boolean transparent = false;
+    /** Session page drawn as vectors behind the shapes */
+    private PDFPage page;
+    /** Session page drawn as a bitmap behind the shapes */
+    private Image pageImage;
+    /** Scale the page image was rendered at */
+    private double pageImageZoom = 1;
+    /** Image drawn behind the shapes */
+    private Image image;
+    /** Image drawn behind the shapes from its pyramid, used instead of the image when set */
+    private AlcImagePyramid imagePyramid;
+    /** Scale to draw the image pyramid at */
+    private double imageScale = 1;
+    /** Position to draw the image */
+    private Point imageLocation = new Point(0, 0);
+    /** Draw small shapes simplified, sub-pixel shapes as dots and stamps from images - for bitmap output only */
+    private boolean levelOfDetail = true;
+    /** Draw quickly without antialiasing and with coarser curves - used while the canvas is busy */
+    private boolean draft = false;
+    /** Image the sub-pixel shapes are drawn into before being drawn in one go */
+    private BufferedImage dotImage;
+    /** Pixels of the dot image */
+    private int[] dotPixels;
+    /** Device area covered by the dot image */
+    private Rectangle dotArea;
+    /** Number of dots waiting to be drawn */
+    private int dotCount = 0;
+    /** Bounds of the dots waiting to be drawn, within the dot image */
+    private int dotLeft,  dotTop,  dotRight,  dotBottom;
+
+    /** Creates a new renderer with a white background and smoothing on */
+    public AlcRenderer() {
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SETTINGS
+    //////////////////////////////////////////////////////////////
+    /** Get the background color
+     * @return The background color
+     */
+    public Color getBackgroundColor() {
+        return bgColor;
+    }
+
+    /** Set the background color
+     * @param bgColor   The background color
+     */
+    public void setBackgroundColor(Color bgColor) {
+        this.bgColor = bgColor;
+    }
+
+    /** Get Smoothing (AntiAliasing)
+     * @return Smoothing on or off
+     */
+    public boolean isSmoothing() {
+        return smoothing;
+    }
+
+    /** Set Smoothing (AntiAliasing) on or off
+     * @param smoothing     Smoothing on or off
+     */
+    public void setSmoothing(boolean smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    /** Get the transparent state
+     * @return True if the background is not drawn
+     */
+    public boolean isTransparent() {
+        return transparent;
+    }
+
+    /** Set the transparent state
+     * @param transparent   Ignore the background and draw only shapes
+     */
+    public void setTransparent(boolean transparent) {
+        this.transparent = transparent;
+    }
+
+    /** Get the level of detail state
+     * @return True if small shapes are drawn simplified
+     */
+    public boolean isLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /** Get the draft state
+     * @return True if drawing in draft quality
+     */
+    public boolean isDraft() {
+        return draft;
+    }
+
+    /** Set draft drawing on or off<br>
+     *  Draft drawing turns off antialiasing and, with level of detail on,
+     *  draws curves from paths simplified to within a pixel.
+     * @param draft     Draft drawing on or off
+     */
+    public void setDraft(boolean draft) {
+        this.draft = draft;
+    }
+
+    /** Set level of detail rendering on or off<br>
+     *  When on, shapes are drawn from a simplified path when they are small on screen
+     *  and shapes smaller than a pixel are drawn as dots in a single pass.
+     *  Stamped shapes are drawn from cached images of the stamp.
+     *  Turn this off when drawing to vector formats.
+     * @param levelOfDetail     Level of detail on or off
+     */
+    public void setLevelOfDetail(boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    /** Set a session page to be drawn as vectors behind the shapes
+     * @param page  The page or null for none
+     */
+    public void setPage(PDFPage page) {
+        this.page = page;
+        this.pageImage = null;
+    }
+
+    /** Set a pre-rendered session page to be drawn behind the shapes
+     * @param pageImage The rendered page or null for none
+     * @param zoom      The scale the page was rendered at
+     */
+    public void setPageImage(Image pageImage, double zoom) {
+        this.pageImage = pageImage;
+        this.pageImageZoom = zoom;
+        this.page = null;
+    }
+
+    /** Set the image to be drawn behind the shapes
+     * @param image     The image or null for none
+     * @param location  Position to draw the image
+     */
+    public void setImage(Image image, Point location) {
+        this.image = image;
+        this.imagePyramid = null;
+        this.imageLocation = location;
+    }
+
+    /** Set the image to be drawn behind the shapes, drawing only the visible part at the given scale
+     * @param imagePyramid  The image or null for none
+     * @param location      Position to draw the image
+     * @param scale         Scale to draw the image at
+     */
+    void setImage(AlcImagePyramid imagePyramid, Point location, double scale) {
+        this.image = null;
+        this.imagePyramid = imagePyramid;
+        this.imageLocation = location;
+        this.imageScale = scale;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RENDERING
+    //////////////////////////////////////////////////////////////
+    /** Set up the rendering hints
+     * @param g2    Graphics to draw on
+     */
+    public void setupGraphics(Graphics2D g2) {
+        if (smoothing && !draft) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        } else {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        }
+    }
+
+    /** Set up the rendering hints and draw the background, session page and image
+     *
+     * @param g2        Graphics to draw on
+     * @param width     Width of the area to draw
+     * @param height    Height of the area to draw
+     */
+    public void paintBackground(Graphics2D g2, int width, int height) {
+        setupGraphics(g2);
+
+        // Do not draw the background when creating a transparent image
+        if (!transparent) {
+            // Paint background without transparency
+            g2.setColor(new Color(bgColor.getRed(), bgColor.getGreen(), bgColor.getBlue()));
+            g2.fillRect(0, 0, width, height);
+        }
+
+        // PDF READER
+        if (page != null || pageImage != null) {
+            // Remember the old transform settings
+            AffineTransform at = g2.getTransform();
+            if (pageImage != null) {
+                g2.scale(1 / pageImageZoom, 1 / pageImageZoom);
+                g2.drawImage(pageImage, 0, 0, null);
+            } else {
+                paintPage(g2, page, bgColor);
+            }
+            // Revert to the old transform settings
+            g2.setTransform(at);
+        }
+
+        // Draw Image
+        if (imagePyramid != null) {
+            imagePyramid.paint(g2, imageLocation.x, imageLocation.y, imageScale);
+        } else if (image != null) {
+            g2.drawImage(image, imageLocation.x, imageLocation.y, null);
+        }
+    }
+
+    /** Draw a list of shapes
+     *
+     * @param g2        Graphics to draw on
+     * @param shapes    The shapes to draw
+     * @param width     Width of the area to draw - used for PDF gradients
+     * @param height    Height of the area to draw - used for PDF gradients
+     */
+    public void paintShapes(Graphics2D g2, List<AlcShape> shapes, int width, int height) {
+        // Get the PDF Content Byte
+        PdfContentByte cb = null;
+        if (g2 instanceof PdfGraphics2D) {
+            cb = ((PdfGraphics2D) g2).getContent();
+        }
+
+        // Size of a device pixel in canvas units
+        AffineTransform transform = g2.getTransform();
+        double pixelSize = 0;
+        if (levelOfDetail && cb == null && transform.getDeterminant() != 0) {
+            pixelSize = 1 / Math.sqrt(Math.abs(transform.getDeterminant()));
+        }
+
+        // Only the shapes inside the clip need drawing
+        Rectangle clip = g2.getClipBounds();
+
+        for (int i = 0; i < shapes.size(); i++) {
+            AlcShape currentShape = shapes.get(i);
+            if (clip != null && !currentShape.getPaintedBounds().intersects(clip)) {
+                continue;
+            }
+            Paint paint = currentShape.getPaint();
+            GeneralPath path = currentShape.path;
+
+            // LEVEL OF DETAIL
+            if (pixelSize > 0) {
+                AlcDetail detail = currentShape.getDetail();
+                Rectangle2D bounds = detail.getBounds();
+                double size = Math.max(bounds.getWidth(), bounds.getHeight());
+                if (currentShape.style == STYLE_STROKE) {
+                    size += currentShape.lineWidth;
+                }
+                // Smaller than a pixel, batch it up with the other dots
+                if (size < pixelSize) {
+                    addDot(currentShape, bounds, transform, pixelSize, width, height);
+                    continue;
+                }
+                // Keep the drawing order
+                paintDots(g2);
+
+                // STAMP
+                AlcStamp stamp = currentShape.getStamp();
+                // Drafts use images drawn without antialiasing, like the paths
+                if (stamp != null && stamp.paint(g2, currentShape, currentShape.getStampTransform(), smoothing && !draft)) {
+                    continue;
+                }
+                path = detail.getPath(draft ? pixelSize * 4 : pixelSize);
+            }
+
+            // LINE
+            if (currentShape.style == STYLE_STROKE) {
+                //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
+                g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+
+                // If this shape is a gradient and we are making a PDF
+                if (paint instanceof GradientPaint && cb != null) {
+                    drawTransparentGradient(cb, g2, (GradientPaint) paint, path, false, width, height);
+                } else {
+                    g2.setPaint(paint);
+                    g2.draw(path);
+                }
+
+            // SOLID
+            } else {
+
+                // If this shape is a gradient and we are making a PDF
+                if (paint instanceof GradientPaint && cb != null) {
+                    drawTransparentGradient(cb, g2, (GradientPaint) paint, path, true, width, height);
+                } else {
+                    g2.setPaint(paint);
+                    g2.fill(path);
+                }
+            }
+        }
+        paintDots(g2);
+    }
+
+    /** Blend a shape smaller than a pixel into the dot image
+     *
+     * @param shape         The shape
+     * @param bounds        Bounds of the shape
+     * @param transform     Transform from the canvas to the device
+     * @param pixelSize     Size of a device pixel in canvas units
+     * @param width         Width of the area being drawn
+     * @param height        Height of the area being drawn
+     */
+    private void addDot(AlcShape shape, Rectangle2D bounds, AffineTransform transform, double pixelSize, int width, int height) {
+        if (dotCount == 0) {
+            Rectangle area = transform.createTransformedShape(new Rectangle(0, 0, width, height)).getBounds();
+            if (dotImage == null || dotImage.getWidth() < area.width || dotImage.getHeight() < area.height) {
+                dotImage = new BufferedImage(Math.max(1, area.width), Math.max(1, area.height), BufferedImage.TYPE_INT_ARGB_PRE);
+                dotPixels = ((DataBufferInt) dotImage.getRaster().getDataBuffer()).getData();
+            }
+            dotArea = area;
+            dotLeft = Integer.MAX_VALUE;
+            dotTop = Integer.MAX_VALUE;
+            dotRight = Integer.MIN_VALUE;
+            dotBottom = Integer.MIN_VALUE;
+        }
+
+        // Fraction of a pixel the shape would have covered
+        double area;
+        if (shape.style == STYLE_STROKE) {
+            area = (Math.max(bounds.getWidth(), bounds.getHeight()) + shape.lineWidth) * shape.lineWidth;
+        } else {
+            area = bounds.getWidth() * bounds.getHeight();
+        }
+        double coverage = Math.min(1, area / (pixelSize * pixelSize)) * shape.color.getAlpha();
+
+        // Spread the dot over the four pixels nearest its centre
+        Point2D centre = transform.transform(new Point2D.Double(bounds.getCenterX(), bounds.getCenterY()), null);
+        double px = centre.getX() - dotArea.x - 0.5;
+        double py = centre.getY() - dotArea.y - 0.5;
+        int x = (int) Math.floor(px);
+        int y = (int) Math.floor(py);
+        double fx = px - x;
+        double fy = py - y;
+        blendDot(x, y, shape.color, coverage * (1 - fx) * (1 - fy));
+        blendDot(x + 1, y, shape.color, coverage * fx * (1 - fy));
+        blendDot(x, y + 1, shape.color, coverage * (1 - fx) * fy);
+        blendDot(x + 1, y + 1, shape.color, coverage * fx * fy);
+        dotCount++;
+    }
+
+    /** Blend a color over a single pixel of the dot image
+     *
+     * @param x         X position in the dot image
+     * @param y         Y position in the dot image
+     * @param c         The color
+     * @param alpha     Alpha to blend with between 0 and 255
+     */
+    private void blendDot(int x, int y, Color c, double alpha) {
+        int a = (int) Math.round(alpha);
+        if (a <= 0 || x < 0 || y < 0 || x >= dotArea.width || y >= dotArea.height) {
+            return;
+        }
+        // Blend over what is already there - the image is premultiplied
+        int index = y * dotImage.getWidth() + x;
+        int dst = dotPixels[index];
+        int inverse = 255 - a;
+        int outA = a + ((dst >>> 24) * inverse) / 255;
+        int outR = (c.getRed() * a) / 255 + (((dst >> 16) & 0xFF) * inverse) / 255;
+        int outG = (c.getGreen() * a) / 255 + (((dst >> 8) & 0xFF) * inverse) / 255;
+        int outB = (c.getBlue() * a) / 255 + ((dst & 0xFF) * inverse) / 255;
+        dotPixels[index] = (outA << 24) | (outR << 16) | (outG << 8) | outB;
+
+        dotLeft = Math.min(dotLeft, x);
+        dotTop = Math.min(dotTop, y);
+        dotRight = Math.max(dotRight, x);
+        dotBottom = Math.max(dotBottom, y);
+    }
+
+    /** Draw the waiting dots in a single pass and clear the dot image
+     * @param g2    Graphics to draw on
+     */
+    private void paintDots(Graphics2D g2) {
+        if (dotCount == 0) {
+            return;
+        }
+        dotCount = 0;
+        if (dotRight < dotLeft) {
+            return;
+        }
+        int w = dotRight - dotLeft + 1;
+        int h = dotBottom - dotTop + 1;
+        // Draw in device space so each dot lands on its pixel
+        AffineTransform at = g2.getTransform();
+        try {
+            g2.transform(at.createInverse());
+        } catch (NoninvertibleTransformException ex) {
+            return;
+        }
+        g2.drawImage(dotImage.getSubimage(dotLeft, dotTop, w, h), dotArea.x + dotLeft, dotArea.y + dotTop, null);
+        g2.setTransform(at);
+
+        int stride = dotImage.getWidth();
+        for (int y = dotTop; y <= dotBottom; y++) {
+            Arrays.fill(dotPixels, y * stride + dotLeft, y * stride + dotRight + 1, 0);
+        }
+    }
+
+    /** Draw a list of guide shapes - guides use their plain color
+     *
+     * @param g2        Graphics to draw on
+     * @param guides    The guide shapes to draw
+     */
+    public static void paintGuides(Graphics2D g2, List<AlcShape> guides) {
+        for (int i = 0; i < guides.size(); i++) {
+            AlcShape currentShape = guides.get(i);
+            // LINE
+            if (currentShape.style == STYLE_STROKE) {
+                //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
+                g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+                g2.setColor(currentShape.color);
+                g2.draw(currentShape.path);
+            // SOLID
+            } else {
+                g2.setColor(currentShape.color);
+                g2.fill(currentShape.path);
+            }
+        }
+    }
+
+    /** Render shapes to a new image
+     *
+     * @param shapes    The shapes to draw
+     * @param width     Width of the image
+     * @param height    Height of the image
+     * @param scale     Scale setting to scale the shapes up or down
+     * @return          The rendered image
+     */
+    public BufferedImage renderImage(List<AlcShape> shapes, int width, int height, double scale) {
+        int type = transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage buffImage = new BufferedImage(width, height, type);
+        Graphics2D g2 = buffImage.createGraphics();
+        if (scale != 1) {
+            g2.scale(scale, scale);
+        }
+        int w = (int) Math.ceil(width / scale);
+        int h = (int) Math.ceil(height / scale);
+        paintBackground(g2, w, h);
+        paintShapes(g2, shapes, w, h);
+        g2.dispose();
+        return buffImage;
+    }
+
+    /** Draw a session page as vectors at its natural size.
+     *  A page is drawn by one thread at a time, as the canvas, page cache and snapshots share it.
+     *
+     * @param g2        Graphics to draw on
+     * @param page      The page to draw
+     * @param bgColor   Background color behind the page
+     */
+    public static void paintPage(Graphics2D g2, PDFPage page, Color bgColor) {
+        int pageWidth = (int) page.getWidth();
+        int pageHeight = (int) page.getHeight();
+        PDFRenderer renderer = new PDFRenderer(page, g2, new Rectangle(0, 0, pageWidth, pageHeight), null, bgColor);
+        synchronized (page) {
+            try {
+                page.waitForFinish();
+                renderer.run();
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /** Draw a transparent gradient to the PDF */
+    private static void drawTransparentGradient(PdfContentByte cb, Graphics2D g2, GradientPaint gp, GeneralPath path, boolean fill, int width, int height) {
+
+        //Create template
+        PdfTemplate template = cb.createTemplate(width, height);
+
+        //Prepare transparent group
+        PdfTransparencyGroup transGroup = new PdfTransparencyGroup();
+        transGroup.put(PdfName.CS, PdfName.DEVICERGB);
+        transGroup.setIsolated(true);
+        transGroup.setKnockout(false);
+        template.setGroup(transGroup);
+
+        //Prepare graphic state
+        PdfGState gState = new PdfGState();
+        PdfDictionary maskDict = new PdfDictionary();
+        maskDict.put(PdfName.TYPE, PdfName.MASK);
+        maskDict.put(PdfName.S, new PdfName("Luminosity"));
+        maskDict.put(new PdfName("G"), template.getIndirectReference());
+        gState.put(PdfName.SMASK, maskDict);
+        cb.setGState(gState);
+
+        // Create a gradient to use as the mask
+        // Also flip the Y location
+        PdfShading shading = PdfShading.simpleAxial(
+                cb.getPdfWriter(),
+                (float) gp.getPoint1().getX(),
+                (float) (height - gp.getPoint1().getY()),
+                (float) gp.getPoint2().getX(),
+                (float) (height - gp.getPoint2().getY()),
+                Color.WHITE,
+                Color.BLACK,
+                true,
+                true);
+        template.paintShading(shading);
+
+        // Draw the actual color under the mask
+        g2.setColor(gp.getColor1());
+        // SOLID
+        if (fill) {
+            g2.fill(path);
+        // LINE
+        } else {
+            g2.draw(path);
+        }
+    }
+}
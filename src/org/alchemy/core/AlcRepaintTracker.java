@@ -0,0 +1,141 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.geom.*;
+import java.util.*;
+
+/**
+ * Keeps track of the shapes drawn live on the canvas to work out the area that
+ * needs repainting when they change<br>
+ * A line that has only been added to since it was last drawn
+ * only needs the new segments repainted, and is not gone through again
+ * to find them - its bounds are kept and the shape tells what was added.
+ */
+class AlcRepaintTracker implements AlcConstants {
+
+    /** What was drawn for each shape at the last update */
+    private IdentityHashMap<AlcShape, Drawn> drawn = new IdentityHashMap<AlcShape, Drawn>();
+
+    /** Record the shapes now drawn and get the area that changed since the last update
+     *
+     * @param lists     The lists of shapes drawn
+     * @return          The area to repaint, or null if nothing has changed
+     */
+    Rectangle update(List<List<AlcShape>> lists) {
+        IdentityHashMap<AlcShape, Drawn> now = new IdentityHashMap<AlcShape, Drawn>();
+        Rectangle2D area = null;
+        for (int j = 0; j < lists.size(); j++) {
+            List<AlcShape> shapes = lists.get(j);
+            for (int i = 0; i < shapes.size(); i++) {
+                AlcShape shape = shapes.get(i);
+                Drawn before = drawn.remove(shape);
+                Drawn after = new Drawn(shape, before);
+                now.put(shape, after);
+                area = union(area, after.changed);
+            }
+        }
+        // Shapes that have gone
+        for (Drawn before : drawn.values()) {
+            area = union(area, before.bounds);
+        }
+        drawn = now;
+        return (area == null) ? null : area.getBounds();
+    }
+
+    /** Forget what was drawn - the next update returns the area of every shape */
+    void reset() {
+        drawn.clear();
+    }
+
+    /** Get the union of two areas, either of which may be null */
+    private static Rectangle2D union(Rectangle2D a, Rectangle2D b) {
+        if (a == null || b == null) {
+            return (a == null) ? b : a;
+        }
+        return a.createUnion(b);
+    }
+
+    /** The state of a shape when it was drawn.
+     *  The path is taken to be unchanged while it is the same path
+     *  with the same current point, as in {@link AlcDetail}
+     */
+    private static class Drawn {
+
+        final GeneralPath path;
+        final Point2D currentPoint;
+        final Paint paint;
+        final int style;
+        final float lineWidth;
+        /** Area covered by the whole shape */
+        final Rectangle2D bounds;
+        /** Area changed since the shape was last drawn, or null if unchanged */
+        Rectangle2D changed;
+
+        Drawn(AlcShape shape, Drawn before) {
+            path = shape.path;
+            currentPoint = path.getCurrentPoint();
+            paint = shape.getPaint();
+            style = shape.style;
+            lineWidth = shape.lineWidth;
+            double margin = 2;
+            if (style == STYLE_STROKE) {
+                margin += lineWidth / 2;
+            }
+            // Always taken, so the next update only gets what is added after this one
+            Rectangle2D added = shape.takeAddedBounds();
+
+            boolean sameLook = before != null && before.path == path && before.style == style &&
+                    before.lineWidth == lineWidth && before.paint.equals(paint);
+            if (sameLook && samePoint(currentPoint, before.currentPoint)) {
+                // Unchanged
+                bounds = before.bounds;
+            } else if (sameLook && added != null && before.currentPoint != null) {
+                // Only added to - the new segments start from the last current point
+                Rectangle2D tail = new Rectangle2D.Double(before.currentPoint.getX(), before.currentPoint.getY(), 0, 0);
+                tail.add(added);
+                tail = grow(tail, margin);
+                bounds = before.bounds.createUnion(tail);
+                if (style == STYLE_STROKE) {
+                    // Line added to - only the new segments
+                    changed = tail;
+                } else {
+                    // A fill changes everywhere between its first and last points
+                    changed = bounds;
+                }
+            } else {
+                // Changed some other way - clear what was there and draw it all
+                bounds = grow(path.getBounds2D(), margin);
+                changed = union((before == null) ? null : before.bounds, bounds);
+            }
+        }
+
+        private static boolean samePoint(Point2D a, Point2D b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+
+        private static Rectangle2D grow(Rectangle2D r, double margin) {
+            return new Rectangle2D.Double(r.getX() - margin, r.getY() - margin,
+                    r.getWidth() + margin * 2, r.getHeight() + margin * 2);
+        }
+    }
+}
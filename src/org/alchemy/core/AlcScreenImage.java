@@ -0,0 +1,135 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * Copy of an image kept in video memory for drawing to the screen<br>
+ * The image is copied into a VolatileImage the first time it is drawn,
+ * and again when it is replaced, drawn into or the copy is lost - such as when
+ * the display mode changes. Where video memory can not be used the image is drawn as it is.
+ */
+class AlcScreenImage {
+
+    /** Times to try drawing when the copy keeps being lost */
+    private static final int MAX_ATTEMPTS = 3;
+    /** The copy in video memory */
+    private VolatileImage copy;
+    /** The image the copy was made from */
+    private Image source;
+    /** If the image has been drawn into since it was copied */
+    private volatile boolean changed = false;
+    /** Set once video memory has been found not to work */
+    private boolean software = false;
+
+    /** Note that the image has been drawn into in place and needs copying again */
+    void invalidate() {
+        changed = true;
+    }
+
+    /** Free the copy - it is made again the next time it is drawn */
+    void flush() {
+        if (copy != null) {
+            copy.flush();
+            copy = null;
+        }
+        source = null;
+    }
+
+    /** Check if the image is being drawn from video memory
+     * @return  True if the copy is accelerated
+     */
+    boolean isAccelerated() {
+        return copy != null && copy.getCapabilities().isAccelerated();
+    }
+
+    /** Draw an image from its copy in video memory
+     *
+     * @param g2        Graphics to draw on
+     * @param image     The image to draw
+     * @param x         X location
+     * @param y         Y location
+     */
+    void paint(Graphics2D g2, Image image, int x, int y) {
+        GraphicsConfiguration gc = g2.getDeviceConfiguration();
+        // Images, printing and exporting get the image itself
+        if (software || !(image instanceof BufferedImage) ||
+                gc.getDevice().getType() != GraphicsDevice.TYPE_RASTER_SCREEN) {
+            g2.drawImage(image, x, y, null);
+            return;
+        }
+        BufferedImage buffImage = (BufferedImage) image;
+        int attempts = 0;
+        do {
+            if (!validate(buffImage, gc)) {
+                g2.drawImage(image, x, y, null);
+                return;
+            }
+            g2.drawImage(copy, x, y, null);
+        } while (copy.contentsLost() && ++attempts < MAX_ATTEMPTS);
+    }
+
+    /** Make sure the copy is up to date, making it again if needed
+     * @return  False if video memory can not be used
+     */
+    private boolean validate(BufferedImage image, GraphicsConfiguration gc) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int transparency = image.getTransparency();
+        if (copy != null && (copy.getWidth() != width || copy.getHeight() != height ||
+                copy.getTransparency() != transparency)) {
+            flush();
+        }
+        int status = VolatileImage.IMAGE_RESTORED;
+        if (copy != null) {
+            status = copy.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                // Moved to another screen
+                flush();
+                status = VolatileImage.IMAGE_RESTORED;
+            }
+        }
+        if (copy == null) {
+            try {
+                copy = gc.createCompatibleVolatileImage(width, height, transparency);
+            } catch (Exception ex) {
+                copy = null;
+            }
+            if (copy == null || !copy.getCapabilities().isAccelerated()) {
+                // Nothing gained over drawing the image itself
+                flush();
+                software = true;
+                return false;
+            }
+            copy.validate(gc);
+        }
+        if (status == VolatileImage.IMAGE_RESTORED || image != source || changed) {
+            Graphics2D g2 = copy.createGraphics();
+            g2.setComposite(AlphaComposite.Src);
+            g2.drawImage(image, 0, 0, null);
+            g2.dispose();
+            source = image;
+            changed = false;
+        }
+        return true;
+    }
+}
@@ -61,6 +61,8 @@ class AlcSession implements ActionListener, AlcConstants {
     private int currentPdfReadPage = 1;
     /** Number of pages of the read PDF */
     private int maxPdfReadPage;
+    /** Rendered pages of the read PDF */
+    private final AlcPageCache pageCache = new AlcPageCache(8);
 
     AlcSession() {
     }
@@ -180,6 +182,14 @@ class AlcSession implements ActionListener, AlcConstants {
 
     /** Save a single pdf page to the current pdf being created */
     boolean savePage() {
+        long start = Alchemy.canvas.performance.start();
+        boolean saved = writePage();
+        Alchemy.canvas.performance.stop(AlcPerformance.SAVE, start);
+        return saved;
+    }
+
+    /** Write the canvas as a new page at the end of the session pdf */
+    private boolean writePage() {
         // If this is the first time or if the file is not actually there
         if (pdfWriteFile == null || !pdfWriteFile.exists()) {
             String fileName = Alchemy.preferences.sessionFilePreName + AlcUtil.dateStamp(Alchemy.preferences.sessionFileDateFormat) + ".pdf";
@@ -224,8 +234,18 @@ class AlcSession implements ActionListener, AlcConstants {
      * @return      True if save worked, otherwise false
      */
     boolean saveSinglePdf(File file) {
-        // Get the current 'real' size of the canvas without margins/borders
-        java.awt.Rectangle bounds = Alchemy.canvas.getVisibleRect();
+        return saveSinglePdf(file, Alchemy.canvas.getSnapshot());
+    }
+
+    /** Save a snapshot of the canvas to a single paged PDF file - can be called on any thread
+     * 
+     * @param file      The file object to save the pdf to
+     * @param snapshot  The snapshot to save
+     * @return          True if save worked, otherwise false
+     */
+    static boolean saveSinglePdf(File file, AlcCanvasSnapshot snapshot) {
+        // The 'real' size of the canvas without margins/borders
+        Dimension bounds = new Dimension(snapshot.getWidth(), snapshot.getHeight());
         //int singlePdfWidth = Alchemy.window.getWindowSize().width;
         //int singlePdfHeight = Alchemy.window.getWindowSize().height;
         com.lowagie.text.Document document = new com.lowagie.text.Document(new com.lowagie.text.Rectangle(bounds.width, bounds.height), 0, 0, 0, 0);
@@ -267,9 +287,7 @@ class AlcSession implements ActionListener, AlcConstants {
 
             // Draw into the template and add it to the PDF 
             Graphics2D g2pdf = tp.createGraphics(bounds.width, bounds.height);
-            Alchemy.canvas.setGuide(false);
-            Alchemy.canvas.vectorCanvas.paintComponent(g2pdf);
-            Alchemy.canvas.setGuide(true);
+            snapshot.paint(g2pdf, false, false);
             g2pdf.dispose();
             cb.addTemplate(tp, 0, 0);
 
@@ -293,11 +311,21 @@ class AlcSession implements ActionListener, AlcConstants {
      * @return      True if save worked, otherwise false
      */
     boolean saveSVG(File file) {
+        return saveSVG(file, Alchemy.canvas.getSnapshot());
+    }
+
+    /** Save a snapshot of the canvas to a single paged SVG file - can be called on any thread
+     *
+     * @param file      The file object to save the svg to
+     * @param snapshot  The snapshot to save
+     * @return          True if save worked, otherwise false
+     */
+    static boolean saveSVG(File file, AlcCanvasSnapshot snapshot) {
         boolean noError = true;
         System.out.println("Save SVG Called: " + file.toString());
 
-        // Get the current 'real' size of the canvas without margins/borders
-        java.awt.Rectangle bounds = Alchemy.canvas.getVisibleRect();
+        // The 'real' size of the canvas without margins/borders
+        Dimension bounds = new Dimension(snapshot.getWidth(), snapshot.getHeight());
         // Get a DOMImplementation.
         DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
         // Create an instance of org.w3c.dom.Document.
@@ -312,10 +340,8 @@ class AlcSession implements ActionListener, AlcConstants {
 
         //set the canvas size
         svgGenerator.setSVGCanvasSize(new Dimension(bounds.width, bounds.height));
-        // Ask vectorCanvas to render into the SVG Graphics2D implementation.
-        Alchemy.canvas.setGuide(false);
-        Alchemy.canvas.vectorCanvas.paintComponent(svgGenerator);
-        Alchemy.canvas.setGuide(true);
+        // Render the snapshot into the SVG Graphics2D implementation.
+        snapshot.paint(svgGenerator, false, false);
         svgGenerator.dispose();
             
         boolean useCSS = true; // we want to use CSS style attributes
@@ -467,10 +493,12 @@ class AlcSession implements ActionListener, AlcConstants {
             FileChannel channel = raf.getChannel();
             ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
             pdfReadFile = new PDFFile(buf);
+            pageCache.setFile(pdfReadFile);
             currentPdfReadPage = 1;
             maxPdfReadPage = pdfReadFile.getNumPages();
             pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
             Alchemy.canvas.redraw(true);
+            prefetchPages();
             return true;
 
 
@@ -490,6 +518,7 @@ class AlcSession implements ActionListener, AlcConstants {
                 //System.out.println(currentPdfReadPage + " " + maxPdfReadPage);
                 pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
+                prefetchPages();
             } else {
                 TOOLKIT.beep();
             }
@@ -504,6 +533,7 @@ class AlcSession implements ActionListener, AlcConstants {
                 //System.out.println(currentPdfReadPage + " " + maxPdfReadPage);
                 pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
+                prefetchPages();
             } else {
                 TOOLKIT.beep();
             }
@@ -514,9 +544,32 @@ class AlcSession implements ActionListener, AlcConstants {
     void unloadSessionFile() {
         pdfReadFile = null;
         pdfReadPage = null;
+        pageCache.setFile(null);
         Alchemy.canvas.redraw(true);
     }
 
+    /** Get the current session page as a rendered image
+     *  Pages are served from the page cache when possible
+     *
+     * @param zoom  Scale to render the page at
+     * @return      The rendered page or null if no session file is loaded
+     */
+    java.awt.image.BufferedImage getPageImage(double zoom) {
+        if (pdfReadPage == null) {
+            return null;
+        }
+        return pageCache.getPage(currentPdfReadPage, zoom, Alchemy.canvas.getBackgroundColor());
+    }
+
+    /** Render the pages either side of the current page in the background */
+    private void prefetchPages() {
+        if (pdfReadFile != null) {
+            java.awt.Color bgColor = Alchemy.canvas.getBackgroundColor();
+            pageCache.prefetch(currentPdfReadPage + 1, 1, bgColor);
+            pageCache.prefetch(currentPdfReadPage - 1, 1, bgColor);
+        }
+    }
+
     /** When a session pdf is loaded and linked to the current pdf
      *  this function is used to loop through the pages
      */
@@ -533,6 +586,7 @@ class AlcSession implements ActionListener, AlcConstants {
                 pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
             }
+            prefetchPages();
         }
     }
 
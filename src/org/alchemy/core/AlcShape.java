@@ -62,6 +62,27 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     private ArrayList<Float> spineWidth;
     /** Utility variable used for storing the sort index of an array of AlcShapes */
     private int sortIndex = 0;
+    /** Simplified copies of the path for drawing at small sizes - made when first needed */
+    private transient AlcDetail detail;
+    /** Flattened copy of the path used for hit tests, made when first needed */
+    private transient AlcPolygon polygon;
+    /** Stamp this shape is drawn from, or null to draw the path */
+    private transient AlcStamp stamp;
+    /** Transform from the stamp to this shape */
+    private transient AffineTransform stampTransform;
+    /** The path when the stamp transform was last updated */
+    private transient GeneralPath stampPath;
+    /** The current point of the path when the stamp transform was last updated */
+    private transient Point2D stampPoint;
+    /** Stamp made from this shape for its stamp clones */
+    private transient AlcStamp stampSource;
+    /** Bounds of the points added by lineTo and curveTo since {@link #takeAddedBounds()}, null if none */
+    private transient Rectangle2D.Float addedBounds;
+    /** The path and its current point after the last points were added or taken */
+    private transient GeneralPath addedPath;
+    private transient Point2D addedPoint;
+    /** Cleared if the path has been changed in other ways since the added bounds were taken */
+    private transient boolean addedValid = false;
     //////////////////////////////////////////////////////////////
     // SHAPE PREFERENCES
     //////////////////////////////////////////////////////////////
@@ -190,9 +211,14 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     }
 
     /** Set the attributes of this shape (Alpha/Color/Style/LineWidth)
-     *  to the current values of the canvas
+     *  to the current values of the canvas.
+     *  Without a canvas (batch rendering) a black 1px line is used
      */
     public void setup() {
+        if (Alchemy.canvas == null) {
+            setup(Color.BLACK, 255, STYLE_STROKE, 1F);
+            return;
+        }
         this.alpha = Alchemy.canvas.getAlpha();
         setColor(Alchemy.canvas.getColor());
         this.style = Alchemy.canvas.getStyle();
@@ -209,7 +235,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to curve to
      */
     public void curveTo(Point p) {
-        curveTo(new Point2D.Float(p.x, p.y));
+        curveTo(p.x, p.y);
     }
 
     /** 
@@ -218,42 +244,51 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to curve to
      */
     public void curveTo(Point2D.Float p) {
+        curveTo(p.x, p.y);
+    }
+
+    /** 
+     * Add a curve point to the shape without creating any objects
+     * This method uses a simple smoothing algorithm to get rid of hard edges
+     * @param x     X coordinate to curve to
+     * @param y     Y coordinate to curve to
+     */
+    public void curveTo(float x, float y) {
         if (lineSmoothing) {
 
             // Filter out repeats
-            if (!p.equals(lastPoint)) {
+            if (!isLastPoint(x, y)) {
 
                 // At the start just draw lines so smaller marks can be made
                 if (totalPoints < startPoints) {
 
-                    path.lineTo(p.x, p.y);
-                    savePoints(p);
+                    Point2D start = path.getCurrentPoint();
+                    path.lineTo(x, y);
+                    added(start, x, y, x, y);
+                    savePoints(x, y);
 
                 } else {
 
                     // Movement since the last point was drawn
-                    double movement = p.distance(lastPoint);
-                    //System.out.println(p.x + " " + lastPt.x);
+                    double movement = Point2D.distance(lastPoint.x, lastPoint.y, x, y);
 
                     // Test to see if this point has moved far enough
                     if (movement > minDistance) {
 
-                        // New control point value
-                        Point2D.Float pt = new Point2D.Float();
-
-                        // Average the points
-                        pt.x = (lastPoint.x + p.x) / 2F;
-                        pt.y = (lastPoint.y + p.y) / 2F;
-
-                        // Add the Quadratic curve - control point x1, y1 and actual point x2, y2
-                        path.quadTo(lastPoint.x, lastPoint.y, pt.x, pt.y);
-                        savePoints(p);
+                        // Add the Quadratic curve - control point is the last point
+                        // and the curve ends half way to the new point
+                        Point2D start = path.getCurrentPoint();
+                        float endX = (lastPoint.x + x) / 2F;
+                        float endY = (lastPoint.y + y) / 2F;
+                        path.quadTo(lastPoint.x, lastPoint.y, endX, endY);
+                        added(start, lastPoint.x, lastPoint.y, endX, endY);
+                        savePoints(x, y);
 
                     }
                 }
             }
         } else {
-            lineTo(p);
+            lineTo(x, y);
         }
     }
 
@@ -262,7 +297,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to draw a line to
      */
     public void lineTo(Point p) {
-        lineTo(new Point2D.Float(p.x, p.y));
+        lineTo(p.x, p.y);
     }
 
     /**
@@ -270,34 +305,106 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to draw a line to
      */
     public void lineTo(Point2D.Float p) {
+        lineTo(p.x, p.y);
+    }
+
+    /**
+     * Add a straight line point to the shape without creating any objects
+     * @param x     X coordinate to draw a line to
+     * @param y     Y coordinate to draw a line to
+     */
+    public void lineTo(float x, float y) {
         // Filter out repeats
-        if (!p.equals(lastPoint)) {
+        if (!isLastPoint(x, y)) {
             // At the start just draw lines so smaller marks can be made
             if (totalPoints < startPoints) {
 
-                path.lineTo(p.x, p.y);
-                savePoints(p);
+                Point2D start = path.getCurrentPoint();
+                path.lineTo(x, y);
+                added(start, x, y, x, y);
+                savePoints(x, y);
 
             } else {
 
                 // Movement since the last point was drawn
-                double movement = p.distance(lastPoint);
+                double movement = Point2D.distance(lastPoint.x, lastPoint.y, x, y);
 
                 // Test to see if this point has moved far enough
                 if (movement > minDistance) {
-                    path.lineTo(p.x, p.y);
-                    savePoints(p);
+                    Point2D start = path.getCurrentPoint();
+                    path.lineTo(x, y);
+                    added(start, x, y, x, y);
+                    savePoints(x, y);
                 }
             }
         }
     }
 
+    /** Keep the bounds of the points just added to the path
+     *
+     * @param start     The current point of the path before they were added
+     */
+    private void added(Point2D start, float x1, float y1, float x2, float y2) {
+        // Changed some other way since the last points were added or taken
+        if (addedPath != path || !samePoint(start, addedPoint)) {
+            addedValid = false;
+        }
+        if (addedValid) {
+            if (addedBounds == null) {
+                addedBounds = new Rectangle2D.Float(x1, y1, 0, 0);
+            } else {
+                addedBounds.add(x1, y1);
+            }
+            addedBounds.add(x2, y2);
+        }
+        addedPoint = path.getCurrentPoint();
+    }
+
+    /** Get the bounds of the points added by lineTo and curveTo since the last call,
+     *  and start keeping them again from here. Used by the repaint tracker so a line
+     *  that is only added to does not have to be gone through to find what changed.
+     * @return  The bounds of the added points, or null if none were added
+     *          or the path has been changed in other ways
+     */
+    Rectangle2D takeAddedBounds() {
+        Point2D current = path.getCurrentPoint();
+        Rectangle2D bounds = null;
+        if (addedValid && addedPath == path && samePoint(current, addedPoint)) {
+            bounds = addedBounds;
+        }
+        addedBounds = null;
+        addedPath = path;
+        addedPoint = current;
+        addedValid = true;
+        return bounds;
+    }
+
+    private static boolean samePoint(Point2D a, Point2D b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    /** Check if a point is the same as the last point */
+    private boolean isLastPoint(float x, float y) {
+        return lastPoint != null && lastPoint.x == x && lastPoint.y == y;
+    }
+
     /** 
      * Add a spine point for variable width lines
      * @param p     The point to add
      * @param width The width of the line
      */
     public void spineTo(Point2D.Float p, float width) {
+        spineTo(p.x, p.y, width);
+    }
+
+    /** 
+     * Add a spine point for variable width lines.
+     * Only creates objects for points that are kept.
+     * @param x     X coordinate of the point to add
+     * @param y     Y coordinate of the point to add
+     * @param width The width of the line
+     */
+    public void spineTo(float x, float y, float width) {
         this.penShape = true;
         if (spine == null) {
             spine = new ArrayList<Point2D.Float>(1000);
@@ -310,16 +417,16 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         if (Alchemy.canvas.isPenLocationChanged()) {
             // If this is the first point then add it
             if (spine.size() == 0) {
-                spine.add(p);
+                spine.add(new Point2D.Float(x, y));
                 spineWidth.add(width);
 
             // If this is the second point onwards
             // Then check there has been enough movement    
             } else {
                 Point2D.Float lastPt = spine.get(spine.size() - 1);
-                double distance = p.distance(lastPt);
+                double distance = lastPt.distance(x, y);
                 if (distance > minDistanceSpine) {
-                    spine.add(p);
+                    spine.add(new Point2D.Float(x, y));
                     spineWidth.add(width);
                     createSpine();
                 }
@@ -331,14 +438,17 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     public void createSpine() {
         if (spine.size() > 0) {
             // Reset the shape and create the first point
-            setPoint(spine.get(0));
+            // Sized to fit both sides of the line so the path does not grow
+            Point2D.Float start = spine.get(0);
+            path = new GeneralPath(GeneralPath.WIND_NON_ZERO, spine.size() * 2 + 2);
+            path.moveTo(start.x, start.y);
+            totalPoints = 1;
             // Draw the outer points
             for (int i = 1; i < spine.size(); i++) {
                 Point2D.Float p2 = spine.get(i - 1);
                 Point2D.Float p1 = spine.get(i);
                 float level = (spineWidth.get(i)).floatValue();
-                Point2D.Float pOut = rightAngle(p1, p2, level);
-                curveTo(pOut);
+                curveToRightAngle(p1, p2, level);
             }
             // Draw the inner points
             for (int j = 1; j < spine.size(); j++) {
@@ -346,14 +456,20 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
                 Point2D.Float p2 = spine.get(index);
                 Point2D.Float p1 = spine.get(index - 1);
                 float level = (spineWidth.get(index)).floatValue();
-                Point2D.Float pIn = rightAngle(p1, p2, level);
-                curveTo(pIn);
+                curveToRightAngle(p1, p2, level);
             }
             // Close the shape
             closePath();
         }
     }
 
+    /** Curve to the point at a right angle to the line between two points
+     *  - as {@link #rightAngle(Point2D.Float, Point2D.Float, double)} without making a new point */
+    private void curveToRightAngle(Point2D.Float p1, Point2D.Float p2, double distance) {
+        double angle = Math.atan2(p1.y - p2.y, p1.x - p2.x) - MATH_HALF_PI;
+        curveTo((float) (p1.x + (distance * Math.cos(angle))), (float) (p1.y + (distance * Math.sin(angle))));
+    }
+
     /** Append a GeneralPath to this shape
      * 
      * @param newPath   The path to be appended
@@ -369,10 +485,19 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p     Point to be saved
      */
     private void savePoints(Point2D.Float p) {
+        savePoints(p.x, p.y);
+    }
+
+    private void savePoints(float x, float y) {
         // Increment the total number of points
         totalPoints++;
         // Set the current point to the (original) last point value - not the altered pt value
-        lastPoint = new Point2D.Float(p.x, p.y);
+        // The last point is never shared so can be reused
+        if (lastPoint == null) {
+            lastPoint = new Point2D.Float(x, y);
+        } else {
+            lastPoint.setLocation(x, y);
+        }
         penShape = true;
     }
 
@@ -390,6 +515,14 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         path.moveTo(p.x, p.y);
     }
 
+    /** Move to the given coordinates
+     * @param x     X coordinate to move to
+     * @param y     Y coordinate to move to
+     */
+    public void moveTo(float x, float y) {
+        path.moveTo(x, y);
+    }
+
     /**
      *  Closes the current subpath by drawing a straight line back to the coordinates of the last moveTo
      */
@@ -408,8 +541,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      */
     public void move(double x, double y) {
         AffineTransform move = AffineTransform.getTranslateInstance(x, y);
-        GeneralPath transformedPath = (GeneralPath) path.createTransformedShape(move);
-        this.path = transformedPath;
+        transformPath(move);
     }
 
     /** Scale the shape by a certain factor
@@ -419,8 +551,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      */
     public void scale(double sx, double sy) {
         AffineTransform scale = AffineTransform.getScaleInstance(sx, sy);
-        GeneralPath transformedPath = (GeneralPath) path.createTransformedShape(scale);
-        this.path = transformedPath;
+        transformPath(scale);
     }
 
     /** Rotate the shape using the shapes centre as the anchor point
@@ -442,8 +573,37 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      */
     public void rotate(double theta, double x, double y) {
         AffineTransform rotate = AffineTransform.getRotateInstance(theta, x, y);
-        GeneralPath transformedPath = (GeneralPath) path.createTransformedShape(rotate);
-        this.path = transformedPath;
+        transformPath(rotate);
+    }
+
+    /** Transform the path, and the stamp transform if the shape is drawn from a stamp */
+    private void transformPath(AffineTransform transform) {
+        boolean stamped = getStamp() != null;
+        this.path = (GeneralPath) path.createTransformedShape(transform);
+        if (stamped) {
+            stampTransform.preConcatenate(transform);
+            setStampPath();
+        } else {
+            stamp = null;
+        }
+    }
+
+    /** Simplify the shape so it uses fewer points.
+     *  Variable width lines also have their spine reduced, but the outline
+     *  is fitted to what was drawn rather than redrawn from the reduced spine.
+     * 
+     * @param tolerance     Maximum distance in pixels the shape may move from the original
+     */
+    public void simplify(float tolerance) {
+        // Stamped shapes are drawn from an image and keep the path of the stamp
+        if (getStamp() != null) {
+            return;
+        }
+        if (spine != null) {
+            AlcSimplify.reduceSpine(spine, spineWidth, tolerance);
+        }
+        path = AlcSimplify.simplify(path, tolerance);
+        recalculateTotalPoints();
     }
 
     //////////////////////////////////////////////////////////////
@@ -519,7 +679,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @return The last point
      */
     public Point2D.Float getLastPoint() {
-        return lastPoint;
+        return (lastPoint == null) ? null : new Point2D.Float(lastPoint.x, lastPoint.y);
     }
 
     /** 
@@ -528,7 +688,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param lastPt   The last point
      */
     public void setLastPoint(Point2D.Float lastPt) {
-        this.lastPoint = lastPt;
+        this.lastPoint = (lastPt == null) ? null : new Point2D.Float(lastPt.x, lastPt.y);
     }
 
     /**
@@ -559,6 +719,55 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         }
     }
 
+    /** Get the level of detail pyramid for this shape, remade if the path has changed
+     * @return  The level of detail pyramid
+     */
+    AlcDetail getDetail() {
+        if (detail == null || !detail.isValid(path)) {
+            detail = new AlcDetail(path);
+        }
+        return detail;
+    }
+
+    /** Get the area this shape touches when drawn, including the line width and antialiasing
+     * @return  The bounds
+     */
+    Rectangle2D getPaintedBounds() {
+        Rectangle2D bounds = getDetail().getBounds();
+        double margin = 2;
+        if (style == STYLE_STROKE) {
+            margin += lineWidth / 2;
+        }
+        return new Rectangle2D.Double(bounds.getX() - margin, bounds.getY() - margin,
+                bounds.getWidth() + margin * 2, bounds.getHeight() + margin * 2);
+    }
+
+    /** Get the stamp this shape is drawn from
+     * @return  The stamp or null if the shape has been changed other than by a transform
+     */
+    AlcStamp getStamp() {
+        if (stamp != null && gradientPaint == null && path == stampPath) {
+            Point2D point = path.getCurrentPoint();
+            if ((point == null) ? stampPoint == null : point.equals(stampPoint)) {
+                return stamp;
+            }
+        }
+        return null;
+    }
+
+    /** Remember the path the stamp transform leads to */
+    private void setStampPath() {
+        stampPath = path;
+        stampPoint = path.getCurrentPoint();
+    }
+
+    /** Get the transform from the stamp to this shape
+     * @return  The transform
+     */
+    AffineTransform getStampTransform() {
+        return stampTransform;
+    }
+
     /**
      * Get the alpha (transparency) value of this shape
      * @return Alpha value
@@ -653,7 +862,31 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @return Rectangle representing the shapes bounds
      */
     public Rectangle getBounds() {
-        return this.path.getBounds();
+        return getDetail().getBounds().getBounds();
+    }
+
+    /**
+     * Check if a point is inside this shape.
+     * Unlike testing the path directly curves are only flattened once,
+     * until the path is changed.
+     * @param p     The point
+     * @return      True if the point is inside the shape
+     */
+    public boolean contains(Point2D p) {
+        return contains(p.getX(), p.getY());
+    }
+
+    /**
+     * Check if a point is inside this shape
+     * @param x     X coordinate of the point
+     * @param y     Y coordinate of the point
+     * @return      True if the point is inside the shape
+     */
+    public boolean contains(double x, double y) {
+        if (polygon == null || !polygon.isValid(path)) {
+            polygon = new AlcPolygon(path);
+        }
+        return polygon.contains(x, y);
     }
 
     /**
@@ -797,6 +1030,45 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         return tempShape;
     }
 
+    /**
+     * Copy this shape with its own copy of the path, so it can be painted
+     * while this shape carries on changing on another thread
+     * @return A new copy of this shape
+     */
+    AlcShape snapshot() {
+        AlcShape tempShape = new AlcShape((GeneralPath) this.path.clone(), this.color, this.alpha, this.style, this.lineWidth);
+        cloneAttributes(tempShape);
+        // Share the color so an unchanged shape can be recognised
+        tempShape.color = this.color;
+        if (tempShape.stamp != null) {
+            tempShape.stampPath = tempShape.path;
+            tempShape.stampPoint = this.stampPoint;
+        }
+        // Made now so the copy is never written to once handed to another thread
+        tempShape.detail = new AlcDetail(tempShape.path);
+        return tempShape;
+    }
+
+    /**
+     * Clone this shape to be drawn from images of this shape rather than as a path.
+     * Use for shapes stamped many times, such as shapes from the library.
+     * The clone keeps being drawn from images when moved, scaled or rotated,
+     * and is drawn as a path if changed in other ways or saved as a vector.
+     * @return An new cloned object of this shape
+     */
+    public AlcShape stampClone() {
+        AlcShape tempShape = (AlcShape) clone();
+        if (tempShape.getStamp() == null) {
+            if (stampSource == null || !stampSource.isValid(path)) {
+                stampSource = new AlcStamp(path);
+            }
+            tempShape.stamp = stampSource;
+            tempShape.stampTransform = new AffineTransform();
+            tempShape.setStampPath();
+        }
+        return tempShape;
+    }
+
     /** 
      * A custom clone that adds a new GeneralPath to the shape
      * while keeping all of the style infomation.
@@ -839,6 +1111,12 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         tempShape.setLastPoint(this.lastPoint);
         tempShape.setPathClosed(this.pathClosed);
         tempShape.setPenShape(this.penShape);
+        if (getStamp() != null) {
+            tempShape.stamp = this.stamp;
+            tempShape.stampTransform = new AffineTransform(this.stampTransform);
+            tempShape.stampPath = this.stampPath;
+            tempShape.stampPoint = this.stampPoint;
+        }
         if (this.gradientPaint != null) {
             GradientPaint gp = new GradientPaint(this.gradientPaint.getPoint1(), this.gradientPaint.getColor1(), this.gradientPaint.getPoint2(), this.gradientPaint.getColor2());
             tempShape.setGradientPaint(gp);
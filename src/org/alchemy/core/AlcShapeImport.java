@@ -0,0 +1,262 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.sun.pdfview.*;
+import java.awt.Component;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.*;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+import javax.swing.Timer;
+
+/**
+ * Reads the shapes from PDF files without blocking the interface<br>
+ * Pages are read in parallel on a small pool of background threads and
+ * each page of shapes is passed back on the event dispatch thread as soon as it is ready.
+ * A progress dialog with a cancel button is shown if the import takes a while.
+ */
+public class AlcShapeImport {
+
+    /** Shared background threads used to read the pages */
+    private static ExecutorService readers;
+    /** Time between checks of the cancel button in milliseconds */
+    private static final int CANCEL_CHECK = 200;
+    /** Called back with the shapes */
+    private final AlcShapeImportInterface parent;
+    private final boolean resetLocation;
+    private final int pixelSize;
+    /** Files and pages still being read */
+    private final ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+    /** Set once the import is cancelled - checked by the background threads */
+    private volatile boolean cancelled = false;
+    /** If the parent has been told the import is over */
+    private boolean finished = false;
+    /** Files not yet opened */
+    private int filesLeft;
+    /** Pages read and pages found so far */
+    private int pagesDone = 0,  pagesTotal = 0;
+    /** Progress dialog, null when running without a display */
+    private ProgressMonitor monitor;
+    /** Timer checking the progress dialog cancel button */
+    private Timer cancelTimer;
+
+    private AlcShapeImport(AlcShapeImportInterface parent, int files, boolean resetLocation, int pixelSize) {
+        this.parent = parent;
+        this.filesLeft = files;
+        this.resetLocation = resetLocation;
+        this.pixelSize = pixelSize;
+    }
+
+    /** Start reading the shapes from a set of PDF files in the background.
+     *  Must be called on the event dispatch thread.
+     *
+     * @param files             The PDF files to read
+     * @param resetLocation     Reset the location of each path to 0,0
+     * @param pixelSize         Pixel size to scale the shapes to. No scaling if less than zero.
+     * @param parent            Called back with the shapes as they are read
+     * @param owner             Component to show the progress dialog over, or null for the main window
+     * @return                  The import, which can be cancelled
+     */
+    public static AlcShapeImport importShapes(File[] files, boolean resetLocation, int pixelSize,
+            AlcShapeImportInterface parent, Component owner) {
+        final AlcShapeImport shapeImport = new AlcShapeImport(parent, files.length, resetLocation, pixelSize);
+        if (files.length == 0) {
+            shapeImport.finish();
+            return shapeImport;
+        }
+        if (!GraphicsEnvironment.isHeadless()) {
+            shapeImport.monitor = new ProgressMonitor((owner == null) ? Alchemy.window : owner, Alchemy.bundle.getString("importShapesTitle"),
+                    files[0].getName(), 0, files.length);
+            shapeImport.cancelTimer = new Timer(CANCEL_CHECK, new ActionListener() {
+
+                public void actionPerformed(ActionEvent e) {
+                    if (shapeImport.monitor.isCanceled()) {
+                        shapeImport.cancel();
+                    }
+                }
+            });
+            shapeImport.cancelTimer.start();
+        }
+        for (int i = 0; i < files.length; i++) {
+            final File file = files[i];
+            shapeImport.submit(new Runnable() {
+
+                public void run() {
+                    shapeImport.readFile(file);
+                }
+            });
+        }
+        return shapeImport;
+    }
+
+    /** Stop reading - pages already read are kept, the rest are dropped */
+    public void cancel() {
+        if (finished) {
+            return;
+        }
+        cancelled = true;
+        synchronized (tasks) {
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+        }
+        finish();
+    }
+
+    /** Check if the import is still reading pages
+     * @return  True until every page has been read or the import is cancelled
+     */
+    public boolean isRunning() {
+        return !finished;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // BACKGROUND
+    //////////////////////////////////////////////////////////////
+    /** Open a file and queue each of its pages to be read */
+    private void readFile(final File file) {
+        final PDFFile pdfFile = AlcUtil.getPDFFile(file);
+        final int pages = (pdfFile == null) ? 0 : pdfFile.getNumPages();
+        if (!cancelled) {
+            for (int p = 1; p <= pages; p++) {
+                final int pageNumber = p;
+                submit(new Runnable() {
+
+                    public void run() {
+                        readPage(file, pdfFile, pageNumber);
+                    }
+                });
+            }
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                fileOpened(file, pages);
+            }
+        });
+    }
+
+    /** Read the shapes from a page */
+    private void readPage(final File file, PDFFile pdfFile, final int pageNumber) {
+        if (cancelled) {
+            return;
+        }
+        ArrayList<AlcShape> shapes = null;
+        try {
+            PDFPage pdfPage = pdfFile.getPage(pageNumber, true);
+            if (pdfPage != null && !cancelled) {
+                shapes = AlcUtil.getPDFShapes(pdfPage, resetLocation, pixelSize);
+            }
+        } catch (Exception ex) {
+            // Count the page as read so the import still finishes
+            ex.printStackTrace();
+        }
+        final ArrayList<AlcShape> pageShapes = shapes;
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                pageRead(file, pageNumber, pageShapes);
+            }
+        });
+    }
+
+    private void submit(Runnable task) {
+        synchronized (tasks) {
+            if (!cancelled) {
+                tasks.add(getReaders().submit(task));
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // EVENT THREAD
+    //////////////////////////////////////////////////////////////
+    private void fileOpened(File file, int pages) {
+        if (finished) {
+            return;
+        }
+        filesLeft--;
+        pagesTotal += pages;
+        if (monitor != null) {
+            monitor.setNote(file.getName());
+            // Files not yet opened count as a page each
+            monitor.setMaximum(pagesTotal + filesLeft);
+        }
+        checkFinished();
+    }
+
+    private void pageRead(File file, int pageNumber, ArrayList<AlcShape> shapes) {
+        if (finished) {
+            return;
+        }
+        pagesDone++;
+        if (shapes != null && shapes.size() > 0) {
+            parent.shapesImported(file, pageNumber, shapes);
+        }
+        if (monitor != null) {
+            monitor.setProgress(pagesDone);
+        }
+        checkFinished();
+    }
+
+    private void checkFinished() {
+        if (filesLeft == 0 && pagesDone == pagesTotal) {
+            finish();
+        }
+    }
+
+    /** Close the progress dialog and tell the parent the import is over */
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        synchronized (tasks) {
+            tasks.clear();
+        }
+        if (cancelTimer != null) {
+            cancelTimer.stop();
+        }
+        if (monitor != null) {
+            monitor.close();
+        }
+        parent.importFinished(cancelled);
+    }
+
+    /** Get the background threads, starting them the first time */
+    private static synchronized ExecutorService getReaders() {
+        if (readers == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            readers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Alchemy Shape Import");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return readers;
+    }
+}
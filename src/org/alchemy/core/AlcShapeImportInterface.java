@@ -0,0 +1,44 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ *  Interface to return the shapes read by AlcShapeImport <br />
+ *  All calls are made on the event dispatch thread.
+ */
+public interface AlcShapeImportInterface {
+
+    /** Called with the shapes from each page as soon as it is read.
+     *  Pages may arrive in any order.
+     *
+     * @param file      The file the page is from
+     * @param page      The page number, starting from 1
+     * @param shapes    The shapes on the page
+     */
+    public abstract void shapesImported(File file, int page, List<AlcShape> shapes);
+
+    /** Called once when every page has been read, or the import has been cancelled
+     * @param cancelled True if the import was cancelled before all pages were read
+     */
+    public abstract void importFinished(boolean cancelled);
+}
@@ -302,6 +302,7 @@ public class AlcSimpleToolBar extends AlcAbstractToolBar implements AlcConstants
                 buttonGroup.setSelected(moduleButton.getModel(), true);
             }
         }
+        AlcPlugins.showPrepareState(moduleButton, currentModule);
         this.add(moduleButton);
     }
 
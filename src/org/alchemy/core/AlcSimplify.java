@@ -0,0 +1,457 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Shape;
+import java.awt.geom.*;
+import java.util.ArrayList;
+
+/**
+ * Path simplification<br>
+ * Reduces the points in a path with Ramer-Douglas-Peucker, then fits
+ * cubic Bezier curves to what is left using the least squares method from
+ * Philip J. Schneider, "An Algorithm for Automatically Fitting Digitized Curves",
+ * Graphics Gems, 1990.
+ */
+class AlcSimplify {
+
+    /** Number of Newton-Raphson passes to try before splitting a curve */
+    private static final int MAX_ITERATIONS = 4;
+    /** Turns sharper than this (cosine of 60 degrees) are kept as corners */
+    private static final double CORNER = 0.5;
+
+    private AlcSimplify() {
+    }
+
+    //////////////////////////////////////////////////////////////
+    // PATHS
+    //////////////////////////////////////////////////////////////
+    /** Simplify a path
+     *
+     * @param path          The path to simplify
+     * @param tolerance     Maximum distance in pixels the new path may stray from the original
+     * @return              The simplified path, or the original if it could not be made smaller
+     */
+    static GeneralPath simplify(GeneralPath path, double tolerance) {
+        return simplify(path, tolerance, true);
+    }
+
+    /** Reduce a path to straight lines - quicker to draw than curves when the path is small
+     *
+     * @param path          The path to reduce
+     * @param tolerance     Maximum distance in pixels the new path may stray from the original
+     * @return              The reduced path, or the original if it could not be made smaller
+     */
+    static GeneralPath reduceToLines(GeneralPath path, double tolerance) {
+        return simplify(path, tolerance, false);
+    }
+
+    private static GeneralPath simplify(GeneralPath path, double tolerance, boolean curves) {
+        ArrayList<ArrayList<Point2D.Double>> subPaths = new ArrayList<ArrayList<Point2D.Double>>();
+        ArrayList<Boolean> closed = new ArrayList<Boolean>();
+        ArrayList<Point2D.Double> points = null;
+
+        // Flatten the curves to points finer than the tolerance
+        PathIterator iterator = new FlatteningPathIterator(path.getPathIterator(null), Math.max(0.05, tolerance / 4));
+        double[] coords = new double[6];
+        while (!iterator.isDone()) {
+            switch (iterator.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    points = new ArrayList<Point2D.Double>();
+                    points.add(new Point2D.Double(coords[0], coords[1]));
+                    subPaths.add(points);
+                    closed.add(Boolean.FALSE);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    if (points == null) {
+                        return path;
+                    }
+                    Point2D.Double p = new Point2D.Double(coords[0], coords[1]);
+                    // Filter out repeats
+                    if (!p.equals(points.get(points.size() - 1))) {
+                        points.add(p);
+                    }
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    closed.set(closed.size() - 1, Boolean.TRUE);
+                    break;
+            }
+            iterator.next();
+        }
+
+        GeneralPath simplified = new GeneralPath(path.getWindingRule());
+        for (int i = 0; i < subPaths.size(); i++) {
+            ArrayList<Point2D.Double> subPath = subPaths.get(i);
+            Point2D.Double first = subPath.get(0);
+            simplified.moveTo((float) first.x, (float) first.y);
+
+            if (subPath.size() < 3) {
+                for (int j = 1; j < subPath.size(); j++) {
+                    simplified.lineTo((float) subPath.get(j).x, (float) subPath.get(j).y);
+                }
+            } else if (curves) {
+                Point2D.Double[] reduced = reduce(subPath, tolerance / 2);
+                fitCurve(reduced, tolerance / 2, simplified);
+            } else {
+                Point2D.Double[] reduced = reduce(subPath, tolerance);
+                for (int j = 1; j < reduced.length; j++) {
+                    simplified.lineTo((float) reduced[j].x, (float) reduced[j].y);
+                }
+            }
+            if (closed.get(i)) {
+                simplified.closePath();
+            }
+        }
+
+        return (countSegments(simplified) < countSegments(path)) ? simplified : path;
+    }
+
+    /** Count the segments in a shape
+     * @param shape     The shape
+     * @return          The number of segments
+     */
+    static int countSegments(Shape shape) {
+        int segments = 0;
+        for (PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+            segments++;
+        }
+        return segments;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SPINES
+    //////////////////////////////////////////////////////////////
+    /** Remove spine points that can be dropped without changing the line or its width by more than the tolerance
+     *
+     * @param spine         The spine points - modified in place
+     * @param spineWidth    The width at each spine point - modified in place
+     * @param tolerance     Maximum distance in pixels
+     */
+    static void reduceSpine(ArrayList<Point2D.Float> spine, ArrayList<Float> spineWidth, double tolerance) {
+        int size = spine.size();
+        if (size < 3 || spineWidth.size() != size) {
+            return;
+        }
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double[] w = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = spine.get(i).x;
+            y[i] = spine.get(i).y;
+            w[i] = spineWidth.get(i).floatValue();
+        }
+        boolean[] keep = douglasPeucker(x, y, w, tolerance);
+
+        ArrayList<Point2D.Float> newSpine = new ArrayList<Point2D.Float>();
+        ArrayList<Float> newWidth = new ArrayList<Float>();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                newSpine.add(spine.get(i));
+                newWidth.add(spineWidth.get(i));
+            }
+        }
+        spine.clear();
+        spine.addAll(newSpine);
+        spine.trimToSize();
+        spineWidth.clear();
+        spineWidth.addAll(newWidth);
+        spineWidth.trimToSize();
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RAMER-DOUGLAS-PEUCKER
+    //////////////////////////////////////////////////////////////
+    /** Reduce a polyline to the points needed to stay within the tolerance */
+    private static Point2D.Double[] reduce(ArrayList<Point2D.Double> points, double tolerance) {
+        int size = points.size();
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = points.get(i).x;
+            y[i] = points.get(i).y;
+        }
+        boolean[] keep = douglasPeucker(x, y, null, tolerance);
+
+        ArrayList<Point2D.Double> reduced = new ArrayList<Point2D.Double>();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                reduced.add(points.get(i));
+            }
+        }
+        return reduced.toArray(new Point2D.Double[reduced.size()]);
+    }
+
+    /** Mark the points to keep - the optional third dimension is half the width so line edges stay in tolerance */
+    private static boolean[] douglasPeucker(double[] x, double[] y, double[] w, double tolerance) {
+        int size = x.length;
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        double toleranceSq = tolerance * tolerance;
+
+        // Use a stack rather than recursion so very long strokes are safe
+        int[] stack = new int[size * 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSq(x, y, w, i, first, last);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index != -1 && maxDistance > toleranceSq) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+
+    /** Squared distance from point i to the segment between a and b */
+    private static double segmentDistanceSq(double[] x, double[] y, double[] w, int i, int a, int b) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double dw = (w == null) ? 0 : (w[b] - w[a]) / 2;
+        double lengthSq = dx * dx + dy * dy + dw * dw;
+        double t = 0;
+        if (lengthSq > 0) {
+            double pw = (w == null) ? 0 : (w[i] - w[a]) / 2;
+            t = ((x[i] - x[a]) * dx + (y[i] - y[a]) * dy + pw * dw) / lengthSq;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double ex = x[a] + t * dx - x[i];
+        double ey = y[a] + t * dy - y[i];
+        double ew = (w == null) ? 0 : (w[a] - w[i]) / 2 + t * dw;
+        return ex * ex + ey * ey + ew * ew;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // CURVE FITTING
+    //////////////////////////////////////////////////////////////
+    /** Fit curves to the points, keeping sharp corners, and append them to the path */
+    private static void fitCurve(Point2D.Double[] d, double tolerance, GeneralPath out) {
+        double errorSq = tolerance * tolerance;
+        int start = 0;
+        for (int i = 1; i < d.length; i++) {
+            if (i == d.length - 1 || isCorner(d[i - 1], d[i], d[i + 1])) {
+                if (i - start == 1) {
+                    out.lineTo((float) d[i].x, (float) d[i].y);
+                } else {
+                    Point2D.Double tHat1 = unit(d[start + 1].x - d[start].x, d[start + 1].y - d[start].y);
+                    Point2D.Double tHat2 = unit(d[i - 1].x - d[i].x, d[i - 1].y - d[i].y);
+                    fitCubic(d, start, i, tHat1, tHat2, errorSq, out);
+                }
+                start = i;
+            }
+        }
+    }
+
+    private static boolean isCorner(Point2D.Double a, Point2D.Double b, Point2D.Double c) {
+        Point2D.Double in = unit(b.x - a.x, b.y - a.y);
+        Point2D.Double out = unit(c.x - b.x, c.y - b.y);
+        return in.x * out.x + in.y * out.y < CORNER;
+    }
+
+    /** Fit a cubic Bezier to the points from first to last, splitting until it is within the error */
+    private static void fitCubic(Point2D.Double[] d, int first, int last, Point2D.Double tHat1, Point2D.Double tHat2, double errorSq, GeneralPath out) {
+        // Two points - use a heuristic
+        if (last - first == 1) {
+            double dist = d[first].distance(d[last]) / 3.0;
+            emit(out, d[first], tHat1, dist, d[last], tHat2, dist);
+            return;
+        }
+
+        double[] u = chordLengthParameterize(d, first, last);
+        double[] alpha = generateBezier(d, first, last, u, tHat1, tHat2);
+        int[] split = new int[1];
+        double maxError = computeMaxError(d, first, last, tHat1, tHat2, alpha, u, split);
+        if (maxError < errorSq) {
+            emit(out, d[first], tHat1, alpha[0], d[last], tHat2, alpha[1]);
+            return;
+        }
+
+        // If the error is not too large, try reparameterizing
+        if (maxError < errorSq * 4) {
+            for (int i = 0; i < MAX_ITERATIONS; i++) {
+                u = reparameterize(d, first, last, u, tHat1, tHat2, alpha);
+                alpha = generateBezier(d, first, last, u, tHat1, tHat2);
+                maxError = computeMaxError(d, first, last, tHat1, tHat2, alpha, u, split);
+                if (maxError < errorSq) {
+                    emit(out, d[first], tHat1, alpha[0], d[last], tHat2, alpha[1]);
+                    return;
+                }
+            }
+        }
+
+        // Fitting failed - split at the point of max error and fit each part
+        int center = split[0];
+        Point2D.Double tHatCenter = unit(d[center - 1].x - d[center + 1].x, d[center - 1].y - d[center + 1].y);
+        fitCubic(d, first, center, tHat1, tHatCenter, errorSq, out);
+        fitCubic(d, center, last, new Point2D.Double(-tHatCenter.x, -tHatCenter.y), tHat2, errorSq, out);
+    }
+
+    private static void emit(GeneralPath out, Point2D.Double p0, Point2D.Double tHat1, double alpha1, Point2D.Double p3, Point2D.Double tHat2, double alpha2) {
+        out.curveTo(
+                (float) (p0.x + tHat1.x * alpha1), (float) (p0.y + tHat1.y * alpha1),
+                (float) (p3.x + tHat2.x * alpha2), (float) (p3.y + tHat2.y * alpha2),
+                (float) p3.x, (float) p3.y);
+    }
+
+    /** Least squares lengths of the two tangents */
+    private static double[] generateBezier(Point2D.Double[] d, int first, int last, double[] u, Point2D.Double tHat1, Point2D.Double tHat2) {
+        double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+        Point2D.Double p0 = d[first];
+        Point2D.Double p3 = d[last];
+        for (int i = 0; i < u.length; i++) {
+            double t = u[i];
+            double mt = 1 - t;
+            double b0 = mt * mt * mt;
+            double b1 = 3 * t * mt * mt;
+            double b2 = 3 * t * t * mt;
+            double b3 = t * t * t;
+            double a0x = tHat1.x * b1, a0y = tHat1.y * b1;
+            double a1x = tHat2.x * b2, a1y = tHat2.y * b2;
+            c00 += a0x * a0x + a0y * a0y;
+            c01 += a0x * a1x + a0y * a1y;
+            c11 += a1x * a1x + a1y * a1y;
+            double tmpx = d[first + i].x - (p0.x * (b0 + b1) + p3.x * (b2 + b3));
+            double tmpy = d[first + i].y - (p0.y * (b0 + b1) + p3.y * (b2 + b3));
+            x0 += a0x * tmpx + a0y * tmpy;
+            x1 += a1x * tmpx + a1y * tmpy;
+        }
+
+        double detC0C1 = c00 * c11 - c01 * c01;
+        double detC0X = c00 * x1 - c01 * x0;
+        double detXC1 = x0 * c11 - x1 * c01;
+        double alphaL = (detC0C1 == 0) ? 0 : detXC1 / detC0C1;
+        double alphaR = (detC0C1 == 0) ? 0 : detC0X / detC0C1;
+
+        // Fall back on the heuristic if the tangents are degenerate
+        double segLength = p0.distance(p3);
+        double epsilon = 1.0e-6 * segLength;
+        if (alphaL < epsilon || alphaR < epsilon) {
+            alphaL = alphaR = segLength / 3.0;
+        }
+        return new double[]{alphaL, alphaR};
+    }
+
+    /** Squared distance of the furthest point from the curve */
+    private static double computeMaxError(Point2D.Double[] d, int first, int last, Point2D.Double tHat1, Point2D.Double tHat2, double[] alpha, double[] u, int[] split) {
+        double[][] bez = controlPoints(d[first], tHat1, alpha[0], d[last], tHat2, alpha[1]);
+        double maxDist = 0;
+        split[0] = (last - first + 1) / 2 + first;
+        for (int i = first + 1; i < last; i++) {
+            double[] p = bezier(bez, u[i - first]);
+            double dx = p[0] - d[i].x;
+            double dy = p[1] - d[i].y;
+            double dist = dx * dx + dy * dy;
+            if (dist >= maxDist) {
+                maxDist = dist;
+                split[0] = i;
+            }
+        }
+        return maxDist;
+    }
+
+    /** Improve the parameter values with a Newton-Raphson step */
+    private static double[] reparameterize(Point2D.Double[] d, int first, int last, double[] u, Point2D.Double tHat1, Point2D.Double tHat2, double[] alpha) {
+        double[][] q = controlPoints(d[first], tHat1, alpha[0], d[last], tHat2, alpha[1]);
+        double[][] q1 = new double[3][2];
+        double[][] q2 = new double[2][2];
+        for (int i = 0; i < 3; i++) {
+            q1[i][0] = (q[i + 1][0] - q[i][0]) * 3;
+            q1[i][1] = (q[i + 1][1] - q[i][1]) * 3;
+        }
+        for (int i = 0; i < 2; i++) {
+            q2[i][0] = (q1[i + 1][0] - q1[i][0]) * 2;
+            q2[i][1] = (q1[i + 1][1] - q1[i][1]) * 2;
+        }
+
+        double[] uPrime = new double[u.length];
+        for (int i = 0; i < u.length; i++) {
+            double t = u[i];
+            double[] qu = bezier(q, t);
+            double[] q1u = bezier(q1, t);
+            double[] q2u = bezier(q2, t);
+            double px = qu[0] - d[first + i].x;
+            double py = qu[1] - d[first + i].y;
+            double numerator = px * q1u[0] + py * q1u[1];
+            double denominator = q1u[0] * q1u[0] + q1u[1] * q1u[1] + px * q2u[0] + py * q2u[1];
+            uPrime[i] = (denominator == 0) ? t : t - numerator / denominator;
+        }
+        return uPrime;
+    }
+
+    private static double[] chordLengthParameterize(Point2D.Double[] d, int first, int last) {
+        double[] u = new double[last - first + 1];
+        for (int i = first + 1; i <= last; i++) {
+            u[i - first] = u[i - first - 1] + d[i].distance(d[i - 1]);
+        }
+        double total = u[u.length - 1];
+        for (int i = 1; i < u.length; i++) {
+            u[i] = (total == 0) ? 0 : u[i] / total;
+        }
+        return u;
+    }
+
+    private static double[][] controlPoints(Point2D.Double p0, Point2D.Double tHat1, double alpha1, Point2D.Double p3, Point2D.Double tHat2, double alpha2) {
+        return new double[][]{
+                    {p0.x, p0.y},
+                    {p0.x + tHat1.x * alpha1, p0.y + tHat1.y * alpha1},
+                    {p3.x + tHat2.x * alpha2, p3.y + tHat2.y * alpha2},
+                    {p3.x, p3.y}
+                };
+    }
+
+    /** Evaluate a Bezier curve of any degree at t using de Casteljau */
+    private static double[] bezier(double[][] v, double t) {
+        int degree = v.length - 1;
+        double[][] temp = new double[v.length][2];
+        for (int i = 0; i <= degree; i++) {
+            temp[i][0] = v[i][0];
+            temp[i][1] = v[i][1];
+        }
+        for (int i = 1; i <= degree; i++) {
+            for (int j = 0; j <= degree - i; j++) {
+                temp[j][0] = (1 - t) * temp[j][0] + t * temp[j + 1][0];
+                temp[j][1] = (1 - t) * temp[j][1] + t * temp[j + 1][1];
+            }
+        }
+        return temp[0];
+    }
+
+    private static Point2D.Double unit(double x, double y) {
+        double length = Math.sqrt(x * x + y * y);
+        if (length == 0) {
+            return new Point2D.Double(0, 0);
+        }
+        return new Point2D.Double(x / length, y / length);
+    }
+}
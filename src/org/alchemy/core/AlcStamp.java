@@ -0,0 +1,203 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+/**
+ * A shape that is stamped many times - such as a shape from the library<br>
+ * Each stamp is drawn from an image of the shape made once per scale, color and line width,
+ * then moved, rotated and scaled into place. Images are shared by all stamps
+ * and kept in a small LRU cache.
+ */
+class AlcStamp implements AlcConstants {
+
+    /** Number of scales in each doubling of size */
+    private static final int STEPS_PER_OCTAVE = 4;
+    /** Largest width or height of an image - bigger stamps are drawn as shapes */
+    private static final int MAX_SIZE = 512;
+    /** Total pixels of all images kept - 4M pixels is 16MB */
+    private static final int MAX_PIXELS = 4 * 1024 * 1024;
+    /** Images of all stamps, least recently used first */
+    private static final LinkedHashMap<SpriteKey, BufferedImage> sprites = new LinkedHashMap<SpriteKey, BufferedImage>(64, 0.75F, true);
+    /** Total pixels of the images in the cache */
+    private static int pixels = 0;
+    /** The path stamps are made from */
+    private final GeneralPath source;
+    /** The current point of the source when the stamp was made */
+    private final Point2D sourcePoint;
+    /** Bounds of the source path */
+    private final Rectangle2D bounds;
+
+    /** Creates a stamp of a path
+     * @param source    The path in its original position
+     */
+    AlcStamp(GeneralPath source) {
+        this.source = source;
+        this.sourcePoint = source.getCurrentPoint();
+        this.bounds = source.getBounds2D();
+    }
+
+    /** Check the stamp was made from this path and the path has not been added to since
+     * @param path  The path
+     * @return      True if the stamp can still be used
+     */
+    boolean isValid(GeneralPath path) {
+        if (path != source) {
+            return false;
+        }
+        Point2D point = path.getCurrentPoint();
+        return (point == null) ? sourcePoint == null : point.equals(sourcePoint);
+    }
+
+    /** Draw a shape from an image of the stamp
+     *
+     * @param g2            Graphics to draw on
+     * @param shape         The shape - used for the color, style and line width
+     * @param transform     Transform from the stamp to where the shape is
+     * @param smoothing     Antialias the image
+     * @return              False if the shape could not be drawn this way and must be drawn as a shape
+     */
+    boolean paint(Graphics2D g2, AlcShape shape, AffineTransform transform, boolean smoothing) {
+        // Only moves, rotations, flips and even scaling keep the image sharp
+        double a = transform.getScaleX(), b = transform.getShearY();
+        double c = transform.getShearX(), d = transform.getScaleY();
+        double stampScale = Math.sqrt(Math.abs(transform.getDeterminant()));
+        if (stampScale == 0 || Math.abs(a * a + b * b - c * c - d * d) > 1E-6 * stampScale * stampScale ||
+                Math.abs(a * c + b * d) > 1E-6 * stampScale * stampScale) {
+            return false;
+        }
+        double deviceScale = stampScale * Math.sqrt(Math.abs(g2.getTransform().getDeterminant()));
+        if (deviceScale == 0) {
+            return false;
+        }
+        // Round the scale up to the next step so the image is only ever reduced
+        int step = (int) Math.ceil(Math.log(deviceScale) / Math.log(2) * STEPS_PER_OCTAVE);
+        double spriteScale = Math.pow(2, (double) step / STEPS_PER_OCTAVE);
+
+        // Line width in the units of the image, to the nearest quarter pixel
+        int quarterWidth = 0;
+        if (shape.style == STYLE_STROKE) {
+            quarterWidth = (int) Math.round(shape.lineWidth / stampScale * spriteScale * 4);
+        }
+        double margin = quarterWidth / 8.0 + 2;
+        int x = (int) Math.floor(bounds.getX() * spriteScale - margin);
+        int y = (int) Math.floor(bounds.getY() * spriteScale - margin);
+        int width = (int) Math.ceil(bounds.getMaxX() * spriteScale + margin) - x;
+        int height = (int) Math.ceil(bounds.getMaxY() * spriteScale + margin) - y;
+        if (width > MAX_SIZE || height > MAX_SIZE) {
+            return false;
+        }
+
+        SpriteKey key = new SpriteKey(this, step, shape.color.getRGB(), quarterWidth, smoothing);
+        BufferedImage sprite = getSprite(key);
+        if (sprite == null) {
+            sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D spriteGraphics = sprite.createGraphics();
+            if (smoothing) {
+                spriteGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+            spriteGraphics.translate(-x, -y);
+            spriteGraphics.scale(spriteScale, spriteScale);
+            spriteGraphics.setColor(shape.color);
+            if (shape.style == STYLE_STROKE) {
+                spriteGraphics.setStroke(new BasicStroke((float) (quarterWidth / 4.0 / spriteScale), BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+                spriteGraphics.draw(source);
+            } else {
+                spriteGraphics.fill(source);
+            }
+            spriteGraphics.dispose();
+            putSprite(key, sprite);
+        }
+
+        AffineTransform place = new AffineTransform(transform);
+        place.scale(1 / spriteScale, 1 / spriteScale);
+        place.translate(x, y);
+        Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(sprite, place, null);
+        if (interpolation != null) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+        return true;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // CACHE
+    //////////////////////////////////////////////////////////////
+    private static synchronized BufferedImage getSprite(SpriteKey key) {
+        return sprites.get(key);
+    }
+
+    /** Add an image to the cache, removing the least recently used until it fits */
+    private static synchronized void putSprite(SpriteKey key, BufferedImage sprite) {
+        sprites.put(key, sprite);
+        pixels += sprite.getWidth() * sprite.getHeight();
+        Iterator<BufferedImage> it = sprites.values().iterator();
+        while (pixels > MAX_PIXELS && it.hasNext()) {
+            BufferedImage eldest = it.next();
+            if (eldest == sprite) {
+                break;
+            }
+            pixels -= eldest.getWidth() * eldest.getHeight();
+            it.remove();
+        }
+    }
+
+    /** Key identifying an image of a stamp */
+    private static class SpriteKey {
+
+        final AlcStamp stamp;
+        final int step;
+        final int color;
+        final int quarterWidth;
+        final boolean smoothing;
+
+        SpriteKey(AlcStamp stamp, int step, int color, int quarterWidth, boolean smoothing) {
+            this.stamp = stamp;
+            this.step = step;
+            this.color = color;
+            this.quarterWidth = quarterWidth;
+            this.smoothing = smoothing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SpriteKey)) {
+                return false;
+            }
+            SpriteKey k = (SpriteKey) o;
+            return stamp == k.stamp && step == k.step && color == k.color &&
+                    quarterWidth == k.quarterWidth && smoothing == k.smoothing;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(stamp);
+            hash = hash * 31 + step;
+            hash = hash * 31 + color;
+            hash = hash * 31 + quarterWidth;
+            return hash * 2 + (smoothing ? 1 : 0);
+        }
+    }
+}
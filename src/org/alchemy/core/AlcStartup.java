@@ -0,0 +1,166 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.ImageIcon;
+
+/**
+ * Times each phase of startup and runs the parts that do not depend on each other in parallel<br>
+ * Run with -Dalchemy.startup.timing=true to print the time each phase took.
+ * Run with -Dalchemy.startup.exit=true to quit as soon as the window is shown,
+ * used by the build to record the classes loaded at startup.
+ */
+class AlcStartup {
+
+    /** Print the time of each phase */
+    private static final boolean PRINT = Boolean.getBoolean("alchemy.startup.timing");
+    /** Quit once started */
+    private static final boolean EXIT = Boolean.getBoolean("alchemy.startup.exit");
+    /** Time the last phase ended */
+    private long last;
+    /** Time the virtual machine was started, or zero if not known */
+    private final long vmStart;
+    /** Time main started */
+    private final long start;
+    /** Names of the phases, in order */
+    private final ArrayList<String> names = new ArrayList<String>();
+    /** Time taken by each phase in nanoseconds */
+    private final ArrayList<Long> times = new ArrayList<Long>();
+    /** Threads running the startup tasks */
+    private final ExecutorService pool;
+
+    AlcStartup() {
+        start = last = System.nanoTime();
+        long vm = 0;
+        // Loading the management classes takes time, so only when printing
+        if (PRINT) {
+            try {
+                vm = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            } catch (Throwable ex) {
+                // Not all virtual machines have management
+            }
+        }
+        vmStart = vm;
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Startup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Mark the end of a phase
+     * @param name  Name of the phase
+     */
+    synchronized void phase(String name) {
+        long now = System.nanoTime();
+        names.add(name);
+        times.add(now - last);
+        last = now;
+    }
+
+    /** Start a task on a startup thread
+     *
+     * @param task  The task
+     * @return      The result, to pass to {@link #get(Future)}
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return pool.submit(task);
+    }
+
+    /** Wait for the result of a startup task
+     *
+     * @param future    The result from {@link #submit(Callable)}
+     * @return          The value returned by the task
+     */
+    static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /** Load the icons of the modules in the background, so building the toolbar does not wait for them.
+     *  Loaded by the toolkit like any other icon, so high resolution versions are still found.
+     * @param modules   The modules
+     */
+    void preloadIcons(AlcModule[] modules) {
+        if (modules == null) {
+            return;
+        }
+        for (int i = 0; i < modules.length; i++) {
+            if (modules[i] != null && modules[i].getIconUrl() != null) {
+                final URL url = modules[i].getIconUrl();
+                Future<ImageIcon> icon = pool.submit(new Callable<ImageIcon>() {
+
+                    public ImageIcon call() {
+                        return new ImageIcon(url);
+                    }
+                });
+                AlcUtil.preloadImageIcon(url, icon);
+            }
+        }
+    }
+
+    /** Called once the window is shown - prints the times if asked */
+    void finish() {
+        phase("Show window");
+        pool.shutdown();
+        if (PRINT) {
+            System.out.println(getReport());
+        }
+        if (EXIT) {
+            System.exit(0);
+        }
+    }
+
+    /** Get the time of each phase and the total
+     * @return  The report
+     */
+    synchronized String getReport() {
+        StringBuilder report = new StringBuilder("Startup times:");
+        report.append(String.format("%n"));
+        if (vmStart > 0) {
+            report.append(String.format("  %-20s %6d ms%n", "Java to main", vmStart));
+        }
+        for (int i = 0; i < names.size(); i++) {
+            report.append(String.format("  %-20s %6d ms%n", names.get(i), times.get(i) / 1000000L));
+        }
+        report.append(String.format("  %-20s %6d ms", "Total", (last - start) / 1000000L + vmStart));
+        return report.toString();
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Raster tiles of the drawing kept in a fixed amount of memory<br>
+ * Tiles are found by their owner - such as a layer - column and row,
+ * so the drawing can extend any distance in any direction.
+ * Only a fixed number of tiles are kept in memory, as images that are drawn straight from their pixels.
+ * The least recently used are written out to a memory mapped swap file, off the Java heap,
+ * and read back in when they are next drawn.
+ */
+class AlcTileCache {
+
+    /** Width and height of a tile */
+    static final int TILE_SIZE = 256;
+    /** Bytes in a tile */
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    /** Tiles in each mapped chunk of the swap file - 64 tiles is 16MB */
+    private static final int CHUNK_TILES = 64;
+    /** Most tiles kept in memory */
+    private final int maxResident;
+    /** Tiles in memory, least recently used first */
+    private final LinkedHashMap<Key, BufferedImage> resident;
+    /** Slot in the swap file of each tile written out */
+    private final HashMap<Key, Integer> swapped = new HashMap<Key, Integer>();
+    /** Swap file slots no longer in use */
+    private final ArrayList<Integer> freeSlots = new ArrayList<Integer>();
+    /** Mapped chunks of the swap file */
+    private final ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    /** Directory the swap file is made in - null if there is none */
+    private final File swapDirectory;
+    /** The swap file, null until the first tile is written out */
+    private RandomAccessFile swapFile;
+    private File swapPath;
+    /** Set if the swap file can not be used - tiles are then dropped and drawn again */
+    private boolean swapFailed = false;
+    /** Image of a tile just evicted, reused for the next tile */
+    private BufferedImage spare;
+
+    /** Creates a new empty cache
+     * @param budget        Most bytes of tiles to keep in memory
+     * @param swapDirectory Directory to make the swap file in, such as the settings directory.
+     *                      If null tiles past the budget are dropped and drawn again when needed
+     */
+    AlcTileCache(long budget, File swapDirectory) {
+        maxResident = (int) Math.max(1, budget / TILE_BYTES);
+        resident = new LinkedHashMap<Key, BufferedImage>(maxResident + 1, 0.75F, true);
+        this.swapDirectory = swapDirectory;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // TILES
+    //////////////////////////////////////////////////////////////
+    /** Get a tile, reading it back into memory if it was written out.
+     *  The image is only the tile until the next call to the cache, so draw it straight away.
+     *
+     * @param owner     Owner of the tile
+     * @param column    Tile column
+     * @param row       Tile row
+     * @return          The tile, or null if it is not stored
+     */
+    synchronized BufferedImage get(Object owner, int column, int row) {
+        Key key = new Key(owner, column, row);
+        BufferedImage image = resident.get(key);
+        if (image != null) {
+            return image;
+        }
+        Integer slot = swapped.remove(key);
+        if (slot == null) {
+            return null;
+        }
+        image = allocate();
+        getSlot(slot.intValue()).asIntBuffer().get(getPixels(image));
+        freeSlots.add(slot);
+        resident.put(key, image);
+        evict();
+        return image;
+    }
+
+    /** Get a tile only if it is in memory
+     *
+     * @param owner     Owner of the tile
+     * @param column    Tile column
+     * @param row       Tile row
+     * @return          The tile, or null if it is not in memory
+     */
+    synchronized BufferedImage getResident(Object owner, int column, int row) {
+        return resident.get(new Key(owner, column, row));
+    }
+
+    /** Make a clear tile to be drawn on, replacing any tile already there.
+     *  The image is only the tile until the next call to the cache, so draw it straight away.
+     *
+     * @param owner     Owner of the tile
+     * @param column    Tile column
+     * @param row       Tile row
+     * @return          The new tile
+     */
+    synchronized BufferedImage create(Object owner, int column, int row) {
+        Key key = new Key(owner, column, row);
+        Integer slot = swapped.remove(key);
+        if (slot != null) {
+            freeSlots.add(slot);
+        }
+        BufferedImage image = resident.get(key);
+        if (image == null) {
+            image = allocate();
+            resident.put(key, image);
+        }
+        Arrays.fill(getPixels(image), 0);
+        evict();
+        return image;
+    }
+
+    /** Remove a tile so it is drawn again
+     *
+     * @param owner     Owner of the tile
+     * @param column    Tile column
+     * @param row       Tile row
+     */
+    synchronized void invalidate(Object owner, int column, int row) {
+        remove(new Key(owner, column, row));
+    }
+
+    /** Remove the tiles covering an area
+     * @param owner Owner of the tiles
+     * @param area  The area in tile pixels - column 0 starts at 0
+     */
+    synchronized void invalidate(Object owner, Rectangle area) {
+        if (area.isEmpty()) {
+            return;
+        }
+        int firstColumn = floorDiv(area.x, TILE_SIZE);
+        int firstRow = floorDiv(area.y, TILE_SIZE);
+        int lastColumn = floorDiv(area.x + area.width - 1, TILE_SIZE);
+        int lastRow = floorDiv(area.y + area.height - 1, TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                remove(new Key(owner, column, row));
+            }
+        }
+    }
+
+    /** Remove all the tiles of an owner
+     * @param owner Owner of the tiles
+     */
+    synchronized void remove(Object owner) {
+        Iterator<Key> it = resident.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().owner == owner) {
+                it.remove();
+            }
+        }
+        Iterator<Map.Entry<Key, Integer>> swappedIt = swapped.entrySet().iterator();
+        while (swappedIt.hasNext()) {
+            Map.Entry<Key, Integer> entry = swappedIt.next();
+            if (entry.getKey().owner == owner) {
+                freeSlots.add(entry.getValue());
+                swappedIt.remove();
+            }
+        }
+    }
+
+    /** Remove all tiles - the swap file is kept for reuse */
+    synchronized void clear() {
+        resident.clear();
+        swapped.clear();
+        freeSlots.clear();
+        for (int i = 0; i < chunks.size() * CHUNK_TILES; i++) {
+            freeSlots.add(Integer.valueOf(i));
+        }
+    }
+
+    /** Remove all tiles and delete the swap file */
+    synchronized void dispose() {
+        clear();
+        freeSlots.clear();
+        chunks.clear();
+        spare = null;
+        if (swapFile != null) {
+            try {
+                swapFile.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            swapPath.delete();
+            swapFile = null;
+        }
+    }
+
+    /** Round down when dividing, including negative numbers */
+    static int floorDiv(int a, int b) {
+        return (a >= 0) ? a / b : -((-a + b - 1) / b);
+    }
+
+    private void remove(Key key) {
+        resident.remove(key);
+        Integer slot = swapped.remove(key);
+        if (slot != null) {
+            freeSlots.add(slot);
+        }
+    }
+
+    /** Get an image for a tile, reusing the last evicted one */
+    private BufferedImage allocate() {
+        BufferedImage image = spare;
+        spare = null;
+        if (image == null) {
+            image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        return image;
+    }
+
+    /** Get the pixels of a tile */
+    private static int[] getPixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /** Write the least recently used tiles out to the swap file until the rest fit in memory */
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = resident.entrySet().iterator();
+        while (resident.size() > maxResident && it.hasNext()) {
+            Map.Entry<Key, BufferedImage> eldest = it.next();
+            BufferedImage image = eldest.getValue();
+            int slot = getFreeSlot();
+            if (slot >= 0) {
+                getSlot(slot).asIntBuffer().put(getPixels(image));
+                swapped.put(eldest.getKey(), Integer.valueOf(slot));
+            }
+            it.remove();
+            spare = image;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SWAP FILE
+    //////////////////////////////////////////////////////////////
+    /** Get a free slot in the swap file, growing it if there are none
+     * @return  The slot or -1 if the swap file can not be used
+     */
+    private int getFreeSlot() {
+        if (freeSlots.isEmpty()) {
+            if (swapFailed || swapDirectory == null) {
+                return -1;
+            }
+            try {
+                if (swapFile == null) {
+                    // In the user's own directory rather than the shared temporary directory,
+                    // as the file holds the drawing
+                    swapPath = File.createTempFile("alchemy", ".tiles", swapDirectory);
+                    swapPath.deleteOnExit();
+                    swapFile = new RandomAccessFile(swapPath, "rw");
+                }
+                long chunkBytes = (long) CHUNK_TILES * TILE_BYTES;
+                long position = chunks.size() * chunkBytes;
+                swapFile.setLength(position + chunkBytes);
+                MappedByteBuffer chunk = swapFile.getChannel().map(FileChannel.MapMode.READ_WRITE, position, chunkBytes);
+                int first = chunks.size() * CHUNK_TILES;
+                chunks.add(chunk);
+                for (int i = CHUNK_TILES - 1; i >= 0; i--) {
+                    freeSlots.add(Integer.valueOf(first + i));
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                swapFailed = true;
+                return -1;
+            }
+        }
+        return freeSlots.remove(freeSlots.size() - 1).intValue();
+    }
+
+    /** Get the part of the swap file holding a slot */
+    private ByteBuffer getSlot(int slot) {
+        ByteBuffer chunk = chunks.get(slot / CHUNK_TILES).duplicate();
+        int position = (slot % CHUNK_TILES) * TILE_BYTES;
+        chunk.limit(position + TILE_BYTES);
+        chunk.position(position);
+        return chunk.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /** Owner, column and row of a tile */
+    private static final class Key {
+
+        final Object owner;
+        final int column,  row;
+
+        Key(Object owner, int column, int row) {
+            this.owner = owner;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return key.owner == owner && key.column == column && key.row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(owner) * 31 + column) * 31 + row;
+        }
+    }
+}
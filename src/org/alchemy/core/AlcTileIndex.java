@@ -0,0 +1,121 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+/**
+ * The shapes of a layer sorted by the tiles they cover<br>
+ * Used to draw a tile of the layer from only the shapes on it.
+ * Tiles are in drawing coordinates, so they stay where they are when the drawing is panned.
+ */
+class AlcTileIndex {
+
+    private static final int TILE_SIZE = AlcTileCache.TILE_SIZE;
+    /** Shapes by tile, in drawing order */
+    private final HashMap<Long, ArrayList<AlcShape>> tiles = new HashMap<Long, ArrayList<AlcShape>>();
+
+    /** Sort shapes by tile
+     * @param shapes    The shapes, bottom first
+     */
+    AlcTileIndex(List<AlcShape> shapes) {
+        add(shapes);
+    }
+
+    /** Get the key of a tile */
+    static Long key(int column, int row) {
+        return Long.valueOf(((long) column << 32) | (row & 0xFFFFFFFFL));
+    }
+
+    /** Get the column of a tile from its key */
+    static int getColumn(Long key) {
+        return (int) (key.longValue() >> 32);
+    }
+
+    /** Get the row of a tile from its key */
+    static int getRow(Long key) {
+        return (int) key.longValue();
+    }
+
+    /** Add shapes above those already sorted
+     * @param shapes    The shapes, bottom first
+     */
+    void add(List<AlcShape> shapes) {
+        for (int i = 0; i < shapes.size(); i++) {
+            AlcShape shape = shapes.get(i);
+            Rectangle2D bounds = shape.getPaintedBounds();
+            int firstColumn = AlcTileCache.floorDiv((int) Math.floor(bounds.getMinX()), TILE_SIZE);
+            int firstRow = AlcTileCache.floorDiv((int) Math.floor(bounds.getMinY()), TILE_SIZE);
+            int lastColumn = AlcTileCache.floorDiv((int) Math.ceil(bounds.getMaxX()), TILE_SIZE);
+            int lastRow = AlcTileCache.floorDiv((int) Math.ceil(bounds.getMaxY()), TILE_SIZE);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    Long key = key(column, row);
+                    ArrayList<AlcShape> tileShapes = tiles.get(key);
+                    if (tileShapes == null) {
+                        tileShapes = new ArrayList<AlcShape>();
+                        tiles.put(key, tileShapes);
+                    }
+                    tileShapes.add(shape);
+                }
+            }
+        }
+    }
+
+    /** Get the tiles with shapes on them
+     * @return  The key of each tile
+     */
+    Set<Long> getTiles() {
+        return tiles.keySet();
+    }
+
+    /** Check if any shapes are on a tile
+     * @param column    Tile column
+     * @param row       Tile row
+     * @return          True if there are no shapes on the tile
+     */
+    boolean isEmpty(int column, int row) {
+        return !tiles.containsKey(key(column, row));
+    }
+
+    /** Draw the shapes on a tile over what is already on the image
+     *
+     * @param image     Tile sized image to draw on
+     * @param column    Tile column
+     * @param row       Tile row
+     * @param renderer  Renderer used to draw the shapes
+     */
+    void paintTile(BufferedImage image, int column, int row, AlcRenderer renderer) {
+        ArrayList<AlcShape> shapes = tiles.get(key(column, row));
+        if (shapes == null) {
+            return;
+        }
+        Graphics2D g2 = image.createGraphics();
+        renderer.setupGraphics(g2);
+        g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+        g2.clip(new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE));
+        renderer.paintShapes(g2, shapes, TILE_SIZE, TILE_SIZE);
+        g2.dispose();
+    }
+}
@@ -848,6 +848,7 @@ public class AlcToolBar extends AlcAbstractToolBar implements AlcConstants{
                 } else if (createCount > 9) {
                     Alchemy.shortcuts.setShortcut(createMenuItem, zero + (createCount - 9), currentModule.getName(), createMenuItemAction, KeyEvent.ALT_MASK);
                 }
+                AlcPlugins.showPrepareState(createMenuItem, currentModule);
                 createCount++;
             }
         }
@@ -916,6 +917,7 @@ public class AlcToolBar extends AlcAbstractToolBar implements AlcConstants{
                     } else if (affectCount > 9) {
                         Alchemy.shortcuts.setShortcut(affectMenuItem, zero + (affectCount - 9), currentModule.getName(), affectMenuItemAction, KeyEvent.SHIFT_MASK);
                     }
+                    AlcPlugins.showPrepareState(affectMenuItem, currentModule);
                     affectCount++;
                 }
             }
@@ -35,6 +35,9 @@ import java.net.URL;
 import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.swing.*;
 import java.util.regex.*;
 
@@ -44,7 +47,9 @@ import java.util.regex.*;
  */
 public class AlcUtil implements AlcConstants {
 
-    private final static Clipboard CLIPBOARD = TOOLKIT.getSystemClipboard();
+    /** Icons being loaded ahead of time, added by {@link #preloadImageIcon(URL, Future)} */
+    private static final Map<String, Future<ImageIcon>> preloadedIcons = new ConcurrentHashMap<String, Future<ImageIcon>>();
+
     //////////////////////////////////////////////////////////////
     // STRING FUNCTIONS
     //////////////////////////////////////////////////////////////
@@ -203,7 +208,21 @@ public class AlcUtil implements AlcConstants {
      */
     public static ImageIcon getImageIcon(URL imgUrl) {
         if (imgUrl != null) {
-            ImageIcon icon = new ImageIcon(imgUrl);
+            ImageIcon icon = null;
+            Future<ImageIcon> preloaded = preloadedIcons.remove(imgUrl.toExternalForm());
+            if (preloaded != null) {
+                // Wait for the icon already loading rather than load it again
+                try {
+                    icon = preloaded.get();
+                } catch (ExecutionException ex) {
+                    // Loaded the usual way instead
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (icon == null) {
+                icon = new ImageIcon(imgUrl);
+            }
             // Check the icon actually exists - bit of a hack!
             if (icon.getIconWidth() > 0) {
                 return icon;
@@ -213,6 +232,20 @@ public class AlcUtil implements AlcConstants {
         return null;
     }
 
+    /** Set an icon being loaded on another thread, to be waited for by the next call to {@link #getImageIcon(URL)}
+     *
+     * @param imgUrl    The URL to the image
+     * @param icon      The icon being loaded
+     */
+    static void preloadImageIcon(URL imgUrl, Future<ImageIcon> icon) {
+        preloadedIcons.put(imgUrl.toExternalForm(), icon);
+    }
+
+    /** Let go of the icons loaded ahead of time that were not used */
+    static void clearPreloadedIcons() {
+        preloadedIcons.clear();
+    }
+
     /** Returns an Image from the Alchemy data folder, or null if the name was invalid.
      * 
      * @param name  The name to the image
@@ -287,6 +320,25 @@ public class AlcUtil implements AlcConstants {
         return null;
     }
 
+    /** Convert an Image into a BufferedImage of a different size
+     * 
+     * @param image     The Image to be converted
+     * @param width     Width of the new image
+     * @param height    Height of the new image
+     * @return          The scaled Buffered Image or null if invalid
+     */
+    public static BufferedImage getBufferedImage(Image image, int width, int height) {
+        if (image != null) {
+            BufferedImage bufferedImage = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = bufferedImage.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(image, 0, 0, width, height, null);
+            g2.dispose();
+            return bufferedImage;
+        }
+        return null;
+    }
+
     /** Create a custom cursor from a given image file
      * 
      * @param name  The image file to use as the cursor
@@ -294,6 +346,11 @@ public class AlcUtil implements AlcConstants {
      */
     public static Cursor getCursor(String name) {
 
+        // No custom cursors without a display
+        if (HEADLESS) {
+            return Cursor.getDefaultCursor();
+        }
+
         // Cursor size differs depending on the platform
         // Add padding based on the best cursor size
         final Cursor customCursor;
@@ -428,126 +485,133 @@ public class AlcUtil implements AlcConstants {
      * @return                  A Collection of AlcShapes from the PDF, else null
      */
     public static Collection<AlcShape> getPDFShapes(File file, boolean resetLocation, int pixelSize) {
-        // set up the PDF reading
-        PDFFile pdfFile = null;
-        PDFPage pdfPage = null;
-        int totalPages = 0;
+        PDFFile pdfFile = getPDFFile(file);
+        if (pdfFile == null) {
+            return null;
+        }
+        int totalPages = pdfFile.getNumPages();
 
+        // Create an arraylist to populate with just the shapes
+        ArrayList<AlcShape> shapeList = new ArrayList<AlcShape>(totalPages * 10);
+
+        // Go through each of the pages - numbered from 1
+        for (int p = 1; p <= totalPages; p++) {
+            ArrayList<AlcShape> pageShapes = getPDFShapes(pdfFile.getPage(p, true), resetLocation, pixelSize);
+            if (pageShapes == null) {
+                return null;
+            }
+            shapeList.addAll(pageShapes);
+        }
+        // If there are shapes, then return them as an  array
+        if (shapeList.size() > 0) {
+            return shapeList;
+        }
+        return null;
+    }
+
+    /**
+     * Open a PDF file to read shapes from
+     *
+     * @param file              The PDF file
+     * @return                  The opened PDF file, else null
+     */
+    static PDFFile getPDFFile(File file) {
         try {
             RandomAccessFile raf = new RandomAccessFile(file, "r");
             FileChannel channel = raf.getChannel();
             java.nio.ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-            pdfFile = new PDFFile(buf);
-            totalPages = pdfFile.getNumPages();
-
+            return new PDFFile(buf);
 
         } catch (Exception ex) {
             System.err.println("Failed to load file");
             ex.printStackTrace();
             return null;
         }
+    }
 
-        // Create an arraylist to populate with just the shapes
-        ArrayList<AlcShape> shapeList = new ArrayList<AlcShape>(totalPages * 10);
-
-        // Go through each of the pages
-        for (int p = 0; p < totalPages; p++) {
-            pdfPage = pdfFile.getPage(p);
-
-            // Token size because we are not actually rendering
-            int size = 1;
-            BufferedImage buffImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = buffImage.createGraphics();
-            PDFRenderer renderer = new PDFRenderer(pdfPage, g2, new Rectangle(0, 0, size, size), null, null);
-
-            java.awt.Rectangle pageBounds = new java.awt.Rectangle(0, 0, (int) pdfPage.getWidth(), (int) pdfPage.getHeight());
+    /**
+     * Get the shapes from a single page of a PDF file.
+     * The page must have finished being parsed, but does not need to be rendered.
+     *
+     * @param pdfPage           The page
+     * @param resetLocation     Reset the location of each path to 0,0
+     * @param pixelSize         Pixel size to scale the shapes to. No scaling if less than zero.
+     * @return                  The shapes on the page, else null
+     */
+    static ArrayList<AlcShape> getPDFShapes(PDFPage pdfPage, boolean resetLocation, int pixelSize) {
+        ArrayList<AlcShape> shapeList = new ArrayList<AlcShape>();
+        java.awt.Rectangle pageBounds = new java.awt.Rectangle(0, 0, (int) pdfPage.getWidth(), (int) pdfPage.getHeight());
+        int totalCommands = pdfPage.getCommandCount();
 
-            // Have to run the renderer to populate the command list fully 
-            try {
-                pdfPage.waitForFinish();
-                renderer.run();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
+        try {
+            for (int c = 0; c < totalCommands; c++) {
+                PDFCmd command = pdfPage.getCommand(c);
+                if (command instanceof PDFShapeCmd) {
+                    PDFShapeCmd shapeCommand = (PDFShapeCmd) command;
+
+                    // Hack into the command to get the path
+                    Class shapeClass = shapeCommand.getClass();
+                    Field pathField = shapeClass.getDeclaredField("gp");
+                    pathField.setAccessible(true);
+                    GeneralPath gp = (GeneralPath) pathField.get(shapeCommand);
+                    java.awt.Rectangle gpBounds = gp.getBounds();
+                    // Hack into the command to get the style
+                    Field styleField = shapeClass.getDeclaredField("style");
+                    styleField.setAccessible(true);
+                    int style = (Integer) styleField.get(shapeCommand);
+
+                    // If the style is not a clipping path
+                    if (style != STYLE_CLIP) {
+                        // Save the shape if it is within the page size
+                        if (gpBounds.width < pageBounds.width && gpBounds.height < pageBounds.height && !pageBounds.equals(gpBounds)) {
+                            
+                            // Scale to a set pixel size
+                            if(pixelSize > 0){
+                                // Figure out the longest side
+                                int longestSize = (gpBounds.width > gpBounds.height) ? gpBounds.width : gpBounds.height;
+                                // Create the scaling factor
+                                double scale = (float) pixelSize / longestSize;
+                                AffineTransform scaleTransform = new AffineTransform();
+                                scaleTransform.scale(scale, scale);
+                                gp = (GeneralPath) gp.createTransformedShape(scaleTransform);
+                                gpBounds = gp.getBounds();
+                            }
 
-            int totalCommands = pdfPage.getCommandCount();
+                            // For some reason the shapes come in flipped, o re-flip them here
+                            AffineTransform transform = new AffineTransform();
+                            int axis = (gpBounds.y * 2) + gpBounds.height;
+                            // Move the reflection into place and reset to 0,0 if required
+                            if (resetLocation) {
+                                transform.translate(0 - gpBounds.x, axis - gpBounds.y);
+                            } else {
+                                transform.translate(0, axis);
+                            }
 
-            try {
-                for (int c = 0; c < totalCommands; c++) {
-                    PDFCmd command = pdfPage.getCommand(c);
-                    if (command instanceof PDFShapeCmd) {
-                        PDFShapeCmd shapeCommand = (PDFShapeCmd) command;
-
-                        // Hack into the command to get the path
-                        Class shapeClass = shapeCommand.getClass();
-                        Field pathField = shapeClass.getDeclaredField("gp");
-                        pathField.setAccessible(true);
-                        GeneralPath gp = (GeneralPath) pathField.get(shapeCommand);
-                        java.awt.Rectangle gpBounds = gp.getBounds();
-                        // Hack into the command to get the style
-                        Field styleField = shapeClass.getDeclaredField("style");
-                        styleField.setAccessible(true);
-                        int style = (Integer) styleField.get(shapeCommand);
-
-                        // If the style is not a clipping path
-                        if (style != STYLE_CLIP) {
-                            // Save the shape if it is within the page size
-                            if (gpBounds.width < pageBounds.width && gpBounds.height < pageBounds.height && !pageBounds.equals(gpBounds)) {
-                                
-                                // Scale to a set pixel size
-                                if(pixelSize > 0){
-                                    // Figure out the longest side
-                                    int longestSize = (gpBounds.width > gpBounds.height) ? gpBounds.width : gpBounds.height;
-                                    // Create the scaling factor
-                                    double scale = (float) pixelSize / longestSize;
-                                    AffineTransform scaleTransform = new AffineTransform();
-                                    scaleTransform.scale(scale, scale);
-                                    gp = (GeneralPath) gp.createTransformedShape(scaleTransform);
-                                    gpBounds = gp.getBounds();
-                                }
-
-                                // For some reason the shapes come in flipped, o re-flip them here
-                                AffineTransform transform = new AffineTransform();
-                                int axis = (gpBounds.y * 2) + gpBounds.height;
-                                // Move the reflection into place and reset to 0,0 if required
-                                if (resetLocation) {
-                                    transform.translate(0 - gpBounds.x, axis - gpBounds.y);
-                                } else {
-                                    transform.translate(0, axis);
-                                }
-
-                                // Reflect it using a negative scale
-                                transform.scale(1, -1);
-                                GeneralPath transformedPath = (GeneralPath) gp.createTransformedShape(transform);
-
-                               
-                                AlcShape shape = new AlcShape(transformedPath);
-                                shape.recalculateTotalPoints();
-                                if (style == STYLE_BOTH) {
-                                    shape.setStyle(STYLE_FILL);
-                                } else {
-                                    shape.setStyle(style);
-                                }
-                                shapeList.add(shape);
+                            // Reflect it using a negative scale
+                            transform.scale(1, -1);
+                            GeneralPath transformedPath = (GeneralPath) gp.createTransformedShape(transform);
+
+                           
+                            AlcShape shape = new AlcShape(transformedPath);
+                            shape.recalculateTotalPoints();
+                            if (style == STYLE_BOTH) {
+                                shape.setStyle(STYLE_FILL);
+                            } else {
+                                shape.setStyle(style);
                             }
+                            shapeList.add(shape);
                         }
-
                     }
+
                 }
+            }
 
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                return null;
-            } finally {
-                g2.dispose();
-            }
-        }
-        // If there are shapes, then return them as an  array
-        if (shapeList.size() > 0) {
-            return shapeList;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
         }
-        return null;
+        return shapeList;
     }
 
     /** Copies the source file to destination file.
@@ -610,6 +674,27 @@ public class AlcUtil implements AlcConstants {
         // Return collection of files
         return files;
     }
+
+    /** Get the directory Alchemy keeps its own files in for this user, creating it if needed<br>
+     *  Application Support on Mac, the application data folder on Windows and ~/.alchemy otherwise
+     *
+     * @return  The settings directory, or null if it could not be created
+     */
+    static File getSettingsDirectory() {
+        File dir;
+        String appData = System.getenv("APPDATA");
+        if (Alchemy.OS == OS_MAC) {
+            dir = new File(DIR_HOME, "Library" + DIR_SEPARATOR + "Application Support" + DIR_SEPARATOR + "Alchemy");
+        } else if (Alchemy.OS == OS_WINDOWS && appData != null) {
+            dir = new File(appData, "Alchemy");
+        } else {
+            dir = new File(DIR_HOME, ".alchemy");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        return dir;
+    }
     
     //////////////////////////////////////////////////////////////
     // UI FUNCTIONS
@@ -767,7 +852,7 @@ public class AlcUtil implements AlcConstants {
     public static boolean setClipboard(Transferable contents, ClipboardOwner owner) {
         boolean result = true;
         try {
-            CLIPBOARD.setContents(contents, owner);
+            TOOLKIT.getSystemClipboard().setContents(contents, owner);
         } catch (IllegalStateException e) {
             e.printStackTrace();
             result = false;
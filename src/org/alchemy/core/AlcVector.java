@@ -0,0 +1,141 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.util.*;
+
+/**
+ * List that never changes once made<br>
+ * Adding to the end makes a new list that shares all but a few small arrays with the old one,
+ * so each version can be handed out and kept while later versions are made.
+ * Items are stored in a tree of 32 wide arrays, with the last array kept apart so most adds
+ * only copy that one array.
+ */
+final class AlcVector<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final AlcVector<Object> EMPTY = new AlcVector<Object>(0, BITS, new Object[WIDTH], new Object[0]);
+    /** Number of items */
+    private final int size;
+    /** Bits to shift an index by to find its place in the root */
+    private final int shift;
+    /** Tree of all items before the tail */
+    private final Object[] root;
+    /** The last items, up to 32 */
+    private final Object[] tail;
+
+    private AlcVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /** Get the empty list
+     * @return  A list with no items
+     */
+    @SuppressWarnings("unchecked")
+    static <E> AlcVector<E> empty() {
+        return (AlcVector<E>) EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (E) arrayFor(index)[index & MASK];
+    }
+
+    /** Make a new list with an item added to the end - this list is not changed
+     * @param item  The item to add
+     * @return      The new list
+     */
+    AlcVector<E> plus(E item) {
+        // Room in the tail
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = item;
+            return new AlcVector<E>(size + 1, shift, root, newTail);
+        }
+        // Full tail, move it into the tree
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            // The tree is full, add a level
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new AlcVector<E>(size + 1, newShift, newRoot, new Object[]{item});
+    }
+
+    /** Index of the first item in the tail */
+    private int tailOffset() {
+        return (size < WIDTH) ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /** Get the array holding an item */
+    private Object[] arrayFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /** Copy the path down to where the tail goes, adding the tail there */
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int index = ((size - 1) >>> level) & MASK;
+        Object[] node = parent.clone();
+        if (level == BITS) {
+            node[index] = tailNode;
+        } else {
+            Object[] child = (Object[]) parent[index];
+            node[index] = (child != null) ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        return node;
+    }
+
+    /** Make a branch leading down to a single array */
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] branch = new Object[WIDTH];
+        branch[0] = newPath(level - BITS, node);
+        return branch;
+    }
+}
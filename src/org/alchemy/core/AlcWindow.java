@@ -538,7 +538,7 @@ public class AlcWindow extends JFrame implements AlcConstants, WindowStateListen
      */
     boolean exitAlchemy() {
         // Ask to quit
-        if (Alchemy.canvas.shapes.size() > 0) {
+        if (Alchemy.canvas.getShapeCount() > 0) {
 
             boolean result = AlcUtil.showConfirmDialogFromBundle("exitDialogTitle", "exitDialogMessage", "quitDialogTitle", "quitDialogMessage");
             if (result) {
@@ -587,6 +587,9 @@ public class AlcWindow extends JFrame implements AlcConstants, WindowStateListen
 
         // TODO - Write this out as a file?
 
+        // Delete the swap file of the pan tiles
+        Alchemy.canvas.dispose();
+
         this.dispose();
         System.exit(0);
     }
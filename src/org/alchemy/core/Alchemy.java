@@ -22,6 +22,8 @@ package org.alchemy.core;
 import javax.swing.*;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Main class for Alchemy<br />
@@ -98,6 +100,20 @@ public class Alchemy implements AlcConstants {
 
     Alchemy() {
 
+        AlcStartup startup = new AlcStartup();
+        // Read the English bundle while the preferences load
+        Future<ResourceBundle> englishBundle = startup.submit(new Callable<ResourceBundle>() {
+
+            public ResourceBundle call() {
+                try {
+                    return ResourceBundle.getBundle("org/alchemy/core/AlcResourceBundle", new Locale("en"));
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    return ResourceBundle.getBundle("org/alchemy/core/AlcResourceBundle");
+                }
+            }
+        });
+
         if (OS == OS_MAC) {
             Object appIcon = LookAndFeel.makeIcon(getClass(), "/org/alchemy/data/alchemy-logo64.png");
             UIManager.put("OptionPane.errorIcon", appIcon);
@@ -108,15 +124,11 @@ public class Alchemy implements AlcConstants {
         
         // LOAD PREFERENCES
         preferences = new AlcPreferences();
+        startup.phase("Preferences");
         
         
         // Load the Bundle
-        try {
-            bundleEn = ResourceBundle.getBundle("org/alchemy/core/AlcResourceBundle", new Locale("en"));
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            bundleEn = ResourceBundle.getBundle("org/alchemy/core/AlcResourceBundle");
-        }
+        bundleEn = AlcStartup.get(englishBundle);
         
         
         if (preferences.locale.equals("system")) {
@@ -148,6 +160,17 @@ public class Alchemy implements AlcConstants {
 
 
         
+        startup.phase("Language");
+
+        // LOAD PLUGINS
+        // Publishing the plugins is slow, so it is done while the window is made
+        Future<AlcPlugins> pluginsLoad = startup.submit(new Callable<AlcPlugins>() {
+
+            public AlcPlugins call() {
+                return new AlcPlugins();
+            }
+        });
+
         // Initiate Colour IO Class
         colourIO = new AlcColourIO();
 
@@ -173,10 +196,14 @@ public class Alchemy implements AlcConstants {
         // Color Selector
         colorSelector = new AlcColorSelector(bundle.getString("colorTitle"));
         //cs.setVisible(true);
+        startup.phase("Window");
 
-        // LOAD PLUGINS
-        plugins = new AlcPlugins();
+        plugins = AlcStartup.get(pluginsLoad);
         System.out.println("Number of Plugins: " + plugins.getNumberOfPlugins());
+        startup.phase("Plugins");
+        // Decode the module icons while the canvas is made
+        startup.preloadIcons(plugins.creates);
+        startup.preloadIcons(plugins.affects);
 
         // LOAD CANVAS
         canvas = new AlcCanvas();
@@ -184,6 +211,7 @@ public class Alchemy implements AlcConstants {
         session = new AlcSession();
         // Load the palette
         palette = new AlcPalette(window);
+        startup.phase("Canvas");
 
         // User Interface toolbar
         if (preferences.simpleToolBar) {
@@ -191,14 +219,18 @@ public class Alchemy implements AlcConstants {
         } else {
            toolBar = new AlcToolBar();
         }
+        // The module icons are in the toolbar now
+        AlcUtil.clearPreloadedIcons();
 
         // Menu Bar
         menuBar = new AlcMenuBar();
+        startup.phase("Toolbar");
 
         window.setupWindow();
         shortcuts.setupWindow();
         preferences.setupWindow();
         plugins.initialiseModules();
+        startup.phase("Modules");
 
         if (Alchemy.preferences.simpleToolBar) {
             window.setFullscreen(true);
@@ -211,6 +243,9 @@ public class Alchemy implements AlcConstants {
         
 
         window.setVisible(true);
+        // Prepare the slow modules now the window is up
+        plugins.warmUp();
+        startup.finish();
 
         
 
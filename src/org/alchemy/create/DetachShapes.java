@@ -18,7 +18,7 @@
  */
 package org.alchemy.create;
 
-import java.awt.Point;
+import java.awt.geom.Point2D;
 import java.awt.event.MouseEvent;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -90,28 +90,25 @@ public class DetachShapes extends AlcModule {
     }
 
     @Override
-    public void mouseDragged(MouseEvent e) {
-        Point p = e.getPoint();
+    public void penSample(float penX, float penY, float pressure, float tiltX, float tiltY, long when) {
         //int speed = 100 - (getCursorSpeed(p, oldP));
         //int speed = 100;
         //System.out.println(speed);
 
-        double dx = p.x - x;
-        double dy = p.y - y;
+        double dx = penX - x;
+        double dy = penY - y;
         angle1 = Math.atan2(dy, dx);
-        x = p.x - (Math.cos(angle1) * distance);
-        y = p.y - (Math.sin(angle1) * distance);
-
-        Point newPt = new Point((int) x, (int) y);
+        x = penX - (Math.cos(angle1) * distance);
+        y = penY - (Math.sin(angle1) * distance);
 
         if (newPath) {
-            canvas.createShapes.add(new AlcShape(newPt));
+            canvas.createShapes.add(new AlcShape(new Point2D.Float((float) x, (float) y)));
             canvas.redraw();
             //oldP = p;
             newPath = false;
         } else {
             if (canvas.hasCreateShapes()) {
-                canvas.getCurrentCreateShape().curveTo(newPt);
+                canvas.getCurrentCreateShape().curveTo((float) x, (float) y);
                 canvas.redraw();
             //oldP = p;
             }
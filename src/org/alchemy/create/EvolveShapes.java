@@ -42,6 +42,8 @@ public class EvolveShapes extends AlcModule {
     // Interface
     JPanel shapePanel = null;
     JScrollPane scrollPane = null;
+    /** Shapes being loaded from a PDF in the background */
+    private AlcShapeImport pdfImport;
     //
     // Timing
     private long mouseDelayGap = 51;
@@ -153,9 +155,7 @@ public class EvolveShapes extends AlcModule {
                     public void actionPerformed(ActionEvent e) {
                         File file = AlcUtil.showFileChooser();
                         if(file != null && file.exists()){
-                            shapePanel = layoutShapePanelFromPDF(file);
-                            scrollPane.setViewportView(shapePanel);
-                            evolver.repaint();
+                            loadShapesFromPDF(file, evolver);
                         }
                     }
                 });
@@ -312,8 +312,34 @@ public class EvolveShapes extends AlcModule {
         }
     }
     
-    private JPanel layoutShapePanelFromPDF(File file) {
-        ArrayList<AlcShape> canvasShapes = (ArrayList<AlcShape>) AlcUtil.getPDFShapes(file, true, 100);
+    /** Load the shapes from a PDF in the background and lay them out once all pages are read */
+    private void loadShapesFromPDF(File file, final JDialog evolver) {
+        if (pdfImport != null) {
+            pdfImport.cancel();
+        }
+        // Keep the pages in order as they may be read in any order
+        final TreeMap<Integer, java.util.List<AlcShape>> pages = new TreeMap<Integer, java.util.List<AlcShape>>();
+        pdfImport = AlcShapeImport.importShapes(new File[]{file}, true, 100, new AlcShapeImportInterface() {
+
+            public void shapesImported(File file, int page, java.util.List<AlcShape> shapes) {
+                pages.put(page, shapes);
+            }
+
+            public void importFinished(boolean cancelled) {
+                if (!cancelled) {
+                    ArrayList<AlcShape> pdfShapes = new ArrayList<AlcShape>();
+                    for (java.util.List<AlcShape> pageShapes : pages.values()) {
+                        pdfShapes.addAll(pageShapes);
+                    }
+                    shapePanel = layoutShapePanelFromPDF(pdfShapes);
+                    scrollPane.setViewportView(shapePanel);
+                    evolver.repaint();
+                }
+            }
+        }, evolver);
+    }
+
+    private JPanel layoutShapePanelFromPDF(ArrayList<AlcShape> canvasShapes) {
         if (canvasShapes.size() > 0) {
 
             for (int i = 0; i < canvasShapes.size(); i++) {
@@ -21,7 +21,7 @@ package org.alchemy.create;
 
 import org.alchemy.core.AlcModule;
 import org.alchemy.core.AlcShape;
-import java.awt.Point;
+import java.awt.geom.Point2D;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 
@@ -34,13 +34,13 @@ public class MedianShapes extends AlcModule {
     /** Capture a gesture or not */
     private boolean captureControlGesture = true;
     /** Array list to store the points of the control shape */
-    private ArrayList<Point> controlShapePoints = new ArrayList<Point>(1000);
-    private ArrayList<Point> controlShapePointsBuffer = new ArrayList<Point>(1000);
+    private ArrayList<Point2D.Float> controlShapePoints = new ArrayList<Point2D.Float>(1000);
+    private ArrayList<Point2D.Float> controlShapePointsBuffer = new ArrayList<Point2D.Float>(1000);
     /** Origin Point - when redrawing, where the mouse starts from */
-    Point originPoint;
+    Point2D.Float originPoint;
     /** Origin Difference - when redrawing, how far between the origin of the current shape 
      *  and the origin of the control shape  */
-    Point originDifference;
+    Point2D.Float originDifference;
     /** Counter for the points made when redrawing */
     int pointCount = 0;
 
@@ -54,7 +54,7 @@ public class MedianShapes extends AlcModule {
 
     @Override
     public void mousePressed(MouseEvent e) {
-        Point p = e.getPoint();
+        Point2D.Float p = canvas.getMotion().getPoint();
         if (captureControlGesture) {
 
             /*
@@ -72,11 +72,11 @@ public class MedianShapes extends AlcModule {
             controlShapePoints.add(p);
 
         } else {
-            Point controlOrigin = controlShapePoints.get(0);
+            Point2D.Float controlOrigin = controlShapePoints.get(0);
             pointCount = 0;
             originPoint = p;
 
-            originDifference = new Point(p.x - (p.x - controlOrigin.x) / 2, p.y - (p.y - controlOrigin.y) / 2);
+            originDifference = new Point2D.Float(p.x - (p.x - controlOrigin.x) / 2, p.y - (p.y - controlOrigin.y) / 2);
             //System.out.println(originDifference + " " + controlOrigin + " " + p);
             canvas.createShapes.add(new AlcShape(originDifference));
 
@@ -91,7 +91,7 @@ public class MedianShapes extends AlcModule {
 
     @Override
     public void mouseDragged(MouseEvent e) {
-        Point p = e.getPoint();
+        Point2D.Float p = canvas.getMotion().getPoint();
         // Need to test if it null incase the shape has been auto-cleared
         if (canvas.hasCreateShapes()) {
 
@@ -106,14 +106,14 @@ public class MedianShapes extends AlcModule {
                 pointCount++;
                 // If there are enough recorded points
                 if (controlShapePoints.size() > pointCount) {
-                    Point controlPoint = controlShapePoints.get(pointCount);
+                    Point2D.Float controlPoint = controlShapePoints.get(pointCount);
                     // Difference between this point and the parallel control point
-                    int xOffset = p.x - (p.x - controlPoint.x) / 2;
-                    int yOffset = p.y - (p.y - controlPoint.y) / 2;
+                    float xOffset = p.x - (p.x - controlPoint.x) / 2;
+                    float yOffset = p.y - (p.y - controlPoint.y) / 2;
 
                     //int x = p.x + xOffset;
                     //int y = p.y + yOffset;
-                    Point tempPoint = new Point(xOffset, yOffset);
+                    Point2D.Float tempPoint = new Point2D.Float(xOffset, yOffset);
                     //controlPoint.x += p.x + xOffset;
                     //controlPoint.y += p.y + yOffset;
                     AlcShape thisShape = canvas.createShapes.get(canvas.createShapes.size() - 2);
@@ -129,7 +129,7 @@ public class MedianShapes extends AlcModule {
 
     @Override
     public void mouseReleased(MouseEvent e) {
-        Point p = e.getPoint();
+        Point2D.Float p = canvas.getMotion().getPoint();
         // Need to test if it null incase the shape has been auto-cleared
         if (canvas.hasCreateShapes()) {
 
@@ -145,7 +145,7 @@ public class MedianShapes extends AlcModule {
 
             } else {
                 controlShapePoints = controlShapePointsBuffer;
-                controlShapePointsBuffer = new ArrayList<Point>(1000);
+                controlShapePointsBuffer = new ArrayList<Point2D.Float>(1000);
                 //canvas.getCurrentShape().addLastPoint(p);
 
 
@@ -20,6 +20,8 @@ import org.alchemy.core.*;
 public class PitchShapes extends AlcModule implements AlcConstants {
 
     private AudioContext ac;
+    /** Splits the input into frames for the analysis chain */
+    private ShortFrameSegmenter sfs;
     private float weight = 1;
     private float targetWeight = 1;
     private Point2D.Float lastPt;
@@ -65,17 +67,31 @@ public class PitchShapes extends AlcModule implements AlcConstants {
         createSubToolBarSection();
         toolBar.addSubToolBarSection(subToolBarSection);
 
-        // This function is called when the module is first selected in the menu
-        // It will only be called once, so is useful for doing stuff like
-        // loading interface elements into the menu bar etc...
+        // The analysis chain is built in the background the first time
+        if (ac == null) {
+            createAnalysis();
+        }
+        // Only listen to the microphone once selected
+        RTInput input = new RTInput(ac);
+        sfs.addInput(input);
+
+        // finally start the system
+        ac.start();
+    }
+
+    @Override
+    protected void prepare() {
+        createAnalysis();
+    }
+
+    /** Build the audio context and the chain that finds the pitch */
+    private void createAnalysis() {
         ac = new AudioContext();
 
-        RTInput input = new RTInput(ac);
-        ShortFrameSegmenter sfs = new ShortFrameSegmenter(ac);
+        sfs = new ShortFrameSegmenter(ac);
         sfs.setChunkSize(2048);
         sfs.setHopSize(777);
 
-        sfs.addInput(input);
         ac.out.addDependent(sfs);
 
         // set up the analysis chain to extract the largest spectral peak (i.e., the primary pitch)
@@ -92,9 +108,6 @@ public class PitchShapes extends AlcModule implements AlcConstants {
         fft.addListener(ps);
         ps.addListener(f);
         f.addListener(pl);
-
-        // finally start the system
-        ac.start();
     }
 
     private void createSubToolBarSection() {
@@ -81,11 +81,10 @@ public class PressureShapes extends AlcModule {
     }
 
     @Override
-    public void mouseDragged(MouseEvent e) {
+    public void penSample(float x, float y, float pressure, float tiltX, float tiltY, long when) {
         AlcShape currentShape = canvas.getCurrentCreateShape();
         if (currentShape != null) {
-            Point2D.Float p = canvas.getPenLocation();
-            currentShape.spineTo(p, getPressure());
+            currentShape.spineTo(x, y, getPressure());
             canvas.redraw();
         }
     }
@@ -25,6 +25,8 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import org.alchemy.core.*;
@@ -33,7 +35,7 @@ import org.alchemy.core.*;
  *
  * PullShapes.java
  */
-public class PullShapes extends AlcModule implements AlcConstants {
+public class PullShapes extends AlcModule implements AlcConstants, AlcShapeImportInterface {
 
     private AlcToolBarSubSection subToolBarSection;
     //
@@ -45,6 +47,10 @@ public class PullShapes extends AlcModule implements AlcConstants {
     private int currentFolder;
     private String[] folderNames;
     private ArrayList[] shapeLists;
+    /** The shape list each file is loaded into */
+    private HashMap<File, ArrayList<AlcShape>> fileLists;
+    /** Shapes being loaded in the background */
+    private AlcShapeImport shapeImport;
     private AlcSubComboBox folderSelector;
     //
     private boolean scale = true;
@@ -54,9 +60,15 @@ public class PullShapes extends AlcModule implements AlcConstants {
     public PullShapes() {
     }
 
+    @Override
+    protected void prepare() {
+        // Looking through the shapes folder can be slow with many files
+        findShapes();
+    }
+
     @Override
     protected void setup() {
-        loadShapes();
+        importShapes();
         createSubToolBarSection();
         toolBar.addSubToolBarSection(subToolBarSection);
 
@@ -161,6 +173,17 @@ public class PullShapes extends AlcModule implements AlcConstants {
     }
 
     private void loadShapes() {
+        // Stop loading any previous shapes
+        if (shapeImport != null) {
+            shapeImport.cancel();
+        }
+        findShapes();
+        importShapes();
+    }
+
+    /** Find the shape files in the shapes folder - does not touch the interface */
+    private void findShapes() {
+        fileLists = new HashMap<File, ArrayList<AlcShape>>();
         // Initialise variables
         hasFolders = false;
         hasRootShapes = false;
@@ -213,7 +236,7 @@ public class PullShapes extends AlcModule implements AlcConstants {
             ArrayList<AlcShape> rootShapes = new ArrayList<AlcShape>();
             for (int i = 0; i < rootPdfs.length; i++) {
                 // Add the shapes from each pdf to the root shape list
-                rootShapes.addAll(AlcUtil.getPDFShapes(rootPdfs[i], true, 0));
+                fileLists.put(rootPdfs[i], rootShapes);
             }
             // Add the rootShapes to the main array
             shapeLists[0] = rootShapes;
@@ -241,7 +264,7 @@ public class PullShapes extends AlcModule implements AlcConstants {
                 ArrayList<AlcShape> folderShapes = new ArrayList<AlcShape>();
                 for (int j = 0; j < pdfs.length; j++) {
                     // Add the shapes from each pdf to the folder shape list
-                    folderShapes.addAll(AlcUtil.getPDFShapes(pdfs[j], true, 0));
+                    fileLists.put(pdfs[j], folderShapes);
                 }
                 // Store this folder of shapes in the main array
                 shapeLists[count] = folderShapes;
@@ -253,9 +276,26 @@ public class PullShapes extends AlcModule implements AlcConstants {
                 hasShapes = true;
             }
         }
+    }
+
+    /** Start loading the shapes found in the background */
+    private void importShapes() {
         if (!hasShapes) {
             AlcUtil.showNoShapesDialog();
         }
+        // Load the shapes in the background, they can be used as they arrive
+        File[] pdfs = new File[fileLists.size()];
+        shapeImport = AlcShapeImport.importShapes(fileLists.keySet().toArray(pdfs), true, 0, this, null);
+    }
+
+    public void shapesImported(File file, int page, List<AlcShape> shapes) {
+        ArrayList<AlcShape> list = fileLists.get(file);
+        if (list != null) {
+            list.addAll(shapes);
+        }
+    }
+
+    public void importFinished(boolean cancelled) {
     }
 
     private void addRandomShape(MouseEvent e) {
@@ -272,8 +312,8 @@ public class PullShapes extends AlcModule implements AlcConstants {
         int rand = (int) math.random(shapeLists[folder].size());
         if (shapeLists[folder].size() > 0) {
             AlcShape shape = (AlcShape) shapeLists[folder].get(rand);
-            // Clone the shape
-            AlcShape cloneShape = (AlcShape) shape.clone();
+            // Clone the shape - drawn from an image of the library shape
+            AlcShape cloneShape = shape.stampClone();
             if (scale) {
                 // Scale it
                 float scaleFactor = math.random(0.1F, size);
@@ -30,7 +30,7 @@ import org.alchemy.core.*;
  */
 public class ScrawlShapes extends AlcModule {
 
-    private Point oldP;
+    private int oldX,  oldY;
     private int count = 0;
     private int flow = 10;
     private int detail = 10;
@@ -96,24 +96,23 @@ public class ScrawlShapes extends AlcModule {
         subToolBarSection.add(noiseSlider);
     }
 
-    private void scrawl(Point p1, Point p2, int steps, float noise) {
-        float xStep = (p2.x - p1.x) / steps;
-        float yStep = (p2.y - p1.y) / steps;
+    private void scrawl(int x1, int y1, int x2, int y2, int steps, float noise) {
+        float xStep = (x2 - x1) / steps;
+        float yStep = (y2 - y1) / steps;
 
         //AlcShape shape = new AlcShape(p1);
         AlcShape shape = canvas.getCurrentCreateShape();
 
         if (shape != null) {
 
-            int p1x = p1.x;
-            int p1y = p1.y;
+            int p1x = x1;
+            int p1y = y1;
 
             for (int i = 0; i < steps; i++) {
                 if (i < steps - 1) {
-                    float x2 = p1x += xStep + math.random(-noise, noise);
-                    float y2 = p1y += yStep + math.random(-noise, noise);
-                    Point newPt = new Point((int) x2, (int) y2);
-                    shape.curveTo(newPt);
+                    p1x += xStep + math.random(-noise, noise);
+                    p1y += yStep + math.random(-noise, noise);
+                    shape.curveTo(p1x, p1y);
                 }
             }
         //shape.addCurvePoint(p2);
@@ -128,18 +127,20 @@ public class ScrawlShapes extends AlcModule {
 //        }
         Point p = e.getPoint();
         canvas.createShapes.add(new AlcShape(p));
-        oldP = p;
-    //System.out.println(oldP);
+        oldX = p.x;
+        oldY = p.y;
     }
 
     @Override
     public void mouseDragged(MouseEvent e) {
 
         if (count % flow == 0) {
-            Point p = e.getPoint();
+            int x = e.getX();
+            int y = e.getY();
 
-            scrawl(oldP, p, detail, noise);
-            oldP = p;
+            scrawl(oldX, oldY, x, y, detail, noise);
+            oldX = x;
+            oldY = y;
             canvas.redraw();
         }
         count++;
@@ -87,6 +87,7 @@ public class Shapes extends AlcModule implements AlcConstants {
                 new ActionListener() {
 
                     public void actionPerformed(ActionEvent e) {
+                        canvas.finishGeometry();
                         straightShapes = !straightShapes;
                         reset();
                         canvas.redraw();
@@ -109,6 +110,11 @@ public class Shapes extends AlcModule implements AlcConstants {
 
     }
 
+    @Override
+    public boolean isGeometryThreadSafe() {
+        return true;
+    }
+
     @Override
     public void mousePressed(MouseEvent e) {
         if (!straightShapes) {
@@ -161,17 +167,19 @@ public class Shapes extends AlcModule implements AlcConstants {
     }
 
     @Override
-    public void mouseDragged(MouseEvent e) {
+    public void penSample(float x, float y, float pressure, float tiltX, float tiltY, long when) {
         if (!straightShapes) {
-            
-           //System.out.println(canvas.getPenType() + " " + canvas.getPenPressure());
-            Point p = e.getPoint();
             // Need to test if it is null incase the shape has been auto-cleared
             if (canvas.hasCreateShapes()) {
-                canvas.getCurrentCreateShape().curveTo(p);
+                canvas.getCurrentCreateShape().curveTo(x, y);
                 canvas.redraw();
             }
-        } else {
+        }
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        if (straightShapes) {
             // If in freeform shape mode then draw the guide line using the mousemoved method
             mouseMoved(e);
         }
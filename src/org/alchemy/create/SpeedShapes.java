@@ -32,7 +32,7 @@ import javax.swing.event.ChangeListener;
  */
 public class SpeedShapes extends AlcModule implements AlcConstants {
 
-    private Point oldP;
+    private float oldX,  oldY;
     private int multiplier = 15;
     private AlcToolBarSubSection subToolBarSection;
     private boolean freeform = true;
@@ -90,50 +90,42 @@ public class SpeedShapes extends AlcModule implements AlcConstants {
         Point p = e.getPoint();
         canvas.createShapes.add(new AlcShape(p));
         canvas.redraw();
-        oldP = p;
+        oldX = p.x;
+        oldY = p.y;
     }
 
     @Override
-    public void mouseDragged(MouseEvent e) {
+    public void penSample(float x, float y, float pressure, float tiltX, float tiltY, long when) {
         // Need to test if it is null incase the shape has been auto-cleared
         if (canvas.hasCreateShapes()) {
-            Point p = e.getPoint();
-            int speed = getCursorSpeed(p, oldP) / 2;
+            int speed = getCursorSpeed(x, y, oldX, oldY) / 2;
 
-            Point pt = getAngle(p, oldP, speed);
+            // Move the point further along the direction of movement
+            double adjustedDistance = speed * multiplier;
+            double angle = Math.atan2(y - oldY, x - oldX);
+            int newX = (int) (x + (adjustedDistance * Math.cos(angle)));
+            int newY = (int) (y + (adjustedDistance * Math.sin(angle)));
             if (freeform) {
-                canvas.getCurrentCreateShape().curveTo(pt);
+                canvas.getCurrentCreateShape().curveTo(newX, newY);
             } else {
-                canvas.getCurrentCreateShape().lineTo(pt);
+                canvas.getCurrentCreateShape().lineTo(newX, newY);
             }
 
             canvas.redraw();
-            oldP = p;
+            oldX = x;
+            oldY = y;
         }
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-        oldP = null;
         canvas.commitShapes();
     }
 
-    private static int getCursorSpeed(Point p1, Point p2) {
-        int diffX = Math.abs(p1.x - p2.x);
-        int diffY = Math.abs(p1.y - p2.y);
+    /** Distance moved between whole pixels, across plus down */
+    private static int getCursorSpeed(float x1, float y1, float x2, float y2) {
+        int diffX = Math.abs((int) x1 - (int) x2);
+        int diffY = Math.abs((int) y1 - (int) y2);
         return diffX + diffY;
     }
-
-    private Point getAngle(Point p1, Point p2, double distance) {
-        double adjustedDistance = distance * multiplier;
-        // Calculate the angle between the last point and the new point
-        //double angle = Math.atan2(p1.y - p2.y, p1.x - p2.x) - root.math.random(TWO_PI);
-        double angle = Math.atan2(p1.y - p2.y, p1.x - p2.x);
-        //System.out.println(angle);
-        // Conver the polar coordinates to cartesian
-        double x = p1.x + (adjustedDistance * Math.cos(angle));
-        double y = p1.y + (adjustedDistance * Math.sin(angle));
-
-        return new Point((int) x, (int) y);
-    }
 }
@@ -44,6 +44,8 @@ public class SplatterShapes extends AlcModule {
     private AlcToolBarSubSection subToolBarSection;
     private int initialSize = 50;
     private int drips = 10;
+    /** Round dot one pixel across, stamped for each drip */
+    private final AlcShape dot = new AlcShape(new GeneralPath(new Ellipse2D.Float(-0.5F, -0.5F, 1F, 1F)));
 
     @Override
     protected void setup() {
@@ -128,6 +130,18 @@ public class SplatterShapes extends AlcModule {
                 dd = 0;
             }
             
+            // A stroked drip this short is a round dot, stamp it from an image to draw faster
+            // Filled drips have no area and draw nothing, so they are left as they are
+            if (dd >= 1 && canvas.getStyle() == STYLE_STROKE) {
+                AlcShape shape = dot.stampClone();
+                shape.setup();
+                shape.setStyle(STYLE_FILL);
+                shape.scale(dd, dd);
+                shape.move(start.x + x4 + x5 / 2, start.y + y4 + y5 / 2);
+                canvas.createShapes.add(shape);
+                continue;
+            }
+
             AlcShape shape = new AlcShape(new Point2D.Float(start.x + x4, start.y + y4));
 
             // Use an elipse to draw faster
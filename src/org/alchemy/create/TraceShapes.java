@@ -125,20 +125,20 @@ public class TraceShapes extends AlcModule implements AlcConstants {
                 // Ignore
             }
             if (newImage != null) {
-                setImage(AlcUtil.getBufferedImage(newImage));
+                setImage(newImage);
             } else {
                 AlcUtil.showConfirmDialogFromBundle("imageErrorDialogTitle", "imageErrorDialogMessage");
             }
         }
     }
 
-    private void setImage(BufferedImage newImage) {
+    private void setImage(Image newImage) {
         // Scale the image to the screen size
         imageSize = canvas.getVisibleRect();
 
         double scale;
-        double widthScale = (float) imageSize.width / (float) newImage.getWidth();
-        double heightScale = (float) imageSize.height / (float) newImage.getHeight();
+        double widthScale = (float) imageSize.width / (float) newImage.getWidth(null);
+        double heightScale = (float) imageSize.height / (float) newImage.getHeight(null);
 
         // Use the smaller scale
         if (widthScale < heightScale) {
@@ -147,15 +147,15 @@ public class TraceShapes extends AlcModule implements AlcConstants {
             scale = heightScale;
         }
         // Calculate the new size               
-        int newWidth = (int) Math.round(newImage.getWidth() * scale);
-        int newHeight = (int) Math.round(newImage.getHeight() * scale);
+        int newWidth = (int) Math.round(newImage.getWidth(null) * scale);
+        int newHeight = (int) Math.round(newImage.getHeight(null) * scale);
         imageSize.x = (imageSize.width - newWidth) / 2;
         imageSize.y = (imageSize.height - newHeight) / 2;
         imageSize.width = newWidth;
         imageSize.height = newHeight;
 
-        Image scaledImage = newImage.getScaledInstance(imageSize.width, imageSize.height, Image.SCALE_FAST);
-        image = AlcUtil.getBufferedImage(scaledImage);
+        // Scale straight into the image used for tracing - no intermediate copy
+        image = AlcUtil.getBufferedImage(newImage, imageSize.width, imageSize.height);
 
         canvas.setImageLocation(imageSize.x, imageSize.y);
         canvas.setImageDisplay(imageDisplay);
@@ -164,8 +164,16 @@ public class TraceShapes extends AlcModule implements AlcConstants {
     }
 
     private Point checkSnap(Point p) {
-        if (image != null && imageSize.contains(p)) {
-            Point aP = new Point(p.x - imageSize.x, p.y - imageSize.y);
+        if (image == null) {
+            return p;
+        }
+        // Where the image is on the drawing - it moves with the drawing when panned
+        Point origin = new Point(canvas.getImageLocation());
+        Point pan = canvas.getPanOffset();
+        origin.translate(-pan.x, -pan.y);
+        Rectangle area = new Rectangle(origin.x, origin.y, imageSize.width, imageSize.height);
+        if (area.contains(p)) {
+            Point aP = new Point(p.x - area.x, p.y - area.y);
             // The pixel value under the cursor
             int xy = AlcUtil.getColorBrightness(image.getRGB(aP.x, aP.y));
 
@@ -197,7 +205,7 @@ public class TraceShapes extends AlcModule implements AlcConstants {
                     if (difference > tolerance) {
                         if (difference > contrast) {
                             contrast = difference;
-                            bestContrastPoint = new Point(x + imageSize.x, y + imageSize.y);
+                            bestContrastPoint = new Point(x + area.x, y + area.y);
                         }
                     }
                 }
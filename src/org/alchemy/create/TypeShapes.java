@@ -64,9 +64,13 @@ public class TypeShapes extends AlcModule implements AlcConstants {
     }
 
     @Override
-    protected void setup() {
-
+    protected void prepare() {
+        // Listing the fonts can take a few seconds
         loadFonts();
+    }
+
+    @Override
+    protected void setup() {
 
         // Call the canvas to preview the returned random shape
         //generate();
@@ -324,7 +328,8 @@ public class TypeShapes extends AlcModule implements AlcConstants {
         }
 
         AffineTransform centre = new AffineTransform();
-        centre.translate(math.random(canvas.getSize().width), math.random(canvas.getSize().height));
+        Rectangle view = canvas.getViewBounds();
+        centre.translate(view.x + math.random(view.width), view.y + math.random(view.height));
         union = (GeneralPath) union.createTransformedShape(centre);
 
         // Convert the random shape into a general path
@@ -436,9 +441,10 @@ public class TypeShapes extends AlcModule implements AlcConstants {
                 newTr.translate(math.random(offsetX * -1, offsetX), math.random(offsetY * -1, offsetY));
             } else {
                 // Move the shape to a random location
-                int offsetX = canvas.getSize().width;
-                int offsetY = canvas.getSize().width;
-                newTr.translate(math.random(0, offsetX), math.random(0, offsetY));
+                Rectangle view = canvas.getViewBounds();
+                int offsetX = view.width;
+                int offsetY = view.width;
+                newTr.translate(view.x + math.random(0, offsetX), view.y + math.random(0, offsetY));
             }
 
         } else {
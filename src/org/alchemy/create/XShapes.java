@@ -22,7 +22,6 @@ package org.alchemy.create;
 import org.alchemy.core.*;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -36,8 +35,8 @@ public class XShapes extends AlcModule implements AlcConstants {
     private int multiplier = 25;
     private AlcToolBarSubSection subToolBarSection;
 //    private boolean freeform = true;
-    private ArrayList<Integer> averageSpeed = new ArrayList<Integer>();
-    private int counter = 0;
+    /** Number of samples the speed is averaged over */
+    private final int speedSamples = 10;
 
     public XShapes() {
 
@@ -110,7 +109,7 @@ public class XShapes extends AlcModule implements AlcConstants {
         // Need to test if it is null incase the shape has been auto-cleared
 
         if (canvas.hasCreateShapes()) {
-            double speed = getAverageCursorSpeed(p, oldP);
+            double speed = canvas.getMotion().getAverageDistance(speedSamples);
             double points = canvas.getCurrentCreateShape().getTotalPoints() * 0.01;
             //System.out.println(points);
             Point pt = getAngle(p, oldP, points + speed / 2);
@@ -131,32 +130,6 @@ public class XShapes extends AlcModule implements AlcConstants {
         canvas.commitShapes();
     }
 
-    private double getAverageCursorSpeed(Point p1, Point p2) {
-
-        int diffX = Math.abs(p1.x - p2.x);
-        int diffY = Math.abs(p1.y - p2.y);
-        //int rand = (int) root.math.random(2);
-
-        int speed = diffX + diffY;
-        int thisSlot = counter % 10;
-        averageSpeed.add(thisSlot, new Integer(speed));
-
-        counter++;
-
-        //averageSpeed[counter % averageSpeed.length] = speed;
-        return mean(averageSpeed);
-    //return speed;
-    }
-
-    private double mean(ArrayList<Integer> list) {
-        int sum = 0;  // sum of all the elements
-        for (int i = 0; i < list.size(); i++) {
-            Integer thisInteger = list.get(i);
-            sum += thisInteger.intValue();
-        }
-        return sum / list.size();
-    }
-
     private Point getAngle(Point p2, Point p1, double distance) {
         double adjustedDistance = distance * multiplier;
         // Calculate the angle between the last point and the new point
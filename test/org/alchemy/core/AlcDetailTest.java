@@ -0,0 +1,79 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.GeneralPath;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcDetailTest {
+
+    private static GeneralPath wave() {
+        GeneralPath path = new GeneralPath();
+        path.moveTo(0, 50);
+        for (int x = 1; x <= 400; x++) {
+            path.lineTo(x, (float) (50 + 30 * Math.sin(x / 40.0)));
+        }
+        return path;
+    }
+
+    @Test
+    public void fullDetailUpClose() {
+        GeneralPath path = wave();
+        AlcDetail detail = new AlcDetail(path);
+        assertSame(path, detail.getPath(1));
+        assertSame(path, detail.getPath(0.1));
+    }
+
+    @Test
+    public void lessDetailFurtherAway() {
+        GeneralPath path = wave();
+        AlcDetail detail = new AlcDetail(path);
+        GeneralPath near = detail.getPath(4);
+        GeneralPath far = detail.getPath(64);
+        assertNotSame(path, near);
+        assertTrue(AlcSimplify.countSegments(near) < AlcSimplify.countSegments(path));
+        assertTrue(AlcSimplify.countSegments(far) <= AlcSimplify.countSegments(near));
+    }
+
+    @Test
+    public void levelsAreMadeOnce() {
+        AlcDetail detail = new AlcDetail(wave());
+        assertSame(detail.getPath(8), detail.getPath(8));
+        // Beyond the coarsest level the coarsest is used
+        assertSame(detail.getPath(64), detail.getPath(1000));
+    }
+
+    @Test
+    public void boundsAreOfTheFullPath() {
+        GeneralPath path = wave();
+        assertEquals(path.getBounds2D(), new AlcDetail(path).getBounds());
+    }
+
+    @Test
+    public void invalidOnceThePathChanges() {
+        GeneralPath path = wave();
+        AlcDetail detail = new AlcDetail(path);
+        assertTrue(detail.isValid(path));
+        assertFalse(detail.isValid(wave()));
+        path.lineTo(500, 50);
+        assertFalse(detail.isValid(path));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfWriter;
+import com.sun.pdfview.PDFFile;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcPageCacheTest {
+
+    private PDFFile pdfFile;
+
+    @Before
+    public void setUp() throws Exception {
+        // A session of three small pages
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Document document = new Document(new Rectangle(40, 30));
+        PdfWriter writer = PdfWriter.getInstance(document, bytes);
+        document.open();
+        for (int i = 0; i < 3; i++) {
+            writer.getDirectContent().rectangle(0, 0, 10 * (i + 1), 10);
+            writer.getDirectContent().fill();
+            document.newPage();
+        }
+        document.close();
+        pdfFile = new PDFFile(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    @Test
+    public void noPagesWithoutAFile() {
+        AlcPageCache cache = new AlcPageCache(2);
+        assertNull(cache.getPage(1, 1, Color.WHITE));
+        cache.setFile(pdfFile);
+        cache.setFile(null);
+        assertNull(cache.getPage(1, 1, Color.WHITE));
+    }
+
+    @Test
+    public void pageIsRenderedOnce() {
+        AlcPageCache cache = new AlcPageCache(2);
+        cache.setFile(pdfFile);
+        BufferedImage page = cache.getPage(1, 1, Color.WHITE);
+        assertEquals(40, page.getWidth());
+        assertEquals(30, page.getHeight());
+        assertSame(page, cache.getPage(1, 1, Color.WHITE));
+    }
+
+    @Test
+    public void zoomAndBackgroundAreRenderedApart() {
+        AlcPageCache cache = new AlcPageCache(4);
+        cache.setFile(pdfFile);
+        BufferedImage page = cache.getPage(1, 1, Color.WHITE);
+        BufferedImage zoomed = cache.getPage(1, 2, Color.WHITE);
+        assertEquals(80, zoomed.getWidth());
+        assertEquals(60, zoomed.getHeight());
+        BufferedImage black = cache.getPage(1, 1, Color.BLACK);
+        assertNotSame(page, black);
+        assertSame(page, cache.getPage(1, 1, Color.WHITE));
+    }
+
+    @Test
+    public void leastRecentlyUsedPageIsDropped() {
+        AlcPageCache cache = new AlcPageCache(2);
+        cache.setFile(pdfFile);
+        BufferedImage first = cache.getPage(1, 1, Color.WHITE);
+        BufferedImage second = cache.getPage(2, 1, Color.WHITE);
+        // Use the first page again so the second is the oldest
+        assertSame(first, cache.getPage(1, 1, Color.WHITE));
+        cache.getPage(3, 1, Color.WHITE);
+        assertSame(first, cache.getPage(1, 1, Color.WHITE));
+        assertNotSame(second, cache.getPage(2, 1, Color.WHITE));
+    }
+
+    @Test
+    public void prefetchedPageIsUsed() throws Exception {
+        AlcPageCache cache = new AlcPageCache(2);
+        cache.setFile(pdfFile);
+        cache.prefetch(2, 1, Color.WHITE);
+        BufferedImage page = cache.getPage(2, 1, Color.WHITE);
+        assertNotNull(page);
+        assertSame(page, cache.getPage(2, 1, Color.WHITE));
+    }
+
+    @Test
+    public void prefetchIgnoresPagesOutOfRange() {
+        AlcPageCache cache = new AlcPageCache(2);
+        cache.setFile(pdfFile);
+        cache.prefetch(0, 1, Color.WHITE);
+        cache.prefetch(4, 1, Color.WHITE);
+        assertNotNull(cache.getPage(3, 1, Color.WHITE));
+    }
+
+    @Test
+    public void newFileClearsTheCache() {
+        AlcPageCache cache = new AlcPageCache(2);
+        cache.setFile(pdfFile);
+        BufferedImage page = cache.getPage(1, 1, Color.WHITE);
+        cache.setFile(pdfFile);
+        assertNotSame(page, cache.getPage(1, 1, Color.WHITE));
+    }
+}
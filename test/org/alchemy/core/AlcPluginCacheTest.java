@@ -0,0 +1,162 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.io.*;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.java.plugin.PluginManager.PluginLocation;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcPluginCacheTest {
+
+    private File dir;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("AlcPluginCacheTest", "");
+        dir.delete();
+        dir.mkdirs();
+        cacheFile = new File(dir, "plugins.cache");
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void scansNewZipsThenUsesTheCache() throws IOException {
+        File zip = writeZip("a.zip", "plugin.xml", "<plugin id=\"a\"/>");
+
+        AlcPluginCache cache = new AlcPluginCache(cacheFile);
+        PluginLocation scanned = cache.locate(new File[]{zip})[0];
+        cache.save();
+        assertEquals(1, cache.getScannedCount());
+        assertEquals(0, cache.getCachedCount());
+
+        cache = new AlcPluginCache(cacheFile);
+        PluginLocation cached = cache.locate(new File[]{zip})[0];
+        assertEquals(0, cache.getScannedCount());
+        assertEquals(1, cache.getCachedCount());
+        assertEquals(scanned.getContextLocation(), cached.getContextLocation());
+        assertEquals(scanned.getManifestLocation(), cached.getManifestLocation());
+    }
+
+    @Test
+    public void zipWithoutManifestHasNoLocation() throws IOException {
+        File zip = writeZip("empty.zip", "readme.txt", "nothing");
+        assertNull(new AlcPluginCache(cacheFile).locate(new File[]{zip})[0]);
+    }
+
+    @Test
+    public void changedZipIsScannedAgain() throws IOException {
+        File zip = writeZip("a.zip", "plugin.xml", "<plugin id=\"a\"/>");
+        AlcPluginCache cache = new AlcPluginCache(cacheFile);
+        cache.locate(new File[]{zip});
+        cache.save();
+
+        writeZip("a.zip", "plugin.xml", "<plugin id=\"a\" version=\"2\"/>");
+        zip.setLastModified(zip.lastModified() + 10000);
+        cache = new AlcPluginCache(cacheFile);
+        assertNotNull(cache.locate(new File[]{zip})[0]);
+        assertEquals(1, cache.getScannedCount());
+    }
+
+    @Test
+    public void locationOutsideTheZipIsIgnored() throws IOException {
+        File zip = writeZip("a.zip", "plugin.xml", "<plugin id=\"a\"/>");
+        File other = writeZip("other.zip", "plugin.xml", "<plugin id=\"other\"/>");
+        AlcPluginCache cache = new AlcPluginCache(cacheFile);
+        cache.locate(new File[]{zip, other});
+        cache.save();
+
+        // Point the entry for a.zip at the manifest of other.zip
+        Properties properties = load(cacheFile);
+        String path = zip.getAbsolutePath();
+        properties.setProperty(path, properties.getProperty(path).replace("/a.zip!", "/other.zip!"));
+        store(properties, cacheFile);
+
+        cache = new AlcPluginCache(cacheFile);
+        PluginLocation location = cache.locate(new File[]{zip})[0];
+        assertEquals(1, cache.getScannedCount());
+        assertTrue(location.getManifestLocation().toExternalForm().endsWith("/a.zip!/plugin.xml"));
+    }
+
+    @Test
+    public void saveReplacesALinkRatherThanWritingThroughIt() throws Exception {
+        Assume.assumeTrue(File.separatorChar == '/');
+        File target = new File(dir, "target.txt");
+        store(new Properties(), target);
+        long length = target.length();
+        Process ln = Runtime.getRuntime().exec(new String[]{"ln", "-s", target.getAbsolutePath(), cacheFile.getAbsolutePath()});
+        Assume.assumeTrue(ln.waitFor() == 0);
+
+        AlcPluginCache cache = new AlcPluginCache(cacheFile);
+        cache.locate(new File[]{writeZip("a.zip", "plugin.xml", "<plugin id=\"a\"/>")});
+        cache.save();
+
+        assertEquals(length, target.length());
+        assertEquals(cacheFile.getCanonicalFile(), new File(dir.getCanonicalFile(), cacheFile.getName()));
+        assertNotNull(load(cacheFile).getProperty(new File(dir, "a.zip").getAbsolutePath()));
+    }
+
+    private File writeZip(String name, String entry, String content) throws IOException {
+        File zip = new File(dir, name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(content.getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return zip;
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.*;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcPolygonTest {
+
+    /** Five pointed star - the middle is outside with the even odd rule */
+    private static GeneralPath star(int windingRule) {
+        GeneralPath path = new GeneralPath(windingRule);
+        for (int i = 0; i < 5; i++) {
+            double angle = Math.toRadians(90 + i * 144);
+            float x = (float) (100 + 90 * Math.cos(angle));
+            float y = (float) (100 - 90 * Math.sin(angle));
+            if (i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        path.closePath();
+        return path;
+    }
+
+    @Test
+    public void starMatchesGeneralPathNonZero() {
+        assertMatches(star(PathIterator.WIND_NON_ZERO));
+    }
+
+    @Test
+    public void starMatchesGeneralPathEvenOdd() {
+        GeneralPath path = star(PathIterator.WIND_EVEN_ODD);
+        assertMatches(path);
+        assertFalse(new AlcPolygon(path).contains(100, 100));
+        assertTrue(new AlcPolygon(star(PathIterator.WIND_NON_ZERO)).contains(100, 100));
+    }
+
+    @Test
+    public void separatePartsAndHoles() {
+        GeneralPath path = new GeneralPath(PathIterator.WIND_EVEN_ODD);
+        path.append(new Rectangle2D.Float(0, 0, 100, 100), false);
+        path.append(new Rectangle2D.Float(25, 25, 50, 50), false);
+        path.append(new Rectangle2D.Float(150, 10, 40, 180), false);
+        assertMatches(path);
+        assertFalse(new AlcPolygon(path).contains(50, 50));
+        assertTrue(new AlcPolygon(path).contains(10, 50));
+        assertTrue(new AlcPolygon(path).contains(170, 150));
+    }
+
+    @Test
+    public void openPathIsClosedBackToItsStart() {
+        GeneralPath path = new GeneralPath();
+        path.moveTo(0, 0);
+        path.lineTo(100, 0);
+        path.lineTo(100, 100);
+        AlcPolygon polygon = new AlcPolygon(path);
+        assertTrue(polygon.contains(90, 10));
+        assertFalse(polygon.contains(10, 90));
+    }
+
+    @Test
+    public void curvesAreFlattenedClosely() {
+        GeneralPath path = new GeneralPath(new Ellipse2D.Float(0, 0, 200, 200));
+        AlcPolygon polygon = new AlcPolygon(path);
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            double x = random.nextDouble() * 220 - 10;
+            double y = random.nextDouble() * 220 - 10;
+            // Leave out points too close to the curve to tell
+            if (Math.abs(Point2D.distance(x, y, 100, 100) - 100) > 0.2) {
+                assertEquals(x + "," + y, path.contains(x, y), polygon.contains(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void boundsAndEmptyPaths() {
+        assertEquals(new Rectangle2D.Float(0, 0, 100, 100), new AlcPolygon(new GeneralPath(new Rectangle2D.Float(0, 0, 100, 100))).getBounds());
+        AlcPolygon empty = new AlcPolygon(new GeneralPath());
+        assertTrue(empty.getBounds().isEmpty());
+        assertFalse(empty.contains(0, 0));
+    }
+
+    @Test
+    public void invalidOnceThePathChanges() {
+        GeneralPath path = star(PathIterator.WIND_NON_ZERO);
+        AlcPolygon polygon = new AlcPolygon(path);
+        assertTrue(polygon.isValid(path));
+        assertFalse(polygon.isValid(star(PathIterator.WIND_NON_ZERO)));
+        path.moveTo(0, 0);
+        path.lineTo(10, 10);
+        assertFalse(polygon.isValid(path));
+    }
+
+    /** Compare with GeneralPath at random points around the path */
+    private static void assertMatches(GeneralPath path) {
+        AlcPolygon polygon = new AlcPolygon(path);
+        Rectangle2D bounds = path.getBounds2D();
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            double x = bounds.getX() - 10 + random.nextDouble() * (bounds.getWidth() + 20);
+            double y = bounds.getY() - 10 + random.nextDouble() * (bounds.getHeight() + 20);
+            assertEquals(x + "," + y, path.contains(x, y), polygon.contains(x, y));
+        }
+    }
+}
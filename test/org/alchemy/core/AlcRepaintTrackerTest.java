@@ -0,0 +1,140 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcRepaintTrackerTest {
+
+    private static List<List<AlcShape>> lists(AlcShape... shapes) {
+        List<AlcShape> list = new ArrayList<AlcShape>();
+        for (AlcShape shape : shapes) {
+            list.add(shape);
+        }
+        List<List<AlcShape>> lists = new ArrayList<List<AlcShape>>();
+        lists.add(list);
+        return lists;
+    }
+
+    private static AlcShape line(int style) {
+        return new AlcShape(new Point2D.Float(10, 10), Color.BLACK, 255, style, 4);
+    }
+
+    /** Check an area covers every point of the path after a segment */
+    private static void assertCoversFrom(Rectangle area, GeneralPath path, int segment) {
+        float[] coords = new float[6];
+        int count = 0;
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+            int type = it.currentSegment(coords);
+            int points = (type == PathIterator.SEG_CUBICTO) ? 3 : (type == PathIterator.SEG_QUADTO) ? 2 : (type == PathIterator.SEG_CLOSE) ? 0 : 1;
+            if (count >= segment) {
+                for (int i = 0; i < points; i++) {
+                    assertTrue(area + " " + coords[i * 2] + "," + coords[i * 2 + 1],
+                            area.contains(coords[i * 2], coords[i * 2 + 1]));
+                }
+            }
+            count++;
+        }
+    }
+
+    private static int segments(GeneralPath path) {
+        int count = 0;
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void newShapeIsRepaintedWhole() {
+        AlcRepaintTracker tracker = new AlcRepaintTracker();
+        AlcShape shape = line(AlcConstants.STYLE_STROKE);
+        shape.lineTo(100, 50);
+        Rectangle area = tracker.update(lists(shape));
+        assertCoversFrom(area, shape.path, 0);
+        assertNull(tracker.update(lists(shape)));
+    }
+
+    @Test
+    public void addedLineOnlyRepaintsTheNewSegments() {
+        AlcRepaintTracker tracker = new AlcRepaintTracker();
+        AlcShape shape = line(AlcConstants.STYLE_STROKE);
+        tracker.update(lists(shape));
+        // Points far apart so the curves are kept
+        float[][] points = {{30, 10}, {50, 10}, {70, 10}, {90, 10}, {110, 10}, {130, 60}, {150, 10}, {170, 60}, {190, 10}};
+        for (int i = 0; i < points.length; i++) {
+            int before = segments(shape.path);
+            Point2D join = shape.path.getCurrentPoint();
+            shape.curveTo(points[i][0], points[i][1]);
+            if (i % 3 == 0) {
+                // Several points between updates
+                shape.curveTo(points[i][0] + 7, points[i][1] + 30);
+            }
+            Rectangle area = tracker.update(lists(shape));
+            assertNotNull(area);
+            assertCoversFrom(area, shape.path, before);
+            assertTrue(area.contains(join));
+            // Not the whole line
+            if (i > 4) {
+                assertTrue(area.getMinX() > 40);
+            }
+        }
+    }
+
+    @Test
+    public void pathChangedOtherWaysIsRepaintedWhole() {
+        AlcRepaintTracker tracker = new AlcRepaintTracker();
+        AlcShape shape = line(AlcConstants.STYLE_STROKE);
+        shape.lineTo(100, 10);
+        tracker.update(lists(shape));
+        // Added to without the shape knowing, then through the shape
+        shape.getPath().lineTo(100, 200);
+        shape.lineTo(200, 200);
+        Rectangle area = tracker.update(lists(shape));
+        assertCoversFrom(area, shape.path, 0);
+    }
+
+    @Test
+    public void filledShapeRepaintsAll() {
+        AlcRepaintTracker tracker = new AlcRepaintTracker();
+        AlcShape shape = line(AlcConstants.STYLE_FILL);
+        shape.lineTo(100, 10);
+        tracker.update(lists(shape));
+        shape.lineTo(100, 100);
+        Rectangle area = tracker.update(lists(shape));
+        assertCoversFrom(area, shape.path, 0);
+    }
+
+    @Test
+    public void removedShapeIsRepainted() {
+        AlcRepaintTracker tracker = new AlcRepaintTracker();
+        AlcShape shape = line(AlcConstants.STYLE_STROKE);
+        shape.lineTo(100, 50);
+        tracker.update(lists(shape));
+        Rectangle area = tracker.update(lists());
+        assertCoversFrom(area, shape.path, 0);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.*;
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcSimplifyTest {
+
+    /** A wavy stroke sampled every pixel */
+    private static GeneralPath wave() {
+        GeneralPath path = new GeneralPath();
+        path.moveTo(0, 50);
+        for (int x = 1; x <= 400; x++) {
+            path.lineTo(x, (float) (50 + 30 * Math.sin(x / 40.0)));
+        }
+        return path;
+    }
+
+    @Test
+    public void straightLineBecomesOneSegment() {
+        GeneralPath path = new GeneralPath();
+        path.moveTo(0, 0);
+        for (int i = 1; i <= 100; i++) {
+            path.lineTo(i, i);
+        }
+        GeneralPath simplified = AlcSimplify.simplify(path, 1);
+        assertEquals(2, AlcSimplify.countSegments(simplified));
+        assertEquals(new Point2D.Float(100, 100), simplified.getCurrentPoint());
+    }
+
+    @Test
+    public void curvesStayWithinTolerance() {
+        GeneralPath path = wave();
+        GeneralPath simplified = AlcSimplify.simplify(path, 1);
+        assertTrue(AlcSimplify.countSegments(simplified) < AlcSimplify.countSegments(path) / 10);
+        assertWithin(path, simplified, 1);
+    }
+
+    @Test
+    public void linesStayWithinTolerance() {
+        GeneralPath path = wave();
+        GeneralPath reduced = AlcSimplify.reduceToLines(path, 2);
+        assertTrue(AlcSimplify.countSegments(reduced) < AlcSimplify.countSegments(path));
+        for (PathIterator it = reduced.getPathIterator(null); !it.isDone(); it.next()) {
+            int type = it.currentSegment(new float[6]);
+            assertTrue(type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO);
+        }
+        assertWithin(path, reduced, 2);
+    }
+
+    @Test
+    public void closedPathsStayClosed() {
+        GeneralPath path = new GeneralPath();
+        for (int part = 0; part < 2; part++) {
+            path.moveTo(100 * part + 50, 0);
+            for (int i = 1; i < 360; i++) {
+                path.lineTo((float) (100 * part + 50 * Math.cos(Math.toRadians(i))), (float) (50 * Math.sin(Math.toRadians(i))));
+            }
+            path.closePath();
+        }
+        GeneralPath simplified = AlcSimplify.simplify(path, 0.5);
+        int moves = 0, closes = 0;
+        for (PathIterator it = simplified.getPathIterator(null); !it.isDone(); it.next()) {
+            int type = it.currentSegment(new float[6]);
+            if (type == PathIterator.SEG_MOVETO) {
+                moves++;
+            } else if (type == PathIterator.SEG_CLOSE) {
+                closes++;
+            }
+        }
+        assertEquals(2, moves);
+        assertEquals(2, closes);
+        assertWithin(path, simplified, 0.5);
+    }
+
+    @Test
+    public void shortPathIsReturnedUnchanged() {
+        GeneralPath path = new GeneralPath();
+        path.moveTo(0, 0);
+        path.lineTo(10, 5);
+        assertSame(path, AlcSimplify.simplify(path, 1));
+    }
+
+    @Test
+    public void spineKeepsChangesInWidth() {
+        ArrayList<Point2D.Float> spine = new ArrayList<Point2D.Float>();
+        ArrayList<Float> width = new ArrayList<Float>();
+        for (int i = 0; i <= 20; i++) {
+            spine.add(new Point2D.Float(i * 5, 0));
+            // A bulge in the middle of an otherwise even line
+            width.add(new Float(i == 10 ? 20 : 4));
+        }
+        AlcSimplify.reduceSpine(spine, width, 1);
+        assertEquals(spine.size(), width.size());
+        assertTrue(spine.size() < 21);
+        assertEquals(new Point2D.Float(0, 0), spine.get(0));
+        assertEquals(new Point2D.Float(100, 0), spine.get(spine.size() - 1));
+        assertTrue(spine.contains(new Point2D.Float(50, 0)));
+        assertEquals(20F, width.get(spine.indexOf(new Point2D.Float(50, 0))).floatValue(), 0);
+    }
+
+    /** Check every point of the original path is close to the simplified one */
+    private static void assertWithin(GeneralPath original, GeneralPath simplified, double tolerance) {
+        ArrayList<Line2D> lines = new ArrayList<Line2D>();
+        float[] coords = new float[6];
+        float lastX = 0, lastY = 0, startX = 0, startY = 0;
+        for (PathIterator it = simplified.getPathIterator(null, 0.01); !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    lines.add(new Line2D.Float(lastX, lastY, coords[0], coords[1]));
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    lines.add(new Line2D.Float(lastX, lastY, startX, startY));
+                    break;
+            }
+        }
+        for (PathIterator it = original.getPathIterator(null); !it.isDone(); it.next()) {
+            if (it.currentSegment(coords) == PathIterator.SEG_CLOSE) {
+                continue;
+            }
+            double nearest = Double.MAX_VALUE;
+            for (Line2D line : lines) {
+                nearest = Math.min(nearest, line.ptSegDist(coords[0], coords[1]));
+            }
+            assertTrue("Point " + coords[0] + "," + coords[1] + " is " + nearest + " away", nearest <= tolerance + 0.01);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcTileCacheTest {
+
+    private static final int SIZE = AlcTileCache.TILE_SIZE;
+    /** Room for one tile in memory */
+    private static final long ONE_TILE = SIZE * SIZE * 4;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("alchemy", "test");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    private static void fill(BufferedImage tile, Color color) {
+        Graphics2D g2 = tile.createGraphics();
+        g2.setColor(color);
+        g2.fillRect(0, 0, SIZE, SIZE);
+        g2.dispose();
+    }
+
+    @Test
+    public void tilesAreKeptByOwnerColumnAndRow() {
+        AlcTileCache cache = new AlcTileCache(ONE_TILE * 4, directory);
+        Object owner = new Object();
+        assertNull(cache.get(owner, 0, 0));
+        fill(cache.create(owner, -3, 7), Color.RED);
+        assertEquals(0xFFFF0000, cache.get(owner, -3, 7).getRGB(10, 10));
+        assertNull(cache.get(owner, 7, -3));
+        assertNull(cache.get(new Object(), -3, 7));
+        // A new tile starts clear
+        assertEquals(0, cache.create(owner, -3, 7).getRGB(10, 10));
+    }
+
+    @Test
+    public void evictedTilesAreReadBackFromTheSwapFile() {
+        AlcTileCache cache = new AlcTileCache(ONE_TILE, directory);
+        Object owner = new Object();
+        fill(cache.create(owner, 0, 0), Color.RED);
+        fill(cache.create(owner, 1, 0), Color.BLUE);
+        assertNull(cache.getResident(owner, 0, 0));
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(0xFFFF0000, cache.get(owner, 0, 0).getRGB(10, 10));
+        assertEquals(0xFF0000FF, cache.get(owner, 1, 0).getRGB(10, 10));
+        cache.dispose();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void evictedTilesAreDroppedWithoutASwapDirectory() {
+        AlcTileCache cache = new AlcTileCache(ONE_TILE, null);
+        Object owner = new Object();
+        fill(cache.create(owner, 0, 0), Color.RED);
+        fill(cache.create(owner, 1, 0), Color.BLUE);
+        assertNull(cache.get(owner, 0, 0));
+        assertEquals(0xFF0000FF, cache.get(owner, 1, 0).getRGB(10, 10));
+    }
+
+    @Test
+    public void invalidatedTilesAreRemoved() {
+        AlcTileCache cache = new AlcTileCache(ONE_TILE * 2, directory);
+        Object owner = new Object();
+        Object other = new Object();
+        for (int column = -1; column <= 1; column++) {
+            cache.create(owner, column, 0);
+        }
+        cache.create(other, 0, 0);
+        // One pixel either side of the origin - swapped out tiles are removed too
+        cache.invalidate(owner, new Rectangle(-1, 0, 2, 1));
+        assertNull(cache.get(owner, -1, 0));
+        assertNull(cache.get(owner, 0, 0));
+        assertNotNull(cache.get(owner, 1, 0));
+        cache.remove(owner);
+        assertNull(cache.get(owner, 1, 0));
+        assertNotNull(cache.get(other, 0, 0));
+    }
+
+    @Test
+    public void layerIsPutTogetherFromTiles() {
+        Random random = new Random(5);
+        AlcTileCache cache = new AlcTileCache(ONE_TILE * 64, directory);
+        AlcLayer layer = new AlcLayer(cache);
+        for (int i = 0; i < 100; i++) {
+            layer.shapes.add(AlcTileIndexTest.rect(random.nextInt(1200) - 600, random.nextInt(1200) - 600,
+                    1 + random.nextInt(200), 1 + random.nextInt(200), new Color(random.nextInt(0xFFFFFF))));
+        }
+        AlcRenderer renderer = new AlcRenderer();
+        renderer.setSmoothing(false);
+        // Panned to part way across the tiles, then back over some of the same tiles
+        assertSameImage(AlcLayer.renderRaster(layer.shapes, renderer, -300, -200, 500, 400),
+                layer.getRaster(renderer, -300, -200, 500, 400));
+        assertSameImage(AlcLayer.renderRaster(layer.shapes, renderer, -100, 50, 500, 400),
+                layer.getRaster(renderer, -100, 50, 500, 400));
+        // Commited shapes are drawn onto the tiles kept
+        layer.commit(Arrays.asList(AlcTileIndexTest.rect(-250, -150, 300, 300, Color.GREEN)), false, renderer);
+        assertSameImage(AlcLayer.renderRaster(layer.shapes, renderer, -300, -200, 500, 400),
+                layer.getRaster(renderer, -300, -200, 500, 400));
+        // And below them
+        layer.commit(Arrays.asList(AlcTileIndexTest.rect(-600, -600, 1200, 1200, Color.BLACK)), true, renderer);
+        assertSameImage(AlcLayer.renderRaster(layer.shapes, renderer, -100, 50, 500, 400),
+                layer.getRaster(renderer, -100, 50, 500, 400));
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
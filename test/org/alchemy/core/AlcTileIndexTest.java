@@ -0,0 +1,101 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcTileIndexTest {
+
+    private static final int SIZE = AlcTileCache.TILE_SIZE;
+
+    static AlcShape rect(float x, float y, float w, float h, Color color) {
+        return new AlcShape(new GeneralPath(new Rectangle2D.Float(x, y, w, h)), color, 255, AlcConstants.STYLE_FILL, 1);
+    }
+
+    private static BufferedImage tile(AlcTileIndex index, int column, int row) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        AlcRenderer renderer = new AlcRenderer();
+        renderer.setSmoothing(false);
+        index.paintTile(image, column, row, renderer);
+        return image;
+    }
+
+    @Test
+    public void shapeAcrossTilesIsDrawnOnEach() {
+        AlcTileIndex index = new AlcTileIndex(Arrays.asList(rect(200, 10, 100, 40, Color.RED)));
+        assertEquals(0xFFFF0000, tile(index, 0, 0).getRGB(220, 20));
+        assertEquals(0xFFFF0000, tile(index, 1, 0).getRGB(270 - SIZE, 20));
+        assertEquals(0, tile(index, 0, 0).getRGB(100, 20));
+        assertTrue(index.isEmpty(0, 1));
+    }
+
+    @Test
+    public void negativeTiles() {
+        // Left of and above the origin
+        AlcTileIndex index = new AlcTileIndex(Arrays.asList(rect(-50, -50, 20, 20, Color.BLUE)));
+        assertEquals(0xFF0000FF, tile(index, -1, -1).getRGB(SIZE - 40, SIZE - 40));
+        assertTrue(index.isEmpty(0, 0));
+        assertEquals(1, index.getTiles().size());
+        Long key = index.getTiles().iterator().next();
+        assertEquals(-1, AlcTileIndex.getColumn(key));
+        assertEquals(-1, AlcTileIndex.getRow(key));
+    }
+
+    @Test
+    public void addedShapesAreDrawnOnTop() {
+        AlcTileIndex index = new AlcTileIndex(Arrays.asList(rect(0, 0, 50, 50, Color.RED)));
+        index.add(Arrays.asList(rect(25, 0, 50, 50, Color.BLUE), rect(2000, 2000, 10, 10, Color.BLUE)));
+        BufferedImage image = tile(index, 0, 0);
+        assertEquals(0xFFFF0000, image.getRGB(10, 10));
+        assertEquals(0xFF0000FF, image.getRGB(40, 10));
+        assertFalse(index.isEmpty(2000 / SIZE, 2000 / SIZE));
+    }
+
+    @Test
+    public void tilesMatchTheWholeDrawing() {
+        Random random = new Random(3);
+        ArrayList<AlcShape> shapes = new ArrayList<AlcShape>();
+        for (int i = 0; i < 200; i++) {
+            shapes.add(rect(random.nextInt(600), random.nextInt(600), 1 + random.nextInt(120), 1 + random.nextInt(120),
+                    new Color(random.nextInt(0xFFFFFF))));
+        }
+        AlcRenderer renderer = new AlcRenderer();
+        renderer.setSmoothing(false);
+        BufferedImage whole = AlcLayer.renderRaster(shapes, renderer, 0, 0, SIZE * 3, SIZE * 3);
+        AlcTileIndex index = new AlcTileIndex(shapes);
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                BufferedImage image = tile(index, column, row);
+                for (int y = 0; y < SIZE; y++) {
+                    for (int x = 0; x < SIZE; x++) {
+                        assertEquals(whole.getRGB(column * SIZE + x, row * SIZE + y), image.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+}
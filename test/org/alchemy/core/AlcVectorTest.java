@@ -0,0 +1,104 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlcVectorTest {
+
+    @Test
+    public void emptyList() {
+        AlcVector<String> vector = AlcVector.empty();
+        assertEquals(0, vector.size());
+        assertTrue(vector.isEmpty());
+    }
+
+    @Test
+    public void itemsStayInOrderPastEachLevelOfTheTree() {
+        // Past the tail, the first level and the second level of the tree
+        AlcVector<Integer> vector = AlcVector.empty();
+        for (int i = 0; i < 40000; i++) {
+            vector = vector.plus(new Integer(i));
+            assertEquals(i + 1, vector.size());
+        }
+        for (int i = 0; i < 40000; i++) {
+            assertEquals(i, vector.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void addingLeavesTheOldListAlone() {
+        AlcVector<Integer> vector = AlcVector.empty();
+        ArrayList<AlcVector<Integer>> versions = new ArrayList<AlcVector<Integer>>();
+        for (int i = 0; i < 2000; i++) {
+            versions.add(vector);
+            vector = vector.plus(new Integer(i));
+        }
+        // Branch from an old version
+        AlcVector<Integer> branch = versions.get(1000).plus(new Integer(-1));
+        for (int v = 0; v < versions.size(); v++) {
+            AlcVector<Integer> version = versions.get(v);
+            assertEquals(v, version.size());
+            for (int i = 0; i < v; i++) {
+                assertEquals(i, version.get(i).intValue());
+            }
+        }
+        assertEquals(1001, branch.size());
+        assertEquals(-1, branch.get(1000).intValue());
+        assertEquals(1000, vector.get(1000).intValue());
+    }
+
+    @Test
+    public void equalsAnyListWithTheSameItems() {
+        AlcVector<String> vector = AlcVector.empty();
+        ArrayList<String> list = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            vector = vector.plus("item " + i);
+            list.add("item " + i);
+        }
+        assertEquals(list, vector);
+        assertEquals(list.hashCode(), vector.hashCode());
+        assertEquals(list, new ArrayList<String>(vector));
+    }
+
+    @Test
+    public void nullItems() {
+        AlcVector<String> vector = AlcVector.<String>empty().plus(null).plus("a");
+        assertNull(vector.get(0));
+        assertEquals("a", vector.get(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexPastTheEnd() {
+        AlcVector.<String>empty().plus("a").get(1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void negativeIndex() {
+        AlcVector.<String>empty().plus("a").get(-1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cannotBeChangedInPlace() {
+        AlcVector.<String>empty().plus("a").add("b");
+    }
+}